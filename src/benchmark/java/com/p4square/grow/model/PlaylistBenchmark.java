@@ -0,0 +1,112 @@
+package com.p4square.grow.model;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures finding videos in and merging the default playlist into a user's
+ * playlist, at about the size of the real default playlist and at ten times
+ * that size.
+ *
+ * Run with:
+ *   mvn -Pbenchmark test-compile exec:exec@benchmark -Dbenchmark=PlaylistBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PlaylistBenchmark {
+
+    @Param({"48", "480"})
+    public int mVideos;
+
+    private Playlist mUserPlaylist;
+    private Playlist mDefaultPlaylist;
+    private String[] mVideoIds;
+    private int mNext;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        mUserPlaylist = playlist(mVideos, 0, 100);
+        mDefaultPlaylist = playlist(mVideos, 1, 200);
+
+        mVideoIds = new String[mVideos];
+        for (int i = 0; i < mVideos; i++) {
+            mVideoIds[i] = "video" + i;
+        }
+    }
+
+    /**
+     * The training page looks up each video in the chapter it renders.
+     */
+    @Benchmark
+    public VideoRecord find() {
+        mNext = (mNext + 1) % mVideoIds.length;
+        return mUserPlaylist.find(mVideoIds[mNext]);
+    }
+
+    /**
+     * Merge a newer default playlist, which moves some videos and adds
+     * others, into the user's playlist.
+     */
+    @Benchmark
+    public boolean merge(final Copy copy) {
+        return copy.mPlaylist.merge(mDefaultPlaylist);
+    }
+
+    /**
+     * Each merge needs a copy of the user's playlist which has not been merged.
+     * A merge takes microseconds, so the per-invocation setup is not a concern.
+     */
+    @State(Scope.Thread)
+    public static class Copy {
+        private Playlist mPlaylist;
+
+        @Setup(Level.Invocation)
+        public void copy(final PlaylistBenchmark benchmark) {
+            mPlaylist = benchmark.mUserPlaylist.clone();
+        }
+    }
+
+    /**
+     * Build a playlist with videos spread across the chapters.
+     *
+     * @param videos The number of videos.
+     * @param shift Moves every fourth video this many chapters over.
+     * @param lastUpdated The playlist's lastUpdated time.
+     */
+    private static Playlist playlist(int videos, int shift, long lastUpdated) {
+        Chapters[] chapters = Chapters.values();
+        Playlist playlist = new Playlist();
+        for (int i = 0; i < videos; i++) {
+            int chapter = i * chapters.length / videos;
+            if (i % 4 == 0) {
+                chapter = (chapter + shift) % chapters.length;
+            }
+            playlist.add(chapters[chapter], "video" + i).setRequired(i % 3 != 0);
+        }
+
+        // The newer playlist also adds a few videos.
+        for (int i = 0; i < shift * videos / 8; i++) {
+            playlist.add(chapters[i % chapters.length], "new" + i);
+        }
+
+        playlist.setLastUpdated(new Date(lastUpdated));
+        return playlist;
+    }
+}
@@ -0,0 +1,133 @@
+package com.p4square.grow.model;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares scoring against a Question with scoring against its CompiledQuestion.
+ *
+ * Run with:
+ *   mvn -Pbenchmark test-compile exec:exec@benchmark -Dbenchmark=ScoringBenchmark
+ *
+ * Add -Dbenchmark.args="-prof gc" to report allocation per operation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ScoringBenchmark {
+    private static final int ANSWERS = 64;
+
+    private final ScoringEngine mQuadEngine = new QuadScoringEngine();
+    private final ScoringEngine mSliderEngine = new SliderScoringEngine();
+    private final ScoringEngine mSimpleEngine = new SimpleScoringEngine();
+
+    private QuadQuestion mQuad;
+    private SliderQuestion mSlider;
+    private TextQuestion mText;
+
+    private RecordedAnswer[] mPoints;
+    private RecordedAnswer[] mFractions;
+    private RecordedAnswer[] mIds;
+    private int mNext;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        mQuad = new QuadQuestion();
+        mSlider = new SliderQuestion();
+        mText = new TextQuestion();
+
+        // The assessment's quad and circle questions have an answer in each corner.
+        for (int i = 0; i < 4; i++) {
+            Answer answer = new Answer();
+            answer.setScore(i + 1);
+            Point corner = new Point(i % 2 == 0 ? 1 : -1, i < 2 ? 1 : -1);
+            mQuad.getAnswers().put(corner.toString(), answer);
+        }
+
+        for (int i = 0; i < 4; i++) {
+            Answer answer = new Answer();
+            answer.setScore(i + 1);
+            mSlider.getAnswers().put("a" + i, answer);
+            mText.getAnswers().put("a" + i, answer);
+        }
+
+        Random random = new Random(42);
+        mPoints = new RecordedAnswer[ANSWERS];
+        mFractions = new RecordedAnswer[ANSWERS];
+        mIds = new RecordedAnswer[ANSWERS];
+        for (int i = 0; i < ANSWERS; i++) {
+            mPoints[i] = answer(String.format("%.4f,%.4f",
+                        random.nextDouble() * 2 - 1, random.nextDouble() * 2 - 1));
+            mFractions[i] = answer(String.format("%.3f", random.nextDouble()));
+            mIds[i] = answer("a" + random.nextInt(4));
+        }
+    }
+
+    @Benchmark
+    public Score quadLegacy() {
+        Score score = new Score();
+        mQuadEngine.scoreAnswer(score, mQuad, mPoints[next()]);
+        return score;
+    }
+
+    @Benchmark
+    public Score quadCompiled() {
+        Score score = new Score();
+        mQuadEngine.scoreAnswer(score, mQuad.getCompiled(), mPoints[next()]);
+        return score;
+    }
+
+    @Benchmark
+    public Score sliderLegacy() {
+        Score score = new Score();
+        mSliderEngine.scoreAnswer(score, mSlider, mFractions[next()]);
+        return score;
+    }
+
+    @Benchmark
+    public Score sliderCompiled() {
+        Score score = new Score();
+        mSliderEngine.scoreAnswer(score, mSlider.getCompiled(), mFractions[next()]);
+        return score;
+    }
+
+    @Benchmark
+    public Score simpleLegacy() {
+        Score score = new Score();
+        mSimpleEngine.scoreAnswer(score, mText, mIds[next()]);
+        return score;
+    }
+
+    @Benchmark
+    public Score simpleCompiled() {
+        Score score = new Score();
+        mSimpleEngine.scoreAnswer(score, mText.getCompiled(), mIds[next()]);
+        return score;
+    }
+
+    private int next() {
+        mNext = (mNext + 1) % ANSWERS;
+        return mNext;
+    }
+
+    private static RecordedAnswer answer(String id) {
+        RecordedAnswer answer = new RecordedAnswer();
+        answer.setAnswerId(id);
+        return answer;
+    }
+}
@@ -14,6 +14,9 @@ import com.p4square.restlet.oauth.OAuthUser;
 /**
  * F1 API methods which require an authenticated user.
  *
+ * Implementations are thread safe, so one F1API may be shared by the threads
+ * of a bulk job.
+ *
  * @author Jesse Morgan <jesse@jesterpm.net>
  */
 public interface F1API {
@@ -6,8 +6,10 @@ package com.p4square.f1oauth;
 
 import java.io.IOException;
 import java.net.URLEncoder;
+import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -54,8 +56,12 @@ public class F1Access {
     private static final String ACCESSTOKEN_URL= "Tokens/AccessToken";
     private static final String TRUSTED_ACCESSTOKEN_URL = "/AccessToken";
 
-    private static final SimpleDateFormat DATE_FORMAT =
-        new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
+    /**
+     * SimpleDateFormat is not thread safe and the API is called from many
+     * threads at once, so each thread has its own.
+     */
+    private static final ThreadLocal<SimpleDateFormat> DATE_FORMAT =
+        ThreadLocal.withInitial(() -> new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss"));
 
     private final String mBaseUrl;
     private final String mMethod;
@@ -217,6 +223,20 @@ public class F1Access {
         return new AuthenticatedApi(user);
     }
 
+    /**
+     * @return date in the format used by the F1 API.
+     */
+    static String formatDate(Date date) {
+        return DATE_FORMAT.get().format(date);
+    }
+
+    /**
+     * @return the Date for a date in the format used by the F1 API.
+     */
+    static Date parseDate(String date) throws ParseException {
+        return DATE_FORMAT.get().parse(date);
+    }
+
     private class AuthenticatedApi implements F1API {
         private final OAuthUser mUser;
 
@@ -419,11 +439,11 @@ public class F1Access {
             attributeGroup.put("attribute", attributeIdMap);
 
             if (attribute.getStartDate() != null) {
-                attributeMap.put("startDate", DATE_FORMAT.format(attribute.getStartDate()));
+                attributeMap.put("startDate", formatDate(attribute.getStartDate()));
             }
 
             if (attribute.getStartDate() != null) {
-                attributeMap.put("endDate", DATE_FORMAT.format(attribute.getStartDate()));
+                attributeMap.put("endDate", formatDate(attribute.getStartDate()));
             }
 
             attributeMap.put("comment", attribute.getComment());
@@ -551,10 +571,10 @@ public class F1Access {
                         Attribute attribute = new Attribute(attributeName);
                         attribute.setId(id);
                         if (startDate != null) {
-                            attribute.setStartDate(DATE_FORMAT.parse(startDate));
+                            attribute.setStartDate(parseDate(startDate));
                         }
                         if (endDate != null) {
-                            attribute.setEndDate(DATE_FORMAT.parse(endDate));
+                            attribute.setEndDate(parseDate(endDate));
                         }
                         attribute.setComment(comment);
                         result.add(attribute);
@@ -0,0 +1,488 @@
+package com.p4square.grow.backend;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.apache.log4j.Logger;
+
+import com.p4square.grow.model.Answer;
+import com.p4square.grow.model.Question;
+import com.p4square.grow.model.RunningScore;
+
+/**
+ * AssessmentRescorer scores every stored assessment again.
+ *
+ * The questions are loaded into memory first by following the question graph
+ * from the first question. Questions which are answered but no longer in the
+ * graph are loaded the first time they are seen. The assessments are then
+ * streamed with GrowData.forEachAssessment(), which uses a parallel segmented
+ * scan where the store supports one, and each row is scored on a fork-join
+ * pool. Only a bounded number of rows are held in memory at once.
+ *
+ * Rows whose summary changed are written back through a RescoreWriter, which
+ * batches and rate limits the writes. If the writer fails, the scan stops
+ * and the rescore fails with it. A dry run scores every row but writes
+ * nothing, reporting how many users would change level.
+ *
+ * Only one rescore may run at a time.
+ */
+public class AssessmentRescorer {
+    private static final Logger LOG = Logger.getLogger(AssessmentRescorer.class);
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final String QUESTIONS_SUMMARY = "/questions";
+
+    /**
+     * The number of scanned rows waiting to be scored, per worker.
+     */
+    private static final int ROWS_PER_WORKER = 64;
+
+    private final GrowData mData;
+    private final MetricRegistry mMetricRegistry;
+    private final int mParallelism;
+    private final double mRowsPerSecond;
+    private final int mBatchSize;
+
+    private final Meter mScannedMeter;
+    private final Meter mChangedMeter;
+    private final Meter mLevelChangeMeter;
+    private final Timer mScoreTimer;
+
+    private final AtomicBoolean mRunning = new AtomicBoolean();
+    private volatile Result mResult;
+
+    /**
+     * @param data The GrowData holding the assessments and questions.
+     * @param metricRegistry The registry for throughput metrics.
+     * @param parallelism The number of rows scored concurrently.
+     * @param rowsPerSecond The maximum number of rows written per second.
+     * @param batchSize The number of rows written in each batch.
+     */
+    public AssessmentRescorer(final GrowData data, final MetricRegistry metricRegistry,
+            final int parallelism, final double rowsPerSecond, final int batchSize) {
+
+        if (data == null) {
+            throw new IllegalArgumentException("data must not be null.");
+        }
+
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive.");
+        }
+
+        if (rowsPerSecond <= 0) {
+            throw new IllegalArgumentException("rowsPerSecond must be positive.");
+        }
+
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be positive.");
+        }
+
+        mData = data;
+        mMetricRegistry = metricRegistry;
+        mParallelism = parallelism;
+        mRowsPerSecond = rowsPerSecond;
+        mBatchSize = batchSize;
+
+        mScannedMeter = metricRegistry.meter("AssessmentRescorer.scanned");
+        mChangedMeter = metricRegistry.meter("AssessmentRescorer.changed");
+        mLevelChangeMeter = metricRegistry.meter("AssessmentRescorer.levelChanges");
+        mScoreTimer = metricRegistry.timer("AssessmentRescorer.score");
+    }
+
+    /**
+     * Rescore every assessment and wait for it to finish.
+     *
+     * @param dryRun If true, score every assessment but write nothing.
+     * @return the Result of the rescore.
+     * @throws IllegalStateException if a rescore is already running.
+     * @throws IOException if the assessments cannot be read, or the rows
+     *         cannot be written.
+     */
+    public Result rescore(final boolean dryRun) throws IOException {
+        return run(begin(dryRun));
+    }
+
+    /**
+     * Rescore every assessment on a background thread.
+     *
+     * @param dryRun If true, score every assessment but write nothing.
+     * @return the Result, which is updated as the rescore progresses.
+     * @throws IllegalStateException if a rescore is already running.
+     */
+    public Result start(final boolean dryRun) {
+        final Result result = begin(dryRun);
+
+        final Thread thread = new Thread(() -> {
+            try {
+                run(result);
+                LOG.info("Rescore finished: " + result);
+
+            } catch (Exception e) {
+                LOG.error("Rescore failed: " + result, e);
+            }
+        }, "AssessmentRescorer");
+        thread.setDaemon(true);
+        thread.start();
+
+        return result;
+    }
+
+    /**
+     * @return true if a rescore is running.
+     */
+    public boolean isRunning() {
+        return mRunning.get();
+    }
+
+    /**
+     * @return the Result of the running or last rescore, or null if none has run.
+     */
+    public Result getResult() {
+        return mResult;
+    }
+
+    private Result begin(final boolean dryRun) {
+        if (!mRunning.compareAndSet(false, true)) {
+            throw new IllegalStateException("A rescore is already running.");
+        }
+
+        final Result result = new Result(dryRun);
+        mResult = result;
+        return result;
+    }
+
+    private Result run(final Result result) throws IOException {
+        final ForkJoinPool pool = new ForkJoinPool(mParallelism);
+        RescoreWriter writer = null;
+        IOException writeFailure = null;
+        try {
+            final Function<String, Question> questions = snapshotQuestions();
+            final Semaphore pending = new Semaphore(mParallelism * ROWS_PER_WORKER);
+
+            if (!result.isDryRun()) {
+                writer = new RescoreWriter(mData.getAnswerProvider(), mRowsPerSecond,
+                        mBatchSize, mMetricRegistry);
+            }
+            final RescoreWriter rowWriter = writer;
+
+            mData.forEachAssessment((userId, row) -> {
+                if (rowWriter != null) {
+                    // Stop scanning once nothing more can be written.
+                    rowWriter.checkRunning();
+                }
+
+                pending.acquireUninterruptibly();
+                result.mScanned.incrementAndGet();
+                mScannedMeter.mark();
+
+                pool.execute(() -> {
+                    try {
+                        rescoreRow(userId, row, questions, rowWriter, result);
+
+                    } catch (Exception e) {
+                        LOG.warn("Failed to rescore assessment for " + userId, e);
+                        result.mFailed.incrementAndGet();
+
+                    } finally {
+                        pending.release();
+                    }
+                });
+            });
+
+            pool.shutdown();
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while rescoring.", e);
+
+        } catch (RescoreWriter.StoppedException e) {
+            // The writer stopped the scan. Closing it reports why.
+
+        } finally {
+            pool.shutdownNow();
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (IOException e) {
+                    writeFailure = e;
+                }
+
+                result.mWritten.set(writer.getWritten());
+                result.mStale.set(writer.getStale());
+                result.mFailed.addAndGet(writer.getFailed());
+            }
+
+            result.finish();
+            mRunning.set(false);
+        }
+
+        if (writeFailure != null) {
+            throw writeFailure;
+        }
+
+        return result;
+    }
+
+    /**
+     * Score one user's answers and queue the row if it changed.
+     */
+    private void rescoreRow(final String userId, final Map<String, String> row,
+            final Function<String, Question> questions, final RescoreWriter writer,
+            final Result result) throws IOException, InterruptedException {
+
+        final RunningScore score;
+        try (Timer.Context timer = mScoreTimer.time()) {
+            score = Assessments.score(userId, row, questions);
+        }
+
+        if (score.getTotalAnswers() == 0) {
+            return;
+        }
+        result.mScored.incrementAndGet();
+
+        final String oldSummary = row.get(Assessments.SUMMARY);
+        final String summary = Assessments.summarize(score);
+
+        final String oldLevel = Assessments.getLevel(oldSummary);
+        final String newLevel = score.getScore().toString();
+        if (oldLevel != null && !oldLevel.equals(newLevel)) {
+            result.levelChanged(oldLevel, newLevel);
+            mLevelChangeMeter.mark();
+        }
+
+        final String oldScore = row.get(Assessments.RUNNING_SCORE);
+        if (summary.equals(oldSummary) && oldScore != null) {
+            return;
+        }
+        result.mChanged.incrementAndGet();
+        mChangedMeter.mark();
+
+        if (writer != null) {
+            Assessments.setNextRevision(score, oldScore);
+
+            Map<String, String> changes = new HashMap<>();
+            changes.put(Assessments.RUNNING_SCORE, MAPPER.writeValueAsString(score));
+            changes.put(Assessments.SUMMARY, summary);
+            writer.add(userId, oldScore, changes);
+        }
+    }
+
+    /**
+     * Load every question reachable from the first question.
+     *
+     * @return a lookup which serves questions from the snapshot and loads
+     *         any others the first time they are asked for.
+     */
+    private Function<String, Question> snapshotQuestions() throws IOException {
+        final ConcurrentMap<String, Optional<Question>> snapshot = new ConcurrentHashMap<>();
+
+        final String first = getFirstQuestionId();
+        if (first != null) {
+            final Queue<String> queue = new ArrayDeque<>();
+            queue.offer(first);
+
+            while (!queue.isEmpty()) {
+                final String id = queue.poll();
+                if (snapshot.containsKey(id)) {
+                    continue;
+                }
+
+                final Question question = mData.getQuestionProvider().get(id);
+                snapshot.put(id, Optional.ofNullable(question));
+                if (question == null) {
+                    continue;
+                }
+
+                // Compile now rather than racing to compile on the workers.
+                question.getCompiled();
+
+                if (question.getNextQuestion() != null) {
+                    queue.offer(question.getNextQuestion());
+                }
+
+                for (Answer answer : question.getAnswers().values()) {
+                    if (answer.getNextQuestion() != null) {
+                        queue.offer(answer.getNextQuestion());
+                    }
+                }
+            }
+        }
+
+        LOG.info("Loaded " + snapshot.size() + " questions for rescoring.");
+
+        return (id) -> snapshot.computeIfAbsent(id, (missing) -> {
+            try {
+                return Optional.ofNullable(mData.getQuestionProvider().get(missing));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }).orElse(null);
+    }
+
+    private String getFirstQuestionId() throws IOException {
+        final String json = mData.getStringProvider().get(QUESTIONS_SUMMARY);
+        if (json == null) {
+            return null;
+        }
+
+        return MAPPER.readTree(json).path("first").textValue();
+    }
+
+    /**
+     * The progress and outcome of a rescore.
+     */
+    public static class Result {
+        private final boolean mDryRun;
+        private final long mStartNanos = System.nanoTime();
+        private volatile long mEndNanos;
+        private volatile boolean mFinished;
+
+        private final AtomicLong mScanned = new AtomicLong();
+        private final AtomicLong mScored = new AtomicLong();
+        private final AtomicLong mChanged = new AtomicLong();
+        private final AtomicLong mLevelChanges = new AtomicLong();
+        private final AtomicLong mWritten = new AtomicLong();
+        private final AtomicLong mStale = new AtomicLong();
+        private final AtomicLong mFailed = new AtomicLong();
+        private final ConcurrentMap<String, AtomicLong> mTransitions = new ConcurrentHashMap<>();
+
+        Result(final boolean dryRun) {
+            mDryRun = dryRun;
+        }
+
+        /**
+         * @return true if nothing is written.
+         */
+        public boolean isDryRun() {
+            return mDryRun;
+        }
+
+        /**
+         * @return true until the rescore finishes.
+         */
+        public boolean isRunning() {
+            return !mFinished;
+        }
+
+        /**
+         * @return the number of assessment rows scanned.
+         */
+        public long getScanned() {
+            return mScanned.get();
+        }
+
+        /**
+         * @return the number of rows with at least one answer.
+         */
+        public long getScored() {
+            return mScored.get();
+        }
+
+        /**
+         * @return the number of rows whose summary changed.
+         */
+        public long getChanged() {
+            return mChanged.get();
+        }
+
+        /**
+         * @return the number of users whose level changed.
+         */
+        public long getLevelChanges() {
+            return mLevelChanges.get();
+        }
+
+        /**
+         * @return the number of users moving between each pair of levels, keyed old->new.
+         */
+        public Map<String, Long> getTransitions() {
+            Map<String, Long> transitions = new TreeMap<>();
+            for (Map.Entry<String, AtomicLong> entry : mTransitions.entrySet()) {
+                transitions.put(entry.getKey(), entry.getValue().get());
+            }
+            return Collections.unmodifiableMap(transitions);
+        }
+
+        /**
+         * @return the number of rows written.
+         */
+        public long getWritten() {
+            return mWritten.get();
+        }
+
+        /**
+         * @return the number of rows not written because the user answered during the rescore.
+         */
+        public long getStale() {
+            return mStale.get();
+        }
+
+        /**
+         * @return the number of rows which could not be scored or written.
+         */
+        public long getFailed() {
+            return mFailed.get();
+        }
+
+        /**
+         * @return the time spent so far.
+         */
+        public long getElapsedMillis() {
+            final long end = isRunning() ? System.nanoTime() : mEndNanos;
+            return TimeUnit.NANOSECONDS.toMillis(end - mStartNanos);
+        }
+
+        /**
+         * @return the average number of rows scanned per second.
+         */
+        public double getRowsPerSecond() {
+            final long elapsed = getElapsedMillis();
+            return (elapsed == 0) ? 0 : getScanned() * 1000.0 / elapsed;
+        }
+
+        void levelChanged(final String oldLevel, final String newLevel) {
+            mLevelChanges.incrementAndGet();
+            mTransitions.computeIfAbsent(oldLevel + "->" + newLevel, (k) -> new AtomicLong())
+                .incrementAndGet();
+        }
+
+        void finish() {
+            mEndNanos = System.nanoTime();
+            mFinished = true;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s%d scanned, %d scored, %d changed, %d level changes %s,"
+                    + " %d written, %d stale, %d failed in %d ms (%.1f rows/s)",
+                    mDryRun ? "(dry run) " : "", getScanned(), getScored(), getChanged(),
+                    getLevelChanges(), getTransitions(), getWritten(), getStale(), getFailed(),
+                    getElapsedMillis(), getRowsPerSecond());
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.p4square.grow.backend;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.apache.log4j.Logger;
+
+import com.p4square.grow.model.Question;
+import com.p4square.grow.model.RecordedAnswer;
+import com.p4square.grow.model.RunningScore;
+import com.p4square.grow.model.Score;
+
+/**
+ * Scores a user's answers row from the assessments table.
+ *
+ * The row holds one column per answered question, keyed by question id, and
+ * the reserved columns below.
+ */
+public final class Assessments {
+    private static final Logger LOG = Logger.getLogger(Assessments.class);
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /**
+     * The summary served for the assessment.
+     */
+    public static final String SUMMARY = "summary";
+
+    /**
+     * The id of the last question answered.
+     */
+    public static final String LAST_ANSWERED = "lastAnswered";
+
+    /**
+     * The RunningScore updated with each answer.
+     */
+    public static final String RUNNING_SCORE = "runningScore";
+
+    private static final List<String> RESERVED_COLUMNS =
+        Arrays.asList(SUMMARY, LAST_ANSWERED, RUNNING_SCORE);
+
+    private Assessments() {
+    }
+
+    /**
+     * @return true if the column in the answers row holds an answer.
+     */
+    public static boolean isAnswer(final String column) {
+        return !RESERVED_COLUMNS.contains(column);
+    }
+
+    /**
+     * Score every answer in a user's answers row.
+     *
+     * @param userId The user the row belongs to.
+     * @param row The user's answers row.
+     * @param questions Looks up a question by id, or returns null if it does not exist.
+     * @return the RunningScore for the row.
+     */
+    public static RunningScore score(final String userId, final Map<String, String> row,
+            final Function<String, Question> questions) {
+
+        RunningScore score = new RunningScore();
+        score.setLastAnswered(row.get(LAST_ANSWERED));
+        for (Map.Entry<String, String> entry : row.entrySet()) {
+            final String questionId = entry.getKey();
+            if (!isAnswer(questionId)) {
+                continue;
+            }
+
+            LOG.debug("Scoring questionId: " + questionId);
+            score.add(questionId, questions.apply(questionId),
+                    parseAnswer(userId, questionId, entry.getValue()));
+        }
+
+        return score;
+    }
+
+    /**
+     * @return the answer, or null if it cannot be read.
+     */
+    public static RecordedAnswer parseAnswer(final String userId, final String questionId,
+            final String value) {
+        try {
+            return MAPPER.readValue(value, RecordedAnswer.class);
+        } catch (Exception e) {
+            LOG.error("Failed to read answer: {userid: \"" + userId +
+                    "\", questionid:\"" + questionId +
+                    "\", userAnswer:\"" + value + "\"}", e);
+            return null;
+        }
+    }
+
+    /**
+     * Give score the revision after the one in a stored running score.
+     *
+     * @param score The score about to be written.
+     * @param oldScore The stored running score, or null if there is none.
+     */
+    public static void setNextRevision(final RunningScore score, final String oldScore) {
+        long revision = 0;
+        if (oldScore != null && oldScore.length() > 0) {
+            try {
+                revision = MAPPER.readValue(oldScore, RunningScore.class).getRevision();
+            } catch (IOException e) {
+                LOG.warn("Replacing unreadable running score: " + oldScore);
+            }
+        }
+
+        score.setRevision(revision + 1);
+    }
+
+    /**
+     * @return the summary served for a running score.
+     */
+    public static String summarize(final RunningScore runningScore) {
+        List<String> fields = new ArrayList<>();
+
+        // Last question answered
+        final String lastAnswered = runningScore.getLastAnswered();
+        if (lastAnswered != null && lastAnswered.length() > 0) {
+            fields.add("\"lastAnswered\": \"" + lastAnswered + "\"");
+        }
+
+        if (runningScore.getTotalAnswers() > 0) {
+            Score score = runningScore.getScore();
+            fields.add("\"score\":" + score.getScore());
+            fields.add("\"sum\":" + score.getSum());
+            fields.add("\"count\":" + score.getCount());
+            fields.add("\"totalAnswers\":" + runningScore.getTotalAnswers());
+            fields.add("\"result\":\"" + score.toString() + "\"");
+        }
+
+        return "{ " + String.join(", ", fields) + " }";
+    }
+
+    /**
+     * @return the result field of a summary, or null if there is none.
+     */
+    public static String getLevel(final String summary) {
+        if (summary == null || summary.length() == 0) {
+            return null;
+        }
+
+        try {
+            return MAPPER.readTree(summary).path("result").textValue();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.p4square.grow.backend;
+
+import java.util.concurrent.TimeUnit;
+
+import com.codahale.metrics.MetricRegistry;
+
+import com.p4square.grow.config.Config;
+import com.p4square.grow.provider.CachingCollectionProvider;
+import com.p4square.grow.provider.CachingProvider;
+import com.p4square.grow.provider.CollectionProvider;
+import com.p4square.grow.provider.Provider;
+
+/**
+ * CacheConfig wraps providers in caching decorators when they are enabled in the Config.
+ *
+ * Caching is enabled for a provider by setting NAMECacheTtl to a number of
+ * seconds greater than zero. NAMECacheSize (default 1000) bounds the number
+ * of entries and NAMECacheMisses (default false) enables negative caching.
+ */
+class CacheConfig {
+    private static final int DEFAULT_SIZE = 1000;
+
+    private final Config mConfig;
+    private final MetricRegistry mMetricRegistry;
+
+    public CacheConfig(final Config config, final MetricRegistry metricRegistry) {
+        mConfig = config;
+        mMetricRegistry = metricRegistry;
+    }
+
+    /**
+     * Wrap provider in a CachingProvider if the named cache is enabled.
+     *
+     * @param name The cache name, used for the config keys and metrics.
+     * @param provider The provider to wrap.
+     * @return a CachingProvider or the original provider.
+     */
+    public <K, V> Provider<K, V> wrap(final String name, final Provider<K, V> provider) {
+        final int ttl = mConfig.getInt(name + "CacheTtl", 0);
+        if (ttl <= 0) {
+            return provider;
+        }
+
+        return new CachingProvider<>(provider, metricName(name), ttl, TimeUnit.SECONDS,
+                mConfig.getInt(name + "CacheSize", DEFAULT_SIZE),
+                mConfig.getBoolean(name + "CacheMisses", false),
+                mMetricRegistry);
+    }
+
+    /**
+     * Wrap provider in a CachingCollectionProvider if the named cache is enabled.
+     *
+     * @param name The cache name, used for the config keys and metrics.
+     * @param provider The provider to wrap.
+     * @return a CachingCollectionProvider or the original provider.
+     */
+    public <C, K, V> CollectionProvider<C, K, V> wrap(final String name,
+            final CollectionProvider<C, K, V> provider) {
+
+        final int ttl = mConfig.getInt(name + "CacheTtl", 0);
+        if (ttl <= 0) {
+            return provider;
+        }
+
+        return new CachingCollectionProvider<>(provider, metricName(name), ttl, TimeUnit.SECONDS,
+                mConfig.getInt(name + "CacheSize", DEFAULT_SIZE),
+                mConfig.getBoolean(name + "CacheMisses", false),
+                mMetricRegistry);
+    }
+
+    private String metricName(final String name) {
+        return MetricRegistry.name("ProviderCache", name);
+    }
+}
@@ -5,6 +5,9 @@
 package com.p4square.grow.backend;
 
 import java.io.IOException;
+import java.util.function.Consumer;
+
+import com.codahale.metrics.MetricRegistry;
 
 import com.p4square.grow.config.Config;
 
@@ -33,6 +36,8 @@ import com.p4square.grow.provider.Provider;
 class CassandraGrowData implements GrowData {
     private static final String DEFAULT_COLUMN = "value";
 
+    private static final String[] USER_COLUMN_FAMILIES = { "accounts", "assessments", "training" };
+
     private final Config mConfig;
     private final CassandraDatabase mDatabase;
 
@@ -49,9 +54,12 @@ class CassandraGrowData implements GrowData {
 
     private final CollectionProvider<String, String, String> mAnswerProvider;
 
-    public CassandraGrowData(final Config config) {
+    public CassandraGrowData(final Config config, final MetricRegistry metricRegistry) {
         mConfig = config;
-        mDatabase = new CassandraDatabase();
+        mDatabase = new CassandraDatabase(config, metricRegistry);
+
+        final CacheConfig caches = new CacheConfig(config, metricRegistry);
+        final CodecConfig codecs = new CodecConfig(config, metricRegistry);
 
         mUserRecordProvider = new DelegateProvider<String, CassandraKey, UserRecord>(
                 new CassandraProviderImpl<UserRecord>(mDatabase, UserRecord.class)) {
@@ -61,22 +69,26 @@ class CassandraGrowData implements GrowData {
             }
         };
 
-        mQuestionProvider = new DelegateProvider<String, CassandraKey, Question>(
+        final Provider<String, Question> questionProvider =
+                new DelegateProvider<String, CassandraKey, Question>(
                 new CassandraProviderImpl<Question>(mDatabase, Question.class)) {
             @Override
             public CassandraKey makeKey(String questionId) {
                 return new CassandraKey("strings", "/questions/" + questionId, DEFAULT_COLUMN);
             }
         };
+        mQuestionProvider = caches.wrap("questions", questionProvider);
 
         mFeedThreadProvider = new CassandraCollectionProvider<MessageThread>(mDatabase,
                 "feedthreads", MessageThread.class);
         mFeedMessageProvider = new CassandraCollectionProvider<Message>(mDatabase,
                 "feedmessages", Message.class);
 
-        mTrainingRecordProvider = new CassandraTrainingRecordProvider(mDatabase);
+        mTrainingRecordProvider = new CassandraTrainingRecordProvider(mDatabase,
+                codecs.codec("trainingRecord", Playlist.class));
 
-        mVideoProvider = new DelegateCollectionProvider<String, String, String, String, String>(
+        final CollectionProvider<String, String, String> videoProvider =
+                new DelegateCollectionProvider<String, String, String, String, String>(
                 new CassandraCollectionProvider<String>(mDatabase, "strings", String.class)) {
             @Override
             public String makeCollectionKey(String key) {
@@ -93,14 +105,17 @@ class CassandraGrowData implements GrowData {
                 return key;
             }
         };
+        mVideoProvider = caches.wrap("videos", videoProvider);
 
-        mStringProvider = new DelegateProvider<String, CassandraKey, String>(
+        final Provider<String, String> stringProvider =
+                new DelegateProvider<String, CassandraKey, String>(
                 new CassandraProviderImpl<String>(mDatabase, String.class)) {
             @Override
             public CassandraKey makeKey(String id) {
                 return new CassandraKey("strings", id, DEFAULT_COLUMN);
             }
         };
+        mStringProvider = caches.wrap("strings", stringProvider);
 
         mAnswerProvider = new CassandraCollectionProvider<String>(
                 mDatabase, "assessments", String.class);
@@ -118,6 +133,13 @@ class CassandraGrowData implements GrowData {
         mDatabase.close();
     }
 
+    @Override
+    public void forEachUserId(final Consumer<String> consumer) throws IOException {
+        for (String cf : USER_COLUMN_FAMILIES) {
+            mDatabase.forEachRowKey(cf, consumer);
+        }
+    }
+
     /**
      * @return the current database.
      */
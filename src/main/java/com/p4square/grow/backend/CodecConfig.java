@@ -0,0 +1,45 @@
+package com.p4square.grow.backend;
+
+import com.codahale.metrics.MetricRegistry;
+
+import com.p4square.grow.config.Config;
+import com.p4square.grow.provider.Codec;
+import com.p4square.grow.provider.CompressingCodec;
+import com.p4square.grow.provider.JacksonCodec;
+
+/**
+ * CodecConfig creates the Codec for a provider from the Config.
+ *
+ * NAMEFormat selects the encoding, json (default) or smile. Compression is
+ * enabled by setting NAMECompressThreshold to a size in bytes greater than
+ * zero; values at least that large are compressed.
+ */
+class CodecConfig {
+    private final Config mConfig;
+    private final MetricRegistry mMetricRegistry;
+
+    public CodecConfig(final Config config, final MetricRegistry metricRegistry) {
+        mConfig = config;
+        mMetricRegistry = metricRegistry;
+    }
+
+    /**
+     * Create the configured Codec for a value type.
+     *
+     * @param name The provider name, used for the config keys and metrics.
+     * @param clazz The value class.
+     * @return a Codec for clazz.
+     */
+    public <V> Codec<V> codec(final String name, final Class<V> clazz) {
+        final Codec<V> codec = JacksonCodec.forName(clazz,
+                mConfig.getString(name + "Format", "json"));
+
+        final int threshold = mConfig.getInt(name + "CompressThreshold", 0);
+        if (threshold <= 0) {
+            return codec;
+        }
+
+        return new CompressingCodec<>(codec, threshold,
+                MetricRegistry.name("ProviderCodec", name), mMetricRegistry);
+    }
+}
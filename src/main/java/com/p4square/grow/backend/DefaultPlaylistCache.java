@@ -0,0 +1,116 @@
+package com.p4square.grow.backend;
+
+import java.io.IOException;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import org.apache.log4j.Logger;
+
+import com.p4square.grow.model.Playlist;
+import com.p4square.grow.provider.ProvidesTrainingRecords;
+
+/**
+ * DefaultPlaylistCache keeps the parsed default playlist for the application.
+ *
+ * The playlist is loaded again once the time to live has passed. If the
+ * reloaded playlist has the same lastUpdated date, the cached instance is
+ * kept, so callers see one instance per version. If the reload fails, the
+ * cached playlist is served until the next attempt.
+ *
+ * The playlist is shared by every caller and must not be modified. Clone it
+ * to get a playlist which can be.
+ */
+class DefaultPlaylistCache {
+    private static final Logger LOG = Logger.getLogger(DefaultPlaylistCache.class);
+
+    private final ProvidesTrainingRecords mSource;
+    private final long mTtlNanos;
+    private final LongSupplier mClock;
+
+    private volatile Entry mEntry;
+
+    /**
+     * @param source Loads the default playlist.
+     * @param ttl How long a loaded playlist is used before checking for a new version.
+     * @param unit The unit of ttl.
+     */
+    DefaultPlaylistCache(final ProvidesTrainingRecords source, final long ttl,
+            final TimeUnit unit) {
+        this(source, ttl, unit, System::nanoTime);
+    }
+
+    DefaultPlaylistCache(final ProvidesTrainingRecords source, final long ttl,
+            final TimeUnit unit, final LongSupplier clock) {
+
+        if (source == null) {
+            throw new IllegalArgumentException("source must not be null.");
+        }
+
+        mSource = source;
+        mTtlNanos = unit.toNanos(ttl);
+        mClock = clock;
+    }
+
+    /**
+     * @return the default playlist, or null if there is none.
+     * @throws IOException if the playlist has never been loaded and cannot be.
+     */
+    Playlist get() throws IOException {
+        final Entry entry = mEntry;
+        if (entry != null && mClock.getAsLong() - entry.mLoaded < mTtlNanos) {
+            return entry.mPlaylist;
+        }
+
+        return refresh();
+    }
+
+    /**
+     * Load the playlist again on the next call to get().
+     */
+    void invalidate() {
+        mEntry = null;
+    }
+
+    private synchronized Playlist refresh() throws IOException {
+        final long now = mClock.getAsLong();
+
+        // Another thread may have refreshed while this one waited.
+        Entry entry = mEntry;
+        if (entry != null && now - entry.mLoaded < mTtlNanos) {
+            return entry.mPlaylist;
+        }
+
+        Playlist playlist;
+        try {
+            playlist = mSource.getDefaultPlaylist();
+
+        } catch (IOException e) {
+            if (entry == null) {
+                throw e;
+            }
+
+            LOG.warn("Failed to reload the default playlist. Serving the cached version.", e);
+            playlist = entry.mPlaylist;
+        }
+
+        if (entry != null && playlist != null && entry.mPlaylist != null
+                && Objects.equals(playlist.getLastUpdated(), entry.mPlaylist.getLastUpdated())) {
+            // Same version. Keep the instance callers already have.
+            playlist = entry.mPlaylist;
+        }
+
+        mEntry = new Entry(playlist, now);
+        return playlist;
+    }
+
+    private static class Entry {
+        private final Playlist mPlaylist;
+        private final long mLoaded;
+
+        Entry(final Playlist playlist, final long loaded) {
+            mPlaylist = playlist;
+            mLoaded = loaded;
+        }
+    }
+}
@@ -5,10 +5,17 @@
 package com.p4square.grow.backend;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import com.codahale.metrics.MetricRegistry;
 
 import com.amazonaws.auth.AWSCredentials;
 
 import com.p4square.grow.backend.dynamo.DynamoDatabase;
+import com.p4square.grow.backend.dynamo.DynamoDatabases;
 import com.p4square.grow.backend.dynamo.DynamoKey;
 import com.p4square.grow.backend.dynamo.DynamoProviderImpl;
 import com.p4square.grow.backend.dynamo.DynamoCollectionProviderImpl;
@@ -36,6 +43,9 @@ class DynamoGrowData implements GrowData {
     private static final String DEFAULT_COLUMN = "value";
     private static final String DEFAULT_PLAYLIST_KEY = "/training/defaultplaylist";
 
+    private static final String[] USER_TABLES = { "accounts", "assessments", "training" };
+    private static final int SCAN_SEGMENTS = 4;
+
     private final Config mConfig;
     private final DynamoDatabase mDatabase;
 
@@ -50,23 +60,33 @@ class DynamoGrowData implements GrowData {
 
     private final Provider<String, String> mStringProvider;
 
+    private final DynamoCollectionProviderImpl<String> mAssessments;
     private final CollectionProvider<String, String, String> mAnswerProvider;
 
-    public DynamoGrowData(final Config config) {
+    public DynamoGrowData(final Config config, final MetricRegistry metricRegistry) {
         mConfig = config;
 
-        mDatabase = new DynamoDatabase(config);
+        mDatabase = DynamoDatabases.create(config, metricRegistry);
+
+        final CacheConfig caches = new CacheConfig(config, metricRegistry);
+        final CodecConfig codecs = new CodecConfig(config, metricRegistry);
+        final MonitorConfig monitors = new MonitorConfig(config, metricRegistry,
+                "DynamoProvider");
 
         mUserRecordProvider = new DelegateProvider<String, DynamoKey, UserRecord>(
-                new DynamoProviderImpl<UserRecord>(mDatabase, UserRecord.class)) {
+                monitors.wrap("accounts", new DynamoProviderImpl<UserRecord>(mDatabase,
+                    monitors.wrap("accounts", codecs.codec("accounts", UserRecord.class))))) {
             @Override
             public DynamoKey makeKey(String userid) {
                 return DynamoKey.newAttributeKey("accounts", userid, DEFAULT_COLUMN);
             }
         };
 
-        mQuestionProvider = new DelegateProvider<String, DynamoKey, Question>(
-                new DynamoProviderImpl<Question>(mDatabase, Question.class)) {
+        final Provider<String, Question> questionProvider =
+                new DelegateProvider<String, DynamoKey, Question>(
+                monitors.wrap("strings.questions", new DynamoProviderImpl<Question>(mDatabase,
+                    monitors.wrap("strings.questions",
+                        codecs.codec("questions", Question.class))))) {
             @Override
             public DynamoKey makeKey(String questionId) {
                 return DynamoKey.newAttributeKey("strings",
@@ -74,14 +94,21 @@ class DynamoGrowData implements GrowData {
                                                  DEFAULT_COLUMN);
             }
         };
+        mQuestionProvider = caches.wrap("questions", questionProvider);
 
-        mFeedThreadProvider = new DynamoCollectionProviderImpl<MessageThread>(
-                mDatabase, "feedthreads", MessageThread.class);
-        mFeedMessageProvider = new DynamoCollectionProviderImpl<Message>(
-                mDatabase, "feedmessages", Message.class);
+        mFeedThreadProvider = monitors.wrap("feedthreads",
+                new DynamoCollectionProviderImpl<MessageThread>(mDatabase, "feedthreads",
+                    monitors.wrap("feedthreads", codecs.codec("feedthreads",
+                            MessageThread.class))));
+        mFeedMessageProvider = monitors.wrap("feedmessages",
+                new DynamoCollectionProviderImpl<Message>(mDatabase, "feedmessages",
+                    monitors.wrap("feedmessages", codecs.codec("feedmessages",
+                            Message.class))));
 
         mTrainingRecordProvider = new DelegateProvider<String, DynamoKey, TrainingRecord>(
-                new DynamoProviderImpl<TrainingRecord>(mDatabase, TrainingRecord.class)) {
+                monitors.wrap("training", new DynamoProviderImpl<TrainingRecord>(mDatabase,
+                    monitors.wrap("training",
+                        codecs.codec("trainingRecord", TrainingRecord.class))))) {
             @Override
             public DynamoKey makeKey(String userId) {
                 return DynamoKey.newAttributeKey("training",
@@ -90,8 +117,11 @@ class DynamoGrowData implements GrowData {
             }
         };
 
-        mVideoProvider = new DelegateCollectionProvider<String, String, String, String, String>(
-                new DynamoCollectionProviderImpl<String>(mDatabase, "strings", String.class)) {
+        final CollectionProvider<String, String, String> videoProvider =
+                new DelegateCollectionProvider<String, String, String, String, String>(
+                monitors.wrap("strings.videos",
+                    new DynamoCollectionProviderImpl<String>(mDatabase, "strings",
+                        String.class))) {
             @Override
             public String makeCollectionKey(String key) {
                 return "/training/" + key;
@@ -107,17 +137,22 @@ class DynamoGrowData implements GrowData {
                 return key;
             }
         };
+        mVideoProvider = caches.wrap("videos", videoProvider);
 
-        mStringProvider = new DelegateProvider<String, DynamoKey, String>(
-                new DynamoProviderImpl<String>(mDatabase, String.class)) {
+        final Provider<String, String> stringProvider =
+                new DelegateProvider<String, DynamoKey, String>(
+                monitors.wrap("strings",
+                    new DynamoProviderImpl<String>(mDatabase, String.class))) {
             @Override
             public DynamoKey makeKey(String id) {
                 return DynamoKey.newAttributeKey("strings", id, DEFAULT_COLUMN);
             }
         };
+        mStringProvider = caches.wrap("strings", stringProvider);
 
-        mAnswerProvider = new DynamoCollectionProviderImpl<String>(
-                mDatabase, "assessments", String.class);
+        mAssessments = new DynamoCollectionProviderImpl<String>(mDatabase, "assessments",
+                String.class);
+        mAnswerProvider = monitors.wrap("assessments", mAssessments);
     }
 
     @Override
@@ -126,6 +161,32 @@ class DynamoGrowData implements GrowData {
 
     @Override
     public void stop() throws Exception {
+        mDatabase.close();
+    }
+
+    @Override
+    public void forEachUserId(final Consumer<String> consumer) throws IOException {
+        final DynamoDatabase db = mDatabase.withPriority(DynamoDatabase.Priority.BATCH);
+        for (String table : USER_TABLES) {
+            // Training records may be binary, and only the key is needed.
+            db.scanItems(table, SCAN_SEGMENTS, (item) -> {
+                consumer.accept(item.get("id").getS());
+            });
+        }
+    }
+
+    /**
+     * Scan the assessments table directly rather than querying each user.
+     */
+    @Override
+    public void forEachAssessment(final BiConsumer<String, Map<String, String>> consumer)
+            throws IOException {
+
+        try {
+            mAssessments.scanCollections(SCAN_SEGMENTS, consumer);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
     }
 
     @Override
@@ -5,6 +5,10 @@
 package com.p4square.grow.backend;
 
 import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 import com.codahale.metrics.MetricRegistry;
 
@@ -31,6 +35,7 @@ import com.p4square.grow.model.UserRecord;
 import com.p4square.grow.backend.resources.AccountResource;
 import com.p4square.grow.backend.resources.BannerResource;
 import com.p4square.grow.backend.resources.HealthCheckResource;
+import com.p4square.grow.backend.resources.RescoreResource;
 import com.p4square.grow.backend.resources.SurveyResource;
 import com.p4square.grow.backend.resources.SurveyResultsResource;
 import com.p4square.grow.backend.resources.TrainingRecordResource;
@@ -54,7 +59,9 @@ public class GrowBackend extends Application implements GrowData, ProvidesNotifi
 
     private final Config mConfig;
     private final GrowData mGrowData;
+    private final DefaultPlaylistCache mDefaultPlaylist;
     private final NotificationService mNotificationService;
+    private final AssessmentRescorer mRescorer;
 
     public GrowBackend() {
         this(new Config(), new MetricRegistry());
@@ -65,9 +72,16 @@ public class GrowBackend extends Application implements GrowData, ProvidesNotifi
 
         mMetricRegistry = metricRegistry;
 
-        mGrowData = new DynamoGrowData(config);
+        mGrowData = GrowDatas.create(config, metricRegistry);
+        mDefaultPlaylist = new DefaultPlaylistCache(mGrowData,
+                config.getInt("defaultPlaylistCacheTtl", 60), TimeUnit.SECONDS);
 
         mNotificationService = new SESNotificationService(config);
+
+        mRescorer = new AssessmentRescorer(mGrowData, metricRegistry,
+                config.getInt("rescoreParallelism", Runtime.getRuntime().availableProcessors()),
+                Double.parseDouble(config.getString("rescoreRowsPerSecond", "10")),
+                config.getInt("rescoreBatchSize", 25));
     }
 
     public MetricRegistry getMetrics() {
@@ -100,6 +114,9 @@ public class GrowBackend extends Application implements GrowData, ProvidesNotifi
         router.attach("/banner", BannerResource.class);
         router.attach("/ping", HealthCheckResource.class);
 
+        // Admin
+        router.attach("/admin/rescore", RescoreResource.class);
+
         // Feed
         router.attach("/feed/{topic}", TopicResource.class);
         router.attach("/feed/{topic}/{thread}", ThreadResource.class);
@@ -152,10 +169,10 @@ public class GrowBackend extends Application implements GrowData, ProvidesNotifi
     }
 
     /**
-     * @return the Default Playlist.
+     * @return the Default Playlist, which is shared and must not be modified.
      */
     public Playlist getDefaultPlaylist() throws IOException {
-        return mGrowData.getDefaultPlaylist();
+        return mDefaultPlaylist.get();
     }
 
     @Override
@@ -178,6 +195,24 @@ public class GrowBackend extends Application implements GrowData, ProvidesNotifi
         return mGrowData.getAnswerProvider();
     }
 
+    @Override
+    public void forEachUserId(Consumer<String> consumer) throws IOException {
+        mGrowData.forEachUserId(consumer);
+    }
+
+    @Override
+    public void forEachAssessment(BiConsumer<String, Map<String, String>> consumer)
+            throws IOException {
+        mGrowData.forEachAssessment(consumer);
+    }
+
+    /**
+     * @return the AssessmentRescorer used by the admin API.
+     */
+    public AssessmentRescorer getAssessmentRescorer() {
+        return mRescorer;
+    }
+
     @Override
     public NotificationService getNotificationService() { return mNotificationService; }
 
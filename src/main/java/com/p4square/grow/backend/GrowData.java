@@ -4,8 +4,17 @@
 
 package com.p4square.grow.backend;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
 import com.p4square.grow.backend.feed.FeedDataProvider;
 import com.p4square.grow.model.Playlist;
+import com.p4square.grow.provider.CollectionProvider;
 import com.p4square.grow.provider.ProvidesAssessments;
 import com.p4square.grow.provider.ProvidesQuestions;
 import com.p4square.grow.provider.ProvidesStrings;
@@ -16,11 +25,12 @@ import com.p4square.grow.provider.ProvidesVideos;
 /**
  * Aggregate of the data provider interfaces.
  *
- * Used by GrowBackend to swap out implementations of the providers.
+ * Used by GrowBackend to swap out implementations of the providers. Use
+ * GrowDatas.create() to get the configured implementation.
  *
  * @author Jesse Morgan <jesse@jesterpm.net>
  */
-interface GrowData extends ProvidesQuestions, ProvidesTrainingRecords, ProvidesVideos,
+public interface GrowData extends ProvidesQuestions, ProvidesTrainingRecords, ProvidesVideos,
                                    FeedDataProvider, ProvidesUserRecords, ProvidesStrings,
                                    ProvidesAssessments {
 
@@ -33,4 +43,54 @@ interface GrowData extends ProvidesQuestions, ProvidesTrainingRecords, ProvidesV
      * Stop the data provider.
      */
     void stop() throws Exception;
+
+    /**
+     * Enumerate the users with an account, assessment or training record.
+     *
+     * An id may be passed more than once and the consumer may be called
+     * concurrently from several threads.
+     *
+     * @param consumer Receives each user id.
+     * @throws IOException if the ids cannot be read.
+     */
+    void forEachUserId(Consumer<String> consumer) throws IOException;
+
+    /**
+     * Enumerate every user's assessment answers.
+     *
+     * The consumer receives each user id with the user's complete answers
+     * row, including the summary columns. Users without answers may be
+     * skipped. As with forEachUserId(), the consumer may be called
+     * concurrently from several threads.
+     *
+     * The default implementation queries the answers of each user id.
+     *
+     * @param consumer Receives each user id and answers row.
+     * @throws IOException if the answers cannot be read.
+     */
+    default void forEachAssessment(final BiConsumer<String, Map<String, String>> consumer)
+            throws IOException {
+
+        final CollectionProvider<String, String, String> answers = getAnswerProvider();
+        final Set<String> seen = ConcurrentHashMap.newKeySet();
+        try {
+            forEachUserId(userId -> {
+                if (!seen.add(userId)) {
+                    return;
+                }
+
+                try {
+                    final Map<String, String> row = answers.query(userId);
+                    if (row != null && row.size() > 0) {
+                        consumer.accept(userId, row);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
 }
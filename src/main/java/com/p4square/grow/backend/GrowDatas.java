@@ -0,0 +1,54 @@
+package com.p4square.grow.backend;
+
+import com.codahale.metrics.MetricRegistry;
+
+import com.p4square.grow.config.Config;
+
+/**
+ * Creates the configured GrowData.
+ *
+ * The growData setting selects the store: dynamo (the default), cassandra
+ * or local. shadow serves one store while mirroring traffic to another; see
+ * ShadowGrowData.
+ */
+public final class GrowDatas {
+    private GrowDatas() {
+    }
+
+    public static GrowData create(final Config config) {
+        return create(config, new MetricRegistry());
+    }
+
+    public static GrowData create(final Config config, final MetricRegistry metricRegistry) {
+        return create(config.getString("growData", "dynamo"), config, metricRegistry);
+    }
+
+    /**
+     * Create a GrowData of the given type.
+     *
+     * @param type dynamo, cassandra, local or shadow.
+     * @param config The configuration for the store.
+     * @param metricRegistry The registry for the store's metrics.
+     * @return The GrowData. It must be started before use.
+     */
+    public static GrowData create(final String type, final Config config,
+            final MetricRegistry metricRegistry) {
+
+        switch (type) {
+            case "dynamo":
+                return new DynamoGrowData(config, metricRegistry);
+
+            case "cassandra":
+                return new CassandraGrowData(config, metricRegistry);
+
+            case "local":
+                return new LocalGrowData(config, metricRegistry);
+
+            case "shadow":
+                return new ShadowGrowData(config, metricRegistry);
+
+            default:
+                throw new IllegalArgumentException("Unknown growData: " + type);
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.p4square.grow.backend;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.function.Consumer;
+
+import com.codahale.metrics.MetricRegistry;
+
+import com.p4square.grow.backend.local.LocalCollectionProvider;
+import com.p4square.grow.backend.local.LocalDatabase;
+import com.p4square.grow.backend.local.LocalProviderImpl;
+import com.p4square.grow.config.Config;
+import com.p4square.grow.model.Message;
+import com.p4square.grow.model.MessageThread;
+import com.p4square.grow.model.Playlist;
+import com.p4square.grow.model.Question;
+import com.p4square.grow.model.TrainingRecord;
+import com.p4square.grow.model.UserRecord;
+import com.p4square.grow.provider.CollectionProvider;
+import com.p4square.grow.provider.DelegateCollectionProvider;
+import com.p4square.grow.provider.DelegateProvider;
+import com.p4square.grow.provider.JsonEncodedProvider;
+import com.p4square.grow.provider.Provider;
+
+/**
+ * GrowData backed by a LocalDatabase on the local disk.
+ *
+ * Useful for single-node deployments and load tests. The data is kept in
+ * localDataDirectory (default ./grow-data). localSyncMillis (default 100)
+ * bounds the writes which may be lost in a crash and
+ * localMinCompactionBytes (default 64 MB) is the smallest log which will be
+ * compacted. Tables and keys match DynamoGrowData.
+ */
+class LocalGrowData implements GrowData {
+    private static final String DEFAULT_PLAYLIST_KEY = "/training/defaultplaylist";
+
+    private static final String[] USER_TABLES = { "accounts", "assessments", "training" };
+
+    private final LocalDatabase mDatabase;
+
+    private final Provider<String, UserRecord> mUserRecordProvider;
+
+    private final Provider<String, Question> mQuestionProvider;
+    private final Provider<String, TrainingRecord> mTrainingRecordProvider;
+    private final CollectionProvider<String, String, String> mVideoProvider;
+
+    private final CollectionProvider<String, String, MessageThread> mFeedThreadProvider;
+    private final CollectionProvider<String, String, Message> mFeedMessageProvider;
+
+    private final Provider<String, String> mStringProvider;
+
+    private final CollectionProvider<String, String, String> mAnswerProvider;
+
+    public LocalGrowData(final Config config, final MetricRegistry metricRegistry) {
+        mDatabase = new LocalDatabase(
+                new File(config.getString("localDataDirectory", "grow-data")),
+                config.getInt("localSyncMillis", 100),
+                config.getInt("localMinCompactionBytes", 64 * 1024 * 1024));
+
+        final CacheConfig caches = new CacheConfig(config, metricRegistry);
+        final CodecConfig codecs = new CodecConfig(config, metricRegistry);
+
+        mUserRecordProvider = new LocalProviderImpl<UserRecord>(mDatabase, "accounts",
+                UserRecord.class);
+
+        final Provider<String, Question> questionProvider =
+                new DelegateProvider<String, String, Question>(
+                new LocalProviderImpl<Question>(mDatabase, "strings", Question.class)) {
+            @Override
+            public String makeKey(String questionId) {
+                return "/questions/" + questionId;
+            }
+        };
+        mQuestionProvider = caches.wrap("questions", questionProvider);
+
+        mFeedThreadProvider = new LocalCollectionProvider<MessageThread>(mDatabase,
+                "feedthreads", MessageThread.class);
+        mFeedMessageProvider = new LocalCollectionProvider<Message>(mDatabase,
+                "feedmessages", Message.class);
+
+        mTrainingRecordProvider = new LocalProviderImpl<TrainingRecord>(mDatabase, "training",
+                codecs.codec("trainingRecord", TrainingRecord.class));
+
+        final CollectionProvider<String, String, String> videoProvider =
+                new DelegateCollectionProvider<String, String, String, String, String>(
+                new LocalCollectionProvider<String>(mDatabase, "strings", String.class)) {
+            @Override
+            public String makeCollectionKey(String key) {
+                return "/training/" + key;
+            }
+
+            @Override
+            public String makeKey(String key) {
+                return key;
+            }
+
+            @Override
+            public String unmakeKey(String key) {
+                return key;
+            }
+        };
+        mVideoProvider = caches.wrap("videos", videoProvider);
+
+        mStringProvider = caches.wrap("strings",
+                new LocalProviderImpl<String>(mDatabase, "strings", String.class));
+
+        mAnswerProvider = new LocalCollectionProvider<String>(mDatabase, "assessments",
+                String.class);
+    }
+
+    @Override
+    public void start() throws Exception {
+        mDatabase.open();
+    }
+
+    @Override
+    public void stop() throws Exception {
+        mDatabase.close();
+    }
+
+    /**
+     * @return the database holding the data.
+     */
+    LocalDatabase getDatabase() {
+        return mDatabase;
+    }
+
+    @Override
+    public void forEachUserId(final Consumer<String> consumer) throws IOException {
+        for (String table : USER_TABLES) {
+            mDatabase.getRowIds(table).forEach(consumer);
+        }
+    }
+
+    @Override
+    public Provider<String, UserRecord> getUserRecordProvider() {
+        return mUserRecordProvider;
+    }
+
+    @Override
+    public Provider<String, Question> getQuestionProvider() {
+        return mQuestionProvider;
+    }
+
+    @Override
+    public Provider<String, TrainingRecord> getTrainingRecordProvider() {
+        return mTrainingRecordProvider;
+    }
+
+    @Override
+    public CollectionProvider<String, String, String> getVideoProvider() {
+        return mVideoProvider;
+    }
+
+    @Override
+    public Playlist getDefaultPlaylist() throws IOException {
+        String blob = mStringProvider.get(DEFAULT_PLAYLIST_KEY);
+        if (blob == null) {
+            return null;
+        }
+
+        return JsonEncodedProvider.MAPPER.readValue(blob, Playlist.class);
+    }
+
+    @Override
+    public CollectionProvider<String, String, MessageThread> getThreadProvider() {
+        return mFeedThreadProvider;
+    }
+
+    @Override
+    public CollectionProvider<String, String, Message> getMessageProvider() {
+        return mFeedMessageProvider;
+    }
+
+    @Override
+    public Provider<String, String> getStringProvider() {
+        return mStringProvider;
+    }
+
+    @Override
+    public CollectionProvider<String, String, String> getAnswerProvider() {
+        return mAnswerProvider;
+    }
+}
@@ -0,0 +1,74 @@
+package com.p4square.grow.backend;
+
+import com.codahale.metrics.MetricRegistry;
+
+import com.p4square.grow.config.Config;
+import com.p4square.grow.provider.Codec;
+import com.p4square.grow.provider.CollectionProvider;
+import com.p4square.grow.provider.MonitoredCodec;
+import com.p4square.grow.provider.MonitoredCollectionProvider;
+import com.p4square.grow.provider.MonitoredProvider;
+import com.p4square.grow.provider.Provider;
+
+/**
+ * MonitorConfig wraps providers and codecs in the monitoring decorators.
+ *
+ * Metrics are named PREFIX.NAME. Provider calls slower than
+ * slowProviderCallMillis (default 250, 0 disables) are logged.
+ */
+class MonitorConfig {
+    private static final int DEFAULT_SLOW_CALL_MILLIS = 250;
+
+    private final MetricRegistry mMetricRegistry;
+    private final String mPrefix;
+    private final int mSlowCallMillis;
+
+    public MonitorConfig(final Config config, final MetricRegistry metricRegistry,
+            final String prefix) {
+
+        mMetricRegistry = metricRegistry;
+        mPrefix = prefix;
+        mSlowCallMillis = config.getInt("slowProviderCallMillis", DEFAULT_SLOW_CALL_MILLIS);
+    }
+
+    /**
+     * Wrap provider in a MonitoredProvider.
+     *
+     * @param name The metric name, usually the table.
+     * @param provider The provider to wrap.
+     * @return a MonitoredProvider.
+     */
+    public <K, V> Provider<K, V> wrap(final String name, final Provider<K, V> provider) {
+        return new MonitoredProvider<>(provider, metricName(name), mSlowCallMillis,
+                mMetricRegistry);
+    }
+
+    /**
+     * Wrap provider in a MonitoredCollectionProvider.
+     *
+     * @param name The metric name, usually the table.
+     * @param provider The provider to wrap.
+     * @return a MonitoredCollectionProvider.
+     */
+    public <C, K, V> CollectionProvider<C, K, V> wrap(final String name,
+            final CollectionProvider<C, K, V> provider) {
+
+        return new MonitoredCollectionProvider<>(provider, metricName(name), mSlowCallMillis,
+                mMetricRegistry);
+    }
+
+    /**
+     * Wrap codec in a MonitoredCodec to record payload sizes.
+     *
+     * @param name The metric name, usually the table.
+     * @param codec The codec to wrap.
+     * @return a MonitoredCodec.
+     */
+    public <V> Codec<V> wrap(final String name, final Codec<V> codec) {
+        return new MonitoredCodec<>(codec, metricName(name), mMetricRegistry);
+    }
+
+    private String metricName(final String name) {
+        return MetricRegistry.name(mPrefix, name);
+    }
+}
@@ -0,0 +1,232 @@
+package com.p4square.grow.backend;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+
+import org.apache.log4j.Logger;
+
+import com.p4square.grow.provider.CollectionProvider;
+
+/**
+ * RescoreWriter writes rescored assessments from a background thread.
+ *
+ * Rows are queued by add() and written in batches. Batches are paced so that
+ * no more than the configured number of rows are written each second, which
+ * leaves capacity for request traffic. add() blocks when the queue is full,
+ * and fails rather than waiting forever if the writer thread has died.
+ *
+ * Each row is written with putAllIf(), a partial update conditional on the
+ * running score seen by the scan, so answers recorded while the job runs are
+ * never lost. If the score changed since the scan, the user has answered a
+ * question and their score is already current, so the row is skipped.
+ */
+class RescoreWriter implements AutoCloseable {
+    private static final Logger LOG = Logger.getLogger(RescoreWriter.class);
+
+    private static final long POLL_MILLIS = 100;
+
+    private final CollectionProvider<String, String, String> mAnswerProvider;
+    private final double mRowsPerSecond;
+    private final int mBatchSize;
+    private final BlockingQueue<Update> mQueue;
+    private final Thread mThread;
+
+    private final AtomicLong mWritten = new AtomicLong();
+    private final AtomicLong mStale = new AtomicLong();
+    private final AtomicLong mFailed = new AtomicLong();
+    private final Meter mWrittenMeter;
+
+    private volatile boolean mClosed;
+    private volatile Throwable mFailure;
+
+    /**
+     * @param answerProvider The provider to write to.
+     * @param rowsPerSecond The maximum number of rows written per second.
+     * @param batchSize The number of rows written in each batch.
+     * @param metricRegistry The registry for the write rate.
+     */
+    RescoreWriter(final CollectionProvider<String, String, String> answerProvider,
+            final double rowsPerSecond, final int batchSize,
+            final MetricRegistry metricRegistry) {
+
+        if (rowsPerSecond <= 0) {
+            throw new IllegalArgumentException("rowsPerSecond must be positive.");
+        }
+
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be positive.");
+        }
+
+        mAnswerProvider = answerProvider;
+        mRowsPerSecond = rowsPerSecond;
+        mBatchSize = batchSize;
+        mQueue = new ArrayBlockingQueue<>(batchSize * 4);
+        mWrittenMeter = metricRegistry.meter("AssessmentRescorer.written");
+
+        mThread = new Thread(this::run, "RescoreWriter");
+        mThread.setDaemon(true);
+        mThread.start();
+    }
+
+    /**
+     * Queue a row to be written.
+     *
+     * @param userId The user whose row is updated.
+     * @param expectedScore The running score seen by the scan, or null if there was none.
+     * @param changes The columns to write.
+     * @throws IllegalStateException if the writer is closed or has stopped.
+     * @throws InterruptedException if interrupted while waiting for space.
+     */
+    void add(final String userId, final String expectedScore, final Map<String, String> changes)
+            throws InterruptedException {
+
+        if (mClosed) {
+            throw new IllegalStateException("RescoreWriter is closed.");
+        }
+
+        final Update update = new Update(userId, expectedScore, changes);
+        checkRunning();
+        while (!mQueue.offer(update, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+            // Nothing will make space if the writer thread has died.
+            checkRunning();
+        }
+    }
+
+    /**
+     * @throws StoppedException if the writer thread has stopped.
+     */
+    void checkRunning() {
+        final Throwable failure = mFailure;
+        if (failure != null) {
+            throw new StoppedException("RescoreWriter failed.", failure);
+        }
+
+        if (!mThread.isAlive()) {
+            throw new StoppedException("RescoreWriter has stopped.", null);
+        }
+    }
+
+    /**
+     * Write the remaining rows and stop the writer thread.
+     *
+     * @throws IOException if the writer thread failed. Rows still queued are
+     *         counted as failed.
+     */
+    @Override
+    public void close() throws InterruptedException, IOException {
+        mClosed = true;
+        mThread.join();
+
+        final Throwable failure = mFailure;
+        if (failure != null) {
+            mFailed.addAndGet(mQueue.size());
+            mQueue.clear();
+            throw new IOException("RescoreWriter failed.", failure);
+        }
+    }
+
+    /**
+     * @return the number of rows written.
+     */
+    long getWritten() {
+        return mWritten.get();
+    }
+
+    /**
+     * @return the number of rows skipped because the user answered after the scan.
+     */
+    long getStale() {
+        return mStale.get();
+    }
+
+    /**
+     * @return the number of rows which could not be written.
+     */
+    long getFailed() {
+        return mFailed.get();
+    }
+
+    private void run() {
+        final List<Update> batch = new ArrayList<>(mBatchSize);
+        try {
+            while (!mClosed || !mQueue.isEmpty()) {
+                final Update first = mQueue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+
+                final long start = System.nanoTime();
+                batch.add(first);
+                mQueue.drainTo(batch, mBatchSize - 1);
+
+                for (Update update : batch) {
+                    write(update);
+                }
+
+                // Wait out the rest of the time this batch is allowed.
+                final long budget = (long) (batch.size() * 1e9 / mRowsPerSecond);
+                final long remaining = budget - (System.nanoTime() - start);
+                if (remaining > 0) {
+                    TimeUnit.NANOSECONDS.sleep(remaining);
+                }
+
+                batch.clear();
+            }
+
+        } catch (InterruptedException e) {
+            LOG.warn("RescoreWriter interrupted with " + mQueue.size() + " rows queued.");
+            mFailure = e;
+
+        } catch (RuntimeException | Error e) {
+            LOG.error("RescoreWriter failed with " + mQueue.size() + " rows queued.", e);
+            mFailure = e;
+        }
+    }
+
+    private void write(final Update update) {
+        try {
+            if (!mAnswerProvider.putAllIf(update.mUserId, Assessments.RUNNING_SCORE,
+                        update.mExpectedScore, update.mChanges)) {
+                mStale.incrementAndGet();
+                return;
+            }
+
+            mWritten.incrementAndGet();
+            mWrittenMeter.mark();
+
+        } catch (Exception e) {
+            LOG.warn("Failed to write rescored assessment for " + update.mUserId, e);
+            mFailed.incrementAndGet();
+        }
+    }
+
+    private static class Update {
+        private final String mUserId;
+        private final String mExpectedScore;
+        private final Map<String, String> mChanges;
+
+        Update(final String userId, final String expectedScore, final Map<String, String> changes) {
+            mUserId = userId;
+            mExpectedScore = expectedScore;
+            mChanges = changes;
+        }
+    }
+
+    /**
+     * Thrown when rows are added after the writer thread has stopped.
+     */
+    static class StoppedException extends IllegalStateException {
+        StoppedException(final String message, final Throwable cause) {
+            super(message, cause);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.p4square.grow.backend;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import com.p4square.grow.provider.AsyncCollectionProvider;
+import com.p4square.grow.provider.AsyncProviders;
+import com.p4square.grow.provider.CollectionProvider;
+import com.p4square.grow.provider.Cursor;
+import com.p4square.grow.provider.Page;
+
+/**
+ * A CollectionProvider which serves the primary and mirrors calls to the
+ * secondary through a ShadowMirror.
+ *
+ * stream() is served by the primary alone: a cursor is consumed lazily by
+ * the caller, so there is no single result to compare.
+ *
+ * Asynchronous calls are passed to the primary's AsyncCollectionProvider view.
+ */
+class ShadowCollectionProvider<C, K, V>
+    implements CollectionProvider<C, K, V>, AsyncCollectionProvider<C, K, V> {
+
+    private final String mName;
+    private final CollectionProvider<C, K, V> mPrimary;
+    private final AsyncCollectionProvider<C, K, V> mAsyncPrimary;
+    private final CollectionProvider<C, K, V> mSecondary;
+    private final ShadowMirror mMirror;
+
+    /**
+     * @param name The provider name used in metrics.
+     * @param primary The provider which serves requests.
+     * @param secondary The provider which receives mirrored calls.
+     * @param mirror The mirror which replays calls.
+     */
+    ShadowCollectionProvider(final String name, final CollectionProvider<C, K, V> primary,
+            final CollectionProvider<C, K, V> secondary, final ShadowMirror mirror) {
+
+        if (primary == null || secondary == null) {
+            throw new IllegalArgumentException("primary and secondary must not be null.");
+        }
+
+        mName = name;
+        mPrimary = primary;
+        mAsyncPrimary = AsyncProviders.async(primary);
+        mSecondary = secondary;
+        mMirror = mirror;
+    }
+
+    @Override
+    public V get(final C collection, final K key) throws IOException {
+        return mMirror.read(mName, "get", collection, () -> mPrimary.get(collection, key),
+                () -> mSecondary.get(collection, key));
+    }
+
+    @Override
+    public Map<K, V> query(final C collection) throws IOException {
+        return mMirror.read(mName, "query", collection, () -> mPrimary.query(collection),
+                () -> mSecondary.query(collection));
+    }
+
+    @Override
+    public Map<K, V> query(final C collection, final int limit) throws IOException {
+        return mMirror.read(mName, "query", collection,
+                () -> mPrimary.query(collection, limit),
+                () -> mSecondary.query(collection, limit));
+    }
+
+    @Override
+    public Map<C, Map<K, V>> queryAll(final Collection<C> collections) throws IOException {
+        final Collection<C> copy = new ArrayList<>(collections);
+        return mMirror.read(mName, "queryAll", null, () -> mPrimary.queryAll(copy),
+                () -> mSecondary.queryAll(copy));
+    }
+
+    @Override
+    public Cursor<K, V> stream(final C collection, final Page<K> page) throws IOException {
+        return mPrimary.stream(collection, page);
+    }
+
+    @Override
+    public void put(final C collection, final K key, final V obj) throws IOException {
+        final V copy = ShadowMirror.copy(obj);
+        mMirror.write(mName, "put", collection, () -> mPrimary.put(collection, key, obj),
+                () -> mSecondary.put(collection, key, copy));
+    }
+
+    @Override
+    public CompletableFuture<V> getAsync(final C collection, final K key) {
+        return mMirror.readAsync(mName, "get", collection,
+                () -> mAsyncPrimary.getAsync(collection, key),
+                () -> mSecondary.get(collection, key));
+    }
+
+    @Override
+    public CompletableFuture<Map<K, V>> queryAsync(final C collection) {
+        return mMirror.readAsync(mName, "query", collection,
+                () -> mAsyncPrimary.queryAsync(collection),
+                () -> mSecondary.query(collection));
+    }
+
+    @Override
+    public CompletableFuture<Map<K, V>> queryAsync(final C collection, final int limit) {
+        return mMirror.readAsync(mName, "query", collection,
+                () -> mAsyncPrimary.queryAsync(collection, limit),
+                () -> mSecondary.query(collection, limit));
+    }
+
+    @Override
+    public CompletableFuture<Void> putAsync(final C collection, final K key, final V obj) {
+        final V copy;
+        try {
+            copy = ShadowMirror.copy(obj);
+        } catch (IOException e) {
+            return AsyncProviders.failed(e);
+        }
+
+        return mMirror.writeAsync(mName, "put", collection,
+                () -> mAsyncPrimary.putAsync(collection, key, obj),
+                () -> mSecondary.put(collection, key, copy));
+    }
+
+    @Override
+    public void putAll(final C collection, final Map<K, V> values) throws IOException {
+        final Map<K, V> copy = new LinkedHashMap<>();
+        for (Map.Entry<K, V> entry : values.entrySet()) {
+            copy.put(entry.getKey(), ShadowMirror.copy(entry.getValue()));
+        }
+
+        mMirror.write(mName, "putAll", collection,
+                () -> mPrimary.putAll(collection, values),
+                () -> mSecondary.putAll(collection, copy));
+    }
+
+    @Override
+    public boolean putAllIf(final C collection, final K key, final V expected,
+            final Map<K, V> values) throws IOException {
+
+        final Map<K, V> copy = new LinkedHashMap<>();
+        for (Map.Entry<K, V> entry : values.entrySet()) {
+            copy.put(entry.getKey(), ShadowMirror.copy(entry.getValue()));
+        }
+
+        // The secondary may not hold the same value, so it replays the write
+        // unconditionally, and only if the primary accepted it.
+        final boolean[] written = new boolean[1];
+        mMirror.write(mName, "putAllIf", collection,
+                () -> written[0] = mPrimary.putAllIf(collection, key, expected, values),
+                () -> {
+                    if (written[0]) {
+                        mSecondary.putAll(collection, copy);
+                    }
+                });
+        return written[0];
+    }
+}
@@ -0,0 +1,169 @@
+package com.p4square.grow.backend;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import com.codahale.metrics.MetricRegistry;
+import org.apache.log4j.Logger;
+
+import com.p4square.grow.config.Config;
+
+import com.p4square.grow.model.Message;
+import com.p4square.grow.model.MessageThread;
+import com.p4square.grow.model.Playlist;
+import com.p4square.grow.model.Question;
+import com.p4square.grow.model.TrainingRecord;
+import com.p4square.grow.model.UserRecord;
+
+import com.p4square.grow.provider.CollectionProvider;
+import com.p4square.grow.provider.Provider;
+
+/**
+ * ShadowGrowData serves every request from a primary GrowData and mirrors
+ * the traffic to a secondary, so a candidate store can be measured under the
+ * real workload without affecting users.
+ *
+ * Writes are replayed on the secondary asynchronously and a sample of reads
+ * is repeated and compared. See ShadowMirror for the metrics recorded.
+ *
+ * Selected with growData=shadow. Settings:
+ *   shadowPrimary       The store which serves requests (default dynamo).
+ *   shadowSecondary     The store to mirror to (default local).
+ *   shadowSampleRate    The fraction of reads compared (default 0.01).
+ *   shadowWorkers       Threads calling the secondary (default 2).
+ *   shadowQueueSize     Calls which may wait for the secondary (default 1000).
+ */
+class ShadowGrowData implements GrowData {
+    private static final Logger LOG = Logger.getLogger(ShadowGrowData.class);
+
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 30000;
+
+    private final GrowData mPrimary;
+    private final GrowData mSecondary;
+    private final ShadowMirror mMirror;
+
+    private final Provider<String, UserRecord> mUserRecordProvider;
+    private final Provider<String, Question> mQuestionProvider;
+    private final Provider<String, TrainingRecord> mTrainingRecordProvider;
+    private final CollectionProvider<String, String, String> mVideoProvider;
+    private final CollectionProvider<String, String, MessageThread> mFeedThreadProvider;
+    private final CollectionProvider<String, String, Message> mFeedMessageProvider;
+    private final Provider<String, String> mStringProvider;
+    private final CollectionProvider<String, String, String> mAnswerProvider;
+
+    public ShadowGrowData(final Config config, final MetricRegistry metricRegistry) {
+        this(create(config.getString("shadowPrimary", "dynamo"), config, metricRegistry),
+             create(config.getString("shadowSecondary", "local"), config, metricRegistry),
+             new ShadowMirror(config.getInt("shadowWorkers", 2),
+                 config.getInt("shadowQueueSize", 1000),
+                 Double.parseDouble(config.getString("shadowSampleRate", "0.01")),
+                 metricRegistry));
+    }
+
+    ShadowGrowData(final GrowData primary, final GrowData secondary, final ShadowMirror mirror) {
+        mPrimary = primary;
+        mSecondary = secondary;
+        mMirror = mirror;
+
+        mUserRecordProvider = new ShadowProvider<>("users",
+                primary.getUserRecordProvider(), secondary.getUserRecordProvider(), mirror);
+        mQuestionProvider = new ShadowProvider<>("questions",
+                primary.getQuestionProvider(), secondary.getQuestionProvider(), mirror);
+        mTrainingRecordProvider = new ShadowProvider<>("training",
+                primary.getTrainingRecordProvider(), secondary.getTrainingRecordProvider(), mirror);
+        mVideoProvider = new ShadowCollectionProvider<>("videos",
+                primary.getVideoProvider(), secondary.getVideoProvider(), mirror);
+        mFeedThreadProvider = new ShadowCollectionProvider<>("feedthreads",
+                primary.getThreadProvider(), secondary.getThreadProvider(), mirror);
+        mFeedMessageProvider = new ShadowCollectionProvider<>("feedmessages",
+                primary.getMessageProvider(), secondary.getMessageProvider(), mirror);
+        mStringProvider = new ShadowProvider<>("strings",
+                primary.getStringProvider(), secondary.getStringProvider(), mirror);
+        mAnswerProvider = new ShadowCollectionProvider<>("answers",
+                primary.getAnswerProvider(), secondary.getAnswerProvider(), mirror);
+    }
+
+    private static GrowData create(final String type, final Config config,
+            final MetricRegistry metricRegistry) {
+
+        if ("shadow".equals(type)) {
+            throw new IllegalArgumentException("A shadow store cannot mirror another.");
+        }
+
+        return GrowDatas.create(type, config, metricRegistry);
+    }
+
+    @Override
+    public void start() throws Exception {
+        mPrimary.start();
+        mSecondary.start();
+    }
+
+    @Override
+    public void stop() throws Exception {
+        if (!mMirror.shutdown(SHUTDOWN_TIMEOUT_MILLIS)) {
+            LOG.warn("Timed out waiting for shadow writes to finish.");
+        }
+
+        mPrimary.stop();
+        mSecondary.stop();
+    }
+
+    @Override
+    public void forEachUserId(final Consumer<String> consumer) throws IOException {
+        mPrimary.forEachUserId(consumer);
+    }
+
+    @Override
+    public void forEachAssessment(final BiConsumer<String, Map<String, String>> consumer)
+            throws IOException {
+        mPrimary.forEachAssessment(consumer);
+    }
+
+    @Override
+    public Provider<String, UserRecord> getUserRecordProvider() {
+        return mUserRecordProvider;
+    }
+
+    @Override
+    public Provider<String, Question> getQuestionProvider() {
+        return mQuestionProvider;
+    }
+
+    @Override
+    public Provider<String, TrainingRecord> getTrainingRecordProvider() {
+        return mTrainingRecordProvider;
+    }
+
+    @Override
+    public CollectionProvider<String, String, String> getVideoProvider() {
+        return mVideoProvider;
+    }
+
+    @Override
+    public Playlist getDefaultPlaylist() throws IOException {
+        return mPrimary.getDefaultPlaylist();
+    }
+
+    @Override
+    public CollectionProvider<String, String, MessageThread> getThreadProvider() {
+        return mFeedThreadProvider;
+    }
+
+    @Override
+    public CollectionProvider<String, String, Message> getMessageProvider() {
+        return mFeedMessageProvider;
+    }
+
+    @Override
+    public Provider<String, String> getStringProvider() {
+        return mStringProvider;
+    }
+
+    @Override
+    public CollectionProvider<String, String, String> getAnswerProvider() {
+        return mAnswerProvider;
+    }
+}
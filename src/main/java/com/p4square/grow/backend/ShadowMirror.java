@@ -0,0 +1,305 @@
+package com.p4square.grow.backend;
+
+import java.io.IOException;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.NullNode;
+import org.apache.log4j.Logger;
+
+import com.p4square.grow.provider.AsyncProviders.IOCallable;
+import com.p4square.grow.provider.JsonEncodedProvider;
+
+/**
+ * ShadowMirror replays calls made against a primary store on a secondary store.
+ *
+ * Writes go to the primary and, once it succeeds, are queued for the
+ * secondary. A sample of reads is repeated on the secondary and the two
+ * results are compared by their JSON encoding. The caller only ever waits on
+ * the primary; when the queue is full, shadow work is dropped rather than
+ * slowing the request down.
+ *
+ * For each provider NAME and operation OP the following metrics are kept:
+ *
+ *   ShadowGrowData.NAME.OP.primary     Timer of calls to the primary.
+ *   ShadowGrowData.NAME.OP.secondary   Timer of calls to the secondary.
+ *   ShadowGrowData.NAME.OP.match       Sampled reads which agreed.
+ *   ShadowGrowData.NAME.OP.mismatch    Sampled reads which disagreed.
+ *   ShadowGrowData.NAME.OP.error       Calls which failed on the secondary.
+ *
+ * Dropped work is counted in ShadowGrowData.dropped and the queue length is
+ * published as ShadowGrowData.queue.
+ *
+ * Each worker has a lane with its own queue, and calls are routed to a lane
+ * by provider name and key. Calls for the same key run on the secondary in
+ * the order they were made on the primary. Reads of several keys at once are
+ * not ordered with writes to those keys, so one sampled just after a write
+ * may be reported as a mismatch.
+ */
+class ShadowMirror {
+    private static final Logger LOG = Logger.getLogger(ShadowMirror.class);
+
+    private static final String PREFIX = "ShadowGrowData";
+
+    /**
+     * A write to replay on the secondary.
+     */
+    interface IORunnable {
+        void run() throws IOException;
+    }
+
+    private final MetricRegistry mMetricRegistry;
+    private final double mSampleRate;
+    private final ThreadPoolExecutor[] mLanes;
+
+    /**
+     * @param workers The number of threads calling the secondary.
+     * @param queueSize The number of calls which may wait for a worker,
+     *                  divided evenly between the workers.
+     * @param sampleRate The fraction of reads to compare, between 0 and 1.
+     * @param metricRegistry The registry to record metrics in.
+     */
+    ShadowMirror(final int workers, final int queueSize, final double sampleRate,
+            final MetricRegistry metricRegistry) {
+
+        if (metricRegistry == null) {
+            throw new IllegalArgumentException("metricRegistry must not be null.");
+        }
+
+        if (sampleRate < 0 || sampleRate > 1) {
+            throw new IllegalArgumentException("sampleRate must be between 0 and 1.");
+        }
+
+        if (workers < 1) {
+            throw new IllegalArgumentException("workers must be positive.");
+        }
+
+        mMetricRegistry = metricRegistry;
+        mSampleRate = sampleRate;
+        mLanes = new ThreadPoolExecutor[workers];
+        for (int i = 0; i < workers; i++) {
+            mLanes[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(Math.max(1, queueSize / workers)), (runnable) -> {
+                        Thread thread = new Thread(runnable, "ShadowMirror");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+        }
+
+        final String queueName = MetricRegistry.name(PREFIX, "queue");
+        mMetricRegistry.remove(queueName);
+        mMetricRegistry.register(queueName, (Gauge<Integer>) () -> {
+            int size = 0;
+            for (ThreadPoolExecutor lane : mLanes) {
+                size += lane.getQueue().size();
+            }
+            return size;
+        });
+    }
+
+    /**
+     * Read from the primary and, if the call is sampled, compare it with the secondary.
+     *
+     * @param name The provider name.
+     * @param operation The operation name.
+     * @param key The key read, or null if the call reads several.
+     * @param primary Reads from the primary.
+     * @param secondary Reads the same value from the secondary.
+     * @return The primary's result.
+     */
+    <T> T read(final String name, final String operation, final Object key,
+            final IOCallable<T> primary, final IOCallable<T> secondary) throws IOException {
+
+        final String base = MetricRegistry.name(PREFIX, name, operation);
+        final T result = time(base + ".primary", primary);
+        sample(base, name, key, result, secondary);
+        return result;
+    }
+
+    /**
+     * Asynchronous form of read().
+     *
+     * The returned future completes with the primary's result. The comparison
+     * is queued once the primary has answered.
+     *
+     * @param name The provider name.
+     * @param operation The operation name.
+     * @param key The key read, or null if the call reads several.
+     * @param primary Starts the read from the primary.
+     * @param secondary Reads the same value from the secondary.
+     * @return A future for the primary's result.
+     */
+    <T> CompletableFuture<T> readAsync(final String name, final String operation,
+            final Object key, final Supplier<CompletableFuture<T>> primary,
+            final IOCallable<T> secondary) {
+
+        final String base = MetricRegistry.name(PREFIX, name, operation);
+        return timeAsync(base + ".primary", primary).thenApply((result) -> {
+            sample(base, name, key, result, secondary);
+            return result;
+        });
+    }
+
+    /**
+     * Write to the primary and queue the same write for the secondary.
+     *
+     * @param name The provider name.
+     * @param operation The operation name.
+     * @param key The key written. Writes to the same key are replayed in order.
+     * @param primary Writes to the primary.
+     * @param secondary Writes to the secondary. Its arguments must not be
+     *                  modified by the caller after this method returns.
+     */
+    void write(final String name, final String operation, final Object key,
+            final IORunnable primary, final IORunnable secondary) throws IOException {
+
+        final String base = MetricRegistry.name(PREFIX, name, operation);
+        time(base + ".primary", () -> {
+            primary.run();
+            return null;
+        });
+
+        submit(base, name, key, () -> time(base + ".secondary", () -> {
+            secondary.run();
+            return null;
+        }));
+    }
+
+    /**
+     * Asynchronous form of write().
+     *
+     * The secondary write is queued once the primary write has succeeded.
+     *
+     * @param name The provider name.
+     * @param operation The operation name.
+     * @param key The key written. Writes to the same key are replayed in order.
+     * @param primary Starts the write to the primary.
+     * @param secondary Writes to the secondary. Its arguments must not be
+     *                  modified by the caller after this method returns.
+     * @return A future which completes when the primary write does.
+     */
+    CompletableFuture<Void> writeAsync(final String name, final String operation,
+            final Object key, final Supplier<CompletableFuture<Void>> primary,
+            final IORunnable secondary) {
+
+        final String base = MetricRegistry.name(PREFIX, name, operation);
+        return timeAsync(base + ".primary", primary).thenRun(() ->
+                submit(base, name, key, () -> time(base + ".secondary", () -> {
+                    secondary.run();
+                    return null;
+                })));
+    }
+
+    /**
+     * Stop accepting work and wait for queued work to finish.
+     *
+     * @param timeoutMillis How long to wait.
+     * @return true if all queued work finished.
+     */
+    boolean shutdown(final long timeoutMillis) throws InterruptedException {
+        for (ThreadPoolExecutor lane : mLanes) {
+            lane.shutdown();
+        }
+
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        for (ThreadPoolExecutor lane : mLanes) {
+            if (!lane.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * If this call is sampled, queue a comparison of result with the secondary.
+     */
+    private <T> void sample(final String base, final String name, final Object key,
+            final T result, final IOCallable<T> secondary) {
+
+        if (mSampleRate > 0 && ThreadLocalRandom.current().nextDouble() < mSampleRate) {
+            // Encode now: the caller is free to modify the result once we return.
+            final JsonNode expected = encode(result);
+            submit(base, name, key, () -> {
+                JsonNode actual = encode(time(base + ".secondary", secondary));
+                if (expected.equals(actual)) {
+                    mMetricRegistry.counter(base + ".match").inc();
+                } else {
+                    mMetricRegistry.counter(base + ".mismatch").inc();
+                    LOG.debug("Shadow mismatch in " + base + ": " + expected + " != " + actual);
+                }
+            });
+        }
+    }
+
+    private void submit(final String base, final String name, final Object key,
+            final IORunnable work) {
+
+        final int lane = Math.floorMod(Objects.hash(name, key), mLanes.length);
+        try {
+            mLanes[lane].execute(() -> {
+                try {
+                    work.run();
+                } catch (Exception e) {
+                    mMetricRegistry.counter(base + ".error").inc();
+                    LOG.debug("Shadow call " + base + " failed", e);
+                }
+            });
+
+        } catch (RejectedExecutionException e) {
+            mMetricRegistry.counter(MetricRegistry.name(PREFIX, "dropped")).inc();
+        }
+    }
+
+    private <T> T time(final String timerName, final IOCallable<T> call) throws IOException {
+        final long start = System.nanoTime();
+        try {
+            return call.call();
+        } finally {
+            mMetricRegistry.timer(timerName).update(System.nanoTime() - start,
+                    TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private <T> CompletableFuture<T> timeAsync(final String timerName,
+            final Supplier<CompletableFuture<T>> call) {
+
+        final long start = System.nanoTime();
+        return call.get().whenComplete((result, error) ->
+                mMetricRegistry.timer(timerName).update(System.nanoTime() - start,
+                    TimeUnit.NANOSECONDS));
+    }
+
+    /**
+     * Copy a value so a queued write is unaffected by later changes to the original.
+     */
+    @SuppressWarnings("unchecked")
+    static <T> T copy(final T value) throws IOException {
+        if (value == null || value instanceof String) {
+            return value;
+        }
+
+        return (T) JsonEncodedProvider.MAPPER.treeToValue(encode(value), value.getClass());
+    }
+
+    /**
+     * @return the JSON tree of value. A null value is a NullNode, so that
+     *         results can be compared with equals().
+     */
+    private static JsonNode encode(final Object value) {
+        if (value == null) {
+            return NullNode.getInstance();
+        }
+
+        return JsonEncodedProvider.MAPPER.valueToTree(value);
+    }
+}
@@ -0,0 +1,100 @@
+package com.p4square.grow.backend;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import com.p4square.grow.provider.AsyncProvider;
+import com.p4square.grow.provider.AsyncProviders;
+import com.p4square.grow.provider.Provider;
+
+/**
+ * A Provider which serves the primary and mirrors calls to the secondary
+ * through a ShadowMirror.
+ *
+ * Asynchronous calls are passed to the primary's AsyncProvider view.
+ */
+class ShadowProvider<K, V> implements Provider<K, V>, AsyncProvider<K, V> {
+    private final String mName;
+    private final Provider<K, V> mPrimary;
+    private final AsyncProvider<K, V> mAsyncPrimary;
+    private final Provider<K, V> mSecondary;
+    private final ShadowMirror mMirror;
+
+    /**
+     * @param name The provider name used in metrics.
+     * @param primary The provider which serves requests.
+     * @param secondary The provider which receives mirrored calls.
+     * @param mirror The mirror which replays calls.
+     */
+    ShadowProvider(final String name, final Provider<K, V> primary,
+            final Provider<K, V> secondary, final ShadowMirror mirror) {
+
+        if (primary == null || secondary == null) {
+            throw new IllegalArgumentException("primary and secondary must not be null.");
+        }
+
+        mName = name;
+        mPrimary = primary;
+        mAsyncPrimary = AsyncProviders.async(primary);
+        mSecondary = secondary;
+        mMirror = mirror;
+    }
+
+    @Override
+    public V get(final K key) throws IOException {
+        return mMirror.read(mName, "get", key, () -> mPrimary.get(key),
+                () -> mSecondary.get(key));
+    }
+
+    @Override
+    public Map<K, V> getAll(final Collection<K> keys) throws IOException {
+        final Collection<K> copy = new ArrayList<>(keys);
+        return mMirror.read(mName, "getAll", null, () -> mPrimary.getAll(copy),
+                () -> mSecondary.getAll(copy));
+    }
+
+    @Override
+    public void put(final K key, final V obj) throws IOException {
+        final V copy = ShadowMirror.copy(obj);
+        mMirror.write(mName, "put", key, () -> mPrimary.put(key, obj),
+                () -> mSecondary.put(key, copy));
+    }
+
+    @Override
+    public CompletableFuture<V> getAsync(final K key) {
+        return mMirror.readAsync(mName, "get", key, () -> mAsyncPrimary.getAsync(key),
+                () -> mSecondary.get(key));
+    }
+
+    @Override
+    public CompletableFuture<Void> putAsync(final K key, final V obj) {
+        final V copy;
+        try {
+            copy = ShadowMirror.copy(obj);
+        } catch (IOException e) {
+            return AsyncProviders.failed(e);
+        }
+
+        return mMirror.writeAsync(mName, "put", key, () -> mAsyncPrimary.putAsync(key, obj),
+                () -> mSecondary.put(key, copy));
+    }
+
+    @Override
+    public boolean putIf(final K key, final V expected, final V obj) throws IOException {
+        final V copy = ShadowMirror.copy(obj);
+
+        // The secondary may not hold the same object, so it replays the
+        // write unconditionally, and only if the primary accepted it.
+        final boolean[] written = new boolean[1];
+        mMirror.write(mName, "putIf", key, () -> written[0] = mPrimary.putIf(key, expected, obj),
+                () -> {
+                    if (written[0]) {
+                        mSecondary.put(key, copy);
+                    }
+                });
+        return written[0];
+    }
+}
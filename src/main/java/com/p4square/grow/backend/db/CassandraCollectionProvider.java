@@ -6,30 +6,43 @@ package com.p4square.grow.backend.db;
 
 import java.io.IOException;
 
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import com.netflix.astyanax.model.Column;
 import com.netflix.astyanax.model.ColumnList;
 
+import com.p4square.grow.provider.AsyncCollectionProvider;
+import com.p4square.grow.provider.AsyncProviders;
 import com.p4square.grow.provider.CollectionProvider;
-import com.p4square.grow.provider.JsonEncodedProvider;
+import com.p4square.grow.provider.Cursor;
+import com.p4square.grow.provider.LazyCursor;
+import com.p4square.grow.provider.Page;
+import com.p4square.grow.provider.Codec;
+import com.p4square.grow.provider.JacksonCodec;
 
 /**
  * CollectionProvider implementation backed by a Cassandra ColumnFamily.
  *
  * @author Jesse Morgan <jesse@jesterpm.net>
  */
-public class CassandraCollectionProvider<V> implements CollectionProvider<String, String, V> {
+public class CassandraCollectionProvider<V>
+    implements CollectionProvider<String, String, V>,
+               AsyncCollectionProvider<String, String, V> {
     private final CassandraDatabase mDb;
     private final String mCF;
-    private final Class<V> mClazz;
+    private final Codec<V> mCodec;
 
     public CassandraCollectionProvider(CassandraDatabase db, String columnFamily, Class<V> clazz) {
         mDb = db;
         mCF = columnFamily;
-        mClazz = clazz;
+        mCodec = new JacksonCodec<>(clazz, JacksonCodec.Format.JSON);
     }
 
     @Override
@@ -45,9 +58,120 @@ public class CassandraCollectionProvider<V> implements CollectionProvider<String
 
     @Override
     public Map<String, V> query(String collection, int limit) throws IOException {
+        if (limit < 0) {
+            return decodeRow(mDb.getRow(mCF, collection), limit);
+        }
+
+        Map<String, V> result = new LinkedHashMap<>();
+        Cursor<String, V> cursor = stream(collection, Page.first(limit));
+        while (cursor.hasNext()) {
+            Map.Entry<String, V> entry = cursor.next();
+            result.put(entry.getKey(), entry.getValue());
+        }
+
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * Fetch one page of columns with a column slice.
+     *
+     * Columns are returned in comparator order and values are decoded lazily.
+     */
+    @Override
+    public Cursor<String, V> stream(String collection, Page<String> page) throws IOException {
+        // The slice start is inclusive, so fetch one extra column to skip the continuation key.
+        int count = page.getFetchSize();
+        if (page.getAfter() != null && count < Integer.MAX_VALUE) {
+            count++;
+        }
+
+        ColumnList<String> row = mDb.getColumnRange(mCF, collection, page.getAfter(), count);
+
+        List<Map.Entry<String, String>> columns = new ArrayList<>(row.size());
+        for (Column<String> c : row) {
+            if (!c.getName().equals(page.getAfter())) {
+                columns.add(new AbstractMap.SimpleImmutableEntry<>(c.getName(),
+                            c.getStringValue()));
+            }
+        }
+
+        return new LazyCursor<>(columns.iterator(), page.getLimit(), this::decode);
+    }
+
+    @Override
+    public Map<String, Map<String, V>> queryAll(Collection<String> collections)
+            throws IOException {
+
+        Map<String, Map<String, V>> result = new LinkedHashMap<>();
+        for (Map.Entry<String, ColumnList<String>> row :
+                mDb.getRows(mCF, collections, null).entrySet()) {
+
+            result.put(row.getKey(), decodeRow(row.getValue(), -1));
+        }
+
+        return result;
+    }
+
+    @Override
+    public void put(String collection, String key, V obj) throws IOException {
+        String blob = encode(obj);
+        mDb.putKey(mCF, collection, key, blob);
+    }
+
+    /**
+     * Apply all of the changes with a single MutationBatch.
+     */
+    @Override
+    public void putAll(String collection, Map<String, V> values) throws IOException {
+        Map<String, String> blobs = new LinkedHashMap<>();
+        for (Map.Entry<String, V> entry : values.entrySet()) {
+            V obj = entry.getValue();
+            blobs.put(entry.getKey(), obj == null ? null : encode(obj));
+        }
+
+        mDb.putColumns(mCF, collection, blobs);
+    }
+
+    @Override
+    public CompletableFuture<V> getAsync(String collection, String key) {
+        return mDb.getKeyAsync(mCF, collection, key)
+            .thenApply(AsyncProviders.unchecked(this::decode));
+    }
+
+    @Override
+    public CompletableFuture<Map<String, V>> queryAsync(String collection) {
+        return queryAsync(collection, -1);
+    }
+
+    @Override
+    public CompletableFuture<Map<String, V>> queryAsync(String collection, int limit) {
+        if (limit < 0) {
+            return mDb.getRowAsync(mCF, collection)
+                .thenApply(AsyncProviders.unchecked((row) -> decodeRow(row, limit)));
+        }
+
+        return mDb.getColumnRangeAsync(mCF, collection, null, limit)
+            .thenApply(AsyncProviders.unchecked((row) -> decodeRow(row, limit)));
+    }
+
+    @Override
+    public CompletableFuture<Void> putAsync(String collection, String key, V obj) {
+        final String blob;
+        try {
+            blob = encode(obj);
+        } catch (IOException e) {
+            return AsyncProviders.failed(e);
+        }
+
+        return mDb.putKeyAsync(mCF, collection, key, blob);
+    }
+
+    /**
+     * Decode at most limit columns of a row.
+     */
+    private Map<String, V> decodeRow(ColumnList<String> row, int limit) throws IOException {
         Map<String, V> result = new LinkedHashMap<>();
 
-        ColumnList<String> row = mDb.getRow(mCF, collection);
         if (!row.isEmpty()) {
             int count = 0;
             for (Column<String> c : row) {
@@ -66,12 +190,6 @@ public class CassandraCollectionProvider<V> implements CollectionProvider<String
         return Collections.unmodifiableMap(result);
     }
 
-    @Override
-    public void put(String collection, String key, V obj) throws IOException {
-        String blob = encode(obj);
-        mDb.putKey(mCF, collection, key, blob);
-    }
-
     /**
      * Encode the object as JSON.
      *
@@ -80,11 +198,7 @@ public class CassandraCollectionProvider<V> implements CollectionProvider<String
      * @throws IOException if the object cannot be encoded.
      */
     protected String encode(V obj) throws IOException {
-        if (mClazz == String.class) {
-            return (String) obj;
-        } else {
-            return JsonEncodedProvider.MAPPER.writeValueAsString(obj);
-        }
+        return mCodec.encodeString(obj);
     }
 
     /**
@@ -95,15 +209,6 @@ public class CassandraCollectionProvider<V> implements CollectionProvider<String
      * @throws IOException If an object cannot be decoded.
      */
     protected V decode(String blob) throws IOException {
-        if (blob == null) {
-            return null;
-        }
-
-        if (mClazz == String.class) {
-            return (V) blob;
-        }
-
-        V obj = JsonEncodedProvider.MAPPER.readValue(blob, mClazz);
-        return obj;
+        return mCodec.decodeString(blob);
     }
 }
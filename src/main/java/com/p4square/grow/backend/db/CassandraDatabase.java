@@ -4,10 +4,24 @@
 
 package com.p4square.grow.backend.db;
 
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+
+import com.codahale.metrics.MetricRegistry;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
 import com.netflix.astyanax.AstyanaxContext;
 import com.netflix.astyanax.connectionpool.exceptions.ConnectionException;
 import com.netflix.astyanax.connectionpool.impl.ConnectionPoolConfigurationImpl;
-import com.netflix.astyanax.connectionpool.impl.CountingConnectionPoolMonitor;
+import com.netflix.astyanax.connectionpool.impl.ConnectionPoolType;
+import com.netflix.astyanax.connectionpool.impl.SmaLatencyScoreStrategyImpl;
 import com.netflix.astyanax.connectionpool.NodeDiscoveryType;
 import com.netflix.astyanax.connectionpool.OperationResult;
 import com.netflix.astyanax.impl.AstyanaxConfigurationImpl;
@@ -16,6 +30,9 @@ import com.netflix.astyanax.ColumnMutation;
 import com.netflix.astyanax.model.Column;
 import com.netflix.astyanax.model.ColumnFamily;
 import com.netflix.astyanax.model.ColumnList;
+import com.netflix.astyanax.model.Row;
+import com.netflix.astyanax.model.Rows;
+import com.netflix.astyanax.query.RowSliceQuery;
 import com.netflix.astyanax.ColumnListMutation;
 import com.netflix.astyanax.MutationBatch;
 import com.netflix.astyanax.serializers.StringSerializer;
@@ -23,23 +40,67 @@ import com.netflix.astyanax.thrift.ThriftFamilyFactory;
 
 import org.apache.log4j.Logger;
 
+import com.p4square.grow.config.Config;
+import com.p4square.grow.provider.AsyncProviders;
+
 /**
  * Cassandra Database Abstraction for the Backend.
  *
+ * The common operations are also available in non-blocking variants built on
+ * Astyanax executeAsync(). Reads of single columns and limited collections
+ * use column slices so only the columns asked for are transferred.
+ *
+ * The connection pool is configured with these settings:
+ *
+ *   cassandraSeeds                    Seed hosts (default 127.0.0.1:9160).
+ *   cassandraPort                     Port (default 9160).
+ *   cassandraMaxConnsPerHost          Connections per host (default 8).
+ *   cassandraConnectTimeout           Connect timeout in ms (default 2000).
+ *   cassandraSocketTimeout            Socket timeout in ms (default 11000).
+ *   cassandraMaxTimeoutWhenExhausted  Wait for a free connection in ms (default 2000).
+ *   cassandraDiscoveryType            NodeDiscoveryType (default RING_DESCRIBE).
+ *   cassandraConnectionPoolType       ConnectionPoolType (default TOKEN_AWARE).
+ *   cassandraLatencyAware             Prefer the fastest hosts (default false).
+ *
+ * Latency-aware host selection is tuned with cassandraLatencyWindowSize,
+ * cassandraLatencyUpdateInterval, cassandraLatencyResetInterval (ms) and
+ * cassandraLatencyBadnessPercent. Pool metrics are published by
+ * MetricsConnectionPoolMonitor.
+ *
  * @author Jesse Morgan <jesse@jesterpm.net>
  */
 public class CassandraDatabase {
     private static Logger cLog = Logger.getLogger(CassandraDatabase.class);
 
+    private static final int DEFAULT_MAX_CONNS_PER_HOST = 8;
+    private static final int ROW_PAGE_SIZE = 100;
+
+    private final Config mConfig;
+    private final MetricRegistry mMetricRegistry;
+    private final ConcurrentMap<String, ColumnFamily<String, String>> mColumnFamilies;
+
     // Configuration fields.
     private String mClusterName;
     private String mKeyspaceName;
-    private String mSeedEndpoint   = "127.0.0.1:9160";
-    private int    mPort           = 9160;
+    private String mSeedEndpoint;
+    private int    mPort;
 
     private AstyanaxContext<Keyspace>  mContext;
     private Keyspace mKeyspace;
 
+    public CassandraDatabase() {
+        this(new Config(), new MetricRegistry());
+    }
+
+    public CassandraDatabase(final Config config, final MetricRegistry metricRegistry) {
+        mConfig = config;
+        mMetricRegistry = metricRegistry;
+        mColumnFamilies = new ConcurrentHashMap<>();
+
+        mSeedEndpoint = config.getString("cassandraSeeds", "127.0.0.1:9160");
+        mPort = config.getInt("cassandraPort", 9160);
+    }
+
     /**
      * Connect to Cassandra.
      *
@@ -50,20 +111,43 @@ public class CassandraDatabase {
             .forCluster(mClusterName)
             .forKeyspace(mKeyspaceName)
             .withAstyanaxConfiguration(new AstyanaxConfigurationImpl()
-                .setDiscoveryType(NodeDiscoveryType.RING_DESCRIBE)
+                .setDiscoveryType(NodeDiscoveryType.valueOf(
+                        mConfig.getString("cassandraDiscoveryType", "RING_DESCRIBE")))
+                .setConnectionPoolType(ConnectionPoolType.valueOf(
+                        mConfig.getString("cassandraConnectionPoolType", "TOKEN_AWARE")))
             )
-            .withConnectionPoolConfiguration(new ConnectionPoolConfigurationImpl("MyConnectionPool")
-                .setPort(mPort)
-                .setMaxConnsPerHost(1)
-                .setSeeds(mSeedEndpoint)
-            )
-            .withConnectionPoolMonitor(new CountingConnectionPoolMonitor())
+            .withConnectionPoolConfiguration(poolConfiguration())
+            .withConnectionPoolMonitor(new MetricsConnectionPoolMonitor(mMetricRegistry))
             .buildKeyspace(ThriftFamilyFactory.getInstance());
 
         mContext.start();
         mKeyspace = mContext.getClient();
     }
 
+    /**
+     * @return the connection pool settings from the Config.
+     */
+    ConnectionPoolConfigurationImpl poolConfiguration() {
+        ConnectionPoolConfigurationImpl pool = new ConnectionPoolConfigurationImpl("GrowConnectionPool")
+            .setPort(mPort)
+            .setSeeds(mSeedEndpoint)
+            .setMaxConnsPerHost(mConfig.getInt("cassandraMaxConnsPerHost",
+                        DEFAULT_MAX_CONNS_PER_HOST))
+            .setConnectTimeout(mConfig.getInt("cassandraConnectTimeout", 2000))
+            .setSocketTimeout(mConfig.getInt("cassandraSocketTimeout", 11000))
+            .setMaxTimeoutWhenExhausted(mConfig.getInt("cassandraMaxTimeoutWhenExhausted", 2000));
+
+        if (mConfig.getBoolean("cassandraLatencyAware", false)) {
+            pool.setLatencyScoreStrategy(new SmaLatencyScoreStrategyImpl(
+                        mConfig.getInt("cassandraLatencyUpdateInterval", 10000),
+                        mConfig.getInt("cassandraLatencyResetInterval", 60000),
+                        mConfig.getInt("cassandraLatencyWindowSize", 100),
+                        mConfig.getInt("cassandraLatencyBadnessPercent", 50) / 100.0));
+        }
+
+        return pool;
+    }
+
     /**
      * Close the database connection.
      */
@@ -106,9 +190,7 @@ public class CassandraDatabase {
      */
     public ColumnList<String> getRow(final String cfName, final String key) {
         try {
-            ColumnFamily<String, String> cf = new ColumnFamily(cfName,
-                StringSerializer.get(),
-                StringSerializer.get());
+            ColumnFamily<String, String> cf = columnFamily(cfName);
 
             OperationResult<ColumnList<String>> result =
                 mKeyspace.prepareQuery(cf)
@@ -123,6 +205,185 @@ public class CassandraDatabase {
         }
     }
 
+    /**
+     * Fetch a slice of a row's columns in comparator order.
+     *
+     * @param cfName The column family.
+     * @param key The row key.
+     * @param start The first column to return, inclusive, or null to start at the beginning.
+     * @param count The maximum number of columns to return.
+     * @return The columns in the slice.
+     */
+    public ColumnList<String> getColumnRange(final String cfName, final String key,
+            final String start, final int count) {
+
+        try {
+            ColumnFamily<String, String> cf = columnFamily(cfName);
+
+            OperationResult<ColumnList<String>> result =
+                mKeyspace.prepareQuery(cf)
+                    .getKey(key)
+                    .withColumnRange(start == null ? "" : start, "", false, count)
+                    .execute();
+
+            return result.getResult();
+
+        } catch (ConnectionException e) {
+            cLog.error("getColumnRange failed due to Connection Exception", e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Non-blocking variant of getColumnRange().
+     */
+    public CompletableFuture<ColumnList<String>> getColumnRangeAsync(final String cfName,
+            final String key, final String start, final int count) {
+
+        try {
+            ColumnFamily<String, String> cf = columnFamily(cfName);
+
+            return toFuture(mKeyspace.prepareQuery(cf)
+                    .getKey(key)
+                    .withColumnRange(start == null ? "" : start, "", false, count)
+                    .executeAsync());
+
+        } catch (ConnectionException e) {
+            cLog.error("getColumnRangeAsync failed due to Connection Exception", e);
+            return AsyncProviders.failed(new RuntimeException(e));
+        }
+    }
+
+    /**
+     * Fetch only the named columns of a row.
+     *
+     * @param cfName The column family.
+     * @param key The row key.
+     * @param columns The columns to fetch.
+     * @return The columns which exist.
+     */
+    public ColumnList<String> getColumns(final String cfName, final String key,
+            final String... columns) {
+
+        try {
+            ColumnFamily<String, String> cf = columnFamily(cfName);
+
+            OperationResult<ColumnList<String>> result =
+                mKeyspace.prepareQuery(cf)
+                    .getKey(key)
+                    .withColumnSlice(columns)
+                    .execute();
+
+            return result.getResult();
+
+        } catch (ConnectionException e) {
+            cLog.error("getColumns failed due to Connection Exception", e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Non-blocking variant of getColumns().
+     */
+    public CompletableFuture<ColumnList<String>> getColumnsAsync(final String cfName,
+            final String key, final String... columns) {
+
+        try {
+            ColumnFamily<String, String> cf = columnFamily(cfName);
+
+            return toFuture(mKeyspace.prepareQuery(cf)
+                    .getKey(key)
+                    .withColumnSlice(columns)
+                    .executeAsync());
+
+        } catch (ConnectionException e) {
+            cLog.error("getColumnsAsync failed due to Connection Exception", e);
+            return AsyncProviders.failed(new RuntimeException(e));
+        }
+    }
+
+    /**
+     * Non-blocking variant of getRow().
+     */
+    public CompletableFuture<ColumnList<String>> getRowAsync(final String cfName,
+            final String key) {
+
+        try {
+            ColumnFamily<String, String> cf = columnFamily(cfName);
+
+            return toFuture(mKeyspace.prepareQuery(cf).getKey(key).executeAsync());
+
+        } catch (ConnectionException e) {
+            cLog.error("getRowAsync failed due to Connection Exception", e);
+            return AsyncProviders.failed(new RuntimeException(e));
+        }
+    }
+
+    /**
+     * Fetch several rows with a single multi-get.
+     *
+     * @param cfName The column family.
+     * @param keys The row keys to fetch.
+     * @param columns The columns to fetch, or null for all columns.
+     * @return A map of row keys to columns. Empty rows are omitted.
+     */
+    public Map<String, ColumnList<String>> getRows(final String cfName,
+            final Collection<String> keys, final Collection<String> columns) {
+
+        try {
+            ColumnFamily<String, String> cf = columnFamily(cfName);
+
+            RowSliceQuery<String, String> query = mKeyspace.prepareQuery(cf).getKeySlice(keys);
+            if (columns != null) {
+                query = query.withColumnSlice(columns);
+            }
+
+            OperationResult<Rows<String, String>> result = query.execute();
+
+            Map<String, ColumnList<String>> rows = new LinkedHashMap<>();
+            for (Row<String, String> row : result.getResult()) {
+                if (!row.getColumns().isEmpty()) {
+                    rows.put(row.getKey(), row.getColumns());
+                }
+            }
+
+            return rows;
+
+        } catch (ConnectionException e) {
+            cLog.error("getRows failed due to Connection Exception", e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Pass the key of every row in a column family to consumer.
+     *
+     * Rows are fetched ROW_PAGE_SIZE at a time with only their first column.
+     * Deleted rows, which are returned without columns, are skipped.
+     */
+    public void forEachRowKey(final String cfName, final Consumer<String> consumer) {
+        try {
+            ColumnFamily<String, String> cf = columnFamily(cfName);
+
+            OperationResult<Rows<String, String>> result =
+                mKeyspace.prepareQuery(cf)
+                    .getAllRows()
+                    .setRowLimit(ROW_PAGE_SIZE)
+                    .withColumnRange("", "", false, 1)
+                    .execute();
+
+            for (Row<String, String> row : result.getResult()) {
+                if (!row.getColumns().isEmpty()) {
+                    consumer.accept(row.getKey());
+                }
+            }
+
+        } catch (ConnectionException e) {
+            cLog.error("forEachRowKey failed due to Connection Exception", e);
+            throw new RuntimeException(e);
+        }
+    }
+
     /**
      * @return The value associated with the given key.
      */
@@ -134,7 +395,7 @@ public class CassandraDatabase {
      * @return The value associated with the given key, column pair.
      */
     public String getKey(final String cfName, final String key, final String column) {
-        final ColumnList<String> row = getRow(cfName, key);
+        final ColumnList<String> row = getColumns(cfName, key, column);
 
         if (row != null) {
             final Column rowColumn = row.getColumnByName(column);
@@ -146,6 +407,58 @@ public class CassandraDatabase {
         return null;
     }
 
+    /**
+     * Non-blocking variant of getKey().
+     */
+    public CompletableFuture<String> getKeyAsync(final String cfName, final String key,
+            final String column) {
+
+        return getColumnsAsync(cfName, key, column).thenApply((row) -> {
+            if (row != null) {
+                final Column rowColumn = row.getColumnByName(column);
+                if (rowColumn != null) {
+                    return rowColumn.getStringValue();
+                }
+            }
+
+            return null;
+        });
+    }
+
+    /**
+     * @return The raw bytes of the given key, column pair or null if it does not exist.
+     */
+    public byte[] getKeyBytes(final String cfName, final String key, final String column) {
+        final ColumnList<String> row = getColumns(cfName, key, column);
+
+        if (row != null) {
+            final Column rowColumn = row.getColumnByName(column);
+            if (rowColumn != null) {
+                return rowColumn.getByteArrayValue();
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Non-blocking variant of getKeyBytes().
+     */
+    public CompletableFuture<byte[]> getKeyBytesAsync(final String cfName, final String key,
+            final String column) {
+
+        return getColumnsAsync(cfName, key, column).thenApply((row) -> {
+            if (row != null) {
+                final Column rowColumn = row.getColumnByName(column);
+                if (rowColumn != null) {
+                    return rowColumn.getByteArrayValue();
+                }
+            }
+
+            return null;
+        });
+    }
+
     /**
      * Assign value to key.
      */
@@ -159,9 +472,7 @@ public class CassandraDatabase {
     public void putKey(final String cfName, final String key,
             final String column, final String value) {
 
-        ColumnFamily<String, String> cf = new ColumnFamily(cfName,
-            StringSerializer.get(),
-            StringSerializer.get());
+        ColumnFamily<String, String> cf = columnFamily(cfName);
 
         MutationBatch m = mKeyspace.prepareMutationBatch();
         m.withRow(cf, key).putColumn(column, value);
@@ -174,13 +485,140 @@ public class CassandraDatabase {
         }
     }
 
+    /**
+     * Assign raw bytes to the key, column pair.
+     */
+    public void putKeyBytes(final String cfName, final String key,
+            final String column, final byte[] value) {
+
+        ColumnFamily<String, String> cf = columnFamily(cfName);
+
+        MutationBatch m = mKeyspace.prepareMutationBatch();
+        m.withRow(cf, key).putColumn(column, value);
+
+        try {
+            m.execute();
+        } catch (ConnectionException e) {
+            cLog.error("putKeyBytes failed due to Connection Exception", e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Assign and remove several columns of a row in one mutation batch.
+     *
+     * @param cfName The column family.
+     * @param key The row key.
+     * @param values Map of columns to values. A null value removes the column.
+     */
+    public void putColumns(final String cfName, final String key,
+            final Map<String, String> values) {
+
+        MutationBatch m = prepareColumnsMutation(cfName, key, values);
+
+        try {
+            m.execute();
+        } catch (ConnectionException e) {
+            cLog.error("putColumns failed due to Connection Exception", e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Non-blocking variant of putColumns().
+     */
+    public CompletableFuture<Void> putColumnsAsync(final String cfName, final String key,
+            final Map<String, String> values) {
+
+        MutationBatch m = prepareColumnsMutation(cfName, key, values);
+
+        try {
+            return toFuture(m.executeAsync()).thenApply((result) -> null);
+        } catch (ConnectionException e) {
+            cLog.error("putColumnsAsync failed due to Connection Exception", e);
+            return AsyncProviders.failed(new RuntimeException(e));
+        }
+    }
+
+    /**
+     * Assign and remove several columns of a row in one mutation batch.
+     *
+     * @param cfName The column family.
+     * @param key The row key.
+     * @param values Map of columns to raw values. A null value removes the column.
+     */
+    public void putColumnBytes(final String cfName, final String key,
+            final Map<String, byte[]> values) {
+
+        MutationBatch m = prepareColumnBytesMutation(cfName, key, values);
+
+        try {
+            m.execute();
+        } catch (ConnectionException e) {
+            cLog.error("putColumnBytes failed due to Connection Exception", e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Non-blocking variant of putColumnBytes().
+     */
+    public CompletableFuture<Void> putColumnBytesAsync(final String cfName, final String key,
+            final Map<String, byte[]> values) {
+
+        MutationBatch m = prepareColumnBytesMutation(cfName, key, values);
+
+        try {
+            return toFuture(m.executeAsync()).thenApply((result) -> null);
+        } catch (ConnectionException e) {
+            cLog.error("putColumnBytesAsync failed due to Connection Exception", e);
+            return AsyncProviders.failed(new RuntimeException(e));
+        }
+    }
+
+    /**
+     * Non-blocking variant of putKey().
+     */
+    public CompletableFuture<Void> putKeyAsync(final String cfName, final String key,
+            final String column, final String value) {
+
+        ColumnFamily<String, String> cf = columnFamily(cfName);
+
+        MutationBatch m = mKeyspace.prepareMutationBatch();
+        m.withRow(cf, key).putColumn(column, value);
+
+        try {
+            return toFuture(m.executeAsync()).thenApply((result) -> null);
+        } catch (ConnectionException e) {
+            cLog.error("putKeyAsync failed due to Connection Exception", e);
+            return AsyncProviders.failed(new RuntimeException(e));
+        }
+    }
+
+    /**
+     * Non-blocking variant of putKeyBytes().
+     */
+    public CompletableFuture<Void> putKeyBytesAsync(final String cfName, final String key,
+            final String column, final byte[] value) {
+
+        ColumnFamily<String, String> cf = columnFamily(cfName);
+
+        MutationBatch m = mKeyspace.prepareMutationBatch();
+        m.withRow(cf, key).putColumn(column, value);
+
+        try {
+            return toFuture(m.executeAsync()).thenApply((result) -> null);
+        } catch (ConnectionException e) {
+            cLog.error("putKeyBytesAsync failed due to Connection Exception", e);
+            return AsyncProviders.failed(new RuntimeException(e));
+        }
+    }
+
     /**
      * Remove a key, column pair.
      */
     public void deleteKey(final String cfName, final String key, final String column) {
-        ColumnFamily<String, String> cf = new ColumnFamily(cfName,
-            StringSerializer.get(),
-            StringSerializer.get());
+        ColumnFamily<String, String> cf = columnFamily(cfName);
 
         try {
             ColumnMutation m = mKeyspace.prepareColumnMutation(cf, key, column);
@@ -195,9 +633,7 @@ public class CassandraDatabase {
      * Remove a row
      */
     public void deleteRow(final String cfName, final String key) {
-        ColumnFamily<String, String> cf = new ColumnFamily(cfName,
-            StringSerializer.get(),
-            StringSerializer.get());
+        ColumnFamily<String, String> cf = columnFamily(cfName);
 
         try {
             MutationBatch batch = mKeyspace.prepareMutationBatch();
@@ -209,4 +645,69 @@ public class CassandraDatabase {
             throw new RuntimeException(e);
         }
     }
+
+    private MutationBatch prepareColumnsMutation(final String cfName, final String key,
+            final Map<String, String> values) {
+
+        ColumnFamily<String, String> cf = columnFamily(cfName);
+
+        MutationBatch m = mKeyspace.prepareMutationBatch();
+        ColumnListMutation<String> row = m.withRow(cf, key);
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            if (entry.getValue() == null) {
+                row.deleteColumn(entry.getKey());
+            } else {
+                row.putColumn(entry.getKey(), entry.getValue());
+            }
+        }
+
+        return m;
+    }
+
+    private MutationBatch prepareColumnBytesMutation(final String cfName, final String key,
+            final Map<String, byte[]> values) {
+
+        ColumnFamily<String, String> cf = columnFamily(cfName);
+
+        MutationBatch m = mKeyspace.prepareMutationBatch();
+        ColumnListMutation<String> row = m.withRow(cf, key);
+        for (Map.Entry<String, byte[]> entry : values.entrySet()) {
+            if (entry.getValue() == null) {
+                row.deleteColumn(entry.getKey());
+            } else {
+                row.putColumn(entry.getKey(), entry.getValue());
+            }
+        }
+
+        return m;
+    }
+
+    /**
+     * @return the shared ColumnFamily for cfName.
+     */
+    private ColumnFamily<String, String> columnFamily(final String cfName) {
+        return mColumnFamilies.computeIfAbsent(cfName,
+                (name) -> new ColumnFamily<>(name, StringSerializer.get(), StringSerializer.get()));
+    }
+
+    /**
+     * Bridge an Astyanax ListenableFuture to a CompletableFuture.
+     */
+    private static <T> CompletableFuture<T> toFuture(
+            final ListenableFuture<OperationResult<T>> future) {
+
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        future.addListener(() -> {
+            try {
+                result.complete(future.get().getResult());
+            } catch (ExecutionException e) {
+                result.completeExceptionally(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                result.completeExceptionally(e);
+            }
+        }, Runnable::run);
+
+        return result;
+    }
 }
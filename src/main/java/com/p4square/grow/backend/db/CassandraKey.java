@@ -4,6 +4,8 @@
 
 package com.p4square.grow.backend.db;
 
+import java.util.Objects;
+
 /**
  * CassandraKey represents a Cassandra key / column pair.
  *
@@ -31,4 +33,25 @@ public class CassandraKey {
     public String getColumn() {
         return mColumn;
     }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+
+        if (!(obj instanceof CassandraKey)) {
+            return false;
+        }
+
+        final CassandraKey other = (CassandraKey) obj;
+        return Objects.equals(mColumnFamily, other.mColumnFamily)
+            && Objects.equals(mId, other.mId)
+            && Objects.equals(mColumn, other.mColumn);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(mColumnFamily, mId, mColumn);
+    }
 }
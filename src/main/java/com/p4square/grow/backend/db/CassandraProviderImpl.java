@@ -5,16 +5,32 @@
 package com.p4square.grow.backend.db;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
+import com.netflix.astyanax.model.Column;
+import com.netflix.astyanax.model.ColumnList;
+
+import com.p4square.grow.provider.AsyncProvider;
+import com.p4square.grow.provider.AsyncProviders;
+import com.p4square.grow.provider.Codec;
 import com.p4square.grow.provider.Provider;
 import com.p4square.grow.provider.JsonEncodedProvider;
 
 /**
  * Provider implementation backed by a Cassandra ColumnFamily.
  *
+ * Values are stored as the raw bytes produced by the Codec. JSON written as
+ * a string column is read the same way, so existing values remain readable.
+ *
  * @author Jesse Morgan <jesse@jesterpm.net>
  */
-public class CassandraProviderImpl<V> extends JsonEncodedProvider<V> implements Provider<CassandraKey, V> {
+public class CassandraProviderImpl<V> extends JsonEncodedProvider<V>
+    implements Provider<CassandraKey, V>, AsyncProvider<CassandraKey, V> {
     private final CassandraDatabase mDb;
 
     public CassandraProviderImpl(CassandraDatabase db, Class<V> clazz) {
@@ -23,15 +39,75 @@ public class CassandraProviderImpl<V> extends JsonEncodedProvider<V> implements
         mDb = db;
     }
 
+    public CassandraProviderImpl(CassandraDatabase db, Codec<V> codec) {
+        super(codec);
+
+        mDb = db;
+    }
+
     @Override
     public V get(CassandraKey key) throws IOException {
-        String blob = mDb.getKey(key.getColumnFamily(), key.getId(), key.getColumn());
-        return decode(blob);
+        byte[] data = mDb.getKeyBytes(key.getColumnFamily(), key.getId(), key.getColumn());
+        return decodeBytes(data);
+    }
+
+    @Override
+    public Map<CassandraKey, V> getAll(Collection<CassandraKey> keys) throws IOException {
+        // Group the keys by column family so each family is one multi-get.
+        Map<String, List<CassandraKey>> families = new LinkedHashMap<>();
+        for (CassandraKey key : keys) {
+            families.computeIfAbsent(key.getColumnFamily(), (cf) -> new ArrayList<>()).add(key);
+        }
+
+        Map<CassandraKey, byte[]> blobs = new LinkedHashMap<>();
+        for (Map.Entry<String, List<CassandraKey>> family : families.entrySet()) {
+            List<String> ids = new ArrayList<>();
+            List<String> columns = new ArrayList<>();
+            for (CassandraKey key : family.getValue()) {
+                if (!ids.contains(key.getId())) {
+                    ids.add(key.getId());
+                }
+                if (!columns.contains(key.getColumn())) {
+                    columns.add(key.getColumn());
+                }
+            }
+
+            Map<String, ColumnList<String>> rows = mDb.getRows(family.getKey(), ids, columns);
+            for (CassandraKey key : family.getValue()) {
+                ColumnList<String> row = rows.get(key.getId());
+                if (row != null) {
+                    Column<String> column = row.getColumnByName(key.getColumn());
+                    if (column != null) {
+                        blobs.put(key, column.getByteArrayValue());
+                    }
+                }
+            }
+        }
+
+        return decodeAllBytes(blobs);
     }
 
     @Override
     public void put(CassandraKey key, V obj) throws IOException {
-        String blob = encode(obj);
-        mDb.putKey(key.getColumnFamily(), key.getId(), key.getColumn(), blob);
+        byte[] data = encodeBytes(obj);
+        mDb.putKeyBytes(key.getColumnFamily(), key.getId(), key.getColumn(), data);
+    }
+
+    @Override
+    public CompletableFuture<V> getAsync(CassandraKey key) {
+        return mDb.getKeyBytesAsync(key.getColumnFamily(), key.getId(), key.getColumn())
+            .thenApply(AsyncProviders.unchecked(this::decodeBytes));
+    }
+
+    @Override
+    public CompletableFuture<Void> putAsync(CassandraKey key, V obj) {
+        final byte[] data;
+        try {
+            data = encodeBytes(obj);
+        } catch (IOException e) {
+            return AsyncProviders.failed(e);
+        }
+
+        return mDb.putKeyBytesAsync(key.getColumnFamily(), key.getId(), key.getColumn(), data);
     }
 }
@@ -5,18 +5,28 @@
 package com.p4square.grow.backend.db;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import com.netflix.astyanax.model.Column;
+import com.netflix.astyanax.model.ColumnList;
 
 import com.p4square.grow.model.Playlist;
 import com.p4square.grow.model.TrainingRecord;
 
-import com.p4square.grow.provider.JsonEncodedProvider;
+import com.p4square.grow.provider.AsyncProvider;
+import com.p4square.grow.provider.AsyncProviders;
+import com.p4square.grow.provider.Codec;
 import com.p4square.grow.provider.Provider;
 
 /**
  *
  * @author Jesse Morgan <jesse@jesterpm.net>
  */
-public class CassandraTrainingRecordProvider implements Provider<String, TrainingRecord> {
+public class CassandraTrainingRecordProvider
+    implements Provider<String, TrainingRecord>, AsyncProvider<String, TrainingRecord> {
     private static final CassandraKey DEFAULT_PLAYLIST_KEY = new CassandraKey("strings", "defaultPlaylist", "value");
 
     private static final String COLUMN_FAMILY = "training";
@@ -24,36 +34,80 @@ public class CassandraTrainingRecordProvider implements Provider<String, Trainin
     private static final String LAST_VIDEO_KEY = "lastVideo";
 
     private final CassandraDatabase mDb;
-    private final Provider<CassandraKey, Playlist> mPlaylistProvider;
+    private final Codec<Playlist> mPlaylistCodec;
+    private final CassandraProviderImpl<Playlist> mPlaylistProvider;
 
-    public CassandraTrainingRecordProvider(CassandraDatabase db) {
+    public CassandraTrainingRecordProvider(CassandraDatabase db, Codec<Playlist> playlistCodec) {
         mDb = db;
-        mPlaylistProvider = new CassandraProviderImpl<>(db, Playlist.class);
+        mPlaylistCodec = playlistCodec;
+        mPlaylistProvider = new CassandraProviderImpl<>(db, playlistCodec);
     }
 
+    /**
+     * Fetch the playlist and last video columns in one slice query.
+     */
     @Override
     public TrainingRecord get(String userid) throws IOException {
-        Playlist playlist = mPlaylistProvider.get(new CassandraKey(COLUMN_FAMILY, userid, PLAYLIST_KEY));
+        return decodeRecord(mDb.getColumns(COLUMN_FAMILY, userid, PLAYLIST_KEY, LAST_VIDEO_KEY));
+    }
+
+    @Override
+    public void put(String userid, TrainingRecord record) throws IOException {
+        mDb.putColumnBytes(COLUMN_FAMILY, userid, encodeColumns(record));
+    }
+
+    @Override
+    public CompletableFuture<TrainingRecord> getAsync(String userid) {
+        return mDb.getColumnsAsync(COLUMN_FAMILY, userid, PLAYLIST_KEY, LAST_VIDEO_KEY)
+            .thenApply(AsyncProviders.unchecked(this::decodeRecord));
+    }
+
+    @Override
+    public CompletableFuture<Void> putAsync(String userid, TrainingRecord record) {
+        try {
+            return mDb.putColumnBytesAsync(COLUMN_FAMILY, userid, encodeColumns(record));
+        } catch (IOException e) {
+            return AsyncProviders.failed(e);
+        }
+    }
+
+    /**
+     * Decode a record from its playlist and last video columns.
+     */
+    private TrainingRecord decodeRecord(ColumnList<String> row) throws IOException {
+        Column<String> playlistColumn = row.getColumnByName(PLAYLIST_KEY);
+        Playlist playlist = (playlistColumn == null)
+            ? null : mPlaylistCodec.decode(playlistColumn.getByteArrayValue());
 
         if (playlist == null) {
             // We consider no playlist to mean no record whatsoever.
             return null;
         }
 
+        Column<String> lastVideoColumn = row.getColumnByName(LAST_VIDEO_KEY);
+
         TrainingRecord r = new TrainingRecord();
         r.setPlaylist(playlist);
-        r.setLastVideo(mDb.getKey(COLUMN_FAMILY, userid, LAST_VIDEO_KEY));
+        r.setLastVideo(lastVideoColumn == null ? null : lastVideoColumn.getStringValue());
 
         return r;
     }
 
-    @Override
-    public void put(String userid, TrainingRecord record) throws IOException {
+    /**
+     * Encode the columns of a record so they can be written in one batch.
+     *
+     * A null value would delete the column, and a record without a last video
+     * has simply not recorded one, so the last video is only written when set.
+     */
+    private Map<String, byte[]> encodeColumns(TrainingRecord record) throws IOException {
+        Map<String, byte[]> columns = new HashMap<>();
         String lastVideo = record.getLastVideo();
-        Playlist playlist = record.getPlaylist();
+        if (lastVideo != null) {
+            columns.put(LAST_VIDEO_KEY, lastVideo.getBytes(StandardCharsets.UTF_8));
+        }
+        columns.put(PLAYLIST_KEY, mPlaylistCodec.encode(record.getPlaylist()));
 
-        mDb.putKey(COLUMN_FAMILY, userid, LAST_VIDEO_KEY, lastVideo);
-        mPlaylistProvider.put(new CassandraKey(COLUMN_FAMILY, userid, PLAYLIST_KEY), playlist);
+        return columns;
     }
 
     /**
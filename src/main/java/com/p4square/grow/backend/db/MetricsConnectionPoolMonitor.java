@@ -0,0 +1,70 @@
+package com.p4square.grow.backend.db;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+import com.netflix.astyanax.connectionpool.Host;
+import com.netflix.astyanax.connectionpool.impl.CountingConnectionPoolMonitor;
+
+/**
+ * A ConnectionPoolMonitor which publishes the Astyanax pool counters to a
+ * MetricRegistry.
+ *
+ * Counters are exposed as gauges named CassandraDatabase.pool.NAME. Operation
+ * latency and the time spent waiting to borrow a connection are recorded in
+ * the CassandraDatabase.pool.operation and CassandraDatabase.pool.borrow
+ * timers.
+ */
+class MetricsConnectionPoolMonitor extends CountingConnectionPoolMonitor {
+    private static final String PREFIX = "CassandraDatabase.pool";
+
+    private final Timer mOperationTimer;
+    private final Timer mBorrowTimer;
+
+    MetricsConnectionPoolMonitor(final MetricRegistry metricRegistry) {
+        mOperationTimer = metricRegistry.timer(MetricRegistry.name(PREFIX, "operation"));
+        mBorrowTimer = metricRegistry.timer(MetricRegistry.name(PREFIX, "borrow"));
+
+        register(metricRegistry, "operationSuccess", this::getOperationSuccessCount);
+        register(metricRegistry, "operationFailure", this::getOperationFailureCount);
+        register(metricRegistry, "operationTimeout", this::getOperationTimeoutCount);
+        register(metricRegistry, "failover", this::getFailoverCount);
+        register(metricRegistry, "poolExhaustedTimeout", this::getPoolExhaustedTimeoutCount);
+        register(metricRegistry, "noHosts", this::getNoHostCount);
+        register(metricRegistry, "connectionCreated", this::getConnectionCreatedCount);
+        register(metricRegistry, "connectionCreateFailed", this::getConnectionCreateFailedCount);
+        register(metricRegistry, "connectionClosed", this::getConnectionClosedCount);
+        register(metricRegistry, "connectionBorrowed", this::getConnectionBorrowedCount);
+        register(metricRegistry, "connectionReturned", this::getConnectionReturnedCount);
+        register(metricRegistry, "busyConnections", this::getNumBusyConnections);
+        register(metricRegistry, "openConnections", this::getNumOpenConnections);
+        register(metricRegistry, "hosts", this::getHostCount);
+        register(metricRegistry, "hostsDown", this::getHostDownCount);
+    }
+
+    @Override
+    public void incOperationSuccess(final Host host, final long latency) {
+        super.incOperationSuccess(host, latency);
+        mOperationTimer.update(latency, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void incConnectionBorrowed(final Host host, final long delay) {
+        super.incConnectionBorrowed(host, delay);
+        mBorrowTimer.update(delay, TimeUnit.MILLISECONDS);
+    }
+
+    private static void register(final MetricRegistry metricRegistry, final String name,
+            final LongSupplier value) {
+
+        final String metricName = MetricRegistry.name(PREFIX, name);
+
+        // A restarted database replaces the gauges of the monitor before it.
+        metricRegistry.remove(metricName);
+        metricRegistry.register(metricName, (Gauge<Long>) value::getAsLong);
+    }
+}
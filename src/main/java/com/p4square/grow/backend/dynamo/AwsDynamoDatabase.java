@@ -0,0 +1,907 @@
+/*
+ * Copyright 2014 Jesse Morgan
+ */
+
+package com.p4square.grow.backend.dynamo;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.regions.Region;
+import com.amazonaws.regions.Regions;
+import com.amazonaws.retry.PredefinedRetryPolicies;
+import com.amazonaws.retry.RetryPolicy;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBAsyncClient;
+import com.amazonaws.services.dynamodbv2.model.AttributeAction;
+import com.amazonaws.services.dynamodbv2.model.AttributeDefinition;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.AttributeValueUpdate;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemResult;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.Capacity;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.ConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.CreateTableRequest;
+import com.amazonaws.services.dynamodbv2.model.CreateTableResult;
+import com.amazonaws.services.dynamodbv2.model.DeleteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.DeleteTableRequest;
+import com.amazonaws.services.dynamodbv2.model.DeleteTableResult;
+import com.amazonaws.services.dynamodbv2.model.DescribeTableRequest;
+import com.amazonaws.services.dynamodbv2.model.ExpectedAttributeValue;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.GetItemResult;
+import com.amazonaws.services.dynamodbv2.model.KeysAndAttributes;
+import com.amazonaws.services.dynamodbv2.model.KeySchemaElement;
+import com.amazonaws.services.dynamodbv2.model.KeyType;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughput;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputDescription;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputExceededException;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.PutRequest;
+import com.amazonaws.services.dynamodbv2.model.ResourceNotFoundException;
+import com.amazonaws.services.dynamodbv2.model.ReturnConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemResult;
+import com.amazonaws.services.dynamodbv2.model.UpdateTableRequest;
+import com.amazonaws.services.dynamodbv2.model.UpdateTableResult;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+
+import com.p4square.grow.config.Config;
+import com.p4square.grow.config.ConfigCredentialProvider;
+
+import com.p4square.grow.backend.dynamo.RequestExecutor.Operation;
+
+/**
+ * A DynamoDatabase backed by DynamoDB.
+ *
+ * Reads and writes to each table can be held to a budget of capacity units
+ * per second with the TABLEReadBudget and TABLEWriteBudget settings, which
+ * default to dynamoReadBudget and dynamoWriteBudget (0 is unlimited). Every
+ * request asks for the capacity it consumed, including on indexes, which is
+ * published by CapacityTracker. Requests rejected for exceeding provisioned
+ * throughput are retried with jittered exponential backoff by the
+ * RequestExecutor rather than by the client, so the budgets see every
+ * throttled request. Batch jobs
+ * should use a view from withPriority(Priority.BATCH) so they leave
+ * dynamoBatchReservePercent of each budget to request traffic.
+ *
+ * Scans report the items scanned and read capacity consumed as
+ * DynamoDatabase.scan.TABLE.items and
+ * DynamoDatabase.scan.TABLE.consumedCapacity.
+ */
+public class AwsDynamoDatabase implements DynamoDatabase {
+    /**
+     * The maximum number of items DynamoDB accepts in one BatchGetItem request.
+     */
+    private static final int MAX_BATCH_GET = 100;
+
+    /**
+     * The number of times unprocessed keys are resubmitted before giving up.
+     */
+    private static final int MAX_BATCH_RETRIES = 8;
+
+    private final AmazonDynamoDBAsyncClient mClient;
+    private final String mTablePrefix;
+    private final MetricRegistry mMetricRegistry;
+    private final RequestExecutor mExecutor;
+    private final Priority mPriority;
+
+    public AwsDynamoDatabase(final Config config) {
+        this(config, new MetricRegistry());
+    }
+
+    public AwsDynamoDatabase(final Config config, final MetricRegistry metricRegistry) {
+        mMetricRegistry = metricRegistry;
+        mExecutor = new RequestExecutor(config, metricRegistry);
+        mPriority = Priority.REQUEST;
+
+        final ClientConfiguration clientConfig = clientConfiguration();
+        mClient = new AmazonDynamoDBAsyncClient(new ConfigCredentialProvider(config), clientConfig,
+                Executors.newFixedThreadPool(clientConfig.getMaxConnections()));
+
+        String endpoint = config.getString("dynamoEndpoint");
+        if (endpoint != null) {
+            mClient.setEndpoint(endpoint);
+        }
+
+        String region = config.getString("awsRegion");
+        if (region != null) {
+            mClient.setRegion(Region.getRegion(Regions.fromName(region)));
+        }
+
+        mTablePrefix = config.getString("dynamoTablePrefix", "");
+    }
+
+    /**
+     * @return the client settings, which leave throttled requests to the
+     *         RequestExecutor. Other errors are still retried by the client.
+     */
+    static ClientConfiguration clientConfiguration() {
+        final RetryPolicy.RetryCondition condition = (request, exception, retries) ->
+            !(exception instanceof ProvisionedThroughputExceededException)
+            && PredefinedRetryPolicies.DEFAULT_RETRY_CONDITION.shouldRetry(request, exception, retries);
+
+        return new ClientConfiguration().withRetryPolicy(new RetryPolicy(condition,
+                    PredefinedRetryPolicies.DYNAMODB_DEFAULT_BACKOFF_STRATEGY,
+                    PredefinedRetryPolicies.DYNAMODB_DEFAULT_MAX_ERROR_RETRY, true));
+    }
+
+    /**
+     * Create a view which shares this database's client and budgets.
+     */
+    private AwsDynamoDatabase(final AwsDynamoDatabase other, final Priority priority) {
+        mClient = other.mClient;
+        mTablePrefix = other.mTablePrefix;
+        mMetricRegistry = other.mMetricRegistry;
+        mExecutor = other.mExecutor;
+        mPriority = priority;
+    }
+
+    @Override
+    public DynamoDatabase withPriority(final Priority priority) {
+        if (priority == mPriority) {
+            return this;
+        }
+
+        return new AwsDynamoDatabase(this, priority);
+    }
+
+    @Override
+    public void close() {
+        mExecutor.close();
+        mClient.shutdown();
+    }
+
+    @Override
+    public void createTable(String name, long reads, long writes) {
+        ArrayList<AttributeDefinition> attributeDefinitions = new ArrayList<>();
+        attributeDefinitions.add(new AttributeDefinition()
+                .withAttributeName("id")
+                .withAttributeType("S"));
+
+        ArrayList<KeySchemaElement> ks = new ArrayList<>();
+        ks.add(new KeySchemaElement().withAttributeName("id").withKeyType(KeyType.HASH));
+
+        ProvisionedThroughput provisionedThroughput = new ProvisionedThroughput()
+            .withReadCapacityUnits(reads)
+            .withWriteCapacityUnits(writes);
+
+        CreateTableRequest request = new CreateTableRequest()
+            .withTableName(mTablePrefix + name)
+            .withAttributeDefinitions(attributeDefinitions)
+            .withKeySchema(ks)
+            .withProvisionedThroughput(provisionedThroughput);
+
+        CreateTableResult result = mClient.createTable(request);
+    }
+
+    @Override
+    public void updateTable(String name, long reads, long writes) {
+        ProvisionedThroughput provisionedThroughput = new ProvisionedThroughput()
+            .withReadCapacityUnits(reads)
+            .withWriteCapacityUnits(writes);
+
+        UpdateTableRequest request = new UpdateTableRequest()
+            .withTableName(mTablePrefix + name)
+            .withProvisionedThroughput(provisionedThroughput);
+
+        UpdateTableResult result = mClient.updateTable(request);
+    }
+
+    @Override
+    public void deleteTable(String name) {
+        DeleteTableRequest deleteTableRequest = new DeleteTableRequest()
+            .withTableName(mTablePrefix + name);
+
+        DeleteTableResult result = mClient.deleteTable(deleteTableRequest);
+    }
+
+    @Override
+    public ProvisionedThroughput getProvisionedThroughput(final String name) {
+        DescribeTableRequest request = new DescribeTableRequest()
+            .withTableName(mTablePrefix + name);
+
+        try {
+            ProvisionedThroughputDescription throughput =
+                mClient.describeTable(request).getTable().getProvisionedThroughput();
+
+            return new ProvisionedThroughput()
+                .withReadCapacityUnits(throughput.getReadCapacityUnits())
+                .withWriteCapacityUnits(throughput.getWriteCapacityUnits());
+
+        } catch (ResourceNotFoundException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public Map<DynamoKey, Map<String, String>> getAll(final DynamoKey key) {
+        ScanRequest scanRequest = new ScanRequest()
+            .withTableName(mTablePrefix + key.getTable())
+            .withReturnConsumedCapacity(ReturnConsumedCapacity.INDEXES);
+
+        if (key.getHashKey() != null) {
+            scanRequest.setExclusiveStartKey(DynamoItems.generateKey(key));
+        }
+
+        ScanResult scanResult = scan(key.getTable(), scanRequest);
+
+        Map<DynamoKey, Map<String, String>> result = new LinkedHashMap<>();
+        for (Map<String, AttributeValue> map : scanResult.getItems()) {
+            String id = null;
+            String range = null;
+            Map<String, String> row = new LinkedHashMap<>();
+            for (Map.Entry<String, AttributeValue> entry : map.entrySet()) {
+                if ("id".equals(entry.getKey())) {
+                    id = entry.getValue().getS();
+                } else if ("range".equals(entry.getKey())) {
+                    range = entry.getValue().getS();
+                } else {
+                    row.put(entry.getKey(), entry.getValue().getS());
+                }
+            }
+            result.put(DynamoKey.newRangeKey(key.getTable(), id, range), row);
+        }
+
+        return result;
+    }
+
+    @Override
+    public long scanParallel(final String table, final int segments,
+            final BiConsumer<DynamoKey, Map<String, String>> consumer) {
+
+        return scanItems(table, segments, (item) -> {
+            final DynamoKey key = DynamoItems.toKey(table, item);
+            consumer.accept(key, DynamoItems.toScannedStringMap(key, item));
+        });
+    }
+
+    @Override
+    public long scanParallelBytes(final String table, final int segments,
+            final BiConsumer<DynamoKey, Map<String, byte[]>> consumer) {
+
+        return scanItems(table, segments, (item) -> {
+            consumer.accept(DynamoItems.toKey(table, item), DynamoItems.toBytesMap(item));
+        });
+    }
+
+    @Override
+    public long scanItems(final String table, final int segments,
+            final Consumer<Map<String, AttributeValue>> consumer) {
+
+        if (segments < 1) {
+            throw new IllegalArgumentException("segments must be positive.");
+        }
+
+        final Meter items = mMetricRegistry.meter(
+                MetricRegistry.name("DynamoDatabase.scan", table, "items"));
+        final Meter capacity = mMetricRegistry.meter(
+                MetricRegistry.name("DynamoDatabase.scan", table, "consumedCapacity"));
+        final AtomicLong count = new AtomicLong();
+
+        final ExecutorService executor = Executors.newFixedThreadPool(segments);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int segment = 0; segment < segments; segment++) {
+                final ScanRequest request = new ScanRequest()
+                    .withTableName(mTablePrefix + table)
+                    .withSegment(segment)
+                    .withTotalSegments(segments)
+                    .withReturnConsumedCapacity(ReturnConsumedCapacity.INDEXES);
+
+                futures.add(executor.submit(() -> {
+                    scanSegment(table, request, consumer, count, items, capacity);
+                }));
+            }
+
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    throw new RuntimeException(cause);
+
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException(e);
+                }
+            }
+
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return count.get();
+    }
+
+    /**
+     * Scan every page of one segment.
+     */
+    private void scanSegment(final String table, final ScanRequest request,
+            final Consumer<Map<String, AttributeValue>> consumer, final AtomicLong count,
+            final Meter items, final Meter capacity) {
+
+        do {
+            if (Thread.currentThread().isInterrupted()) {
+                return; // Another segment failed.
+            }
+
+            ScanResult result = scan(table, request);
+
+            if (result.getConsumedCapacity() != null
+                    && result.getConsumedCapacity().getCapacityUnits() != null) {
+                capacity.mark(Math.round(result.getConsumedCapacity().getCapacityUnits()));
+            }
+
+            for (Map<String, AttributeValue> item : result.getItems()) {
+                consumer.accept(item);
+            }
+
+            items.mark(result.getItems().size());
+            count.addAndGet(result.getItems().size());
+
+            request.setExclusiveStartKey(result.getLastEvaluatedKey());
+        } while (request.getExclusiveStartKey() != null);
+    }
+
+    @Override
+    public Map<String, String> getKey(final DynamoKey key) {
+        GetItemResult getItemResult = getItem(key.getTable(), getKeyRequest(key));
+        return DynamoItems.toStringMap(getItemResult.getItem());
+    }
+
+    @Override
+    public CompletableFuture<Map<String, String>> getKeyAsync(final DynamoKey key) {
+        return getItemAsync(key.getTable(), getKeyRequest(key))
+            .thenApply((result) -> DynamoItems.toStringMap(result.getItem()));
+    }
+
+    @Override
+    public String getAttribute(final DynamoKey key) {
+        GetItemResult result = getItem(key.getTable(), getAttributeRequest(key));
+        return DynamoItems.attributeValue(result.getItem(), key.getAttribute());
+    }
+
+    @Override
+    public CompletableFuture<String> getAttributeAsync(final DynamoKey key) {
+        return getItemAsync(key.getTable(), getAttributeRequest(key)).thenApply(
+                (result) -> DynamoItems.attributeValue(result.getItem(), key.getAttribute()));
+    }
+
+    @Override
+    public byte[] getAttributeBytes(final DynamoKey key) {
+        GetItemResult result = getItem(key.getTable(), getAttributeRequest(key));
+        return DynamoItems.attributeBytes(result.getItem(), key.getAttribute());
+    }
+
+    @Override
+    public CompletableFuture<byte[]> getAttributeBytesAsync(final DynamoKey key) {
+        return getItemAsync(key.getTable(), getAttributeRequest(key)).thenApply(
+                (result) -> DynamoItems.attributeBytes(result.getItem(), key.getAttribute()));
+    }
+
+    @Override
+    public Map<DynamoKey, Map<String, String>> getKeys(final Collection<DynamoKey> keys) {
+        final Map<DynamoKey, Map<String, String>> result = new LinkedHashMap<>();
+
+        for (Map.Entry<String, Map<Map<String, AttributeValue>, List<DynamoKey>>> table :
+                groupByItem(keys).entrySet()) {
+
+            final Map<Map<String, AttributeValue>, List<DynamoKey>> items = table.getValue();
+            batchGet(table.getKey(), items.keySet(), null, (item) -> {
+                final Map<String, String> row = DynamoItems.toStringMap(item);
+                for (DynamoKey key : items.get(DynamoItems.itemKey(item))) {
+                    result.put(key, row);
+                }
+            });
+        }
+
+        return result;
+    }
+
+    @Override
+    public Map<DynamoKey, String> getAttributes(final Collection<DynamoKey> keys) {
+        return getAttributes(keys, AttributeValue::getS);
+    }
+
+    @Override
+    public Map<DynamoKey, byte[]> getAttributeBytes(final Collection<DynamoKey> keys) {
+        return getAttributes(keys, DynamoItems::toBytes);
+    }
+
+    private <T> Map<DynamoKey, T> getAttributes(final Collection<DynamoKey> keys,
+            final Function<AttributeValue, T> converter) {
+
+        final Map<DynamoKey, T> result = new LinkedHashMap<>();
+
+        for (DynamoKey key : keys) {
+            checkAttributeKey(key);
+        }
+
+        for (Map.Entry<String, Map<Map<String, AttributeValue>, List<DynamoKey>>> table :
+                groupByItem(keys).entrySet()) {
+
+            final Map<Map<String, AttributeValue>, List<DynamoKey>> items = table.getValue();
+            final Set<String> attributes = new LinkedHashSet<>();
+            for (List<DynamoKey> itemKeys : items.values()) {
+                for (DynamoKey key : itemKeys) {
+                    attributes.add(key.getAttribute());
+                }
+            }
+
+            batchGet(table.getKey(), items.keySet(), attributes, (item) -> {
+                for (DynamoKey key : items.get(DynamoItems.itemKey(item))) {
+                    AttributeValue value = item.get(key.getAttribute());
+                    T converted = (value == null) ? null : converter.apply(value);
+                    if (converted != null) {
+                        result.put(key, converted);
+                    }
+                }
+            });
+        }
+
+        return result;
+    }
+
+    @Override
+    public void putKey(final DynamoKey key, final Map<String, String> values) {
+        Map<String, AttributeValue> item = DynamoItems.toItem(key, values);
+
+        PutItemRequest putItemRequest = new PutItemRequest()
+            .withTableName(mTablePrefix + key.getTable())
+            .withItem(item)
+            .withReturnConsumedCapacity(ReturnConsumedCapacity.INDEXES);
+
+        mExecutor.execute(key.getTable(), Operation.WRITE, "Put", mPriority, 1,
+                () -> mClient.putItem(putItemRequest),
+                (result) -> units(key.getTable(), result.getConsumedCapacity()));
+    }
+
+    @Override
+    public BulkWriter newBulkWriter(final int writers) {
+        return new BulkWriter(this, writers, mMetricRegistry);
+    }
+
+    @Override
+    public void batchWrite(final String table, final List<Map<String, AttributeValue>> items) {
+        final String tableName = mTablePrefix + table;
+
+        List<WriteRequest> writes = new ArrayList<>();
+        for (Map<String, AttributeValue> item : items) {
+            writes.add(new WriteRequest().withPutRequest(new PutRequest().withItem(item)));
+        }
+
+        Map<String, List<WriteRequest>> requestItems = new HashMap<>();
+        requestItems.put(tableName, writes);
+
+        int attempt = 0;
+        while (requestItems != null && !requestItems.isEmpty()) {
+            if (attempt > 0) {
+                mExecutor.backoff(mPriority, attempt);
+            }
+
+            final BatchWriteItemRequest request = new BatchWriteItemRequest()
+                .withRequestItems(requestItems)
+                .withReturnConsumedCapacity(ReturnConsumedCapacity.INDEXES);
+            final double estimate = requestItems.get(tableName).size();
+
+            BatchWriteItemResult result = mExecutor.execute(table, Operation.WRITE, "BatchWrite",
+                    mPriority, estimate, () -> mClient.batchWriteItem(request),
+                    (r) -> units(table, r.getConsumedCapacity()));
+
+            requestItems = result.getUnprocessedItems();
+            if (++attempt > MAX_BATCH_RETRIES && requestItems != null
+                    && !requestItems.isEmpty()) {
+                throw new AmazonClientException("BatchWriteItem on " + tableName
+                        + " still has unprocessed items after " + MAX_BATCH_RETRIES
+                        + " retries.");
+            }
+        }
+    }
+
+    @Override
+    public void putAttribute(final DynamoKey key, final String value) {
+        updateItem(key.getTable(), putAttributeRequest(key, value));
+    }
+
+    @Override
+    public void putAttributes(final DynamoKey key, final Map<String, String> values) {
+        if (values.isEmpty()) {
+            return;
+        }
+
+        updateItem(key.getTable(), putAttributesRequest(key, values));
+    }
+
+    @Override
+    public boolean putAttributesIf(final DynamoKey key, final String attribute,
+            final String expected, final Map<String, String> values) {
+
+        if (values.isEmpty()) {
+            // An update with nothing to change would create a missing item.
+            return Objects.equals(expected,
+                    getAttribute(new DynamoKey(key.getTable(), key.getHashKey(),
+                            key.getRangeKey(), attribute)));
+        }
+
+        return updateItemIf(key.getTable(), putAttributesRequest(key, values), attribute,
+                (expected == null) ? null : new AttributeValue().withS(expected));
+    }
+
+    @Override
+    public boolean putAttributeIf(final DynamoKey key, final AttributeValue expected,
+            final AttributeValue value) {
+
+        return updateItemIf(key.getTable(), putAttributeRequest(key, value),
+                key.getAttribute(), expected);
+    }
+
+    /**
+     * Apply an update if an attribute holds the expected value.
+     *
+     * @param expected The expected value, or null if the attribute must be missing.
+     * @return true if the update was applied.
+     */
+    private boolean updateItemIf(final String table, final UpdateItemRequest request,
+            final String attribute, final AttributeValue expected) {
+
+        final ExpectedAttributeValue condition = (expected == null)
+            ? new ExpectedAttributeValue(false)
+            : new ExpectedAttributeValue(expected);
+        request.withExpected(Collections.singletonMap(attribute, condition));
+
+        try {
+            updateItem(table, request);
+            return true;
+        } catch (ConditionalCheckFailedException e) {
+            return false;
+        }
+    }
+
+    private UpdateItemRequest putAttributesRequest(final DynamoKey key,
+            final Map<String, String> values) {
+
+        Map<String, AttributeValueUpdate> updateItem = new HashMap<>();
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            if (entry.getValue() == null) {
+                updateItem.put(entry.getKey(),
+                        new AttributeValueUpdate().withAction(AttributeAction.DELETE));
+            } else {
+                updateItem.put(entry.getKey(),
+                        new AttributeValueUpdate()
+                        .withAction(AttributeAction.PUT)
+                        .withValue(new AttributeValue().withS(entry.getValue())));
+            }
+        }
+
+        return new UpdateItemRequest()
+            .withTableName(mTablePrefix + key.getTable())
+            .withKey(DynamoItems.generateKey(key))
+            .withAttributeUpdates(updateItem)
+            .withReturnConsumedCapacity(ReturnConsumedCapacity.INDEXES);
+    }
+
+    @Override
+    public CompletableFuture<Void> putAttributeAsync(final DynamoKey key, final String value) {
+        return updateItemAsync(key.getTable(), putAttributeRequest(key, value));
+    }
+
+    @Override
+    public void putBinaryAttribute(final DynamoKey key, final byte[] value) {
+        updateItem(key.getTable(),
+                putAttributeRequest(key, new AttributeValue().withB(ByteBuffer.wrap(value))));
+    }
+
+    @Override
+    public CompletableFuture<Void> putBinaryAttributeAsync(final DynamoKey key,
+            final byte[] value) {
+
+        return updateItemAsync(key.getTable(),
+                putAttributeRequest(key, new AttributeValue().withB(ByteBuffer.wrap(value))));
+    }
+
+    @Override
+    public void deleteKey(final DynamoKey key) {
+        DeleteItemRequest deleteItemRequest = new DeleteItemRequest()
+            .withTableName(mTablePrefix + key.getTable())
+            .withKey(DynamoItems.generateKey(key))
+            .withReturnConsumedCapacity(ReturnConsumedCapacity.INDEXES);
+
+        mExecutor.execute(key.getTable(), Operation.WRITE, "Delete", mPriority, 1,
+                () -> mClient.deleteItem(deleteItemRequest),
+                (result) -> units(key.getTable(), result.getConsumedCapacity()));
+    }
+
+    @Override
+    public void deleteAttribute(final DynamoKey key) {
+        updateItem(key.getTable(), deleteAttributeRequest(key));
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteAttributeAsync(final DynamoKey key) {
+        return updateItemAsync(key.getTable(), deleteAttributeRequest(key));
+    }
+
+    private GetItemRequest getKeyRequest(final DynamoKey key) {
+        return new GetItemRequest()
+            .withTableName(mTablePrefix + key.getTable())
+            .withKey(DynamoItems.generateKey(key))
+            .withReturnConsumedCapacity(ReturnConsumedCapacity.INDEXES);
+    }
+
+    private GetItemRequest getAttributeRequest(final DynamoKey key) {
+        checkAttributeKey(key);
+
+        return new GetItemRequest()
+            .withTableName(mTablePrefix + key.getTable())
+            .withKey(DynamoItems.generateKey(key))
+            .withAttributesToGet(key.getAttribute())
+            .withReturnConsumedCapacity(ReturnConsumedCapacity.INDEXES);
+    }
+
+    private UpdateItemRequest putAttributeRequest(final DynamoKey key, final String value) {
+        return putAttributeRequest(key, new AttributeValue().withS(value));
+    }
+
+    private UpdateItemRequest putAttributeRequest(final DynamoKey key,
+            final AttributeValue value) {
+
+        checkAttributeKey(key);
+
+        Map<String, AttributeValueUpdate> updateItem = new HashMap<>();
+        updateItem.put(key.getAttribute(),
+                new AttributeValueUpdate()
+                .withAction(AttributeAction.PUT)
+                .withValue(value));
+
+        return new UpdateItemRequest()
+            .withTableName(mTablePrefix + key.getTable())
+            .withKey(DynamoItems.generateKey(key))
+            .withAttributeUpdates(updateItem)
+            .withReturnConsumedCapacity(ReturnConsumedCapacity.INDEXES);
+    }
+
+    private UpdateItemRequest deleteAttributeRequest(final DynamoKey key) {
+        checkAttributeKey(key);
+
+        Map<String, AttributeValueUpdate> updateItem = new HashMap<>();
+        updateItem.put(key.getAttribute(),
+                new AttributeValueUpdate().withAction(AttributeAction.DELETE));
+
+        return new UpdateItemRequest()
+            .withTableName(mTablePrefix + key.getTable())
+            .withKey(DynamoItems.generateKey(key))
+            .withAttributeUpdates(updateItem)
+            .withReturnConsumedCapacity(ReturnConsumedCapacity.INDEXES);
+    }
+
+    /**
+     * Group keys by table and then by item key, preserving order.
+     */
+    private Map<String, Map<Map<String, AttributeValue>, List<DynamoKey>>> groupByItem(
+            final Collection<DynamoKey> keys) {
+
+        final Map<String, Map<Map<String, AttributeValue>, List<DynamoKey>>> tables =
+            new LinkedHashMap<>();
+
+        for (DynamoKey key : keys) {
+            tables.computeIfAbsent(key.getTable(), (t) -> new LinkedHashMap<>())
+                .computeIfAbsent(DynamoItems.generateKey(key), (k) -> new ArrayList<>())
+                .add(key);
+        }
+
+        return tables;
+    }
+
+    /**
+     * Fetch items from one table with BatchGetItem.
+     *
+     * The item keys are split into requests of at most MAX_BATCH_GET items.
+     * Unprocessed keys are resubmitted with exponential backoff.
+     *
+     * @param table The table name, without the prefix.
+     * @param itemKeys The keys of the items to fetch.
+     * @param attributes The attributes to fetch, or null for all attributes.
+     * @param consumer Called with each item returned.
+     */
+    private void batchGet(final String table,
+            final Collection<Map<String, AttributeValue>> itemKeys,
+            final Collection<String> attributes,
+            final Consumer<Map<String, AttributeValue>> consumer) {
+
+        final String tableName = mTablePrefix + table;
+        final List<Map<String, AttributeValue>> keyList = new ArrayList<>(itemKeys);
+        for (int start = 0; start < keyList.size(); start += MAX_BATCH_GET) {
+            final int end = Math.min(start + MAX_BATCH_GET, keyList.size());
+
+            KeysAndAttributes request = new KeysAndAttributes()
+                .withKeys(keyList.subList(start, end));
+
+            if (attributes != null) {
+                // The key attributes are needed to match items to requests.
+                Set<String> attributesToGet = new LinkedHashSet<>(attributes);
+                attributesToGet.add("id");
+                attributesToGet.add("range");
+                request.setAttributesToGet(attributesToGet);
+            }
+
+            Map<String, KeysAndAttributes> requestItems = new HashMap<>();
+            requestItems.put(tableName, request);
+
+            int attempt = 0;
+            while (requestItems != null && !requestItems.isEmpty()) {
+                if (attempt > 0) {
+                    mExecutor.backoff(mPriority, attempt);
+                }
+
+                // Eventually consistent reads of items up to 4KB cost half a
+                // unit.
+                final BatchGetItemRequest batchRequest = new BatchGetItemRequest()
+                    .withRequestItems(requestItems)
+                    .withReturnConsumedCapacity(ReturnConsumedCapacity.INDEXES);
+                final double estimate = 0.5 * requestItems.get(tableName).getKeys().size();
+
+                BatchGetItemResult result = mExecutor.execute(table, Operation.READ, "BatchGet",
+                        mPriority, estimate, () -> mClient.batchGetItem(batchRequest),
+                        (r) -> units(table, r.getConsumedCapacity()));
+
+                List<Map<String, AttributeValue>> items = result.getResponses().get(tableName);
+                if (items != null) {
+                    for (Map<String, AttributeValue> item : items) {
+                        consumer.accept(item);
+                    }
+                }
+
+                requestItems = result.getUnprocessedKeys();
+                if (++attempt > MAX_BATCH_RETRIES && requestItems != null
+                        && !requestItems.isEmpty()) {
+                    throw new AmazonClientException("BatchGetItem on " + tableName
+                            + " still has unprocessed keys after " + MAX_BATCH_RETRIES
+                            + " retries.");
+                }
+            }
+        }
+    }
+
+    private ScanResult scan(final String table, final ScanRequest request) {
+        return mExecutor.execute(table, Operation.READ, "Scan", mPriority, 1,
+                () -> mClient.scan(request),
+                (result) -> units(table, result.getConsumedCapacity()));
+    }
+
+    private GetItemResult getItem(final String table, final GetItemRequest request) {
+        return mExecutor.execute(table, Operation.READ, "Get", mPriority, 1,
+                () -> mClient.getItem(request),
+                (result) -> units(table, result.getConsumedCapacity()));
+    }
+
+    private CompletableFuture<GetItemResult> getItemAsync(final String table,
+            final GetItemRequest request) {
+
+        return mExecutor.executeAsync(table, Operation.READ, "Get", mPriority, 1, () -> {
+            FutureHandler<GetItemRequest, GetItemResult> handler = new FutureHandler<>();
+            mClient.getItemAsync(request, handler);
+            return handler;
+        }, (result) -> units(table, result.getConsumedCapacity()));
+    }
+
+    private UpdateItemResult updateItem(final String table, final UpdateItemRequest request) {
+        return mExecutor.execute(table, Operation.WRITE, "Update", mPriority, 1,
+                () -> mClient.updateItem(request),
+                (result) -> units(table, result.getConsumedCapacity()));
+    }
+
+    private CompletableFuture<Void> updateItemAsync(final String table,
+            final UpdateItemRequest request) {
+
+        return mExecutor.executeAsync(table, Operation.WRITE, "Update", mPriority, 1, () -> {
+            FutureHandler<UpdateItemRequest, UpdateItemResult> handler = new FutureHandler<>();
+            mClient.updateItemAsync(request, handler);
+            return handler;
+        }, (result) -> units(table, result.getConsumedCapacity())).thenApply((result) -> null);
+    }
+
+    /**
+     * Record the capacity each secondary index consumed.
+     *
+     * @return the total capacity units reported, or null if none were.
+     */
+    private Double units(final String table, final ConsumedCapacity capacity) {
+        if (capacity == null) {
+            return null;
+        }
+
+        recordIndexes(table, capacity.getGlobalSecondaryIndexes());
+        recordIndexes(table, capacity.getLocalSecondaryIndexes());
+
+        return capacity.getCapacityUnits();
+    }
+
+    /**
+     * @return the total capacity units reported, or null if none were.
+     */
+    private Double units(final String table, final List<ConsumedCapacity> capacities) {
+        if (capacities == null || capacities.isEmpty()) {
+            return null;
+        }
+
+        double total = 0;
+        for (ConsumedCapacity capacity : capacities) {
+            Double units = units(table, capacity);
+            if (units != null) {
+                total += units;
+            }
+        }
+
+        return total;
+    }
+
+    private void recordIndexes(final String table, final Map<String, Capacity> indexes) {
+        if (indexes == null) {
+            return;
+        }
+
+        for (Map.Entry<String, Capacity> index : indexes.entrySet()) {
+            if (index.getValue().getCapacityUnits() != null) {
+                mExecutor.getCapacityTracker().recordIndex(table, index.getKey(),
+                        index.getValue().getCapacityUnits());
+            }
+        }
+    }
+
+    private void checkAttributeKey(DynamoKey key) {
+        if (null == key.getAttribute()) {
+            throw new IllegalArgumentException("Attribute must be non-null");
+        }
+    }
+
+    /**
+     * An AsyncHandler which completes a CompletableFuture.
+     */
+    private static class FutureHandler<Q extends AmazonWebServiceRequest, R>
+            extends CompletableFuture<R> implements AsyncHandler<Q, R> {
+
+        @Override
+        public void onError(final Exception exception) {
+            completeExceptionally(exception);
+        }
+
+        @Override
+        public void onSuccess(final Q request, final R result) {
+            complete(result);
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package com.p4square.grow.backend.dynamo;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * BulkWriter loads many items with concurrent batch writes.
+ *
+ * Each writer thread has a lane of its own, and every key is routed by its
+ * hash to one lane. Items are packed into batches of up to 25 per table and
+ * lane. Full batches are written by the lane's thread while the caller keeps
+ * adding items. Only a few batches per writer may be outstanding at once, so
+ * add() blocks when the writers fall behind and memory stays bounded no matter
+ * how large the input is.
+ *
+ * Each item replaces any existing item with the same key. A lane writes its
+ * batches in order, so the last item added for a key is the one which is
+ * kept. A failed batch is reported by the next call to add(), flush() or
+ * close().
+ *
+ * BulkWriter is not thread safe. Obtain one from DynamoDatabase.newBulkWriter().
+ */
+public class BulkWriter implements AutoCloseable {
+    /**
+     * The maximum number of items DynamoDB accepts in one BatchWriteItem request.
+     */
+    static final int MAX_BATCH_WRITE = 25;
+
+    /**
+     * The number of batches each writer may have queued.
+     */
+    private static final int BATCHES_PER_WRITER = 2;
+
+    /**
+     * Receives progress reports.
+     */
+    public interface Progress {
+        /**
+         * @param written The number of items written so far.
+         * @param elapsedMillis The time since the BulkWriter was created.
+         */
+        void report(long written, long elapsedMillis);
+    }
+
+    private final DynamoDatabase mDb;
+    private final MetricRegistry mMetricRegistry;
+    private final ExecutorService[] mLanes;
+    private final Semaphore mOutstanding;
+    private final int mPermits;
+
+    /**
+     * The pending batch of each table, indexed by lane.
+     */
+    private final Map<String, Batch[]> mBatches;
+
+    private final AtomicLong mWritten;
+    private final AtomicReference<RuntimeException> mFailure;
+    private final long mStart;
+
+    private Progress mProgress;
+    private long mProgressInterval;
+    private long mNextReport;
+
+    /**
+     * @param db The database to write to.
+     * @param writers The number of concurrent BatchWriteItem requests.
+     * @param metricRegistry Receives the DynamoDatabase.bulk.TABLE.items meter.
+     */
+    BulkWriter(final DynamoDatabase db, final int writers, final MetricRegistry metricRegistry) {
+        if (writers < 1) {
+            throw new IllegalArgumentException("writers must be positive.");
+        }
+
+        mDb = db;
+        mMetricRegistry = metricRegistry;
+        mLanes = new ExecutorService[writers];
+        for (int i = 0; i < writers; i++) {
+            mLanes[i] = Executors.newSingleThreadExecutor();
+        }
+        mPermits = writers * BATCHES_PER_WRITER;
+        mOutstanding = new Semaphore(mPermits);
+
+        mBatches = new HashMap<>();
+
+        mWritten = new AtomicLong();
+        mFailure = new AtomicReference<>();
+        mStart = System.currentTimeMillis();
+    }
+
+    /**
+     * Report progress every interval items.
+     *
+     * Reports are made from the thread calling add() and flush().
+     *
+     * @param interval The number of items between reports.
+     * @param progress The Progress to report to.
+     */
+    public void setProgress(final long interval, final Progress progress) {
+        mProgressInterval = interval;
+        mProgress = progress;
+        mNextReport = mWritten.get() + interval;
+    }
+
+    /**
+     * Queue an item to be written.
+     *
+     * @param key The item key. Attributes are ignored.
+     * @param values The attributes of the item.
+     */
+    public void add(final DynamoKey key, final Map<String, String> values) {
+        addItem(key.getTable(), DynamoItems.toItem(key, values));
+    }
+
+    /**
+     * Queue a complete item, including its key attributes, to be written.
+     *
+     * @param table The table name, without the prefix.
+     * @param item The item.
+     */
+    void addItem(final String table, final Map<String, AttributeValue> item) {
+        checkFailure();
+
+        final Map<String, AttributeValue> itemKey = DynamoItems.itemKey(item);
+        final int lane = (itemKey.hashCode() & Integer.MAX_VALUE) % mLanes.length;
+
+        Batch[] batches = mBatches.get(table);
+        if (batches == null) {
+            batches = new Batch[mLanes.length];
+            mBatches.put(table, batches);
+        }
+
+        // A batch may not write the same item twice. The lane writes the
+        // pending batch before the new one, so the new item wins.
+        if (batches[lane] != null && batches[lane].mKeys.contains(itemKey)) {
+            submit(table, lane);
+        }
+
+        if (batches[lane] == null) {
+            batches[lane] = new Batch();
+        }
+
+        final Batch batch = batches[lane];
+        batch.mItems.add(item);
+        batch.mKeys.add(itemKey);
+
+        if (batch.mItems.size() == MAX_BATCH_WRITE) {
+            submit(table, lane);
+        }
+
+        report();
+    }
+
+    /**
+     * Write all queued items and wait for them to complete.
+     */
+    public void flush() {
+        for (String table : new ArrayList<>(mBatches.keySet())) {
+            for (int lane = 0; lane < mLanes.length; lane++) {
+                submit(table, lane);
+            }
+        }
+
+        try {
+            mOutstanding.acquire(mPermits);
+            mOutstanding.release(mPermits);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AmazonClientException("Interrupted while flushing.", e);
+        }
+
+        checkFailure();
+        report();
+    }
+
+    /**
+     * Flush the remaining items and stop the writers.
+     */
+    @Override
+    public void close() {
+        try {
+            flush();
+        } finally {
+            for (ExecutorService lane : mLanes) {
+                lane.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * @return the number of items written so far.
+     */
+    public long getWritten() {
+        return mWritten.get();
+    }
+
+    /**
+     * @return the milliseconds since the BulkWriter was created.
+     */
+    public long getElapsedMillis() {
+        return System.currentTimeMillis() - mStart;
+    }
+
+    /**
+     * Hand a table's pending batch to its lane, waiting for a free slot.
+     */
+    private void submit(final String table, final int lane) {
+        final Batch[] batches = mBatches.get(table);
+        if (batches == null || batches[lane] == null) {
+            return;
+        }
+
+        final List<Map<String, AttributeValue>> batch = batches[lane].mItems;
+        batches[lane] = null;
+
+        try {
+            mOutstanding.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AmazonClientException("Interrupted while queueing a batch.", e);
+        }
+
+        try {
+            mLanes[lane].execute(() -> {
+                try {
+                    if (mFailure.get() == null) {
+                        mDb.batchWrite(table, batch);
+                        mWritten.addAndGet(batch.size());
+                        mMetricRegistry.meter(MetricRegistry.name("DynamoDatabase.bulk",
+                                    table, "items")).mark(batch.size());
+                    }
+
+                } catch (RuntimeException e) {
+                    mFailure.compareAndSet(null, e);
+
+                } finally {
+                    mOutstanding.release();
+                }
+            });
+
+        } catch (RuntimeException e) {
+            mOutstanding.release();
+            throw e;
+        }
+    }
+
+    private void checkFailure() {
+        RuntimeException failure = mFailure.get();
+        if (failure != null) {
+            throw new AmazonClientException("Bulk write failed after "
+                    + mWritten.get() + " items.", failure);
+        }
+    }
+
+    private void report() {
+        if (mProgress != null && mWritten.get() >= mNextReport) {
+            long written = mWritten.get();
+            mProgress.report(written, getElapsedMillis());
+            mNextReport = written - (written % mProgressInterval) + mProgressInterval;
+        }
+    }
+
+    /**
+     * Items waiting to be written together, and their keys.
+     */
+    private static class Batch {
+        final List<Map<String, AttributeValue>> mItems = new ArrayList<>(MAX_BATCH_WRITE);
+        final Set<Map<String, AttributeValue>> mKeys = new HashSet<>();
+    }
+}
@@ -0,0 +1,121 @@
+package com.p4square.grow.backend.dynamo;
+
+import java.io.PrintStream;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Function;
+
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughput;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import com.p4square.grow.backend.dynamo.RequestExecutor.Operation;
+
+/**
+ * CapacityReport compares the capacity tables consumed with the throughput
+ * they are provisioned with.
+ *
+ * Usage is read from a snapshot of the /metrics endpoint, which serializes
+ * the CapacityTracker metrics: the peak units consumed in one second and the
+ * fifteen minute rate of units consumed, for reads and writes on each table.
+ */
+class CapacityReport {
+    private static final String PREFIX = "DynamoDatabase.capacity.";
+
+    /**
+     * Suggested throughput leaves this much headroom above the observed peak.
+     */
+    static final double HEADROOM = 1.2;
+
+    private final JsonNode mGauges;
+    private final JsonNode mMeters;
+    private final Set<String> mTables;
+
+    /**
+     * @param metrics The metrics, as served by MetricsResource.
+     */
+    CapacityReport(final JsonNode metrics) {
+        if (metrics == null) {
+            throw new IllegalArgumentException("metrics must not be null.");
+        }
+
+        mGauges = metrics.path("gauges");
+        mMeters = metrics.path("meters");
+        mTables = new TreeSet<>();
+
+        Iterator<Map.Entry<String, JsonNode>> gauges = mGauges.fields();
+        while (gauges.hasNext()) {
+            String name = gauges.next().getKey();
+            for (Operation operation : Operation.values()) {
+                String suffix = "." + name(operation) + ".peak";
+                if (name.startsWith(PREFIX) && name.endsWith(suffix)) {
+                    mTables.add(name.substring(PREFIX.length(), name.length() - suffix.length()));
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the tables with recorded usage.
+     */
+    Set<String> getTables() {
+        return mTables;
+    }
+
+    /**
+     * @return the most units consumed in one second.
+     */
+    double getPeak(final String table, final Operation operation) {
+        return mGauges.path(PREFIX + table + "." + name(operation) + ".peak")
+            .path("value").asDouble(0);
+    }
+
+    /**
+     * @return the fifteen minute average of units consumed per second.
+     */
+    double getRate(final String table, final Operation operation) {
+        return mMeters.path(PREFIX + table + "." + name(operation) + ".units")
+            .path("m15_rate").asDouble(0);
+    }
+
+    /**
+     * @return the throughput which covers the observed peak with headroom.
+     */
+    long getSuggested(final String table, final Operation operation) {
+        return Math.max(1, (long) Math.ceil(getPeak(table, operation) * HEADROOM));
+    }
+
+    /**
+     * Print a line per table.
+     *
+     * @param out The stream to print to.
+     * @param provisioned Looks up the throughput of a table, returning null
+     *                    if it is unknown.
+     */
+    void print(final PrintStream out,
+            final Function<String, ProvisionedThroughput> provisioned) {
+
+        out.printf("%-16s %13s %15s %15s %13s\n", "Table", "Provisioned", "Peak/s",
+                "15m avg/s", "Suggested");
+        out.printf("%-16s %13s %15s %15s %13s\n", "", "read/write", "read/write",
+                "read/write", "read/write");
+
+        for (String table : mTables) {
+            ProvisionedThroughput throughput = provisioned.apply(table);
+            String current = (throughput == null) ? "?"
+                : throughput.getReadCapacityUnits() + "/" + throughput.getWriteCapacityUnits();
+
+            out.printf("%-16s %13s %7.1f/%-7.1f %7.2f/%-7.2f %13s\n", table, current,
+                    getPeak(table, Operation.READ), getPeak(table, Operation.WRITE),
+                    getRate(table, Operation.READ), getRate(table, Operation.WRITE),
+                    getSuggested(table, Operation.READ) + "/"
+                    + getSuggested(table, Operation.WRITE));
+        }
+    }
+
+    private static String name(final Operation operation) {
+        return operation.name().toLowerCase();
+    }
+}
@@ -0,0 +1,185 @@
+package com.p4square.grow.backend.dynamo;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * CapacityTracker accumulates the capacity units DynamoDB reports into
+ * per-table and per-request metrics.
+ *
+ * For each table, usage is kept for all reads, all writes, every request
+ * type (Get, Put, Update, Delete, Scan, BatchGet, BatchWrite) and every
+ * secondary index:
+ *
+ *   DynamoDatabase.capacity.TABLE.read
+ *       (and write, REQUEST, index.NAME)
+ *   DynamoDatabase.capacity.TABLE.read.units
+ *       Meter of capacity units consumed.
+ *   DynamoDatabase.capacity.TABLE.read.requests
+ *       Meter of requests which reported capacity.
+ *   DynamoDatabase.capacity.TABLE.read.peak
+ *       Gauge of the most units consumed in one second.
+ *
+ * The units meter's rates are capacity units per second, comparable to the
+ * table's provisioned throughput. Usage is shared by every tracker on the
+ * same MetricRegistry.
+ */
+class CapacityTracker {
+    private final MetricRegistry mMetricRegistry;
+    private final LongSupplier mClock;
+    private final Map<String, Usage> mUsage;
+
+    CapacityTracker(final MetricRegistry metricRegistry) {
+        this(metricRegistry, System::currentTimeMillis);
+    }
+
+    /**
+     * @param metricRegistry The registry to publish usage in.
+     * @param clock The current time in milliseconds.
+     */
+    CapacityTracker(final MetricRegistry metricRegistry, final LongSupplier clock) {
+        mMetricRegistry = metricRegistry;
+        mClock = clock;
+        mUsage = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Record the capacity consumed by one request.
+     *
+     * @param table The table name, without the prefix.
+     * @param operation The kind of capacity consumed.
+     * @param request The type of request, e.g. Get or BatchWrite.
+     * @param units The capacity units consumed.
+     */
+    void record(final String table, final RequestExecutor.Operation operation,
+            final String request, final double units) {
+
+        final long now = mClock.getAsLong();
+        getUsage(table, operation.name().toLowerCase()).add(now, units);
+        getUsage(table, request).add(now, units);
+    }
+
+    /**
+     * Record the capacity consumed on a secondary index.
+     *
+     * These units are included in the units recorded for the request.
+     */
+    void recordIndex(final String table, final String index, final double units) {
+        getUsage(table, MetricRegistry.name("index", index)).add(mClock.getAsLong(), units);
+    }
+
+    /**
+     * @return the usage of one kind of capacity on a table.
+     */
+    Usage getUsage(final String table, final RequestExecutor.Operation operation) {
+        return getUsage(table, operation.name().toLowerCase());
+    }
+
+    private Usage getUsage(final String table, final String name) {
+        final String baseName = MetricRegistry.name("DynamoDatabase.capacity", table, name);
+        return mUsage.computeIfAbsent(baseName, this::register);
+    }
+
+    /**
+     * Find the usage another tracker registered under baseName or register a
+     * new one.
+     */
+    private Usage register(final String baseName) {
+        final String peakName = MetricRegistry.name(baseName, "peak");
+
+        while (true) {
+            Metric existing = mMetricRegistry.getMetrics().get(peakName);
+            if (existing instanceof Usage) {
+                return (Usage) existing;
+            }
+
+            try {
+                Usage usage = new Usage(
+                        mMetricRegistry.meter(MetricRegistry.name(baseName, "units")),
+                        mMetricRegistry.meter(MetricRegistry.name(baseName, "requests")));
+                return mMetricRegistry.register(peakName, usage);
+
+            } catch (IllegalArgumentException e) {
+                if (!(mMetricRegistry.getMetrics().get(peakName) instanceof Usage)) {
+                    throw e;
+                }
+                // Registered concurrently. Use theirs.
+            }
+        }
+    }
+
+    /**
+     * The capacity consumed by one table, request type or index.
+     *
+     * As a Gauge, Usage reports the most units consumed in one second.
+     */
+    static class Usage implements Gauge<Double> {
+        private final Meter mUnits;
+        private final Meter mRequests;
+
+        private double mTotal;
+        private double mUnmarked;
+        private long mSecond = Long.MIN_VALUE;
+        private double mSecondUnits;
+        private double mPeak;
+
+        Usage(final Meter units, final Meter requests) {
+            mUnits = units;
+            mRequests = requests;
+        }
+
+        synchronized void add(final long nowMillis, final double units) {
+            mTotal += units;
+
+            final long second = nowMillis / 1000;
+            if (second != mSecond) {
+                mSecond = second;
+                mSecondUnits = 0;
+            }
+            mSecondUnits += units;
+            mPeak = Math.max(mPeak, mSecondUnits);
+
+            // Meters count whole units. Carry the fraction to the next request.
+            mUnmarked += units;
+            final long whole = (long) mUnmarked;
+            if (whole > 0) {
+                mUnits.mark(whole);
+                mUnmarked -= whole;
+            }
+
+            mRequests.mark();
+        }
+
+        /**
+         * @return the total units consumed.
+         */
+        synchronized double getTotal() {
+            return mTotal;
+        }
+
+        /**
+         * @return the most units consumed in one second.
+         */
+        synchronized double getPeak() {
+            return mPeak;
+        }
+
+        /**
+         * @return the number of requests recorded.
+         */
+        long getRequests() {
+            return mRequests.getCount();
+        }
+
+        @Override
+        public Double getValue() {
+            return getPeak();
+        }
+    }
+}
@@ -6,18 +6,25 @@ package com.p4square.grow.backend.dynamo;
 
 import java.util.Arrays;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 import com.p4square.grow.backend.dynamo.DynamoDatabase;
 import com.p4square.grow.backend.dynamo.DynamoKey;
 import com.p4square.grow.config.Config;
 import com.p4square.grow.model.UserRecord;
+import com.p4square.grow.provider.Codec;
+import com.p4square.grow.provider.CompressingCodec;
+import com.p4square.grow.provider.JacksonCodec;
 import com.p4square.grow.provider.Provider;
 
 /**
@@ -27,8 +34,30 @@ import com.p4square.grow.provider.Provider;
 public class DbTool {
     private static final FilenameFilter JSON_FILTER = new JsonFilter();
 
+    private static final int DEFAULT_SEGMENTS = 8;
+    private static final int DEFAULT_WRITERS = 4;
+    private static final int PROGRESS_INTERVAL = 500;
+
+    private static final String[] TABLES = { "strings",
+                                             "accounts",
+                                             "assessments",
+                                             "training",
+                                             "feedthreads",
+                                             "feedmessages"
+                                           };
+
+    /**
+     * Decodes JSON, Smile and compressed values. The threshold is never
+     * reached because the codec is only used for decoding.
+     */
+    private static final Codec<JsonNode> PRINT_CODEC = new CompressingCodec<>(
+            new JacksonCodec<>(JsonNode.class, JacksonCodec.Format.JSON),
+            Integer.MAX_VALUE, "DbTool", new MetricRegistry());
+
     private static Config mConfig;
     private static DynamoDatabase mDatabase;
+    private static int mSegments = DEFAULT_SEGMENTS;
+    private static int mWriters = DEFAULT_WRITERS;
 
     public static void usage() {
         System.out.println("java com.p4square.grow.backend.dynamo.DbTool <command>...\n");
@@ -36,6 +65,8 @@ public class DbTool {
         System.out.println("\t--domain <domain>                           Set config domain");
         System.out.println("\t--dev                                       Set config domain to dev");
         System.out.println("\t--config <file>                             Merge in config file");
+        System.out.println("\t--segments <n>                              Parallel scan segments (default 8)");
+        System.out.println("\t--writers <n>                               Parallel batch writers (default 4)");
         System.out.println("\t--list                                      List all tables");
         System.out.println("\t--create <table> <reads> <writes>           Create a table");
         System.out.println("\t--update <table> <reads> <writes>           Update table throughput");
@@ -45,6 +76,7 @@ public class DbTool {
         System.out.println("\t--delete <table> <key> <attribute>          Delete a value");
         System.out.println("\t--scan   <table>                            List all rows");
         System.out.println("\t--scanf  <table> <attribute>                List all rows");
+        System.out.println("\t--capacity-report <metrics.json|->          Compare consumed capacity to throughput");
         System.out.println();
         System.out.println("Bootstrap Commands:");
         System.out.println("\t--bootstrap <data>          Create all tables and import all data");
@@ -52,6 +84,8 @@ public class DbTool {
         System.out.println("\t--destroy                   Drop all tables");
         System.out.println("\t--addadmin <user> <pass>    Add a backend account");
         System.out.println("\t--import   <table> <file>   Backfill a table");
+        System.out.println("\t--export   <dir>            Snapshot all tables to dir");
+        System.out.println("\t--restore  <dir>            Restore all tables from a snapshot");
     }
 
     public static void main(String... args) {
@@ -82,6 +116,14 @@ public class DbTool {
                     mDatabase = null;
                     offset += 2;
 
+                } else if ("--segments".equals(args[offset])) {
+                    mSegments = Integer.parseInt(args[offset + 1]);
+                    offset += 2;
+
+                } else if ("--writers".equals(args[offset])) {
+                    mWriters = Integer.parseInt(args[offset + 1]);
+                    offset += 2;
+
                 } else if ("--list".equals(args[offset])) {
                     //offset = list(args, ++offset);
 
@@ -109,6 +151,9 @@ public class DbTool {
                 } else if ("--scanf".equals(args[offset])) {
                     offset = scanf(args, ++offset);
 
+                } else if ("--capacity-report".equals(args[offset])) {
+                    offset = capacityReport(args, ++offset);
+
                 /* Bootstrap Commands */
                 } else if ("--bootstrap".equals(args[offset])) {
                     if ("dev".equals(mConfig.getDomain())) {
@@ -130,6 +175,12 @@ public class DbTool {
                 } else if ("--import".equals(args[offset])) {
                     offset = importTable(args, ++offset);
 
+                } else if ("--export".equals(args[offset])) {
+                    offset = export(args, ++offset);
+
+                } else if ("--restore".equals(args[offset])) {
+                    offset = restore(args, ++offset);
+
                 } else {
                     throw new IllegalArgumentException("Unknown command " + args[offset]);
                 }
@@ -142,7 +193,7 @@ public class DbTool {
 
     private static DynamoDatabase getDatabase() {
         if (mDatabase == null) {
-            mDatabase = new DynamoDatabase(mConfig);
+            mDatabase = DynamoDatabases.create(mConfig).withPriority(DynamoDatabase.Priority.BATCH);
         }
 
         return mDatabase;
@@ -189,7 +240,8 @@ public class DbTool {
 
         DynamoDatabase db = getDatabase();
 
-        String value = db.getAttribute(DynamoKey.newAttributeKey(table, key, attribute));
+        String value = toText(db.getAttributeBytes(
+                    DynamoKey.newAttributeKey(table, key, attribute)));
 
         if (value == null) {
             value = "<null>";
@@ -249,33 +301,58 @@ public class DbTool {
     }
 
     private static void doScan(DynamoKey key) {
-        DynamoDatabase db = getDatabase();
+        final DynamoDatabase db = getDatabase();
+        final String attributeFilter = key.getAttribute();
+
+        final long start = System.currentTimeMillis();
+        final long count = db.scanParallelBytes(key.getTable(), mSegments, (itemKey, attributes) -> {
+            String keyString = itemKey.getHashKey();
+            if (itemKey.getRangeKey() != null) {
+                keyString += "(" + itemKey.getRangeKey() + ")";
+            }
 
-        String attributeFilter = key.getAttribute();
+            StringBuilder sb = new StringBuilder();
+            for (Map.Entry<String, byte[]> attribute : attributes.entrySet()) {
+                if (attributeFilter == null || attributeFilter.equals(attribute.getKey())) {
+                    sb.append(String.format("%s %s:%s\n%s\n\n",
+                            itemKey.getTable(), keyString, attribute.getKey(),
+                            toText(attribute.getValue())));
+                }
+            }
 
-        while (key != null) {
-            Map<DynamoKey, Map<String, String>> result = db.getAll(key);
+            // Print each item whole since segments are scanned concurrently.
+            System.out.print(sb);
+        });
 
-            key = null; // If there are no results, exit
+        System.err.printf("Scanned %d items in %d ms\n", count,
+                System.currentTimeMillis() - start);
+    }
 
-            for (Map.Entry<DynamoKey, Map<String, String>> entry : result.entrySet()) {
-                key = entry.getKey(); // Save the last key
+    /**
+     * Print the capacity report for a snapshot of the /metrics endpoint,
+     * read from a file or from stdin if the filename is -.
+     */
+    private static int capacityReport(String[] args, int offset) throws IOException {
+        String filename = args[offset++];
 
-                for (Map.Entry<String, String> attribute : entry.getValue().entrySet()) {
-                    if (attributeFilter == null || attributeFilter.equals(attribute.getKey())) {
-                        String keyString = key.getHashKey();
-                        if (key.getRangeKey() != null) {
-                            keyString += "(" + key.getRangeKey() + ")";
-                        }
-                        System.out.printf("%s %s:%s\n%s\n\n",
-                                key.getTable(), keyString, attribute.getKey(),
-                                attribute.getValue());
-                    }
-                }
-            }
+        JsonNode metrics;
+        if ("-".equals(filename)) {
+            metrics = new ObjectMapper().readTree(System.in);
+        } else {
+            metrics = new ObjectMapper().readTree(new File(filename));
         }
-    }
 
+        CapacityReport report = new CapacityReport(metrics);
+        if (report.getTables().isEmpty()) {
+            System.out.println("No DynamoDatabase.capacity metrics found.");
+            return offset;
+        }
+
+        DynamoDatabase db = getDatabase();
+        report.print(System.out, db::getProvisionedThroughput);
+
+        return offset;
+    }
 
     private static int bootstrapTables(String[] args, int offset) {
         DynamoDatabase db = getDatabase();
@@ -307,11 +384,13 @@ public class DbTool {
         String data = args[offset++];
         File baseDir = new File(data);
 
-        DynamoDatabase db = getDatabase();
-
-        insertQuestions(baseDir);
-        insertVideos(baseDir);
-        insertDefaultPlaylist(baseDir);
+        try (BulkWriter writer = newBulkWriter()) {
+            insertQuestions(writer, baseDir);
+            insertVideos(writer, baseDir);
+            insertDefaultPlaylist(writer, baseDir);
+            writer.flush();
+            printProgress("Loaded", writer.getWritten(), writer.getElapsedMillis());
+        }
 
         return offset;
     }
@@ -319,15 +398,7 @@ public class DbTool {
     private static int destroy(String[] args, int offset) {
         DynamoDatabase db = getDatabase();
 
-        final String[] tables = { "strings",
-                                  "accounts",
-                                  "assessments",
-                                  "training",
-                                  "feedthreads",
-                                  "feedmessages"
-                                };
-
-        for (String table : tables) {
+        for (String table : TABLES) {
             try {
                 db.deleteTable(table);
             } catch (Exception e) {
@@ -358,55 +429,106 @@ public class DbTool {
         String table = args[offset++];
         String filename = args[offset++];
 
-        DynamoDatabase db = getDatabase();
-
-        List<String> lines = Files.readAllLines(new File(filename).toPath(),
-                StandardCharsets.UTF_8);
-
-        int count = 0;
+        try (BulkWriter writer = newBulkWriter();
+             BufferedReader in = Files.newBufferedReader(new File(filename).toPath(),
+                 StandardCharsets.UTF_8)) {
 
-        String key = null;
-        Map<String, String> attributes = new HashMap<>();
-        for (String line : lines) {
-            if (line.length() == 0) {
-                if (attributes.size() > 0) {
-                    db.putKey(DynamoKey.newKey(table, key), attributes);
-                    count++;
-
-                    if (count % 50 == 0) {
-                        System.out.printf("Imported %d records into %s...\n", count, table);
+            String key = null;
+            Map<String, String> attributes = new HashMap<>();
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.length() == 0) {
+                    if (attributes.size() > 0) {
+                        writer.add(DynamoKey.newKey(table, key), attributes);
                     }
+                    key = null;
+                    attributes = new HashMap<>();
+                    continue;
                 }
-                key = null;
-                attributes = new HashMap<>();
-                continue;
-            }
 
-            if (key == null) {
-                key = line;
-                continue;
+                if (key == null) {
+                    key = line;
+                    continue;
+                }
+
+                int space = line.indexOf(' ');
+                String attribute = line.substring(0, space);
+                String value = line.substring(space + 1);
+
+                attributes.put(attribute, value);
             }
 
-            int space = line.indexOf(' ');
-            String attribute = line.substring(0, space);
-            String value = line.substring(space + 1);
+            // Finish up the remaining attributes.
+            if (key != null && attributes.size() > 0) {
+                writer.add(DynamoKey.newKey(table, key), attributes);
+            }
 
-            attributes.put(attribute, value);
+            writer.flush();
+            printProgress("Imported " + table + ":", writer.getWritten(),
+                    writer.getElapsedMillis());
         }
 
-        // Finish up the remaining attributes.
-        if (key != null && attributes.size() > 0) {
-            db.putKey(DynamoKey.newKey(table, key), attributes);
-            count++;
+        return offset;
+    }
+
+    private static int export(String[] args, int offset) throws IOException {
+        String dir = args[offset++];
+
+        DynamoDatabase db = getDatabase();
+        TableSnapshot snapshot = new TableSnapshot(new File(dir));
+
+        for (String table : TABLES) {
+            if (snapshot.isExported(table)) {
+                System.out.println("Skipping " + table + ", already exported.");
+                continue;
+            }
+
+            long start = System.currentTimeMillis();
+            long count = snapshot.export(db, table, mSegments);
+            printProgress("Exported " + table + ":", count, System.currentTimeMillis() - start);
         }
 
-        System.out.printf("Imported %d records into %s.\n", count, table);
+        return offset;
+    }
+
+    private static int restore(String[] args, int offset) throws IOException {
+        String dir = args[offset++];
+
+        TableSnapshot snapshot = new TableSnapshot(new File(dir));
+
+        for (String table : TABLES) {
+            if (!snapshot.isExported(table)) {
+                System.out.println("Skipping " + table + ", not in snapshot.");
+                continue;
+            }
+
+            try (BulkWriter writer = newBulkWriter()) {
+                snapshot.restore(writer, table);
+                printProgress("Restored " + table + ":", writer.getWritten(),
+                        writer.getElapsedMillis());
+            }
+        }
 
         return offset;
     }
 
-    private static void insertQuestions(File baseDir) throws IOException {
-        DynamoDatabase db = getDatabase();
+    /**
+     * Create a BulkWriter which prints its progress.
+     */
+    private static BulkWriter newBulkWriter() {
+        BulkWriter writer = getDatabase().newBulkWriter(mWriters);
+        writer.setProgress(PROGRESS_INTERVAL,
+                (written, elapsed) -> printProgress("Wrote", written, elapsed));
+        return writer;
+    }
+
+    private static void printProgress(String label, long written, long elapsedMillis) {
+        double rate = written * 1000.0 / Math.max(1, elapsedMillis);
+        System.out.printf("%s %d items in %d ms (%.1f items/s)\n", label, written,
+                elapsedMillis, rate);
+    }
+
+    private static void insertQuestions(BulkWriter writer, File baseDir) throws IOException {
         File questions = new File(baseDir, "questions");
 
         File[] files = questions.listFiles(JSON_FILTER);
@@ -418,21 +540,20 @@ public class DbTool {
 
             byte[] encoded = Files.readAllBytes(file.toPath());
             String value = new String(encoded, StandardCharsets.UTF_8);
-            db.putAttribute(DynamoKey.newAttributeKey("strings",
-                        "/questions/" + questionId, "value"), value);
-            System.out.println("Inserted /questions/" + questionId);
+            writer.add(DynamoKey.newKey("strings", "/questions/" + questionId),
+                    valueItem(value));
+            System.out.println("Queued /questions/" + questionId);
         }
 
         String filename = files[0].getName();
         String first    = filename.substring(0, filename.lastIndexOf('.'));
         int    count    = files.length;
         String summary  = "{\"first\": \"" + first + "\", \"count\": " + count + "}";
-        db.putAttribute(DynamoKey.newAttributeKey("strings", "/questions", "value"), summary);
-        System.out.println("Inserted /questions");
+        writer.add(DynamoKey.newKey("strings", "/questions"), valueItem(summary));
+        System.out.println("Queued /questions");
     }
 
-    private static void insertVideos(File baseDir) throws IOException {
-        DynamoDatabase db = getDatabase();
+    private static void insertVideos(BulkWriter writer, File baseDir) throws IOException {
         File videos = new File(baseDir, "videos");
 
         for (File topic : videos.listFiles()) {
@@ -455,21 +576,50 @@ public class DbTool {
                 System.out.println("Found /training/" + topicName + ":" + videoId);
             }
 
-            db.putKey(DynamoKey.newKey("strings",
-                        "/training/" + topicName), attributes);
-            System.out.println("Inserted /training/" + topicName);
+            writer.add(DynamoKey.newKey("strings", "/training/" + topicName), attributes);
+            System.out.println("Queued /training/" + topicName);
         }
     }
 
-    private static void insertDefaultPlaylist(File baseDir) throws IOException {
-        DynamoDatabase db = getDatabase();
+    private static void insertDefaultPlaylist(BulkWriter writer, File baseDir)
+            throws IOException {
         File file = new File(baseDir, "videos/playlist.json");
 
         byte[] encoded = Files.readAllBytes(file.toPath());
         String value = new String(encoded, StandardCharsets.UTF_8);
-        db.putAttribute(DynamoKey.newAttributeKey("strings",
-                    "/training/defaultplaylist", "value"), value);
-        System.out.println("Inserted /training/defaultplaylist");
+        writer.add(DynamoKey.newKey("strings", "/training/defaultplaylist"), valueItem(value));
+        System.out.println("Queued /training/defaultplaylist");
+    }
+
+    /**
+     * @return the attributes of a strings item holding value.
+     */
+    /**
+     * Convert a stored value to text for printing.
+     *
+     * Values written by a Smile or compressing Codec are printed as JSON.
+     * Anything else is printed as UTF-8 text.
+     *
+     * @param data The stored value, or null.
+     * @return The text of the value, or null if data is null.
+     */
+    static String toText(byte[] data) {
+        if (data == null) {
+            return null;
+        }
+
+        try {
+            return PRINT_CODEC.decode(data).toString();
+        } catch (IOException e) {
+            // Not JSON. Print it as it is.
+            return new String(data, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static Map<String, String> valueItem(String value) {
+        Map<String, String> attributes = new HashMap<>();
+        attributes.put("value", value);
+        return attributes;
     }
 
     private static class JsonFilter implements FilenameFilter {
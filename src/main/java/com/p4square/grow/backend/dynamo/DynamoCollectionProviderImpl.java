@@ -5,27 +5,53 @@
 package com.p4square.grow.backend.dynamo;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.TreeMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
 
+import com.p4square.grow.provider.AsyncCollectionProvider;
+import com.p4square.grow.provider.AsyncProviders;
 import com.p4square.grow.provider.CollectionProvider;
-import com.p4square.grow.provider.JsonEncodedProvider;
+import com.p4square.grow.provider.Cursor;
+import com.p4square.grow.provider.LazyCursor;
+import com.p4square.grow.provider.Page;
+import com.p4square.grow.provider.Codec;
+import com.p4square.grow.provider.JacksonCodec;
 
 /**
  * 
  * @author Jesse Morgan <jesse@jesterpm.net>
  */
-public class DynamoCollectionProviderImpl<V> implements CollectionProvider<String, String, V> {
+public class DynamoCollectionProviderImpl<V>
+    implements CollectionProvider<String, String, V>,
+               AsyncCollectionProvider<String, String, V> {
     private final DynamoDatabase mDb;
     private final String mTable;
-    private final Class<V> mClazz;
+    private final Codec<V> mCodec;
 
     public DynamoCollectionProviderImpl(DynamoDatabase db, String table, Class<V> clazz) {
+        this(db, table, new JacksonCodec<>(clazz, JacksonCodec.Format.JSON));
+    }
+
+    /**
+     * @param codec A text Codec for the values.
+     */
+    public DynamoCollectionProviderImpl(DynamoDatabase db, String table, Codec<V> codec) {
+        if (codec.isBinary()) {
+            throw new IllegalArgumentException("codec must not be binary.");
+        }
+
         mDb = db;
         mTable = table;
-        mClazz = clazz;
+        mCodec = codec;
     }
 
     @Override
@@ -41,25 +67,55 @@ public class DynamoCollectionProviderImpl<V> implements CollectionProvider<Strin
 
     @Override
     public Map<String, V> query(String collection, int limit) throws IOException {
+        if (limit < 0) {
+            return decodeRow(mDb.getKey(DynamoKey.newKey(mTable, collection)), limit);
+        }
+
         Map<String, V> result = new LinkedHashMap<>();
+        Cursor<String, V> cursor = stream(collection, Page.first(limit));
+        while (cursor.hasNext()) {
+            Map.Entry<String, V> entry = cursor.next();
+            result.put(entry.getKey(), entry.getValue());
+        }
 
-        Map<String, String> row = mDb.getKey(DynamoKey.newKey(mTable, collection));
-        if (row.size() > 0) {
-            int count = 0;
-            for (Map.Entry<String, String> c : row.entrySet()) {
-                if (limit >= 0 && ++count > limit) {
-                    break; // Limit reached.
-                }
+        return Collections.unmodifiableMap(result);
+    }
 
-                String key = c.getKey();
-                String blob = c.getValue();
-                V obj = decode(blob);
+    /**
+     * Iterate over one page of a collection in attribute name order.
+     *
+     * Each collection is a single item, so the whole item is still read, but
+     * only the values on the page are decoded.
+     */
+    @Override
+    public Cursor<String, V> stream(String collection, Page<String> page) throws IOException {
+        TreeMap<String, String> row = new TreeMap<>(
+                mDb.getKey(DynamoKey.newKey(mTable, collection)));
 
-                result.put(key, obj);
+        Map<String, String> tail = row;
+        if (page.getAfter() != null) {
+            tail = row.tailMap(page.getAfter(), false);
+        }
+
+        return new LazyCursor<>(tail.entrySet().iterator(), page.getLimit(), this::decode);
+    }
+
+    @Override
+    public Map<String, Map<String, V>> queryAll(Collection<String> collections) throws IOException {
+        List<DynamoKey> keys = new ArrayList<>();
+        for (String collection : collections) {
+            keys.add(DynamoKey.newKey(mTable, collection));
+        }
+
+        Map<String, Map<String, V>> result = new LinkedHashMap<>();
+        for (Map.Entry<DynamoKey, Map<String, String>> row : mDb.getKeys(keys).entrySet()) {
+            Map<String, V> items = decodeRow(row.getValue(), -1);
+            if (items.size() > 0) {
+                result.put(row.getKey().getHashKey(), items);
             }
         }
 
-        return Collections.unmodifiableMap(result);
+        return result;
     }
 
     @Override
@@ -72,6 +128,121 @@ public class DynamoCollectionProviderImpl<V> implements CollectionProvider<Strin
         }
     }
 
+    /**
+     * Apply all of the changes with a single UpdateItem.
+     */
+    @Override
+    public void putAll(String collection, Map<String, V> values) throws IOException {
+        mDb.putAttributes(DynamoKey.newKey(mTable, collection), encodeAll(values));
+    }
+
+    /**
+     * Check key and apply all of the changes with a single conditional
+     * UpdateItem.
+     */
+    @Override
+    public boolean putAllIf(String collection, String key, V expected, Map<String, V> values)
+            throws IOException {
+
+        return mDb.putAttributesIf(DynamoKey.newKey(mTable, collection), key,
+                expected == null ? null : encode(expected), encodeAll(values));
+    }
+
+    private Map<String, String> encodeAll(Map<String, V> values) throws IOException {
+        Map<String, String> blobs = new LinkedHashMap<>();
+        for (Map.Entry<String, V> entry : values.entrySet()) {
+            V obj = entry.getValue();
+            blobs.put(entry.getKey(), obj == null ? null : encode(obj));
+        }
+
+        return blobs;
+    }
+
+    @Override
+    public CompletableFuture<V> getAsync(String collection, String key) {
+        return mDb.getAttributeAsync(DynamoKey.newAttributeKey(mTable, collection, key))
+            .thenApply(AsyncProviders.unchecked(this::decode));
+    }
+
+    @Override
+    public CompletableFuture<Map<String, V>> queryAsync(String collection) {
+        return queryAsync(collection, -1);
+    }
+
+    @Override
+    public CompletableFuture<Map<String, V>> queryAsync(String collection, int limit) {
+        return mDb.getKeyAsync(DynamoKey.newKey(mTable, collection))
+            .thenApply(AsyncProviders.unchecked((row) -> decodeRow(row, limit)));
+    }
+
+    @Override
+    public CompletableFuture<Void> putAsync(String collection, String key, V obj) {
+        final DynamoKey dynamoKey = DynamoKey.newAttributeKey(mTable, collection, key);
+        if (obj == null) {
+            return mDb.deleteAttributeAsync(dynamoKey);
+        }
+
+        final String blob;
+        try {
+            blob = encode(obj);
+        } catch (IOException e) {
+            return AsyncProviders.failed(e);
+        }
+
+        return mDb.putAttributeAsync(dynamoKey, blob);
+    }
+
+    /**
+     * Scan every collection in the table using parallel segments.
+     *
+     * The scan runs in the batch lane so it yields to request traffic. The
+     * consumer is called concurrently from the scan workers.
+     *
+     * @param segments The number of segments to scan concurrently.
+     * @param consumer Receives the key and decoded items of each collection.
+     * @return The number of collections scanned.
+     * @throws UncheckedIOException if an item cannot be decoded.
+     */
+    public long scanCollections(final int segments,
+            final BiConsumer<String, Map<String, V>> consumer) {
+
+        final DynamoDatabase db = mDb.withPriority(DynamoDatabase.Priority.BATCH);
+        return db.scanParallel(mTable, segments, (key, row) -> {
+            try {
+                consumer.accept(key.getHashKey(), decodeRow(row, -1));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Decode at most limit attributes of a row, in attribute name order.
+     *
+     * stream() pages in the same order, so a limited query returns the same
+     * entries as the start of an unlimited one.
+     */
+    private Map<String, V> decodeRow(Map<String, String> row, int limit) throws IOException {
+        Map<String, V> result = new LinkedHashMap<>();
+
+        if (row.size() > 0) {
+            int count = 0;
+            for (Map.Entry<String, String> c : new TreeMap<>(row).entrySet()) {
+                if (limit >= 0 && ++count > limit) {
+                    break; // Limit reached.
+                }
+
+                String key = c.getKey();
+                String blob = c.getValue();
+                V obj = decode(blob);
+
+                result.put(key, obj);
+            }
+        }
+
+        return Collections.unmodifiableMap(result);
+    }
+
     /**
      * Encode the object as JSON.
      *
@@ -80,11 +251,7 @@ public class DynamoCollectionProviderImpl<V> implements CollectionProvider<Strin
      * @throws IOException if the object cannot be encoded.
      */
     protected String encode(V obj) throws IOException {
-        if (mClazz == String.class) {
-            return (String) obj;
-        } else {
-            return JsonEncodedProvider.MAPPER.writeValueAsString(obj);
-        }
+        return mCodec.encodeString(obj);
     }
 
     /**
@@ -95,15 +262,6 @@ public class DynamoCollectionProviderImpl<V> implements CollectionProvider<Strin
      * @throws IOException If an object cannot be decoded.
      */
     protected V decode(String blob) throws IOException {
-        if (blob == null) {
-            return null;
-        }
-
-        if (mClazz == String.class) {
-            return (V) blob;
-        }
-
-        V obj = JsonEncodedProvider.MAPPER.readValue(blob, mClazz);
-        return obj;
+        return mCodec.decodeString(blob);
     }
 }
@@ -4,186 +4,185 @@
 
 package com.p4square.grow.backend.dynamo;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.LinkedHashMap;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
-import com.amazonaws.regions.Region;
-import com.amazonaws.regions.Regions;
-import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClient;
-import com.amazonaws.services.dynamodbv2.model.AttributeAction;
-import com.amazonaws.services.dynamodbv2.model.AttributeDefinition;
 import com.amazonaws.services.dynamodbv2.model.AttributeValue;
-import com.amazonaws.services.dynamodbv2.model.AttributeValueUpdate;
-import com.amazonaws.services.dynamodbv2.model.CreateTableRequest;
-import com.amazonaws.services.dynamodbv2.model.CreateTableResult;
-import com.amazonaws.services.dynamodbv2.model.DeleteItemRequest;
-import com.amazonaws.services.dynamodbv2.model.DeleteItemResult;
-import com.amazonaws.services.dynamodbv2.model.DeleteTableRequest;
-import com.amazonaws.services.dynamodbv2.model.DeleteTableResult;
-import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
-import com.amazonaws.services.dynamodbv2.model.GetItemResult;
-import com.amazonaws.services.dynamodbv2.model.KeySchemaElement;
-import com.amazonaws.services.dynamodbv2.model.KeyType;
 import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughput;
-import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
-import com.amazonaws.services.dynamodbv2.model.PutItemResult;
-import com.amazonaws.services.dynamodbv2.model.ScanRequest;
-import com.amazonaws.services.dynamodbv2.model.ScanResult;
-import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
-import com.amazonaws.services.dynamodbv2.model.UpdateItemResult;
-import com.amazonaws.services.dynamodbv2.model.UpdateTableRequest;
-import com.amazonaws.services.dynamodbv2.model.UpdateTableResult;
-
-import com.p4square.grow.config.Config;
-import com.p4square.grow.config.ConfigCredentialProvider;
 
 /**
- * A wrapper around the Dynamo API.
+ * The operations Grow performs on DynamoDB tables.
+ *
+ * Every item has a string hash key named id and an optional string range key
+ * named range. The common item operations are also available in non-blocking
+ * variants which return a CompletableFuture.
+ *
+ * AwsDynamoDatabase talks to DynamoDB. InMemoryDynamoDatabase keeps tables
+ * in memory for tests and load tests. Use DynamoDatabases.create() to get
+ * the configured implementation.
  */
-public class DynamoDatabase {
-    private final AmazonDynamoDBClient mClient;
-    private final String mTablePrefix;
-
-    public DynamoDatabase(final Config config) {
-        mClient = new AmazonDynamoDBClient(new ConfigCredentialProvider(config));
-
-        String endpoint = config.getString("dynamoEndpoint");
-        if (endpoint != null) {
-            mClient.setEndpoint(endpoint);
-        }
-
-        String region = config.getString("awsRegion");
-        if (region != null) {
-            mClient.setRegion(Region.getRegion(Regions.fromName(region)));
-        }
-
-        mTablePrefix = config.getString("dynamoTablePrefix", "");
+public interface DynamoDatabase {
+    /**
+     * The lanes requests may be sent in.
+     */
+    enum Priority {
+        /**
+         * Requests made on behalf of users.
+         */
+        REQUEST,
+
+        /**
+         * Bulk jobs and tools which should yield to request traffic.
+         */
+        BATCH
     }
 
-    public void createTable(String name, long reads, long writes) {
-        ArrayList<AttributeDefinition> attributeDefinitions = new ArrayList<>();
-        attributeDefinitions.add(new AttributeDefinition()
-                .withAttributeName("id")
-                .withAttributeType("S"));
-
-        ArrayList<KeySchemaElement> ks = new ArrayList<>();
-        ks.add(new KeySchemaElement().withAttributeName("id").withKeyType(KeyType.HASH));
-
-        ProvisionedThroughput provisionedThroughput = new ProvisionedThroughput()
-            .withReadCapacityUnits(reads)
-            .withWriteCapacityUnits(writes);
-
-        CreateTableRequest request = new CreateTableRequest()
-            .withTableName(mTablePrefix + name)
-            .withAttributeDefinitions(attributeDefinitions)
-            .withKeySchema(ks)
-            .withProvisionedThroughput(provisionedThroughput);
-
-        CreateTableResult result = mClient.createTable(request);
-    }
+    /**
+     * Get a view of this database which sends requests in another lane.
+     *
+     * The view shares the connection and throughput budgets of this
+     * database. Closing either closes both.
+     *
+     * @param priority The lane for requests made through the view.
+     * @return A DynamoDatabase using priority.
+     */
+    DynamoDatabase withPriority(Priority priority);
 
-    public void updateTable(String name, long reads, long writes) {
-        ProvisionedThroughput provisionedThroughput = new ProvisionedThroughput()
-            .withReadCapacityUnits(reads)
-            .withWriteCapacityUnits(writes);
+    /**
+     * Release the connection and any threads.
+     */
+    void close();
 
-        UpdateTableRequest request = new UpdateTableRequest()
-            .withTableName(mTablePrefix + name)
-            .withProvisionedThroughput(provisionedThroughput);
+    void createTable(String name, long reads, long writes);
 
-        UpdateTableResult result = mClient.updateTable(request);
-    }
+    void updateTable(String name, long reads, long writes);
 
-    public void deleteTable(String name) {
-        DeleteTableRequest deleteTableRequest = new DeleteTableRequest()
-            .withTableName(mTablePrefix + name);
+    void deleteTable(String name);
 
-        DeleteTableResult result = mClient.deleteTable(deleteTableRequest);
-    }
+    /**
+     * Get the throughput a table is provisioned with.
+     *
+     * @param name The table name.
+     * @return The provisioned read and write capacity units, or null if the
+     *         table does not exist.
+     */
+    ProvisionedThroughput getProvisionedThroughput(String name);
 
     /**
-     * Get all rows from a table.
+     * Get one page of rows from a table.
      *
      * The key parameter must specify a table. If hash/range key is specified,
      * the scan will begin after that key.
      *
      * @param key Previous key to start with.
-     * @return An ordered map of all results.
+     * @return An ordered map of the results.
      */
-    public Map<DynamoKey, Map<String, String>> getAll(final DynamoKey key) {
-        ScanRequest scanRequest = new ScanRequest().withTableName(mTablePrefix + key.getTable());
-
-        if (key.getHashKey() != null) {
-            scanRequest.setExclusiveStartKey(generateKey(key));
-        }
-
-        ScanResult scanResult = mClient.scan(scanRequest);
-
-        Map<DynamoKey, Map<String, String>> result = new LinkedHashMap<>();
-        for (Map<String, AttributeValue> map : scanResult.getItems()) {
-            String id = null;
-            String range = null;
-            Map<String, String> row = new LinkedHashMap<>();
-            for (Map.Entry<String, AttributeValue> entry : map.entrySet()) {
-                if ("id".equals(entry.getKey())) {
-                    id = entry.getValue().getS();
-                } else if ("range".equals(entry.getKey())) {
-                    range = entry.getValue().getS();
-                } else {
-                    row.put(entry.getKey(), entry.getValue().getS());
-                }
-            }
-            result.put(DynamoKey.newRangeKey(key.getTable(), id, range), row);
-        }
-
-        return result;
-    }
+    Map<DynamoKey, Map<String, String>> getAll(DynamoKey key);
+
+    /**
+     * Scan an entire table using parallel segments.
+     *
+     * Each segment is scanned page by page on its own worker thread and every
+     * item is passed to the consumer as soon as its page arrives, so the table
+     * is never held in memory. The consumer is called concurrently from the
+     * workers and must be thread safe. Items are passed without the id and
+     * range attributes. The scan fails with an IllegalStateException if an
+     * item has a binary attribute. Use scanParallelBytes() for tables which
+     * may hold values written by a binary Codec.
+     *
+     * @param table The table to scan.
+     * @param segments The number of segments to scan concurrently.
+     * @param consumer Receives the key and attributes of each item.
+     * @return The number of items scanned.
+     */
+    long scanParallel(String table, int segments,
+            BiConsumer<DynamoKey, Map<String, String>> consumer);
 
-    public Map<String, String> getKey(final DynamoKey key) {
-        GetItemRequest getItemRequest = new GetItemRequest()
-            .withTableName(mTablePrefix + key.getTable())
-            .withKey(generateKey(key));
+    /**
+     * Scan an entire table using parallel segments, passing the value of each
+     * attribute as bytes: the contents of binary attributes and the UTF-8
+     * encoding of string attributes. Attributes of other types are omitted.
+     *
+     * @see #scanParallel(String, int, BiConsumer)
+     */
+    long scanParallelBytes(String table, int segments,
+            BiConsumer<DynamoKey, Map<String, byte[]>> consumer);
 
-        GetItemResult getItemResult = mClient.getItem(getItemRequest);
-        Map<String, AttributeValue> map = getItemResult.getItem();
+    /**
+     * Scan an entire table using parallel segments, passing each raw item,
+     * including its key and binary attributes, to the consumer.
+     *
+     * @see #scanParallel(String, int, BiConsumer)
+     */
+    long scanItems(String table, int segments, Consumer<Map<String, AttributeValue>> consumer);
 
-        Map<String, String> result = new LinkedHashMap<>();
-        if (map != null) {
-            for (Map.Entry<String, AttributeValue> entry : map.entrySet()) {
-                if (!"id".equals(entry.getKey())) {
-                    result.put(entry.getKey(), entry.getValue().getS());
-                }
-            }
-        }
+    Map<String, String> getKey(DynamoKey key);
 
-        return result;
-    }
+    /**
+     * Non-blocking variant of getKey().
+     */
+    CompletableFuture<Map<String, String>> getKeyAsync(DynamoKey key);
 
-    public String getAttribute(final DynamoKey key) {
-        checkAttributeKey(key);
+    String getAttribute(DynamoKey key);
 
-        GetItemRequest getItemRequest = new GetItemRequest()
-            .withTableName(mTablePrefix + key.getTable())
-            .withKey(generateKey(key))
-            .withAttributesToGet(key.getAttribute());
+    /**
+     * Non-blocking variant of getAttribute().
+     */
+    CompletableFuture<String> getAttributeAsync(DynamoKey key);
 
-        GetItemResult result = mClient.getItem(getItemRequest);
-        Map<String, AttributeValue> map = result.getItem();
+    /**
+     * Get an attribute as bytes.
+     *
+     * Binary attributes are returned as is. String attributes are returned
+     * as UTF-8.
+     *
+     * @param key The attribute key.
+     * @return The value or null if the attribute does not exist.
+     */
+    byte[] getAttributeBytes(DynamoKey key);
 
-        if (map == null) {
-            return null;
-        }
+    /**
+     * Non-blocking variant of getAttributeBytes().
+     */
+    CompletableFuture<byte[]> getAttributeBytesAsync(DynamoKey key);
 
-        AttributeValue value = map.get(key.getAttribute());
-        if (value != null) {
-            return value.getS();
+    /**
+     * Get several complete items at once.
+     *
+     * The keys may span tables.
+     *
+     * @param keys The item keys. Attributes are ignored.
+     * @return A map of the requested keys to their attributes. Keys which do
+     *         not exist are omitted.
+     */
+    Map<DynamoKey, Map<String, String>> getKeys(Collection<DynamoKey> keys);
 
-        } else {
-            return null;
-        }
-    }
+    /**
+     * Get several attributes at once.
+     *
+     * The keys may span tables and items. Each item is requested only once.
+     *
+     * @param keys The attribute keys.
+     * @return A map of the requested keys to values. Missing attributes are
+     *         omitted.
+     */
+    Map<DynamoKey, String> getAttributes(Collection<DynamoKey> keys);
+
+    /**
+     * Get several attributes at once as bytes.
+     *
+     * Binary attributes are returned as is. String attributes are returned
+     * as UTF-8.
+     *
+     * @param keys The attribute keys.
+     * @return A map of the requested keys to values. Missing attributes are
+     *         omitted.
+     */
+    Map<DynamoKey, byte[]> getAttributeBytes(Collection<DynamoKey> keys);
 
     /**
      * Set all attributes for the given key.
@@ -191,21 +190,27 @@ public class DynamoDatabase {
      * @param key The key.
      * @param values Map of attributes to values.
      */
-    public void putKey(final DynamoKey key, final Map<String, String> values) {
-        Map<String, AttributeValue> item = new HashMap<>();
-        for (Map.Entry<String, String> entry : values.entrySet()) {
-            item.put(entry.getKey(), new AttributeValue().withS(entry.getValue()));
-        }
-
-        // Set the Key
-        item.putAll(generateKey(key));
+    void putKey(DynamoKey key, Map<String, String> values);
 
-        PutItemRequest putItemRequest = new PutItemRequest()
-            .withTableName(mTablePrefix + key.getTable())
-            .withItem(item);
+    /**
+     * Create a BulkWriter for loading many items.
+     *
+     * The BulkWriter's requests are made in this database's lane and
+     * within its budgets.
+     *
+     * @param writers The number of concurrent batch writes.
+     * @return A new BulkWriter. The caller must close it.
+     */
+    BulkWriter newBulkWriter(int writers);
 
-        PutItemResult result = mClient.putItem(putItemRequest);
-    }
+    /**
+     * Put up to 25 complete items into one table in one batch.
+     *
+     * @param table The table name.
+     * @param items The items to put, including their key attributes. No two
+     *              may have the same key.
+     */
+    void batchWrite(String table, List<Map<String, AttributeValue>> items);
 
     /**
      * Set the particular attributes of the given key.
@@ -213,75 +218,79 @@ public class DynamoDatabase {
      * @param key The key.
      * @param value The new value.
      */
-    public void putAttribute(final DynamoKey key, final String value) {
-        checkAttributeKey(key);
-
-        Map<String, AttributeValueUpdate> updateItem = new HashMap<>();
-        updateItem.put(key.getAttribute(),
-                new AttributeValueUpdate()
-                .withAction(AttributeAction.PUT)
-                .withValue(new AttributeValue().withS(value)));
-
-        UpdateItemRequest updateItemRequest = new UpdateItemRequest()
-            .withTableName(mTablePrefix + key.getTable())
-            .withKey(generateKey(key))
-            .withAttributeUpdates(updateItem);
-        // TODO: Check conditions.
-
-        UpdateItemResult result = mClient.updateItem(updateItemRequest);
-    }
+    void putAttribute(DynamoKey key, String value);
 
     /**
-     * Delete the given key.
+     * Set and remove several attributes of the given key in one atomic update.
      *
-     * @param key The key.
+     * @param key The item key. Attributes are ignored.
+     * @param values Map of attributes to values. A null value removes the
+     *               attribute.
      */
-    public void deleteKey(final DynamoKey key) {
-        DeleteItemRequest deleteItemRequest = new DeleteItemRequest()
-            .withTableName(mTablePrefix + key.getTable())
-            .withKey(generateKey(key));
+    void putAttributes(DynamoKey key, Map<String, String> values);
 
-        DeleteItemResult result = mClient.deleteItem(deleteItemRequest);
-    }
+    /**
+     * Set and remove several attributes of the given key in one atomic
+     * update, if an attribute holds the expected value.
+     *
+     * @param key The item key. Attributes are ignored.
+     * @param attribute The attribute to check.
+     * @param expected The value attribute must hold, or null if it must be
+     *                 missing.
+     * @param values Map of attributes to values. A null value removes the
+     *               attribute.
+     * @return true if the update was applied, false if attribute did not
+     *         hold the expected value.
+     */
+    boolean putAttributesIf(DynamoKey key, String attribute, String expected,
+            Map<String, String> values);
 
     /**
-     * Delete an attribute from the given key.
+     * Replace an attribute of the given key if it holds the expected value.
      *
      * @param key The key.
+     * @param expected The value the attribute must hold, or null if it must
+     *                 be missing.
+     * @param value The new value.
+     * @return true if the attribute was replaced, false if it did not hold
+     *         the expected value.
      */
-    public void deleteAttribute(final DynamoKey key) {
-        checkAttributeKey(key);
+    boolean putAttributeIf(DynamoKey key, AttributeValue expected, AttributeValue value);
 
-        Map<String, AttributeValueUpdate> updateItem = new HashMap<>();
-        updateItem.put(key.getAttribute(),
-                new AttributeValueUpdate().withAction(AttributeAction.DELETE));
-
-        UpdateItemRequest updateItemRequest = new UpdateItemRequest()
-            .withTableName(mTablePrefix + key.getTable())
-            .withKey(generateKey(key))
-            .withAttributeUpdates(updateItem);
+    /**
+     * Non-blocking variant of putAttribute().
+     */
+    CompletableFuture<Void> putAttributeAsync(DynamoKey key, String value);
 
-        UpdateItemResult result = mClient.updateItem(updateItemRequest);
-    }
+    /**
+     * Set an attribute of the given key to a binary value.
+     *
+     * @param key The key.
+     * @param value The new value.
+     */
+    void putBinaryAttribute(DynamoKey key, byte[] value);
 
     /**
-     * Generate a DynamoDB Key Map from the DynamoKey.
+     * Non-blocking variant of putBinaryAttribute().
      */
-    private Map<String, AttributeValue> generateKey(final DynamoKey key) {
-        HashMap<String, AttributeValue> keyMap = new HashMap<>();
-        keyMap.put("id", new AttributeValue().withS(key.getHashKey()));
+    CompletableFuture<Void> putBinaryAttributeAsync(DynamoKey key, byte[] value);
 
-        String range = key.getRangeKey();
-        if (range != null) {
-            keyMap.put("range", new AttributeValue().withS(range));
-        }
+    /**
+     * Delete the given key.
+     *
+     * @param key The key.
+     */
+    void deleteKey(DynamoKey key);
 
-        return keyMap;
-    }
+    /**
+     * Delete an attribute from the given key.
+     *
+     * @param key The key.
+     */
+    void deleteAttribute(DynamoKey key);
 
-    private void checkAttributeKey(DynamoKey key) {
-        if (null == key.getAttribute()) {
-            throw new IllegalArgumentException("Attribute must be non-null");
-        }
-    }
+    /**
+     * Non-blocking variant of deleteAttribute().
+     */
+    CompletableFuture<Void> deleteAttributeAsync(DynamoKey key);
 }
@@ -0,0 +1,36 @@
+package com.p4square.grow.backend.dynamo;
+
+import com.codahale.metrics.MetricRegistry;
+
+import com.p4square.grow.config.Config;
+
+/**
+ * Creates the configured DynamoDatabase.
+ *
+ * The dynamoDatabase setting selects the implementation: aws (the default)
+ * for DynamoDB or memory for InMemoryDynamoDatabase.
+ */
+public final class DynamoDatabases {
+    private DynamoDatabases() {
+    }
+
+    public static DynamoDatabase create(final Config config) {
+        return create(config, new MetricRegistry());
+    }
+
+    public static DynamoDatabase create(final Config config,
+            final MetricRegistry metricRegistry) {
+
+        final String type = config.getString("dynamoDatabase", "aws");
+        switch (type) {
+            case "aws":
+                return new AwsDynamoDatabase(config, metricRegistry);
+
+            case "memory":
+                return new InMemoryDynamoDatabase(config, metricRegistry);
+
+            default:
+                throw new IllegalArgumentException("Unknown dynamoDatabase " + type);
+        }
+    }
+}
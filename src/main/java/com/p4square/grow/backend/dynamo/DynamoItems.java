@@ -0,0 +1,202 @@
+package com.p4square.grow.backend.dynamo;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+
+/**
+ * Conversions between DynamoKeys, string attributes and DynamoDB items.
+ *
+ * Every item has a string hash key named id and, optionally, a string range
+ * key named range.
+ */
+final class DynamoItems {
+    private DynamoItems() {
+    }
+
+    /**
+     * Generate a DynamoDB Key Map from the DynamoKey.
+     */
+    static Map<String, AttributeValue> generateKey(final DynamoKey key) {
+        HashMap<String, AttributeValue> keyMap = new HashMap<>();
+        keyMap.put("id", new AttributeValue().withS(key.getHashKey()));
+
+        String range = key.getRangeKey();
+        if (range != null) {
+            keyMap.put("range", new AttributeValue().withS(range));
+        }
+
+        return keyMap;
+    }
+
+    /**
+     * Extract the DynamoDB Key Map from an item.
+     */
+    static Map<String, AttributeValue> itemKey(final Map<String, AttributeValue> item) {
+        HashMap<String, AttributeValue> keyMap = new HashMap<>();
+        keyMap.put("id", item.get("id"));
+
+        AttributeValue range = item.get("range");
+        if (range != null) {
+            keyMap.put("range", range);
+        }
+
+        return keyMap;
+    }
+
+    /**
+     * @return the DynamoKey of an item in table.
+     */
+    static DynamoKey toKey(final String table, final Map<String, AttributeValue> item) {
+        AttributeValue range = item.get("range");
+        return DynamoKey.newRangeKey(table, item.get("id").getS(),
+                range == null ? null : range.getS());
+    }
+
+    /**
+     * Build an item from its key and string attributes.
+     */
+    static Map<String, AttributeValue> toItem(final DynamoKey key,
+            final Map<String, String> values) {
+
+        Map<String, AttributeValue> item = new HashMap<>();
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            item.put(entry.getKey(), new AttributeValue().withS(entry.getValue()));
+        }
+
+        // Set the Key
+        item.putAll(generateKey(key));
+
+        return item;
+    }
+
+    /**
+     * Convert an item to a map of attribute names to strings, excluding the
+     * key attributes and attributes which are not strings.
+     */
+    static Map<String, String> toStringMap(final Map<String, AttributeValue> item) {
+        Map<String, String> result = new LinkedHashMap<>();
+        if (item != null) {
+            for (Map.Entry<String, AttributeValue> entry : item.entrySet()) {
+                if (!"id".equals(entry.getKey()) && !"range".equals(entry.getKey())
+                        && entry.getValue().getS() != null) {
+                    result.put(entry.getKey(), entry.getValue().getS());
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Convert a scanned item to a map of attribute names to strings, excluding
+     * the key attributes.
+     *
+     * @throws IllegalStateException if the item has a binary attribute, which
+     *         only scanParallelBytes() can read.
+     */
+    static Map<String, String> toScannedStringMap(final DynamoKey key,
+            final Map<String, AttributeValue> item) {
+
+        for (Map.Entry<String, AttributeValue> entry : item.entrySet()) {
+            if (entry.getValue().getB() != null) {
+                throw new IllegalStateException("Attribute " + entry.getKey() + " of " + key
+                        + " is binary. Use scanParallelBytes() to scan " + key.getTable() + ".");
+            }
+        }
+
+        return toStringMap(item);
+    }
+
+    /**
+     * Convert an item to a map of attribute names to bytes, excluding the key
+     * attributes and attributes which are neither strings nor binary.
+     */
+    static Map<String, byte[]> toBytesMap(final Map<String, AttributeValue> item) {
+        Map<String, byte[]> result = new LinkedHashMap<>();
+        if (item != null) {
+            for (Map.Entry<String, AttributeValue> entry : item.entrySet()) {
+                if (!"id".equals(entry.getKey()) && !"range".equals(entry.getKey())) {
+                    byte[] data = toBytes(entry.getValue());
+                    if (data != null) {
+                        result.put(entry.getKey(), data);
+                    }
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * @return the string value of an attribute of item, or null if either is missing.
+     */
+    static String attributeValue(final Map<String, AttributeValue> item,
+            final String attribute) {
+
+        if (item == null) {
+            return null;
+        }
+
+        AttributeValue value = item.get(attribute);
+        return (value == null) ? null : value.getS();
+    }
+
+    /**
+     * @return the bytes of an attribute of item, or null if either is missing.
+     */
+    static byte[] attributeBytes(final Map<String, AttributeValue> item,
+            final String attribute) {
+
+        if (item == null) {
+            return null;
+        }
+
+        AttributeValue value = item.get(attribute);
+        return (value == null) ? null : toBytes(value);
+    }
+
+    /**
+     * @return the contents of a binary value, the UTF-8 bytes of a string
+     *         value, or null for other types.
+     */
+    static byte[] toBytes(final AttributeValue value) {
+        if (value.getB() != null) {
+            ByteBuffer buffer = value.getB().duplicate();
+            byte[] data = new byte[buffer.remaining()];
+            buffer.get(data);
+            return data;
+        }
+
+        if (value.getS() != null) {
+            return value.getS().getBytes(StandardCharsets.UTF_8);
+        }
+
+        return null;
+    }
+
+    /**
+     * @return the approximate size of an item in bytes, as DynamoDB counts it.
+     */
+    static int size(final Map<String, AttributeValue> item) {
+        int size = 0;
+        for (Map.Entry<String, AttributeValue> entry : item.entrySet()) {
+            size += entry.getKey().length();
+
+            AttributeValue value = entry.getValue();
+            if (value.getS() != null) {
+                size += value.getS().getBytes(StandardCharsets.UTF_8).length;
+            } else if (value.getB() != null) {
+                size += value.getB().remaining();
+            } else if (value.getN() != null) {
+                size += value.getN().length();
+            }
+        }
+
+        return size;
+    }
+}
@@ -4,6 +4,8 @@
 
 package com.p4square.grow.backend.dynamo;
 
+import java.util.Objects;
+
 /**
  * DynamoKey represents a table, hash key, and range key tupl.
  */
@@ -53,4 +55,31 @@ public class DynamoKey {
     public String getAttribute() {
         return mAttribute;
     }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+
+        if (!(obj instanceof DynamoKey)) {
+            return false;
+        }
+
+        final DynamoKey other = (DynamoKey) obj;
+        return Objects.equals(mTable, other.mTable)
+            && Objects.equals(mHashKey, other.mHashKey)
+            && Objects.equals(mRangeKey, other.mRangeKey)
+            && Objects.equals(mAttribute, other.mAttribute);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(mTable, mHashKey, mRangeKey, mAttribute);
+    }
+
+    @Override
+    public String toString() {
+        return "DynamoKey(" + mTable + ", " + mHashKey + ", " + mRangeKey + ", " + mAttribute + ")";
+    }
 }
@@ -5,16 +5,31 @@
 package com.p4square.grow.backend.dynamo;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+
+import com.p4square.grow.provider.AsyncProvider;
+import com.p4square.grow.provider.AsyncProviders;
+import com.p4square.grow.provider.Codec;
 import com.p4square.grow.provider.Provider;
 import com.p4square.grow.provider.JsonEncodedProvider;
 
 /**
  * Provider implementation backed by a DynamoDB Table.
  *
+ * Values are stored as string attributes unless the Codec reports that the
+ * encoded value is binary. Either type of attribute is read, so existing
+ * values remain readable when the Codec changes.
+ *
  * @author Jesse Morgan <jesse@jesterpm.net>
  */
-public class DynamoProviderImpl<V> extends JsonEncodedProvider<V> implements Provider<DynamoKey, V> {
+public class DynamoProviderImpl<V> extends JsonEncodedProvider<V>
+    implements Provider<DynamoKey, V>, AsyncProvider<DynamoKey, V> {
     private final DynamoDatabase mDb;
 
     public DynamoProviderImpl(DynamoDatabase db, Class<V> clazz) {
@@ -23,15 +38,74 @@ public class DynamoProviderImpl<V> extends JsonEncodedProvider<V> implements Pro
         mDb = db;
     }
 
+    public DynamoProviderImpl(DynamoDatabase db, Codec<V> codec) {
+        super(codec);
+
+        mDb = db;
+    }
+
     @Override
     public V get(DynamoKey key) throws IOException {
-        String blob = mDb.getAttribute(key);
-        return decode(blob);
+        byte[] data = mDb.getAttributeBytes(key);
+        return decodeBytes(data);
+    }
+
+    @Override
+    public Map<DynamoKey, V> getAll(Collection<DynamoKey> keys) throws IOException {
+        return decodeAllBytes(mDb.getAttributeBytes(keys));
     }
 
     @Override
     public void put(DynamoKey key, V obj) throws IOException {
-        String blob = encode(obj);
-        mDb.putAttribute(key, blob);
+        byte[] data = encodeBytes(obj);
+        if (mCodec.isBinary(data)) {
+            mDb.putBinaryAttribute(key, data);
+        } else {
+            mDb.putAttribute(key, toString(data));
+        }
+    }
+
+    /**
+     * Compare the encoded values and write with one conditional UpdateItem.
+     */
+    @Override
+    public boolean putIf(DynamoKey key, V expected, V obj) throws IOException {
+        return mDb.putAttributeIf(key,
+                (expected == null) ? null : attributeValue(encodeBytes(expected)),
+                attributeValue(encodeBytes(obj)));
+    }
+
+    @Override
+    public CompletableFuture<V> getAsync(DynamoKey key) {
+        return mDb.getAttributeBytesAsync(key)
+            .thenApply(AsyncProviders.unchecked(this::decodeBytes));
+    }
+
+    @Override
+    public CompletableFuture<Void> putAsync(DynamoKey key, V obj) {
+        final byte[] data;
+        try {
+            data = encodeBytes(obj);
+        } catch (IOException e) {
+            return AsyncProviders.failed(e);
+        }
+
+        if (mCodec.isBinary(data)) {
+            return mDb.putBinaryAttributeAsync(key, data);
+        } else {
+            return mDb.putAttributeAsync(key, toString(data));
+        }
+    }
+
+    private static String toString(byte[] data) {
+        return (data == null) ? null : new String(data, StandardCharsets.UTF_8);
+    }
+
+    private AttributeValue attributeValue(byte[] data) {
+        if (mCodec.isBinary(data)) {
+            return new AttributeValue().withB(ByteBuffer.wrap(data));
+        } else {
+            return new AttributeValue().withS(toString(data));
+        }
     }
 }
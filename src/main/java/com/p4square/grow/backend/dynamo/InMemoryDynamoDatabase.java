@@ -0,0 +1,789 @@
+package com.p4square.grow.backend.dynamo;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughput;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputExceededException;
+
+import com.codahale.metrics.MetricRegistry;
+
+import com.p4square.grow.config.Config;
+
+import com.p4square.grow.backend.dynamo.RequestExecutor.Operation;
+
+/**
+ * A DynamoDatabase which keeps its tables in memory.
+ *
+ * It is meant for tests and for load testing the provider stack without
+ * DynamoDB. Requests go through the same throughput budgets and retry logic
+ * as AwsDynamoDatabase, and each one can be delayed and throttled to mimic
+ * the service:
+ *
+ *   memoryDynamoOPLatency       "median,p99" in milliseconds, where OP is Get,
+ *                               Put, Update, Delete, Scan, BatchGet or
+ *                               BatchWrite. Defaults to memoryDynamoLatency,
+ *                               or no delay.
+ *   memoryDynamoOPThrottleRate  The fraction of requests rejected with
+ *                               ProvisionedThroughputExceededException.
+ *                               Defaults to memoryDynamoThrottleRate, or 0.
+ *   memoryDynamoOPThrottleFirst The number of requests rejected before any
+ *                               are served, for repeatable tests of retries.
+ *                               Defaults to memoryDynamoThrottleFirst, or 0.
+ *
+ * Consumed capacity is reported as DynamoDB would charge it: half a unit per
+ * 4KB read and one unit per 1KB written. Tables are created on first use.
+ * Items larger than 400KB are rejected. Scans return pages of at most 100
+ * items, which end once they hold 1MB.
+ */
+public class InMemoryDynamoDatabase implements DynamoDatabase {
+    private static final int SCAN_PAGE_SIZE = 100;
+    private static final int SCAN_PAGE_BYTES = 1024 * 1024;
+    private static final int MAX_ITEM_BYTES = 400 * 1024;
+    private static final int MAX_BATCH_GET = 100;
+    private static final int MAX_BATCH_WRITE = 25;
+
+    private static final String[] OPERATIONS = {
+        "Get", "Put", "Update", "Delete", "Scan", "BatchGet", "BatchWrite"
+    };
+
+    /**
+     * The result of a simulated request and the capacity it consumed.
+     */
+    private static class Simulated<R> {
+        final R mValue;
+        final double mUnits;
+
+        Simulated(final R value, final double units) {
+            mValue = value;
+            mUnits = units;
+        }
+    }
+
+    private final ConcurrentMap<String, ConcurrentNavigableMap<String, Map<String, AttributeValue>>> mTables;
+    private final ConcurrentMap<String, ProvisionedThroughput> mThroughput;
+    private final Map<String, LatencyDistribution> mLatencies;
+    private final Map<String, Double> mThrottleRates;
+    private final Map<String, AtomicLong> mThrottleFirst;
+    private final RequestExecutor mExecutor;
+    private final ExecutorService mAsyncExecutor;
+    private final MetricRegistry mMetricRegistry;
+    private final Priority mPriority;
+
+    public InMemoryDynamoDatabase(final Config config) {
+        this(config, new MetricRegistry());
+    }
+
+    public InMemoryDynamoDatabase(final Config config, final MetricRegistry metricRegistry) {
+        this(config, metricRegistry, RequestExecutor.JITTERED_BACKOFF);
+    }
+
+    /**
+     * @param backoff Chooses the delay before each retry.
+     */
+    InMemoryDynamoDatabase(final Config config, final MetricRegistry metricRegistry,
+            final RequestExecutor.Backoff backoff) {
+
+        mTables = new ConcurrentHashMap<>();
+        mThroughput = new ConcurrentHashMap<>();
+        mLatencies = new HashMap<>();
+        mThrottleRates = new HashMap<>();
+        mThrottleFirst = new HashMap<>();
+        mExecutor = new RequestExecutor(config, metricRegistry, backoff);
+        mMetricRegistry = metricRegistry;
+        mPriority = Priority.REQUEST;
+
+        mAsyncExecutor = Executors.newCachedThreadPool((runnable) -> {
+            Thread thread = new Thread(runnable, "InMemoryDynamoDatabase");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        final String defaultLatency = config.getString("memoryDynamoLatency");
+        final String defaultThrottleRate = config.getString("memoryDynamoThrottleRate", "0");
+        final int defaultThrottleFirst = config.getInt("memoryDynamoThrottleFirst", 0);
+        for (String operation : OPERATIONS) {
+            mThrottleFirst.put(operation, new AtomicLong(config.getInt(
+                        "memoryDynamo" + operation + "ThrottleFirst", defaultThrottleFirst)));
+
+            mLatencies.put(operation, LatencyDistribution.parse(
+                        config.getString("memoryDynamo" + operation + "Latency", defaultLatency)));
+
+            String rate = config.getString("memoryDynamo" + operation + "ThrottleRate",
+                    defaultThrottleRate);
+            try {
+                mThrottleRates.put(operation, Double.parseDouble(rate));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid throttle rate: " + rate, e);
+            }
+        }
+    }
+
+    /**
+     * Create a view which shares this database's tables and budgets.
+     */
+    private InMemoryDynamoDatabase(final InMemoryDynamoDatabase other, final Priority priority) {
+        mTables = other.mTables;
+        mThroughput = other.mThroughput;
+        mLatencies = other.mLatencies;
+        mThrottleRates = other.mThrottleRates;
+        mThrottleFirst = other.mThrottleFirst;
+        mExecutor = other.mExecutor;
+        mAsyncExecutor = other.mAsyncExecutor;
+        mMetricRegistry = other.mMetricRegistry;
+        mPriority = priority;
+    }
+
+    @Override
+    public DynamoDatabase withPriority(final Priority priority) {
+        if (priority == mPriority) {
+            return this;
+        }
+
+        return new InMemoryDynamoDatabase(this, priority);
+    }
+
+    @Override
+    public void close() {
+        mExecutor.close();
+        mAsyncExecutor.shutdownNow();
+    }
+
+    @Override
+    public void createTable(String name, long reads, long writes) {
+        mTables.putIfAbsent(name, new ConcurrentSkipListMap<>());
+        mThroughput.put(name, throughput(reads, writes));
+    }
+
+    @Override
+    public void updateTable(String name, long reads, long writes) {
+        table(name);
+        mThroughput.put(name, throughput(reads, writes));
+    }
+
+    @Override
+    public void deleteTable(String name) {
+        mTables.remove(name);
+        mThroughput.remove(name);
+    }
+
+    /**
+     * Tables created on first use report no provisioned throughput.
+     */
+    @Override
+    public ProvisionedThroughput getProvisionedThroughput(String name) {
+        if (!mTables.containsKey(name)) {
+            return null;
+        }
+
+        ProvisionedThroughput throughput = mThroughput.get(name);
+        return (throughput == null) ? throughput(0, 0) : throughput;
+    }
+
+    @Override
+    public Map<DynamoKey, Map<String, String>> getAll(final DynamoKey key) {
+        final ConcurrentNavigableMap<String, Map<String, AttributeValue>> table =
+            table(key.getTable());
+
+        final List<Map<String, AttributeValue>> page = call(key.getTable(), Operation.READ,
+                "Scan", 1, () -> {
+            Map<String, Map<String, AttributeValue>> tail = table;
+            if (key.getHashKey() != null) {
+                tail = table.tailMap(storageKey(key), false);
+            }
+
+            List<Map<String, AttributeValue>> items = new ArrayList<>();
+            int bytes = 0;
+            for (Map<String, AttributeValue> item : tail.values()) {
+                if (items.size() == SCAN_PAGE_SIZE || bytes >= SCAN_PAGE_BYTES) {
+                    break;
+                }
+                items.add(item);
+                bytes += DynamoItems.size(item);
+            }
+
+            return new Simulated<>(items, readUnits(items));
+        });
+
+        Map<DynamoKey, Map<String, String>> result = new LinkedHashMap<>();
+        for (Map<String, AttributeValue> item : page) {
+            result.put(DynamoItems.toKey(key.getTable(), item), DynamoItems.toStringMap(item));
+        }
+
+        return result;
+    }
+
+    @Override
+    public long scanParallel(final String table, final int segments,
+            final BiConsumer<DynamoKey, Map<String, String>> consumer) {
+
+        return scanItems(table, segments, (item) -> {
+            final DynamoKey key = DynamoItems.toKey(table, item);
+            consumer.accept(key, DynamoItems.toScannedStringMap(key, item));
+        });
+    }
+
+    @Override
+    public long scanParallelBytes(final String table, final int segments,
+            final BiConsumer<DynamoKey, Map<String, byte[]>> consumer) {
+
+        return scanItems(table, segments, (item) -> {
+            consumer.accept(DynamoItems.toKey(table, item), DynamoItems.toBytesMap(item));
+        });
+    }
+
+    @Override
+    public long scanItems(final String table, final int segments,
+            final Consumer<Map<String, AttributeValue>> consumer) {
+
+        if (segments < 1) {
+            throw new IllegalArgumentException("segments must be positive.");
+        }
+
+        // Split the table into segments in one pass.
+        final List<List<Map<String, AttributeValue>>> parts = new ArrayList<>(segments);
+        for (int segment = 0; segment < segments; segment++) {
+            parts.add(new ArrayList<>());
+        }
+        for (Map.Entry<String, Map<String, AttributeValue>> entry : table(table).entrySet()) {
+            parts.get((entry.getKey().hashCode() & Integer.MAX_VALUE) % segments)
+                .add(entry.getValue());
+        }
+
+        final AtomicLong count = new AtomicLong();
+
+        final ExecutorService executor = Executors.newFixedThreadPool(segments);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (final List<Map<String, AttributeValue>> part : parts) {
+                futures.add(executor.submit(() -> {
+                    List<Map<String, AttributeValue>> page = new ArrayList<>();
+                    int bytes = 0;
+                    for (Map<String, AttributeValue> item : part) {
+                        if (Thread.currentThread().isInterrupted()) {
+                            return; // Another segment failed.
+                        }
+
+                        page.add(item);
+                        bytes += DynamoItems.size(item);
+                        if (page.size() == SCAN_PAGE_SIZE || bytes >= SCAN_PAGE_BYTES) {
+                            deliverPage(table, page, consumer, count);
+                            page = new ArrayList<>();
+                            bytes = 0;
+                        }
+                    }
+
+                    deliverPage(table, page, consumer, count);
+                }));
+            }
+
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    throw new RuntimeException(cause);
+
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException(e);
+                }
+            }
+
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return count.get();
+    }
+
+    @Override
+    public Map<String, String> getKey(final DynamoKey key) {
+        return DynamoItems.toStringMap(getItem(key));
+    }
+
+    @Override
+    public CompletableFuture<Map<String, String>> getKeyAsync(final DynamoKey key) {
+        return getItemAsync(key).thenApply(DynamoItems::toStringMap);
+    }
+
+    @Override
+    public String getAttribute(final DynamoKey key) {
+        checkAttributeKey(key);
+        return DynamoItems.attributeValue(getItem(key), key.getAttribute());
+    }
+
+    @Override
+    public CompletableFuture<String> getAttributeAsync(final DynamoKey key) {
+        checkAttributeKey(key);
+        return getItemAsync(key).thenApply(
+                (item) -> DynamoItems.attributeValue(item, key.getAttribute()));
+    }
+
+    @Override
+    public byte[] getAttributeBytes(final DynamoKey key) {
+        checkAttributeKey(key);
+        return DynamoItems.attributeBytes(getItem(key), key.getAttribute());
+    }
+
+    @Override
+    public CompletableFuture<byte[]> getAttributeBytesAsync(final DynamoKey key) {
+        checkAttributeKey(key);
+        return getItemAsync(key).thenApply(
+                (item) -> DynamoItems.attributeBytes(item, key.getAttribute()));
+    }
+
+    @Override
+    public Map<DynamoKey, Map<String, String>> getKeys(final Collection<DynamoKey> keys) {
+        final Map<DynamoKey, Map<String, String>> result = new LinkedHashMap<>();
+        for (Map.Entry<DynamoKey, Map<String, AttributeValue>> entry : batchGet(keys).entrySet()) {
+            result.put(entry.getKey(), DynamoItems.toStringMap(entry.getValue()));
+        }
+
+        return result;
+    }
+
+    @Override
+    public Map<DynamoKey, String> getAttributes(final Collection<DynamoKey> keys) {
+        final Map<DynamoKey, String> result = new LinkedHashMap<>();
+        for (Map.Entry<DynamoKey, Map<String, AttributeValue>> entry : batchGet(keys).entrySet()) {
+            checkAttributeKey(entry.getKey());
+            String value = DynamoItems.attributeValue(entry.getValue(),
+                    entry.getKey().getAttribute());
+            if (value != null) {
+                result.put(entry.getKey(), value);
+            }
+        }
+
+        return result;
+    }
+
+    @Override
+    public Map<DynamoKey, byte[]> getAttributeBytes(final Collection<DynamoKey> keys) {
+        final Map<DynamoKey, byte[]> result = new LinkedHashMap<>();
+        for (Map.Entry<DynamoKey, Map<String, AttributeValue>> entry : batchGet(keys).entrySet()) {
+            checkAttributeKey(entry.getKey());
+            byte[] value = DynamoItems.attributeBytes(entry.getValue(),
+                    entry.getKey().getAttribute());
+            if (value != null) {
+                result.put(entry.getKey(), value);
+            }
+        }
+
+        return result;
+    }
+
+    @Override
+    public void putKey(final DynamoKey key, final Map<String, String> values) {
+        final Map<String, AttributeValue> item = DynamoItems.toItem(key, values);
+        checkItemSize(item);
+        call(key.getTable(), Operation.WRITE, "Put", 1, () -> {
+            table(key.getTable()).put(storageKey(key), Collections.unmodifiableMap(item));
+            return new Simulated<>(null, writeUnits(item));
+        });
+    }
+
+    @Override
+    public BulkWriter newBulkWriter(final int writers) {
+        return new BulkWriter(this, writers, mMetricRegistry);
+    }
+
+    @Override
+    public void batchWrite(final String table, final List<Map<String, AttributeValue>> items) {
+        if (items.size() > MAX_BATCH_WRITE) {
+            throw new IllegalArgumentException("At most " + MAX_BATCH_WRITE
+                    + " items may be written in one batch.");
+        }
+
+        final Map<String, Map<String, AttributeValue>> byKey = new LinkedHashMap<>();
+        for (Map<String, AttributeValue> item : items) {
+            checkItemSize(item);
+            DynamoKey key = DynamoItems.toKey(table, item);
+            if (byKey.put(storageKey(key), Collections.unmodifiableMap(new HashMap<>(item)))
+                    != null) {
+                throw new IllegalArgumentException("Batch contains duplicate key " + key);
+            }
+        }
+
+        call(table, Operation.WRITE, "BatchWrite", items.size(), () -> {
+            double units = 0;
+            for (Map.Entry<String, Map<String, AttributeValue>> entry : byKey.entrySet()) {
+                table(table).put(entry.getKey(), entry.getValue());
+                units += writeUnits(entry.getValue());
+            }
+
+            return new Simulated<>(null, units);
+        });
+    }
+
+    @Override
+    public void putAttribute(final DynamoKey key, final String value) {
+        checkAttributeKey(key);
+        update(key, (item) -> {
+            item.put(key.getAttribute(), new AttributeValue().withS(value));
+            return item;
+        });
+    }
+
+    @Override
+    public void putAttributes(final DynamoKey key, final Map<String, String> values) {
+        if (values.isEmpty()) {
+            return;
+        }
+
+        update(key, (item) -> {
+            for (Map.Entry<String, String> entry : values.entrySet()) {
+                if (entry.getValue() == null) {
+                    item.remove(entry.getKey());
+                } else {
+                    item.put(entry.getKey(), new AttributeValue().withS(entry.getValue()));
+                }
+            }
+            return item;
+        });
+    }
+
+    @Override
+    public boolean putAttributesIf(final DynamoKey key, final String attribute,
+            final String expected, final Map<String, String> values) {
+
+        if (values.isEmpty()) {
+            return Objects.equals(expected,
+                    getAttribute(new DynamoKey(key.getTable(), key.getHashKey(),
+                            key.getRangeKey(), attribute)));
+        }
+
+        final boolean[] applied = new boolean[1];
+        update(key, (item) -> {
+            final AttributeValue actual = item.get(attribute);
+            if (!Objects.equals(expected, (actual == null) ? null : actual.getS())) {
+                return null;
+            }
+
+            for (Map.Entry<String, String> entry : values.entrySet()) {
+                if (entry.getValue() == null) {
+                    item.remove(entry.getKey());
+                } else {
+                    item.put(entry.getKey(), new AttributeValue().withS(entry.getValue()));
+                }
+            }
+            applied[0] = true;
+            return item;
+        });
+
+        return applied[0];
+    }
+
+    @Override
+    public boolean putAttributeIf(final DynamoKey key, final AttributeValue expected,
+            final AttributeValue value) {
+
+        checkAttributeKey(key);
+
+        final boolean[] applied = new boolean[1];
+        update(key, (item) -> {
+            if (!Objects.equals(expected, item.get(key.getAttribute()))) {
+                return null;
+            }
+
+            item.put(key.getAttribute(), value);
+            applied[0] = true;
+            return item;
+        });
+
+        return applied[0];
+    }
+
+    @Override
+    public CompletableFuture<Void> putAttributeAsync(final DynamoKey key, final String value) {
+        checkAttributeKey(key);
+        return updateAsync(key, (item) -> {
+            item.put(key.getAttribute(), new AttributeValue().withS(value));
+            return item;
+        });
+    }
+
+    @Override
+    public void putBinaryAttribute(final DynamoKey key, final byte[] value) {
+        checkAttributeKey(key);
+        final ByteBuffer buffer = ByteBuffer.wrap(value.clone());
+        update(key, (item) -> {
+            item.put(key.getAttribute(), new AttributeValue().withB(buffer));
+            return item;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> putBinaryAttributeAsync(final DynamoKey key,
+            final byte[] value) {
+
+        checkAttributeKey(key);
+        final ByteBuffer buffer = ByteBuffer.wrap(value.clone());
+        return updateAsync(key, (item) -> {
+            item.put(key.getAttribute(), new AttributeValue().withB(buffer));
+            return item;
+        });
+    }
+
+    @Override
+    public void deleteKey(final DynamoKey key) {
+        call(key.getTable(), Operation.WRITE, "Delete", 1, () -> {
+            Map<String, AttributeValue> item = table(key.getTable()).remove(storageKey(key));
+            return new Simulated<>(null, writeUnits(item));
+        });
+    }
+
+    @Override
+    public void deleteAttribute(final DynamoKey key) {
+        checkAttributeKey(key);
+        update(key, (item) -> {
+            item.remove(key.getAttribute());
+            return item;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteAttributeAsync(final DynamoKey key) {
+        checkAttributeKey(key);
+        return updateAsync(key, (item) -> {
+            item.remove(key.getAttribute());
+            return item;
+        });
+    }
+
+    private Map<String, AttributeValue> getItem(final DynamoKey key) {
+        return call(key.getTable(), Operation.READ, "Get", 1, () -> readItem(key));
+    }
+
+    private CompletableFuture<Map<String, AttributeValue>> getItemAsync(final DynamoKey key) {
+        return callAsync(key.getTable(), Operation.READ, "Get", 1, () -> readItem(key));
+    }
+
+    private Simulated<Map<String, AttributeValue>> readItem(final DynamoKey key) {
+        Map<String, AttributeValue> item = table(key.getTable()).get(storageKey(key));
+        return new Simulated<>(item, readUnits(Collections.singletonList(item)));
+    }
+
+    private void update(final DynamoKey key, final UnaryOperator<Map<String, AttributeValue>> change) {
+        call(key.getTable(), Operation.WRITE, "Update", 1, () -> applyUpdate(key, change));
+    }
+
+    private CompletableFuture<Void> updateAsync(final DynamoKey key,
+            final UnaryOperator<Map<String, AttributeValue>> change) {
+
+        return callAsync(key.getTable(), Operation.WRITE, "Update", 1,
+                () -> applyUpdate(key, change)).thenApply((item) -> null);
+    }
+
+    /**
+     * Atomically replace an item with a changed copy, creating it if needed.
+     *
+     * If change returns null, as when a condition fails, the item is left as
+     * it was.
+     */
+    private Simulated<Map<String, AttributeValue>> applyUpdate(final DynamoKey key,
+            final UnaryOperator<Map<String, AttributeValue>> change) {
+
+        Map<String, AttributeValue> updated = table(key.getTable()).compute(storageKey(key),
+                (k, item) -> {
+                    Map<String, AttributeValue> copy = (item == null)
+                        ? DynamoItems.generateKey(key) : new HashMap<>(item);
+                    Map<String, AttributeValue> changed = change.apply(copy);
+                    if (changed == null) {
+                        return item;
+                    }
+                    checkItemSize(changed);
+                    return Collections.unmodifiableMap(changed);
+                });
+
+        // DynamoDB charges a failed conditional write as well.
+        return new Simulated<>(updated, (updated == null) ? 1 : writeUnits(updated));
+    }
+
+    /**
+     * Fetch items in simulated BatchGetItem requests of up to 100 items per
+     * table.
+     */
+    private Map<DynamoKey, Map<String, AttributeValue>> batchGet(
+            final Collection<DynamoKey> keys) {
+
+        final Map<String, List<DynamoKey>> byTable = new LinkedHashMap<>();
+        for (DynamoKey key : keys) {
+            byTable.computeIfAbsent(key.getTable(), (t) -> new ArrayList<>()).add(key);
+        }
+
+        final Map<DynamoKey, Map<String, AttributeValue>> result = new LinkedHashMap<>();
+        for (Map.Entry<String, List<DynamoKey>> entry : byTable.entrySet()) {
+            final String table = entry.getKey();
+            final List<DynamoKey> tableKeys = entry.getValue();
+
+            for (int start = 0; start < tableKeys.size(); start += MAX_BATCH_GET) {
+                final List<DynamoKey> chunk = tableKeys.subList(start,
+                        Math.min(start + MAX_BATCH_GET, tableKeys.size()));
+
+                final Set<String> distinct = new HashSet<>();
+                for (DynamoKey key : chunk) {
+                    distinct.add(storageKey(key));
+                }
+
+                Map<DynamoKey, Map<String, AttributeValue>> items = call(table, Operation.READ,
+                        "BatchGet", 0.5 * distinct.size(), () -> {
+                    Map<DynamoKey, Map<String, AttributeValue>> found = new LinkedHashMap<>();
+                    List<Map<String, AttributeValue>> read = new ArrayList<>();
+                    for (DynamoKey key : chunk) {
+                        Map<String, AttributeValue> item = table(table).get(storageKey(key));
+                        if (item != null) {
+                            found.put(key, item);
+                            read.add(item);
+                        }
+                    }
+                    return new Simulated<>(found, readUnits(read));
+                });
+
+                result.putAll(items);
+            }
+        }
+
+        return result;
+    }
+
+    private void deliverPage(final String table, final List<Map<String, AttributeValue>> page,
+            final Consumer<Map<String, AttributeValue>> consumer, final AtomicLong count) {
+
+        call(table, Operation.READ, "Scan", 1,
+                () -> new Simulated<>(null, readUnits(page)));
+
+        for (Map<String, AttributeValue> item : page) {
+            consumer.accept(new HashMap<>(item));
+        }
+        count.addAndGet(page.size());
+    }
+
+    /**
+     * Send a simulated request through the RequestExecutor.
+     */
+    private <R> R call(final String table, final Operation operation, final String name,
+            final double estimate, final Supplier<Simulated<R>> action) {
+
+        return mExecutor.execute(table, operation, name, mPriority, estimate,
+                () -> simulate(name, action), (result) -> result.mUnits).mValue;
+    }
+
+    /**
+     * Non-blocking variant of call().
+     */
+    private <R> CompletableFuture<R> callAsync(final String table, final Operation operation,
+            final String name, final double estimate, final Supplier<Simulated<R>> action) {
+
+        return mExecutor.executeAsync(table, operation, name, mPriority, estimate,
+                () -> CompletableFuture.supplyAsync(() -> simulate(name, action), mAsyncExecutor),
+                (result) -> result.mUnits).thenApply((result) -> result.mValue);
+    }
+
+    /**
+     * Delay, then either throttle or perform the request.
+     */
+    private <R> Simulated<R> simulate(final String name, final Supplier<Simulated<R>> action) {
+        long delay = mLatencies.get(name).sampleNanos();
+        if (delay > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new AmazonClientException("Interrupted during simulated latency.", e);
+            }
+        }
+
+        if (mThrottleFirst.get(name).getAndUpdate((n) -> Math.max(0, n - 1)) > 0
+                || ThreadLocalRandom.current().nextDouble() < mThrottleRates.get(name)) {
+            throw new ProvisionedThroughputExceededException(
+                    "Simulated throughput exceeded for " + name);
+        }
+
+        return action.get();
+    }
+
+    private ConcurrentNavigableMap<String, Map<String, AttributeValue>> table(final String name) {
+        return mTables.computeIfAbsent(name, (n) -> new ConcurrentSkipListMap<>());
+    }
+
+    /**
+     * @return the key items are stored under, ordered by hash then range key.
+     */
+    private static String storageKey(final DynamoKey key) {
+        String range = key.getRangeKey();
+        return key.getHashKey() + '\u0000' + (range == null ? "" : range);
+    }
+
+    private static ProvisionedThroughput throughput(final long reads, final long writes) {
+        return new ProvisionedThroughput()
+            .withReadCapacityUnits(reads)
+            .withWriteCapacityUnits(writes);
+    }
+
+    private static double readUnits(final List<Map<String, AttributeValue>> items) {
+        double units = 0;
+        for (Map<String, AttributeValue> item : items) {
+            int size = (item == null) ? 0 : DynamoItems.size(item);
+            units += 0.5 * Math.max(1, Math.ceil(size / 4096.0));
+        }
+
+        return units;
+    }
+
+    private static double writeUnits(final Map<String, AttributeValue> item) {
+        int size = (item == null) ? 0 : DynamoItems.size(item);
+        return Math.max(1, Math.ceil(size / 1024.0));
+    }
+
+    /**
+     * Reject an item larger than DynamoDB allows, as DynamoDB would.
+     */
+    private static void checkItemSize(final Map<String, AttributeValue> item) {
+        if (DynamoItems.size(item) > MAX_ITEM_BYTES) {
+            AmazonServiceException e = new AmazonServiceException(
+                    "Item size has exceeded the maximum allowed size");
+            e.setErrorCode("ValidationException");
+            e.setStatusCode(400);
+            throw e;
+        }
+    }
+
+    private static void checkAttributeKey(final DynamoKey key) {
+        if (null == key.getAttribute()) {
+            throw new IllegalArgumentException("Attribute must be non-null");
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.p4square.grow.backend.dynamo;
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A log-normal latency distribution described by its median and 99th
+ * percentile.
+ *
+ * Service latencies are roughly log-normal: most requests cluster around the
+ * median with a long tail to the right. The spread is chosen so that one
+ * sample in a hundred exceeds the 99th percentile.
+ */
+class LatencyDistribution {
+    /**
+     * A distribution which never delays.
+     */
+    static final LatencyDistribution NONE = new LatencyDistribution(0, 0);
+
+    /**
+     * The standard normal quantile of the 99th percentile.
+     */
+    private static final double Z_99 = 2.3263;
+
+    private final double mMu;
+    private final double mSigma;
+    private final boolean mZero;
+
+    /**
+     * @param medianMillis The median latency.
+     * @param p99Millis The 99th percentile latency. Must not be less than the median.
+     */
+    LatencyDistribution(final double medianMillis, final double p99Millis) {
+        if (medianMillis < 0 || p99Millis < medianMillis) {
+            throw new IllegalArgumentException("Expected 0 <= median <= p99.");
+        }
+
+        mZero = (medianMillis == 0);
+        mMu = mZero ? 0 : Math.log(medianMillis);
+        mSigma = mZero ? 0 : (Math.log(p99Millis) - mMu) / Z_99;
+    }
+
+    /**
+     * Parse a distribution from "median" or "median,p99" in milliseconds.
+     *
+     * @param spec The specification, or null for no delay.
+     * @return The distribution.
+     */
+    static LatencyDistribution parse(final String spec) {
+        if (spec == null || spec.trim().isEmpty()) {
+            return NONE;
+        }
+
+        try {
+            String[] parts = spec.split(",");
+            double median = Double.parseDouble(parts[0].trim());
+            double p99 = (parts.length > 1) ? Double.parseDouble(parts[1].trim()) : median;
+            return new LatencyDistribution(median, p99);
+
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid latency distribution: " + spec, e);
+        }
+    }
+
+    /**
+     * @return a latency drawn from the distribution, in nanoseconds.
+     */
+    long sampleNanos() {
+        return sampleNanos(ThreadLocalRandom.current());
+    }
+
+    long sampleNanos(final Random random) {
+        if (mZero) {
+            return 0;
+        }
+
+        double millis = Math.exp(mMu + mSigma * random.nextGaussian());
+        return (long) (millis * TimeUnit.MILLISECONDS.toNanos(1));
+    }
+}
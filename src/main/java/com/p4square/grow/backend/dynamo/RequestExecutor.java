@@ -0,0 +1,304 @@
+package com.p4square.grow.backend.dynamo;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputExceededException;
+
+import com.codahale.metrics.MetricRegistry;
+
+import com.p4square.grow.config.Config;
+
+/**
+ * RequestExecutor sends DynamoDB requests within their table's throughput
+ * budget and retries them when they are throttled.
+ *
+ * Budgets are read from TABLEReadBudget and TABLEWriteBudget, falling back to
+ * dynamoReadBudget and dynamoWriteBudget (0 is unlimited). Batch lane
+ * requests leave dynamoBatchReservePercent of each budget to request traffic.
+ *
+ * The capacity each request reports is recorded by a CapacityTracker.
+ */
+class RequestExecutor {
+    /**
+     * The kinds of capacity a request consumes.
+     */
+    enum Operation {
+        READ, WRITE
+    }
+
+    /**
+     * The number of times a throttled request is retried before giving up.
+     */
+    private static final int MAX_THROTTLE_RETRIES = 10;
+
+    /**
+     * The longest a retry waits, in milliseconds.
+     */
+    private static final long MAX_BACKOFF_MILLIS = 5000;
+
+    /**
+     * Chooses how long to wait before retrying a request.
+     */
+    interface Backoff {
+        /**
+         * @param priority The lane the request was sent in.
+         * @param attempt The number of times the request has been retried.
+         * @return the milliseconds to wait.
+         */
+        long delayMillis(DynamoDatabase.Priority priority, int attempt);
+    }
+
+    /**
+     * Exponential backoff with full jitter.
+     *
+     * Batch requests start from a longer base delay so that they back off
+     * further than request traffic throttled at the same time.
+     */
+    static final Backoff JITTERED_BACKOFF = (priority, attempt) -> {
+        final long base = (priority == DynamoDatabase.Priority.BATCH) ? 100L : 25L;
+        final long ceiling = Math.min(base << Math.min(attempt, 16), MAX_BACKOFF_MILLIS);
+        return 1 + ThreadLocalRandom.current().nextLong(ceiling);
+    };
+
+    private final Config mConfig;
+    private final MetricRegistry mMetricRegistry;
+    private final Map<String, Optional<ThroughputLimiter>> mLimiters;
+    private final CapacityTracker mCapacity;
+    private final ScheduledExecutorService mRetryExecutor;
+    private final Backoff mBackoff;
+
+    RequestExecutor(final Config config, final MetricRegistry metricRegistry) {
+        this(config, metricRegistry, JITTERED_BACKOFF);
+    }
+
+    RequestExecutor(final Config config, final MetricRegistry metricRegistry,
+            final Backoff backoff) {
+
+        mConfig = config;
+        mBackoff = backoff;
+        mMetricRegistry = metricRegistry;
+        mLimiters = new ConcurrentHashMap<>();
+        mCapacity = new CapacityTracker(metricRegistry);
+        mRetryExecutor = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+            Thread thread = new Thread(runnable, "DynamoDatabase-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @return the tracker which records the capacity requests consume.
+     */
+    CapacityTracker getCapacityTracker() {
+        return mCapacity;
+    }
+
+    /**
+     * Stop retrying asynchronous requests.
+     */
+    void close() {
+        mRetryExecutor.shutdownNow();
+    }
+
+    /**
+     * Send a request within the table's budget.
+     *
+     * The call waits in the priority's lane for estimate units, then the
+     * reservation is settled with the capacity the response reports, which
+     * is recorded against the table and request type. Throttled requests are
+     * retried after the Backoff's delay.
+     *
+     * @param table The table name, without the prefix.
+     * @param operation The kind of capacity the request consumes.
+     * @param request The type of request, e.g. Get or BatchWrite.
+     * @param priority The lane the request is sent in.
+     * @param estimate The units the request is expected to consume.
+     * @param call Sends the request.
+     * @param consumed Extracts the units consumed from the result, or null if
+     *                 unknown.
+     * @return The result of call.
+     */
+    <R> R execute(final String table, final Operation operation, final String request,
+            final DynamoDatabase.Priority priority, final double estimate,
+            final Supplier<R> call, final Function<R, Double> consumed) {
+
+        final ThroughputLimiter limiter = limiter(table, operation);
+
+        for (int attempt = 0; ; attempt++) {
+            if (limiter != null) {
+                try {
+                    limiter.acquire(estimate, priority);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new AmazonClientException("Interrupted while waiting for capacity.", e);
+                }
+            }
+
+            try {
+                R result = call.get();
+                completed(table, operation, request, limiter, estimate, consumed.apply(result));
+                return result;
+
+            } catch (ProvisionedThroughputExceededException e) {
+                throttled(table, operation, limiter, estimate);
+                if (attempt >= MAX_THROTTLE_RETRIES) {
+                    throw e;
+                }
+
+                backoff(priority, attempt);
+
+            } catch (RuntimeException e) {
+                settle(limiter, estimate, 0.0);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Non-blocking variant of execute().
+     *
+     * Asynchronous requests never wait for capacity. Their estimate is taken
+     * from the budget immediately, which delays the blocking requests that
+     * follow them. Throttled requests are resubmitted after a jittered delay.
+     */
+    <R> CompletableFuture<R> executeAsync(final String table, final Operation operation,
+            final String request, final DynamoDatabase.Priority priority, final double estimate,
+            final Supplier<CompletableFuture<R>> call, final Function<R, Double> consumed) {
+
+        final CompletableFuture<R> future = new CompletableFuture<>();
+        submitAsync(table, operation, request, priority, estimate, call, consumed, 0, future);
+        return future;
+    }
+
+    /**
+     * Sleep before retrying a throttled or partially processed request.
+     */
+    void backoff(final DynamoDatabase.Priority priority, final int attempt) {
+        try {
+            final long delay = mBackoff.delayMillis(priority, attempt);
+            if (delay > 0) {
+                Thread.sleep(delay);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AmazonClientException("Interrupted while retrying request.", e);
+        }
+    }
+
+    private <R> void submitAsync(final String table, final Operation operation,
+            final String request, final DynamoDatabase.Priority priority, final double estimate,
+            final Supplier<CompletableFuture<R>> call, final Function<R, Double> consumed,
+            final int attempt, final CompletableFuture<R> future) {
+
+        final ThroughputLimiter limiter = limiter(table, operation);
+        if (limiter != null) {
+            limiter.take(estimate);
+        }
+
+        final CompletableFuture<R> pending;
+        try {
+            pending = call.get();
+        } catch (RuntimeException e) {
+            settle(limiter, estimate, 0.0);
+            future.completeExceptionally(e);
+            return;
+        }
+
+        pending.whenComplete((result, error) -> {
+            if (error == null) {
+                completed(table, operation, request, limiter, estimate, consumed.apply(result));
+                future.complete(result);
+                return;
+            }
+
+            Throwable cause = (error instanceof CompletionException) ? error.getCause() : error;
+            if (!(cause instanceof ProvisionedThroughputExceededException)) {
+                settle(limiter, estimate, 0.0);
+                future.completeExceptionally(cause);
+                return;
+            }
+
+            throttled(table, operation, limiter, estimate);
+            if (attempt >= MAX_THROTTLE_RETRIES) {
+                future.completeExceptionally(cause);
+                return;
+            }
+
+            try {
+                mRetryExecutor.schedule(
+                        () -> submitAsync(table, operation, request, priority, estimate,
+                            call, consumed, attempt + 1, future),
+                        mBackoff.delayMillis(priority, attempt), TimeUnit.MILLISECONDS);
+            } catch (RuntimeException e) {
+                future.completeExceptionally(cause);
+            }
+        });
+    }
+
+    /**
+     * Settle a successful request and record the capacity it consumed.
+     */
+    private void completed(final String table, final Operation operation, final String request,
+            final ThroughputLimiter limiter, final double estimate, final Double consumed) {
+
+        settle(limiter, estimate, consumed);
+        if (consumed != null) {
+            mCapacity.record(table, operation, request, consumed);
+        }
+    }
+
+    private void settle(final ThroughputLimiter limiter, final double estimate,
+            final Double consumed) {
+
+        if (limiter != null) {
+            limiter.settle(estimate, consumed == null ? estimate : consumed);
+        }
+    }
+
+    /**
+     * Record a throttled request and slow the table's budget down.
+     */
+    private void throttled(final String table, final Operation operation,
+            final ThroughputLimiter limiter, final double estimate) {
+
+        mMetricRegistry.meter(MetricRegistry.name("DynamoDatabase", table,
+                    operation.name().toLowerCase(), "throttled")).mark();
+
+        if (limiter != null) {
+            // A throttled request consumes nothing.
+            limiter.settle(estimate, 0);
+            limiter.throttled();
+        }
+    }
+
+    /**
+     * @return the limiter for an operation on a table, or null if it is
+     *         unlimited.
+     */
+    ThroughputLimiter limiter(final String table, final Operation operation) {
+        final String name = table + (operation == Operation.READ ? "ReadBudget" : "WriteBudget");
+
+        return mLimiters.computeIfAbsent(name, (n) -> {
+            final String defaultKey = (operation == Operation.READ)
+                ? "dynamoReadBudget" : "dynamoWriteBudget";
+            final int budget = mConfig.getInt(n, mConfig.getInt(defaultKey, 0));
+            if (budget <= 0) {
+                return Optional.empty();
+            }
+
+            final int reserve = mConfig.getInt("dynamoBatchReservePercent", 50);
+            return Optional.of(new ThroughputLimiter(budget, reserve / 100.0));
+        }).orElse(null);
+    }
+}
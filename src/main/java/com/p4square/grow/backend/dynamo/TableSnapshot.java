@@ -0,0 +1,327 @@
+package com.p4square.grow.backend.dynamo;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import com.p4square.grow.provider.JsonEncodedProvider;
+
+/**
+ * TableSnapshot exports tables to, and restores them from, a directory.
+ *
+ * Each table is stored as TABLE.ndjson.gz, a gzip-compressed stream with one
+ * JSON object per item:
+ *
+ *   {"id": "...", "range": "...", "s": {...}, "n": {...}, "b": {...}}
+ *
+ * where s, n and b hold the string, number and base64-encoded binary
+ * attributes. Attributes of other types are not exported. TABLE.manifest.json
+ * records the number of items and the CRC32 of the uncompressed stream and
+ * is written only once the stream is complete, so a table with a manifest
+ * is not exported again.
+ *
+ * A restore checks the stream against its manifest before writing anything.
+ * Progress is checkpointed to TABLE.restore every few thousand items, and an
+ * interrupted restore resumes from its last checkpoint. The checkpoint is
+ * removed when the restore completes.
+ */
+public class TableSnapshot {
+    /**
+     * The number of items written between restore checkpoints.
+     */
+    private static final int CHECKPOINT_INTERVAL = 5000;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final File mDirectory;
+
+    /**
+     * @param directory The directory holding the snapshot.
+     */
+    public TableSnapshot(final File directory) {
+        if (directory == null) {
+            throw new IllegalArgumentException("directory must not be null.");
+        }
+
+        mDirectory = directory;
+    }
+
+    /**
+     * @return true if the table has been completely exported.
+     */
+    public boolean isExported(final String table) {
+        return manifestFile(table).exists();
+    }
+
+    /**
+     * Export a table with a parallel segmented scan.
+     *
+     * Scan workers append to the stream as their pages arrive, so only the
+     * pages in flight are held in memory.
+     *
+     * @param db The database to export from.
+     * @param table The table to export.
+     * @param segments The number of segments to scan concurrently.
+     * @return The number of items exported.
+     * @throws IOException if the snapshot cannot be written.
+     */
+    public long export(final DynamoDatabase db, final String table, final int segments)
+            throws IOException {
+
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            throw new IOException("Could not create " + mDirectory);
+        }
+
+        final File dataFile = dataFile(table);
+        final File tempFile = new File(mDirectory, dataFile.getName() + ".tmp");
+        final CRC32 crc = new CRC32();
+        final long count;
+
+        try (OutputStream out = new BufferedOutputStream(new GZIPOutputStream(
+                        new FileOutputStream(tempFile), BUFFER_SIZE), BUFFER_SIZE)) {
+
+            count = db.scanItems(table, segments, (item) -> {
+                try {
+                    byte[] line = encodeLine(item);
+                    synchronized (out) {
+                        out.write(line);
+                        crc.update(line);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        Files.move(tempFile.toPath(), dataFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        Map<String, Object> manifest = new LinkedHashMap<>();
+        manifest.put("table", table);
+        manifest.put("items", count);
+        manifest.put("crc32", crc.getValue());
+        manifest.put("exportedAt", System.currentTimeMillis());
+        JsonEncodedProvider.MAPPER.writeValue(manifestFile(table), manifest);
+
+        return count;
+    }
+
+    /**
+     * Check a table's stream against its manifest.
+     *
+     * @param table The table to check.
+     * @return The number of items in the stream.
+     * @throws IOException if the stream is missing, unreadable or does not
+     *         match its manifest.
+     */
+    public long verify(final String table) throws IOException {
+        if (!isExported(table)) {
+            throw new IOException("No complete snapshot of " + table + " in " + mDirectory);
+        }
+
+        JsonNode manifest = JsonEncodedProvider.MAPPER.readTree(manifestFile(table));
+        final long expectedItems = manifest.get("items").asLong();
+        final long expectedCrc = manifest.get("crc32").asLong();
+
+        final CRC32 crc = new CRC32();
+        long count = 0;
+        try (BufferedReader in = openStream(table)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                crc.update((line + "\n").getBytes(StandardCharsets.UTF_8));
+                count++;
+            }
+        }
+
+        if (count != expectedItems || crc.getValue() != expectedCrc) {
+            throw new IOException("Snapshot of " + table + " does not match its manifest: "
+                    + count + " items with CRC32 " + crc.getValue() + ", expected "
+                    + expectedItems + " items with CRC32 " + expectedCrc + ".");
+        }
+
+        return count;
+    }
+
+    /**
+     * Restore a table through a BulkWriter, resuming from the last checkpoint.
+     *
+     * @param writer The BulkWriter to write with.
+     * @param table The table to restore.
+     * @return The number of items written by this call.
+     * @throws IOException if the snapshot is invalid or cannot be read.
+     */
+    public long restore(final BulkWriter writer, final String table) throws IOException {
+        verify(table);
+
+        final File checkpoint = checkpointFile(table);
+        final long skip = readCheckpoint(checkpoint);
+
+        long line = 0;
+        try (BufferedReader in = openStream(table)) {
+            String json;
+            while ((json = in.readLine()) != null) {
+                if (line++ < skip) {
+                    continue;
+                }
+
+                writer.addItem(table, decodeLine(json));
+
+                if (line % CHECKPOINT_INTERVAL == 0) {
+                    writer.flush();
+                    writeCheckpoint(checkpoint, line);
+                }
+            }
+        }
+
+        writer.flush();
+        Files.deleteIfExists(checkpoint.toPath());
+
+        return line - Math.min(skip, line);
+    }
+
+    /**
+     * @return the item encoded as one line of JSON, including the newline.
+     */
+    static byte[] encodeLine(final Map<String, AttributeValue> item) throws IOException {
+        Map<String, Object> line = new LinkedHashMap<>();
+        Map<String, String> strings = new LinkedHashMap<>();
+        Map<String, String> numbers = new LinkedHashMap<>();
+        Map<String, byte[]> binaries = new LinkedHashMap<>();
+
+        for (Map.Entry<String, AttributeValue> entry : item.entrySet()) {
+            String name = entry.getKey();
+            AttributeValue value = entry.getValue();
+
+            if ("id".equals(name) || "range".equals(name)) {
+                line.put(name, value.getS());
+            } else if (value.getS() != null) {
+                strings.put(name, value.getS());
+            } else if (value.getN() != null) {
+                numbers.put(name, value.getN());
+            } else if (value.getB() != null) {
+                ByteBuffer buffer = value.getB().duplicate();
+                byte[] data = new byte[buffer.remaining()];
+                buffer.get(data);
+                binaries.put(name, data);
+            }
+        }
+
+        line.put("s", strings);
+        if (!numbers.isEmpty()) {
+            line.put("n", numbers);
+        }
+        if (!binaries.isEmpty()) {
+            line.put("b", binaries);
+        }
+
+        byte[] json = JsonEncodedProvider.MAPPER.writeValueAsBytes(line);
+        byte[] result = new byte[json.length + 1];
+        System.arraycopy(json, 0, result, 0, json.length);
+        result[json.length] = '\n';
+        return result;
+    }
+
+    /**
+     * @return the item encoded by a line of JSON.
+     */
+    static Map<String, AttributeValue> decodeLine(final String json) throws IOException {
+        JsonNode line = JsonEncodedProvider.MAPPER.readTree(json);
+        Map<String, AttributeValue> item = new HashMap<>();
+
+        item.put("id", new AttributeValue().withS(line.get("id").asText()));
+        if (line.hasNonNull("range")) {
+            item.put("range", new AttributeValue().withS(line.get("range").asText()));
+        }
+
+        for (Iterator<Map.Entry<String, JsonNode>> it = fields(line, "s"); it.hasNext(); ) {
+            Map.Entry<String, JsonNode> entry = it.next();
+            item.put(entry.getKey(), new AttributeValue().withS(entry.getValue().asText()));
+        }
+
+        for (Iterator<Map.Entry<String, JsonNode>> it = fields(line, "n"); it.hasNext(); ) {
+            Map.Entry<String, JsonNode> entry = it.next();
+            item.put(entry.getKey(), new AttributeValue().withN(entry.getValue().asText()));
+        }
+
+        for (Iterator<Map.Entry<String, JsonNode>> it = fields(line, "b"); it.hasNext(); ) {
+            Map.Entry<String, JsonNode> entry = it.next();
+            item.put(entry.getKey(), new AttributeValue().withB(
+                        ByteBuffer.wrap(entry.getValue().binaryValue())));
+        }
+
+        return item;
+    }
+
+    private static Iterator<Map.Entry<String, JsonNode>> fields(final JsonNode line,
+            final String name) {
+
+        JsonNode node = line.get(name);
+        if (node == null) {
+            return new HashMap<String, JsonNode>().entrySet().iterator();
+        }
+
+        return node.fields();
+    }
+
+    private BufferedReader openStream(final String table) throws IOException {
+        return new BufferedReader(new InputStreamReader(
+                    new GZIPInputStream(new FileInputStream(dataFile(table)), BUFFER_SIZE),
+                    StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+
+    private long readCheckpoint(final File checkpoint) throws IOException {
+        if (!checkpoint.exists()) {
+            return 0;
+        }
+
+        String value = new String(Files.readAllBytes(checkpoint.toPath()),
+                StandardCharsets.UTF_8).trim();
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid checkpoint " + checkpoint + ": " + value, e);
+        }
+    }
+
+    private void writeCheckpoint(final File checkpoint, final long line) throws IOException {
+        File temp = new File(mDirectory, checkpoint.getName() + ".tmp");
+        Files.write(temp.toPath(), Long.toString(line).getBytes(StandardCharsets.UTF_8));
+        Files.move(temp.toPath(), checkpoint.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private File dataFile(final String table) {
+        return new File(mDirectory, table + ".ndjson.gz");
+    }
+
+    private File manifestFile(final String table) {
+        return new File(mDirectory, table + ".manifest.json");
+    }
+
+    private File checkpointFile(final String table) {
+        return new File(mDirectory, table + ".restore");
+    }
+}
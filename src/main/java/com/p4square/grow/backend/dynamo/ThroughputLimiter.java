@@ -0,0 +1,182 @@
+package com.p4square.grow.backend.dynamo;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * A token bucket which keeps one kind of operation on one table within a
+ * capacity unit budget.
+ *
+ * Callers reserve an estimate of the units a request will use before it is
+ * sent and settle the difference once the response reports the capacity
+ * actually consumed, so the bucket may briefly go into debt. When DynamoDB
+ * throttles a request the refill rate is halved and then recovers linearly
+ * back to the budget.
+ *
+ * Request traffic may use the whole bucket. Batch traffic only proceeds while
+ * the bucket holds more than a reserved fraction of its capacity, so batch
+ * jobs yield whenever request traffic is draining it.
+ */
+class ThroughputLimiter {
+    /**
+     * The bucket holds this many seconds of the budget.
+     */
+    static final double BURST_SECONDS = 2.0;
+
+    /**
+     * The rate never drops below this fraction of the budget.
+     */
+    private static final double MIN_RATE_FRACTION = 0.1;
+
+    /**
+     * After throttling, the rate recovers by this fraction of the budget per second.
+     */
+    private static final double RECOVERY_PER_SECOND = 0.05;
+
+    private final double mBudget;
+    private final double mCapacity;
+    private final double mBatchReserve;
+    private final LongSupplier mClock;
+
+    private double mRate;
+    private double mTokens;
+    private long mLastRefill;
+
+    /**
+     * @param budget Capacity units per second.
+     * @param batchReserve The fraction of the bucket batch traffic may not use.
+     */
+    ThroughputLimiter(final double budget, final double batchReserve) {
+        this(budget, batchReserve, System::nanoTime);
+    }
+
+    ThroughputLimiter(final double budget, final double batchReserve, final LongSupplier clock) {
+        if (budget <= 0) {
+            throw new IllegalArgumentException("budget must be positive.");
+        }
+
+        if (batchReserve < 0 || batchReserve >= 1) {
+            throw new IllegalArgumentException("batchReserve must be in [0, 1).");
+        }
+
+        mBudget = budget;
+        mCapacity = budget * BURST_SECONDS;
+        mBatchReserve = batchReserve;
+        mClock = clock;
+
+        mRate = budget;
+        mTokens = mCapacity;
+        mLastRefill = clock.getAsLong();
+    }
+
+    /**
+     * Block until units may be spent at the given priority and take them.
+     *
+     * @param units The estimated capacity units.
+     * @param priority The lane the request belongs to.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    synchronized void acquire(final double units, final DynamoDatabase.Priority priority)
+            throws InterruptedException {
+
+        long waitNanos;
+        while ((waitNanos = reserve(units, priority)) > 0) {
+            TimeUnit.NANOSECONDS.timedWait(this, waitNanos);
+        }
+    }
+
+    /**
+     * Try to take units without waiting.
+     *
+     * @return true if the units were taken.
+     */
+    synchronized boolean tryAcquire(final double units, final DynamoDatabase.Priority priority) {
+        return reserve(units, priority) == 0;
+    }
+
+    /**
+     * Take units regardless of the balance, for requests which cannot wait.
+     */
+    synchronized void take(final double units) {
+        refill();
+        mTokens -= units;
+    }
+
+    /**
+     * Settle a reservation once the consumed capacity is known.
+     *
+     * @param estimated The units reserved for the request.
+     * @param consumed The units the request actually consumed.
+     */
+    synchronized void settle(final double estimated, final double consumed) {
+        refill();
+        mTokens = Math.min(mCapacity, mTokens + estimated - consumed);
+        if (consumed < estimated) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Slow down after DynamoDB rejected a request for exceeding throughput.
+     */
+    synchronized void throttled() {
+        refill();
+        mRate = Math.max(mBudget * MIN_RATE_FRACTION, mRate / 2);
+        mTokens = Math.min(mTokens, 0);
+    }
+
+    /**
+     * @return the current refill rate in units per second.
+     */
+    synchronized double getRate() {
+        refill();
+        return mRate;
+    }
+
+    /**
+     * @return the units currently in the bucket. Negative while in debt.
+     */
+    synchronized double getTokens() {
+        refill();
+        return mTokens;
+    }
+
+    /**
+     * Take units if the lane allows it.
+     *
+     * @return 0 if the units were taken, otherwise the nanoseconds to wait
+     *         before trying again.
+     */
+    private long reserve(final double units, final DynamoDatabase.Priority priority) {
+        refill();
+
+        // A request larger than the lane's share waits for the share to fill.
+        double floor = 0;
+        double needed = Math.min(units, mCapacity);
+        if (priority == DynamoDatabase.Priority.BATCH) {
+            floor = mCapacity * mBatchReserve;
+            needed = Math.min(units, mCapacity - floor);
+        }
+
+        double shortfall = floor + needed - mTokens;
+        if (shortfall <= 0) {
+            mTokens -= units;
+            return 0;
+        }
+
+        return Math.max(1, (long) (shortfall / mRate * TimeUnit.SECONDS.toNanos(1)));
+    }
+
+    private void refill() {
+        final long now = mClock.getAsLong();
+        final double seconds = (now - mLastRefill) / (double) TimeUnit.SECONDS.toNanos(1);
+        mLastRefill = now;
+
+        if (seconds <= 0) {
+            return;
+        }
+
+        mTokens = Math.min(mCapacity, mTokens + seconds * mRate);
+        mRate = Math.min(mBudget, mRate + seconds * mBudget * RECOVERY_PER_SECOND);
+    }
+}
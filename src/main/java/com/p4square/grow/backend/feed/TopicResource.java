@@ -6,10 +6,13 @@ package com.p4square.grow.backend.feed;
 
 import java.io.IOException;
 
+import java.util.ArrayList;
 import java.util.Date;
-import java.util.Map;
+import java.util.List;
 
 import com.p4square.grow.backend.NotificationService;
+import com.p4square.grow.provider.Cursor;
+import com.p4square.grow.provider.Page;
 import com.p4square.grow.provider.ProvidesNotificationService;
 import org.restlet.data.Status;
 import org.restlet.resource.ServerResource;
@@ -67,9 +70,20 @@ public class TopicResource extends ServerResource {
            }
         }
 
+        // Threads are returned newest first. The id of the last thread on a
+        // page may be passed as the after parameter to get the next page.
+        String after = getQueryValue("after");
+
         try {
-            Map<String, MessageThread> threads = mBackend.getThreadProvider().query(mTopic, limit);
-            return new JacksonRepresentation(threads.values());
+            Page<String> page = (after == null) ? Page.first(limit) : Page.after(after, limit);
+            Cursor<String, MessageThread> cursor = mBackend.getThreadProvider().stream(mTopic, page);
+
+            List<MessageThread> threads = new ArrayList<>();
+            while (cursor.hasNext()) {
+                threads.add(cursor.next().getValue());
+            }
+
+            return new JacksonRepresentation(threads);
 
         } catch (IOException e) {
             LOG.error("Unexpected exception: " + e.getMessage(), e);
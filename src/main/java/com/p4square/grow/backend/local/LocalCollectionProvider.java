@@ -0,0 +1,125 @@
+package com.p4square.grow.backend.local;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import com.p4square.grow.provider.AsyncCollectionProvider;
+import com.p4square.grow.provider.AsyncProviders;
+import com.p4square.grow.provider.Codec;
+import com.p4square.grow.provider.CollectionProvider;
+import com.p4square.grow.provider.Cursor;
+import com.p4square.grow.provider.JacksonCodec;
+import com.p4square.grow.provider.LazyCursor;
+import com.p4square.grow.provider.Page;
+
+/**
+ * CollectionProvider implementation backed by a LocalDatabase table.
+ *
+ * Each collection is a row and each item a column, kept in key order.
+ * Asynchronous calls run on the database's async executor.
+ */
+public class LocalCollectionProvider<V>
+    implements CollectionProvider<String, String, V>, AsyncCollectionProvider<String, String, V> {
+    private final LocalDatabase mDb;
+    private final String mTable;
+    private final Codec<V> mCodec;
+
+    public LocalCollectionProvider(LocalDatabase db, String table, Class<V> clazz) {
+        this(db, table, new JacksonCodec<>(clazz, JacksonCodec.Format.JSON));
+    }
+
+    public LocalCollectionProvider(LocalDatabase db, String table, Codec<V> codec) {
+        mDb = db;
+        mTable = table;
+        mCodec = codec;
+    }
+
+    @Override
+    public V get(String collection, String key) throws IOException {
+        return mCodec.decode(mDb.get(mTable, collection, key));
+    }
+
+    @Override
+    public Map<String, V> query(String collection) throws IOException {
+        return query(collection, -1);
+    }
+
+    @Override
+    public Map<String, V> query(String collection, int limit) throws IOException {
+        Map<String, V> result = new LinkedHashMap<>();
+        for (Map.Entry<String, byte[]> entry :
+                mDb.getColumns(mTable, collection, null, limit).entrySet()) {
+            result.put(entry.getKey(), mCodec.decode(entry.getValue()));
+        }
+
+        return Collections.unmodifiableMap(result);
+    }
+
+    @Override
+    public Cursor<String, V> stream(String collection, Page<String> page) throws IOException {
+        Map<String, byte[]> columns = mDb.getColumns(mTable, collection, page.getAfter(),
+                page.isLimited() ? page.getFetchSize() : -1);
+
+        return new LazyCursor<>(columns.entrySet().iterator(), page.getLimit(), mCodec::decode);
+    }
+
+    @Override
+    public void put(String collection, String key, V obj) throws IOException {
+        mDb.put(mTable, collection, key, (obj == null) ? null : mCodec.encode(obj));
+    }
+
+    /**
+     * Apply all of the changes in one atomic write.
+     */
+    @Override
+    public void putAll(String collection, Map<String, V> values) throws IOException {
+        mDb.putColumns(mTable, collection, encode(values));
+    }
+
+    /**
+     * Check key and apply all of the changes in one atomic write.
+     */
+    @Override
+    public boolean putAllIf(String collection, String key, V expected, Map<String, V> values)
+            throws IOException {
+
+        return mDb.putColumnsIf(mTable, collection, key,
+                (expected == null) ? null : mCodec.encode(expected), encode(values));
+    }
+
+    @Override
+    public CompletableFuture<V> getAsync(String collection, String key) {
+        return AsyncProviders.supply(() -> get(collection, key), mDb.getAsyncExecutor());
+    }
+
+    @Override
+    public CompletableFuture<Map<String, V>> queryAsync(String collection) {
+        return AsyncProviders.supply(() -> query(collection), mDb.getAsyncExecutor());
+    }
+
+    @Override
+    public CompletableFuture<Map<String, V>> queryAsync(String collection, int limit) {
+        return AsyncProviders.supply(() -> query(collection, limit), mDb.getAsyncExecutor());
+    }
+
+    @Override
+    public CompletableFuture<Void> putAsync(String collection, String key, V obj) {
+        return AsyncProviders.supply(() -> {
+            put(collection, key, obj);
+            return null;
+        }, mDb.getAsyncExecutor());
+    }
+
+    private Map<String, byte[]> encode(Map<String, V> values) throws IOException {
+        Map<String, byte[]> columns = new LinkedHashMap<>();
+        for (Map.Entry<String, V> entry : values.entrySet()) {
+            V obj = entry.getValue();
+            columns.put(entry.getKey(), (obj == null) ? null : mCodec.encode(obj));
+        }
+
+        return columns;
+    }
+}
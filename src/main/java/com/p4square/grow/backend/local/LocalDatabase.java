@@ -0,0 +1,772 @@
+package com.p4square.grow.backend.local;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+import org.apache.log4j.Logger;
+
+/**
+ * An embedded key-value store kept in an append-only log on local disk.
+ *
+ * Values are addressed by table, row id and column, like the Cassandra and
+ * DynamoDB stores. Each write is appended to the log as a checksummed batch
+ * and an in-memory hash index of rows records where every value lives, so a
+ * read is a map lookup and one positional read.
+ *
+ * Each batch in the log is written as
+ * <pre>
+ *   int crc32, int payload length, payload
+ *   payload = int count, count * (string table, string row, string column, bytes value)
+ * </pre>
+ * where strings are an int length followed by UTF-8 and a value with length
+ * -1 is a delete. All of the changes in a batch are applied together. When
+ * the log is opened, a batch with a bad checksum is treated as a torn write
+ * and the log is truncated there.
+ *
+ * Writes are handed to the operating system immediately and forced to disk
+ * every syncIntervalMillis, or after every write if it is 0. The log is
+ * rewritten with only the live values when more than half of it is dead and
+ * it is at least minCompactionBytes long.
+ *
+ * Compaction copies the values live at the start into a new file while reads
+ * and writes continue. The log is never changed in place, so the values can
+ * be read without a lock. Only the batches written since the copy began are
+ * appended under the write lock, before the new file replaces the log. A
+ * compaction which does not finish leaves the log untouched, and its partial
+ * file is deleted when the log is next opened.
+ *
+ * Asynchronous provider calls run on a small pool of threads from
+ * getAsyncExecutor().
+ */
+public class LocalDatabase implements Closeable {
+    private static final Logger LOG = Logger.getLogger(LocalDatabase.class);
+
+    private static final String LOG_NAME = "grow.log";
+    private static final String COMPACT_NAME = "grow.log.compact";
+
+    private static final int HEADER_SIZE = 8;
+    private static final int MAX_BATCH_SIZE = 64 * 1024 * 1024;
+    private static final long COMPACTION_CHECK_SECONDS = 60;
+    private static final int ASYNC_THREADS = 4;
+
+    private final File mLogFile;
+    private final File mCompactFile;
+    private final long mSyncIntervalMillis;
+    private final long mMinCompactionBytes;
+
+    private final ReadWriteLock mLock;
+    private final Object mCompactionLock;
+    private final ScheduledExecutorService mExecutor;
+    private final ExecutorService mAsyncExecutor;
+    private final AtomicBoolean mDirty;
+
+    private Map<String, TreeMap<String, Location>> mIndex;
+
+    private FileChannel mChannel;
+    private long mSize;
+    private long mLiveBytes;
+
+    /**
+     * @param directory The directory to keep the log in.
+     * @param syncIntervalMillis Maximum time between fsyncs. 0 syncs every write.
+     * @param minCompactionBytes The smallest log which will be compacted.
+     */
+    public LocalDatabase(final File directory, final long syncIntervalMillis,
+            final long minCompactionBytes) {
+
+        mLogFile = new File(directory, LOG_NAME);
+        mCompactFile = new File(directory, COMPACT_NAME);
+        mSyncIntervalMillis = syncIntervalMillis;
+        mMinCompactionBytes = minCompactionBytes;
+
+        mLock = new ReentrantReadWriteLock();
+        mCompactionLock = new Object();
+        mIndex = new HashMap<>();
+        mDirty = new AtomicBoolean();
+
+        mExecutor = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+            Thread thread = new Thread(runnable, "LocalDatabase");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        mAsyncExecutor = Executors.newFixedThreadPool(ASYNC_THREADS, (runnable) -> {
+            Thread thread = new Thread(runnable, "LocalDatabase-async");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @return the Executor which runs asynchronous provider calls.
+     */
+    Executor getAsyncExecutor() {
+        return mAsyncExecutor;
+    }
+
+    /**
+     * Open or create the log, rebuild the index and start background syncs
+     * and compactions.
+     *
+     * @throws IOException if the log cannot be opened.
+     */
+    public void open() throws IOException {
+        final File directory = mLogFile.getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+
+        mLock.writeLock().lock();
+        try {
+            // A left over compaction file was never completed.
+            Files.deleteIfExists(mCompactFile.toPath());
+
+            mChannel = open(mLogFile);
+            recover();
+
+        } finally {
+            mLock.writeLock().unlock();
+        }
+
+        LOG.info("Opened " + mLogFile + " with " + mIndex.size() + " rows.");
+
+        if (mSyncIntervalMillis > 0) {
+            mExecutor.scheduleWithFixedDelay(this::syncQuietly, mSyncIntervalMillis,
+                    mSyncIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+
+        mExecutor.scheduleWithFixedDelay(this::compactQuietly, COMPACTION_CHECK_SECONDS,
+                COMPACTION_CHECK_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @return The value of the table, row, column triple or null if it does not exist.
+     */
+    public byte[] get(final String table, final String row, final String column)
+            throws IOException {
+
+        mLock.readLock().lock();
+        try {
+            final TreeMap<String, Location> columns = mIndex.get(rowKey(table, row));
+            if (columns == null) {
+                return null;
+            }
+
+            final Location location = columns.get(column);
+            return (location == null) ? null : read(mChannel, location);
+
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Get columns of a row in column order.
+     *
+     * @param table The table.
+     * @param row The row id.
+     * @param after Only return columns after this one. Null starts at the first column.
+     * @param limit The maximum number of columns to return. Negative for all.
+     * @return A sorted map of columns to values. Empty if the row does not exist.
+     */
+    public SortedMap<String, byte[]> getColumns(final String table, final String row,
+            final String after, final int limit) throws IOException {
+
+        mLock.readLock().lock();
+        try {
+            final SortedMap<String, byte[]> result = new TreeMap<>();
+
+            TreeMap<String, Location> columns = mIndex.get(rowKey(table, row));
+            if (columns == null) {
+                return result;
+            }
+
+            final Map<String, Location> range =
+                (after == null) ? columns : columns.tailMap(after, false);
+            for (Map.Entry<String, Location> entry : range.entrySet()) {
+                if (limit >= 0 && result.size() >= limit) {
+                    break;
+                }
+                result.put(entry.getKey(), read(mChannel, entry.getValue()));
+            }
+
+            return result;
+
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the ids of the rows in a table, in no particular order.
+     */
+    public List<String> getRowIds(final String table) {
+        final String prefix = table + '\0';
+
+        mLock.readLock().lock();
+        try {
+            final List<String> ids = new ArrayList<>();
+            for (String rowKey : mIndex.keySet()) {
+                if (rowKey.startsWith(prefix)) {
+                    ids.add(rowKey.substring(prefix.length()));
+                }
+            }
+
+            return ids;
+
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Set the value of a table, row, column triple.
+     *
+     * @param value The new value. Null deletes the column.
+     */
+    public void put(final String table, final String row, final String column,
+            final byte[] value) throws IOException {
+
+        putColumns(table, row, Collections.singletonMap(column, value));
+    }
+
+    /**
+     * Set and remove several columns of a row in one atomic write.
+     *
+     * @param table The table.
+     * @param row The row id.
+     * @param values Map of columns to values. A null value removes the column.
+     */
+    public void putColumns(final String table, final String row,
+            final Map<String, byte[]> values) throws IOException {
+
+        if (values.isEmpty()) {
+            return;
+        }
+
+        final byte[] batch = encodeBatch(table, row, values);
+
+        mLock.writeLock().lock();
+        try {
+            append(batch);
+        } finally {
+            mLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Set and remove several columns of a row in one atomic write, if a
+     * column holds the expected value.
+     *
+     * @param table The table.
+     * @param row The row id.
+     * @param column The column to check.
+     * @param expected The value column must hold, or null if it must be missing.
+     * @param values Map of columns to values. A null value removes the column.
+     * @return true if the values were written, false if column did not hold
+     *         the expected value.
+     */
+    public boolean putColumnsIf(final String table, final String row, final String column,
+            final byte[] expected, final Map<String, byte[]> values) throws IOException {
+
+        final byte[] batch = encodeBatch(table, row, values);
+
+        mLock.writeLock().lock();
+        try {
+            final TreeMap<String, Location> columns = mIndex.get(rowKey(table, row));
+            final Location location = (columns == null) ? null : columns.get(column);
+            final byte[] actual = (location == null) ? null : read(mChannel, location);
+            if (!Arrays.equals(expected, actual)) {
+                return false;
+            }
+
+            if (!values.isEmpty()) {
+                append(batch);
+            }
+            return true;
+
+        } finally {
+            mLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Append a batch to the log and apply it to the index.
+     *
+     * The caller must hold the write lock.
+     */
+    private void append(final byte[] batch) throws IOException {
+        final long position = mSize;
+        writeFully(mChannel, ByteBuffer.wrap(batch), position);
+        mSize += batch.length;
+
+        mLiveBytes += apply(mIndex, batch, position);
+
+        if (mSyncIntervalMillis > 0) {
+            mDirty.set(true);
+        } else {
+            mChannel.force(false);
+        }
+    }
+
+    /**
+     * Force all written values to disk.
+     *
+     * Reads and writes may continue while the sync is in progress.
+     */
+    public void sync() throws IOException {
+        mLock.readLock().lock();
+        try {
+            if (mDirty.getAndSet(false)) {
+                mChannel.force(false);
+            }
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Compact the log if enough of it is dead.
+     *
+     * @return true if the log was compacted.
+     */
+    public boolean maybeCompact() throws IOException {
+        mLock.readLock().lock();
+        try {
+            if (mSize < mMinCompactionBytes || mLiveBytes * 2 > mSize) {
+                return false;
+            }
+        } finally {
+            mLock.readLock().unlock();
+        }
+
+        compact();
+        return true;
+    }
+
+    /**
+     * Rewrite the log with only the live values, one batch per row.
+     *
+     * Reads and writes continue while the live values are copied. Writes are
+     * only blocked while the batches written during the copy are appended and
+     * the new file replaces the log.
+     */
+    public void compact() throws IOException {
+        synchronized (mCompactionLock) {
+            final FileChannel source;
+            final long copiedTo;
+            final List<Map.Entry<String, List<Map.Entry<String, Location>>>> rows;
+
+            // Snapshot the index. The values it points to are never changed.
+            mLock.readLock().lock();
+            try {
+                source = mChannel;
+                copiedTo = mSize;
+
+                rows = new ArrayList<>(mIndex.size());
+                for (Map.Entry<String, TreeMap<String, Location>> row : mIndex.entrySet()) {
+                    rows.add(new SimpleImmutableEntry<>(row.getKey(),
+                                new ArrayList<>(row.getValue().entrySet())));
+                }
+
+            } finally {
+                mLock.readLock().unlock();
+            }
+
+            final Map<String, TreeMap<String, Location>> index = new HashMap<>();
+            long liveBytes = 0;
+
+            final FileChannel compacted = open(mCompactFile);
+            try {
+                compacted.truncate(0);
+
+                long position = 0;
+                for (Map.Entry<String, List<Map.Entry<String, Location>>> row : rows) {
+                    final Map<String, byte[]> values = new LinkedHashMap<>();
+                    for (Map.Entry<String, Location> column : row.getValue()) {
+                        values.put(column.getKey(), read(source, column.getValue()));
+                    }
+
+                    final String[] parts = splitRowKey(row.getKey());
+                    final byte[] batch = encodeBatch(parts[0], parts[1], values);
+                    writeFully(compacted, ByteBuffer.wrap(batch), position);
+                    liveBytes += apply(index, batch, position);
+                    position += batch.length;
+                }
+
+                mLock.writeLock().lock();
+                try {
+                    final long before = mSize;
+
+                    // Append the batches written since the snapshot.
+                    long tail = copiedTo;
+                    while (tail < mSize) {
+                        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                        readFully(mChannel, header, tail);
+                        final int length = HEADER_SIZE + header.getInt(4);
+
+                        final byte[] batch = read(mChannel, new Location(tail, length, length));
+                        writeFully(compacted, ByteBuffer.wrap(batch), position);
+                        liveBytes += apply(index, batch, position);
+                        position += length;
+                        tail += length;
+                    }
+
+                    compacted.force(true);
+                    compacted.close();
+
+                    mChannel.close();
+                    Files.move(mCompactFile.toPath(), mLogFile.toPath(),
+                            StandardCopyOption.REPLACE_EXISTING,
+                            StandardCopyOption.ATOMIC_MOVE);
+
+                    mChannel = open(mLogFile);
+                    mIndex = index;
+                    mSize = position;
+                    mLiveBytes = liveBytes;
+                    mDirty.set(false);
+
+                    LOG.info("Compacted " + mLogFile + " from " + before + " to " + mSize
+                            + " bytes.");
+
+                } finally {
+                    mLock.writeLock().unlock();
+                }
+
+            } finally {
+                if (compacted.isOpen()) {
+                    compacted.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The number of bytes in the log.
+     */
+    public long getSize() {
+        mLock.readLock().lock();
+        try {
+            return mSize;
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return The number of bytes in the log which belong to live values.
+     */
+    public long getLiveBytes() {
+        mLock.readLock().lock();
+        try {
+            return mLiveBytes;
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Stop background work, sync and close the log.
+     */
+    @Override
+    public void close() throws IOException {
+        mExecutor.shutdown();
+        mAsyncExecutor.shutdown();
+        try {
+            mExecutor.awaitTermination(COMPACTION_CHECK_SECONDS, TimeUnit.SECONDS);
+            mAsyncExecutor.awaitTermination(COMPACTION_CHECK_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        mLock.writeLock().lock();
+        try {
+            if (mChannel != null && mChannel.isOpen()) {
+                mChannel.force(false);
+                mChannel.close();
+            }
+        } finally {
+            mLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Rebuild the index from the log, truncating any torn batch at the end.
+     */
+    private void recover() throws IOException {
+        mIndex = new HashMap<>();
+        mLiveBytes = 0;
+
+        final long length = mChannel.size();
+        long position = 0;
+
+        mChannel.position(0);
+        final DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Channels.newInputStream(mChannel)));
+
+        while (position < length) {
+            final byte[] batch = readBatch(in, length - position);
+            if (batch == null) {
+                LOG.warn("Truncating " + mLogFile + " at " + position + " of " + length
+                        + " bytes due to a torn or corrupt write.");
+                mChannel.truncate(position);
+                break;
+            }
+
+            mLiveBytes += apply(mIndex, batch, position);
+            position += batch.length;
+        }
+
+        mSize = position;
+    }
+
+    /**
+     * Read the next batch from the log.
+     *
+     * @return The complete batch including its header, or null if it is
+     *         incomplete or its checksum does not match.
+     */
+    private byte[] readBatch(final DataInputStream in, final long remaining) throws IOException {
+        if (remaining < HEADER_SIZE) {
+            return null;
+        }
+
+        try {
+            final int crc = in.readInt();
+            final int length = in.readInt();
+            if (length < 4 || length > MAX_BATCH_SIZE || length > remaining - HEADER_SIZE) {
+                return null;
+            }
+
+            final byte[] batch = new byte[HEADER_SIZE + length];
+            ByteBuffer.wrap(batch).putInt(crc).putInt(length);
+            in.readFully(batch, HEADER_SIZE, length);
+
+            final CRC32 checksum = new CRC32();
+            checksum.update(batch, 4, batch.length - 4);
+            if ((int) checksum.getValue() != crc) {
+                return null;
+            }
+
+            return batch;
+
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Update an index with the entries of a batch written at position.
+     *
+     * @return the change in the number of live bytes.
+     */
+    private static long apply(final Map<String, TreeMap<String, Location>> index,
+            final byte[] batch, final long position) {
+
+        long liveBytes = 0;
+
+        final ByteBuffer buffer = ByteBuffer.wrap(batch);
+        buffer.position(HEADER_SIZE);
+
+        final int count = buffer.getInt();
+        for (int i = 0; i < count; i++) {
+            final int start = buffer.position();
+            final String table = readString(buffer);
+            final String row = readString(buffer);
+            final String column = readString(buffer);
+            final int valueLength = buffer.getInt();
+            final long valueOffset = position + buffer.position();
+            if (valueLength > 0) {
+                buffer.position(buffer.position() + valueLength);
+            }
+            final int entrySize = buffer.position() - start;
+
+            final String rowKey = rowKey(table, row);
+            TreeMap<String, Location> columns = index.get(rowKey);
+
+            final Location old;
+            if (valueLength < 0) {
+                old = (columns == null) ? null : columns.remove(column);
+                if (columns != null && columns.isEmpty()) {
+                    index.remove(rowKey);
+                }
+
+            } else {
+                if (columns == null) {
+                    columns = new TreeMap<>();
+                    index.put(rowKey, columns);
+                }
+                old = columns.put(column, new Location(valueOffset, valueLength, entrySize));
+                liveBytes += entrySize;
+            }
+
+            if (old != null) {
+                liveBytes -= old.mEntrySize;
+            }
+        }
+
+        return liveBytes;
+    }
+
+    private byte[] read(final FileChannel channel, final Location location)
+            throws IOException {
+
+        final ByteBuffer buffer = ByteBuffer.allocate(location.mLength);
+        readFully(channel, buffer, location.mOffset);
+        return buffer.array();
+    }
+
+    private void readFully(final FileChannel channel, final ByteBuffer buffer,
+            final long position) throws IOException {
+
+        long offset = position;
+        while (buffer.hasRemaining()) {
+            final int count = channel.read(buffer, offset);
+            if (count < 0) {
+                throw new EOFException("Unexpected end of " + mLogFile);
+            }
+            offset += count;
+        }
+    }
+
+    private static byte[] encodeBatch(final String table, final String row,
+            final Map<String, byte[]> values) throws IOException {
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+
+        // Space for the header.
+        out.writeInt(0);
+        out.writeInt(0);
+
+        out.writeInt(values.size());
+        for (Map.Entry<String, byte[]> entry : values.entrySet()) {
+            writeString(out, table);
+            writeString(out, row);
+            writeString(out, entry.getKey());
+            if (entry.getValue() == null) {
+                out.writeInt(-1);
+            } else {
+                out.writeInt(entry.getValue().length);
+                out.write(entry.getValue());
+            }
+        }
+        out.flush();
+
+        final byte[] batch = bytes.toByteArray();
+        if (batch.length - HEADER_SIZE > MAX_BATCH_SIZE) {
+            throw new IOException("Batch too large: " + batch.length + " bytes.");
+        }
+
+        final ByteBuffer header = ByteBuffer.wrap(batch);
+        header.putInt(4, batch.length - HEADER_SIZE);
+
+        final CRC32 checksum = new CRC32();
+        checksum.update(batch, 4, batch.length - 4);
+        header.putInt(0, (int) checksum.getValue());
+
+        return batch;
+    }
+
+    private static void writeString(final DataOutputStream out, final String value)
+            throws IOException {
+
+        final byte[] data = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(data.length);
+        out.write(data);
+    }
+
+    private static String readString(final ByteBuffer buffer) {
+        final int length = buffer.getInt();
+        final String value = new String(buffer.array(), buffer.position(), length,
+                StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    private static void writeFully(final FileChannel channel, final ByteBuffer buffer,
+            final long position) throws IOException {
+
+        long offset = position;
+        while (buffer.hasRemaining()) {
+            offset += channel.write(buffer, offset);
+        }
+    }
+
+    private static FileChannel open(final File file) throws IOException {
+        return FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private static String rowKey(final String table, final String row) {
+        return table + '\0' + row;
+    }
+
+    private static String[] splitRowKey(final String rowKey) {
+        final int separator = rowKey.indexOf('\0');
+        return new String[] { rowKey.substring(0, separator), rowKey.substring(separator + 1) };
+    }
+
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (IOException e) {
+            LOG.error("Failed to sync " + mLogFile, e);
+        }
+    }
+
+    private void compactQuietly() {
+        try {
+            maybeCompact();
+        } catch (IOException e) {
+            LOG.error("Failed to compact " + mLogFile, e);
+        }
+    }
+
+    /**
+     * The location of a value in the log.
+     */
+    private static class Location {
+        private final long mOffset;
+        private final int mLength;
+        private final int mEntrySize;
+
+        Location(final long offset, final int length, final int entrySize) {
+            mOffset = offset;
+            mLength = length;
+            mEntrySize = entrySize;
+        }
+    }
+}
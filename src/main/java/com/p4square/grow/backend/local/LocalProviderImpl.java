@@ -0,0 +1,72 @@
+package com.p4square.grow.backend.local;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+
+import com.p4square.grow.provider.AsyncProvider;
+import com.p4square.grow.provider.AsyncProviders;
+import com.p4square.grow.provider.Codec;
+import com.p4square.grow.provider.JsonEncodedProvider;
+import com.p4square.grow.provider.Provider;
+
+/**
+ * Provider implementation backed by a LocalDatabase table.
+ *
+ * Each value is kept in the value column of the row with the key as its id.
+ * Asynchronous calls run on the database's async executor.
+ */
+public class LocalProviderImpl<V> extends JsonEncodedProvider<V>
+    implements Provider<String, V>, AsyncProvider<String, V> {
+    private static final String DEFAULT_COLUMN = "value";
+
+    private final LocalDatabase mDb;
+    private final String mTable;
+
+    public LocalProviderImpl(LocalDatabase db, String table, Class<V> clazz) {
+        super(clazz);
+
+        mDb = db;
+        mTable = table;
+    }
+
+    public LocalProviderImpl(LocalDatabase db, String table, Codec<V> codec) {
+        super(codec);
+
+        mDb = db;
+        mTable = table;
+    }
+
+    @Override
+    public V get(String key) throws IOException {
+        return decodeBytes(mDb.get(mTable, key, DEFAULT_COLUMN));
+    }
+
+    @Override
+    public void put(String key, V obj) throws IOException {
+        mDb.put(mTable, key, DEFAULT_COLUMN, (obj == null) ? null : encodeBytes(obj));
+    }
+
+    @Override
+    public CompletableFuture<V> getAsync(String key) {
+        return AsyncProviders.supply(() -> get(key), mDb.getAsyncExecutor());
+    }
+
+    @Override
+    public CompletableFuture<Void> putAsync(String key, V obj) {
+        return AsyncProviders.supply(() -> {
+            put(key, obj);
+            return null;
+        }, mDb.getAsyncExecutor());
+    }
+
+    /**
+     * Compare the encoded values and write in one atomic step.
+     */
+    @Override
+    public boolean putIf(String key, V expected, V obj) throws IOException {
+        return mDb.putColumnsIf(mTable, key, DEFAULT_COLUMN,
+                (expected == null) ? null : encodeBytes(expected),
+                Collections.singletonMap(DEFAULT_COLUMN, (obj == null) ? null : encodeBytes(obj)));
+    }
+}
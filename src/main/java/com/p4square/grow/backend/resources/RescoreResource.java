@@ -0,0 +1,86 @@
+package com.p4square.grow.backend.resources;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.restlet.data.MediaType;
+import org.restlet.data.Status;
+import org.restlet.representation.Representation;
+import org.restlet.representation.StringRepresentation;
+import org.restlet.resource.ServerResource;
+
+import org.apache.log4j.Logger;
+
+import com.p4square.grow.backend.AssessmentRescorer;
+import com.p4square.grow.backend.GrowBackend;
+
+/**
+ * Start and monitor a rescore of every stored assessment.
+ *
+ * POST starts a rescore in the background and returns 409 if one is already
+ * running. It is a dry run unless the request has dryRun=false. GET returns
+ * the progress of the running rescore, or the result of the last one.
+ */
+public class RescoreResource extends ServerResource {
+    private static final Logger LOG = Logger.getLogger(RescoreResource.class);
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private AssessmentRescorer mRescorer;
+
+    @Override
+    public void doInit() {
+        super.doInit();
+
+        final GrowBackend backend = (GrowBackend) getApplication();
+        mRescorer = backend.getAssessmentRescorer();
+    }
+
+    /**
+     * Handle GET Requests.
+     */
+    @Override
+    protected Representation get() {
+        final AssessmentRescorer.Result result = mRescorer.getResult();
+        if (result == null) {
+            setStatus(Status.CLIENT_ERROR_NOT_FOUND);
+            return null;
+        }
+
+        return toRepresentation(result);
+    }
+
+    /**
+     * Handle POST Requests.
+     */
+    @Override
+    protected Representation post(Representation entity) {
+        final boolean dryRun = !"false".equals(getQueryValue("dryRun"));
+
+        final AssessmentRescorer.Result result;
+        try {
+            result = mRescorer.start(dryRun);
+
+        } catch (IllegalStateException e) {
+            setStatus(Status.CLIENT_ERROR_CONFLICT);
+            return toRepresentation(mRescorer.getResult());
+        }
+
+        LOG.info("Started rescore" + (dryRun ? " (dry run)" : ""));
+        setStatus(Status.SUCCESS_ACCEPTED);
+        return toRepresentation(result);
+    }
+
+    private Representation toRepresentation(final AssessmentRescorer.Result result) {
+        try {
+            return new StringRepresentation(MAPPER.writeValueAsString(result),
+                    MediaType.APPLICATION_JSON);
+
+        } catch (IOException e) {
+            LOG.error("Failed to serialize rescore result", e);
+            setStatus(Status.SERVER_ERROR_INTERNAL);
+            return null;
+        }
+    }
+}
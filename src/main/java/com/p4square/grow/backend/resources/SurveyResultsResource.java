@@ -5,6 +5,8 @@
 package com.p4square.grow.backend.resources;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
 
@@ -18,19 +20,31 @@ import org.restlet.resource.ServerResource;
 
 import org.apache.log4j.Logger;
 
-import com.p4square.grow.backend.GrowBackend;
+import com.p4square.grow.backend.Assessments;
 import com.p4square.grow.model.Answer;
 import com.p4square.grow.model.Question;
 import com.p4square.grow.model.RecordedAnswer;
-import com.p4square.grow.model.Score;
+import com.p4square.grow.model.RunningScore;
 import com.p4square.grow.model.UserRecord;
 import com.p4square.grow.provider.CollectionProvider;
 import com.p4square.grow.provider.Provider;
+import com.p4square.grow.provider.ProvidesAssessments;
+import com.p4square.grow.provider.ProvidesQuestions;
+import com.p4square.grow.provider.ProvidesUserRecords;
 
 
 /**
  * Store the user's answers to the assessment and generate their score.
  *
+ * The score is kept in the runningScore column and updated with each answer,
+ * along with the summary served to GET requests. When the running score is
+ * missing or cannot be updated, it is rebuilt from every answer.
+ *
+ * An answer is written with its score only if the stored score has not
+ * changed since it was read. Every write of the score increments its
+ * revision, so two answers recorded at once cannot both build on the same
+ * score; the one which loses is retried from the new score.
+ *
  * @author Jesse Morgan <jesse@jesterpm.net>
  */
 public class SurveyResultsResource extends ServerResource {
@@ -38,6 +52,12 @@ public class SurveyResultsResource extends ServerResource {
 
     private static final ObjectMapper MAPPER = new ObjectMapper();
 
+    private static final String SUMMARY = Assessments.SUMMARY;
+    private static final String LAST_ANSWERED = Assessments.LAST_ANSWERED;
+    private static final String RUNNING_SCORE = Assessments.RUNNING_SCORE;
+
+    private static final int MAX_SCORE_ATTEMPTS = 5;
+
     static enum RequestType {
         ASSESSMENT, ANSWER
     }
@@ -54,10 +74,9 @@ public class SurveyResultsResource extends ServerResource {
     public void doInit() {
         super.doInit();
 
-        final GrowBackend backend = (GrowBackend) getApplication();
-        mAnswerProvider = backend.getAnswerProvider();
-        mQuestionProvider = backend.getQuestionProvider();
-        mUserRecordProvider = backend.getUserRecordProvider();
+        mAnswerProvider = ((ProvidesAssessments) getApplication()).getAnswerProvider();
+        mQuestionProvider = ((ProvidesQuestions) getApplication()).getQuestionProvider();
+        mUserRecordProvider = ((ProvidesUserRecords) getApplication()).getUserRecordProvider();
 
         mUserId = getAttribute("userId");
         mQuestionId = getAttribute("questionId");
@@ -82,7 +101,7 @@ public class SurveyResultsResource extends ServerResource {
                     break;
 
                 case ASSESSMENT:
-                    result = mAnswerProvider.get(mUserId, "summary");
+                    result = mAnswerProvider.get(mUserId, SUMMARY);
                     if (result == null || result.length() == 0) {
                         result = buildAssessment();
                     }
@@ -112,9 +131,12 @@ public class SurveyResultsResource extends ServerResource {
         switch (mRequestType) {
             case ANSWER:
                 try {
-                    mAnswerProvider.put(mUserId, mQuestionId, entity.getText());
-                    mAnswerProvider.put(mUserId, "lastAnswered", mQuestionId);
-                    mAnswerProvider.put(mUserId, "summary", null);
+                    // Write the answer and the updated score in one update.
+                    final String answer = entity.getText();
+                    Map<String, String> changes = new HashMap<>();
+                    changes.put(mQuestionId, answer);
+                    changes.put(LAST_ANSWERED, mQuestionId);
+                    writeWithScore(changes, answer);
                     success = true;
 
                 } catch (Exception e) {
@@ -147,8 +169,9 @@ public class SurveyResultsResource extends ServerResource {
         switch (mRequestType) {
             case ANSWER:
                 try {
-                    mAnswerProvider.put(mUserId, mQuestionId, null);
-                    mAnswerProvider.put(mUserId, "summary", null);
+                    Map<String, String> changes = new HashMap<>();
+                    changes.put(mQuestionId, null);
+                    writeWithScore(changes, null);
                     success = true;
 
                 } catch (Exception e) {
@@ -158,8 +181,11 @@ public class SurveyResultsResource extends ServerResource {
 
             case ASSESSMENT:
                 try {
-                    mAnswerProvider.put(mUserId, "summary", null);
-                    mAnswerProvider.put(mUserId, "lastAnswered", null);
+                    Map<String, String> changes = new HashMap<>();
+                    changes.put(SUMMARY, null);
+                    changes.put(LAST_ANSWERED, null);
+                    changes.put(RUNNING_SCORE, null);
+                    mAnswerProvider.putAll(mUserId, changes);
                     // TODO Delete answers
 
                     UserRecord record = mUserRecordProvider.get(mUserId);
@@ -192,62 +218,134 @@ public class SurveyResultsResource extends ServerResource {
     }
 
     /**
-     * This method compiles assessment results.
+     * Write changes to the answers row along with the running score and
+     * summary updated for the new answer to mQuestionId.
+     *
+     * @param changes The changes to the answers row.
+     * @param newAnswer The new answer, or null if the answer is removed.
+     * @throws IOException if the score changed on every attempt.
      */
-    private String buildAssessment() throws IOException {
-        StringBuilder sb = new StringBuilder("{ ");
+    private void writeWithScore(final Map<String, String> changes, final String newAnswer)
+            throws IOException {
+
+        for (int attempt = 0; attempt < MAX_SCORE_ATTEMPTS; attempt++) {
+            final String oldScore = mAnswerProvider.get(mUserId, RUNNING_SCORE);
+            final RunningScore score = updateScore(oldScore, newAnswer);
+            Assessments.setNextRevision(score, oldScore);
+
+            final Map<String, String> update = new HashMap<>(changes);
+            update.put(RUNNING_SCORE, MAPPER.writeValueAsString(score));
+            update.put(SUMMARY, Assessments.summarize(score));
+            if (mAnswerProvider.putAllIf(mUserId, RUNNING_SCORE, oldScore, update)) {
+                return;
+            }
 
-        // Last question answered
-        final String lastAnswered = mAnswerProvider.get(mUserId, "lastAnswered");
-        if (lastAnswered != null && lastAnswered.length() > 0) {
-            sb.append("\"lastAnswered\": \"" + lastAnswered + "\", ");
+            LOG.debug("Running score for " + mUserId + " changed. Retrying.");
         }
 
-        // Compute score
-        Map<String, String> row = mAnswerProvider.query(mUserId);
-        if (row.size() > 0) {
-            Score score = new Score();
-            boolean scoringDone = false;
-            int totalAnswers = 0;
-            for (Map.Entry<String, String> c : row.entrySet()) {
-                if (c.getKey().equals("lastAnswered") || c.getKey().equals("summary")) {
-                    continue;
-                }
+        throw new IOException("Running score for " + mUserId + " changed on every attempt.");
+    }
 
-                try {
-                    Question question = mQuestionProvider.get(c.getKey());
-                    RecordedAnswer userAnswer = MAPPER.readValue(c.getValue(), RecordedAnswer.class);
+    /**
+     * Replace the answer to mQuestionId in the running score.
+     *
+     * If there is no running score yet, or the old answer was the trump
+     * answer, every answer is scored again instead.
+     *
+     * @param oldScore The stored running score, or null if there is none.
+     * @param newAnswer The new answer, or null if the answer is removed.
+     * @return the updated score.
+     */
+    private RunningScore updateScore(final String oldScore, final String newAnswer)
+            throws IOException {
 
-                    if (question == null) {
-                        LOG.warn("Answer for unknown question: " + c.getKey());
-                        continue;
-                    }
+        final RunningScore score = parseRunningScore(oldScore);
+        if (score != null) {
+            final Question question = mQuestionProvider.get(mQuestionId);
+            final String oldAnswer = mAnswerProvider.get(mUserId, mQuestionId);
 
-                    LOG.debug("Scoring questionId: " + c.getKey());
-                    scoringDone = !question.scoreAnswer(score, userAnswer);
+            boolean updated = true;
+            if (oldAnswer != null) {
+                updated = score.remove(mQuestionId, question, parseAnswer(oldAnswer));
+            }
 
-                } catch (Exception e) {
-                    LOG.error("Failed to score question: {userid: \"" + mUserId +
-                            "\", questionid:\"" + c.getKey() +
-                            "\", userAnswer:\"" + c.getValue() + "\"}", e);
+            if (updated) {
+                if (newAnswer != null) {
+                    score.add(mQuestionId, question, parseAnswer(newAnswer));
+                    score.setLastAnswered(mQuestionId);
                 }
-
-                totalAnswers++;
+                return score;
             }
+        }
 
-            sb.append("\"score\":" + score.getScore());
-            sb.append(", \"sum\":" + score.getSum());
-            sb.append(", \"count\":" + score.getCount());
-            sb.append(", \"totalAnswers\":" + totalAnswers);
-            sb.append(", \"result\":\"" + score.toString() + "\"");
+        final Map<String, String> row = new HashMap<>(mAnswerProvider.query(mUserId));
+        if (newAnswer == null) {
+            row.remove(mQuestionId);
+        } else {
+            row.put(mQuestionId, newAnswer);
+            row.put(LAST_ANSWERED, mQuestionId);
         }
 
-        sb.append(" }");
-        String summary = sb.toString();
+        return scoreRow(row);
+    }
 
-        // Persist summary
-        mAnswerProvider.put(mUserId, "summary", summary);
+    /**
+     * @return the RunningScore in value, or null if there is none.
+     */
+    private RunningScore parseRunningScore(final String value) {
+        if (value == null || value.length() == 0) {
+            return null;
+        }
+
+        try {
+            return MAPPER.readValue(value, RunningScore.class);
+        } catch (IOException e) {
+            LOG.warn("Discarding unreadable running score for " + mUserId, e);
+            return null;
+        }
+    }
+
+    private RecordedAnswer parseAnswer(final String value) {
+        return Assessments.parseAnswer(mUserId, mQuestionId, value);
+    }
+
+    /**
+     * This method compiles assessment results from every answer and persists
+     * them with the running score.
+     */
+    private String buildAssessment() throws IOException {
+        Map<String, String> row = mAnswerProvider.query(mUserId);
+
+        RunningScore score = scoreRow(row);
+
+        String summary = Assessments.summarize(score);
+
+        // Persist summary, unless an answer has updated the score since the
+        // row was read.
+        final String oldScore = row.get(RUNNING_SCORE);
+        Assessments.setNextRevision(score, oldScore);
+
+        Map<String, String> changes = new HashMap<>();
+        changes.put(RUNNING_SCORE, MAPPER.writeValueAsString(score));
+        changes.put(SUMMARY, summary);
+        mAnswerProvider.putAllIf(mUserId, RUNNING_SCORE, oldScore, changes);
 
         return summary;
     }
+
+    /**
+     * Score every answer in an answers row.
+     */
+    private RunningScore scoreRow(final Map<String, String> row) throws IOException {
+        // Fetch all of the answered questions at once.
+        List<String> questionIds = new ArrayList<>();
+        for (String key : row.keySet()) {
+            if (Assessments.isAnswer(key)) {
+                questionIds.add(key);
+            }
+        }
+        Map<String, Question> questions = mQuestionProvider.getAll(questionIds);
+
+        return Assessments.score(mUserId, row, questions::get);
+    }
 }
@@ -7,6 +7,7 @@ package com.p4square.grow.backend.resources;
 import java.io.IOException;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
@@ -23,6 +24,7 @@ import org.apache.log4j.Logger;
 
 import com.p4square.grow.backend.GrowBackend;
 
+import com.p4square.grow.provider.AsyncProviders;
 import com.p4square.grow.provider.CollectionProvider;
 import com.p4square.grow.provider.JsonEncodedProvider;
 import com.p4square.grow.provider.Provider;
@@ -60,16 +62,25 @@ public class TrainingRecordResource extends ServerResource {
         mVideoId = getAttribute("videoId");
 
         try {
+            // Start loading the record while the default playlist is fetched.
+            CompletableFuture<TrainingRecord> recordFuture =
+                AsyncProviders.async(mTrainingRecordProvider).getAsync(mUserId);
+
             Playlist defaultPlaylist = ((ProvidesTrainingRecords) getApplication()).getDefaultPlaylist();
 
-            mRecord = mTrainingRecordProvider.get(mUserId);
+            mRecord = AsyncProviders.await(recordFuture);
             if (mRecord == null) {
+                // The default playlist is shared. Give the user their own copy.
                 mRecord = new TrainingRecord();
-                mRecord.setPlaylist(defaultPlaylist);
+                mRecord.setPlaylist(defaultPlaylist == null ? null : defaultPlaylist.clone());
                 skipAssessedChapters(mUserId, mRecord);
-            } else {
-                // Merge the playlist with the most recent version.
+
+            } else if (defaultPlaylist != null
+                    && defaultPlaylist.getLastUpdated().after(mRecord.getPlaylist().getLastUpdated())) {
+                // Save the merged playlist so it is not merged again on every request.
+                final TrainingRecord loaded = copyOf(mRecord);
                 mRecord.getPlaylist().merge(defaultPlaylist);
+                saveMergedRecord(loaded);
             }
 
         } catch (IOException e) {
@@ -165,6 +176,30 @@ public class TrainingRecordResource extends ServerResource {
         return null;
     }
 
+    /**
+     * Save the merged record if the stored record is still the one loaded.
+     *
+     * A request which changed the record since it was loaded has its change
+     * kept, and the merge is repeated on the next request.
+     */
+    private void saveMergedRecord(TrainingRecord loaded) {
+        try {
+            if (!mTrainingRecordProvider.putIf(mUserId, loaded, mRecord)) {
+                LOG.debug("TrainingRecord for " + mUserId + " changed before the merge was saved.");
+            }
+        } catch (IOException e) {
+            // The merge will be repeated on the next request.
+            LOG.warn("Failed to save merged TrainingRecord for " + mUserId, e);
+        }
+    }
+
+    private static TrainingRecord copyOf(TrainingRecord record) {
+        TrainingRecord copy = new TrainingRecord();
+        copy.setLastVideo(record.getLastVideo());
+        copy.setPlaylist(record.getPlaylist().clone());
+        return copy;
+    }
+
     private Score getAssessedScore(String userId) throws IOException {
         // Get the user's score.
         Score assessedScore = new Score(0, 0);
@@ -5,6 +5,9 @@
 package com.p4square.grow.frontend;
 
 import java.io.IOException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import com.fasterxml.jackson.databind.JavaType;
 
@@ -61,6 +64,29 @@ public class JsonRequestProvider<V> extends JsonEncodedProvider<V> implements Pr
         return decode(representation.getText());
     }
 
+    /**
+     * Fetch each url in turn.
+     *
+     * Unlike get(), urls which are not found are omitted from the result
+     * rather than causing a NotFoundException.
+     */
+    @Override
+    public Map<String, V> getAll(Collection<String> urls) throws IOException {
+        Map<String, V> result = new LinkedHashMap<>();
+        for (String url : urls) {
+            try {
+                V obj = get(url);
+                if (obj != null) {
+                    result.put(url, obj);
+                }
+            } catch (NotFoundException e) {
+                // Missing objects are omitted.
+            }
+        }
+
+        return result;
+    }
+
     @Override
     public void put(String url, V obj) throws IOException {
         final Request request = new Request(Method.PUT, url);
@@ -4,9 +4,14 @@
 
 package com.p4square.grow.model;
 
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
 import java.util.Date;
-import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
 
 import com.fasterxml.jackson.annotation.JsonAnyGetter;
 import com.fasterxml.jackson.annotation.JsonAnySetter;
@@ -15,15 +20,67 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 /**
  * Chapter is a list of VideoRecords in a Playlist.
  *
+ * A Chapter belongs to at most one Playlist at a time and keeps that
+ * Playlist's video index up to date as videos are added and removed.
+ *
+ * Training records are kept in memory, so the videos are stored compactly:
+ * each video has a slot in a set of parallel arrays holding its interned id,
+ * its flag bits and its completion time. A table of slots, keyed by the hash
+ * of the id, finds a video. A removed video leaves its slot empty for the
+ * next video added, so the slot of every other video stays the same.
+ *
+ * The Chapter hands out one VideoRecord per video, made when it is first
+ * asked for. The record refers to the video's slot rather than holding a
+ * copy. When the video is removed or replaced, its record takes a copy of
+ * the video's data and no longer refers to the chapter.
+ *
+ * The number of required and incomplete videos is counted as videos change,
+ * so isComplete() and isRequired() do not look at each video.
+ *
  * @author Jesse Morgan <jesse@jesterpm.net>
  */
 public class Chapter implements Cloneable {
+    private static final String[] NO_IDS = new String[0];
+    private static final byte[] NO_FLAGS = new byte[0];
+    private static final long[] NO_TIMES = new long[0];
+
+    private static final int SLOT_MASK = 0xFFFF;
+
     private Chapters mName;
-    private Map<String, VideoRecord> mVideos;
+
+    // Parallel arrays, indexed by slot. The id of an empty slot is null.
+    private String[] mIds;
+    private byte[] mFlags;
+    private long[] mCompletionTimes;
+
+    /**
+     * Open addressing table keyed by the hash of the id. Each entry holds
+     * slot + 1 in its low bits and the high bits of the hash above them, so
+     * most mismatches are found without reading the id. Zero marks an unused
+     * entry.
+     */
+    private int[] mTable;
+
+    // The VideoRecord handed out for each slot, if any. Made when first needed.
+    private VideoRecord[] mViews;
+
+    private int mSlots;
+    private int mSize;
+
+    // Empty slots below mSlots, most recently emptied last.
+    private int[] mFreeSlots;
+    private int mFreeCount;
+
+    private int mRequired;
+    private int mIncomplete;
+
+    private Playlist mPlaylist;
 
     public Chapter(Chapters name) {
         mName = name;
-        mVideos = new HashMap<>();
+        mIds = NO_IDS;
+        mFlags = NO_FLAGS;
+        mCompletionTimes = NO_TIMES;
     }
 
     /**
@@ -53,25 +110,39 @@ public class Chapter implements Cloneable {
      * @return The VideoRecord for videoid or null if videoid is not in the chapter.
      */
     public VideoRecord getVideoRecord(String videoid) {
-        return mVideos.get(videoid);
+        final int slot = findSlot(videoid);
+        if (slot < 0) {
+            return null;
+        }
+        return view(slot);
     }
 
     /**
-     * @return A map of video ids to VideoRecords.
+     * @return An unmodifiable map of video ids to VideoRecords.
      */
-    @JsonAnyGetter
+    @JsonIgnore
     public Map<String, VideoRecord> getVideos() {
-        return mVideos;
+        return new Videos(true);
     }
 
     /**
      * Set the VideoRecord for a video id.
+     *
+     * video becomes the chapter's record for videoId, as returned by
+     * getVideoRecord(), and changes made through it are seen by the chapter.
+     * A record it replaces keeps a copy of its data.
+     *
      * @param videoId the video id.
      * @param video the VideoRecord.
      */
-    @JsonAnySetter
     public void setVideoRecord(String videoId, VideoRecord video) {
-        mVideos.put(videoId, video);
+        final int slot = store(videoId, video.getFlags(), video.getCompletionTime());
+        video.attach(this, slot);
+
+        if (mViews == null) {
+            mViews = new VideoRecord[mIds.length];
+        }
+        mViews[slot] = video;
     }
 
     /**
@@ -79,7 +150,30 @@ public class Chapter implements Cloneable {
      * @param videoId The id to remove.
      */
     public void removeVideoRecord(String videoId) {
-        mVideos.remove(videoId);
+        final int entry = findEntry(videoId);
+        if (entry < 0) {
+            return;
+        }
+
+        final int slot = (mTable[entry] & SLOT_MASK) - 1;
+        detachView(slot);
+        count(mFlags[slot], -1);
+        removeEntry(entry);
+        mIds[slot] = null;
+        mSize--;
+        freeSlot(slot);
+
+        if (mPlaylist != null) {
+            mPlaylist.unindexVideo(videoId, this);
+        }
+    }
+
+    /**
+     * Set the Playlist which indexes this chapter's videos.
+     */
+    @JsonIgnore
+    void setPlaylist(Playlist playlist) {
+        mPlaylist = playlist;
     }
 
     /**
@@ -87,13 +181,7 @@ public class Chapter implements Cloneable {
      */
     @JsonIgnore
     public boolean isComplete() {
-        for (VideoRecord r : mVideos.values()) {
-            if (r.getRequired() && !r.getComplete()) {
-                return false;
-            }
-        }
-
-        return true;
+        return mIncomplete == 0;
     }
 
     /**
@@ -101,13 +189,7 @@ public class Chapter implements Cloneable {
      */
     @JsonIgnore
     public boolean isRequired() {
-        for (VideoRecord r : mVideos.values()) {
-            if (r.getRequired()) {
-                return true;
-            }
-        }
-
-        return false;
+        return mRequired > 0;
     }
 
     /**
@@ -115,21 +197,18 @@ public class Chapter implements Cloneable {
      */
     @JsonIgnore
     public Date getCompletionDate() {
-        Date latest = new Date(0);
-        for (VideoRecord video : mVideos.values()) {
-            if (video.getRequired() && !video.getComplete()) {
-                // Hey, this chapter isn't complete!
-                return null;
-            }
+        if (mIncomplete > 0) {
+            // Hey, this chapter isn't complete!
+            return null;
+        }
 
-            Date completionDate = video.getCompletionDate();
-            if (completionDate != null) {
-                if (completionDate.after(latest)) {
-                    latest = completionDate;
-                }
+        long latest = 0;
+        for (int slot = 0; slot < mSlots; slot++) {
+            if (mIds[slot] != null && mCompletionTimes[slot] > latest) {
+                latest = mCompletionTimes[slot];
             }
         }
-        return latest;
+        return new Date(latest);
     }
 
     /**
@@ -139,9 +218,326 @@ public class Chapter implements Cloneable {
      */
     public Chapter clone() throws CloneNotSupportedException {
         Chapter c = new Chapter(mName);
-        for (Map.Entry<String, VideoRecord> videoEntry : mVideos.entrySet()) {
-            c.setVideoRecord(videoEntry.getKey(), videoEntry.getValue().clone());
+        c.mIds = new String[mSize];
+        c.mFlags = new byte[mSize];
+        c.mCompletionTimes = new long[mSize];
+
+        for (int slot = 0; slot < mSlots; slot++) {
+            if (mIds[slot] != null) {
+                c.mIds[c.mSlots] = mIds[slot];
+                c.mFlags[c.mSlots] = mFlags[slot];
+                c.mCompletionTimes[c.mSlots] = mCompletionTimes[slot];
+                c.mSlots++;
+            }
         }
+
+        c.mSize = mSize;
+        c.mRequired = mRequired;
+        c.mIncomplete = mIncomplete;
+        c.rebuildTable(mSize);
         return c;
     }
+
+    /**
+     * Forget view as the record for slot, when it moves to another slot.
+     */
+    void forgetView(int slot, VideoRecord view) {
+        if (mViews != null && mViews[slot] == view) {
+            mViews[slot] = null;
+        }
+    }
+
+    byte getFlags(int slot) {
+        return mFlags[slot];
+    }
+
+    void setFlags(int slot, byte flags) {
+        if (mIds[slot] != null) {
+            count(mFlags[slot], -1);
+            count(flags, 1);
+        }
+        mFlags[slot] = flags;
+    }
+
+    long getCompletionTime(int slot) {
+        return mCompletionTimes[slot];
+    }
+
+    void setCompletionTime(int slot, long time) {
+        mCompletionTimes[slot] = time;
+    }
+
+    /**
+     * Decode a video. The decoded record is copied and not kept, so records
+     * are only made for videos which are asked for.
+     */
+    @JsonAnySetter
+    private void decodeVideoRecord(String videoId, VideoRecord video) {
+        store(videoId, video.getFlags(), video.getCompletionTime());
+    }
+
+    /**
+     * @return a map of the videos for encoding, which does not keep the
+     * records it makes.
+     */
+    @JsonAnyGetter
+    private Map<String, VideoRecord> encodeVideos() {
+        return new Videos(false);
+    }
+
+    /**
+     * Store a video's data in its slot, adding a slot if it is new.
+     *
+     * @return the slot.
+     */
+    private int store(String videoId, byte flags, long completionTime) {
+        int slot = findSlot(videoId);
+        if (slot < 0) {
+            videoId = videoId.intern();
+            slot = addSlot(videoId);
+            mFlags[slot] = flags;
+            count(flags, 1);
+
+        } else {
+            videoId = mIds[slot];
+            detachView(slot);
+            setFlags(slot, flags);
+        }
+
+        mCompletionTimes[slot] = completionTime;
+
+        if (mPlaylist != null) {
+            mPlaylist.indexVideo(videoId, this);
+        }
+
+        return slot;
+    }
+
+    /**
+     * @return the VideoRecord for slot, making it if there is none.
+     */
+    private VideoRecord view(int slot) {
+        if (mViews == null) {
+            mViews = new VideoRecord[mIds.length];
+        }
+
+        VideoRecord view = mViews[slot];
+        if (view == null) {
+            view = new VideoRecord(this, slot);
+            mViews[slot] = view;
+        }
+        return view;
+    }
+
+    /**
+     * Give the VideoRecord for slot, if any, its own copy of the video's data.
+     */
+    private void detachView(int slot) {
+        if (mViews != null && mViews[slot] != null) {
+            mViews[slot].detach();
+            mViews[slot] = null;
+        }
+    }
+
+    /**
+     * Add or remove a video with the given flags from the counts.
+     */
+    private void count(byte flags, int delta) {
+        if (VideoRecord.isRequired(flags)) {
+            mRequired += delta;
+            if (!VideoRecord.isComplete(flags)) {
+                mIncomplete += delta;
+            }
+        }
+    }
+
+    /**
+     * @return the slot holding videoId, or -1 if it is not in the chapter.
+     */
+    private int findSlot(String videoId) {
+        final int entry = findEntry(videoId);
+        if (entry < 0) {
+            return -1;
+        }
+        return (mTable[entry] & SLOT_MASK) - 1;
+    }
+
+    /**
+     * @return the table entry for videoId, or -1 if it is not in the chapter.
+     */
+    private int findEntry(String videoId) {
+        if (mTable == null) {
+            return -1;
+        }
+
+        final int hash = VideoIndex.hash(videoId);
+        final int mask = mTable.length - 1;
+        for (int i = hash & mask; mTable[i] != 0; i = (i + 1) & mask) {
+            final int entry = mTable[i];
+            if ((entry & ~SLOT_MASK) == (hash & ~SLOT_MASK)
+                    && videoId.equals(mIds[(entry & SLOT_MASK) - 1])) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Add a slot for a video which is not in the chapter.
+     *
+     * @return the new slot.
+     */
+    private int addSlot(String videoId) {
+        final int slot;
+        if (mFreeCount > 0) {
+            slot = mFreeSlots[--mFreeCount];
+
+        } else {
+            if (mSlots == SLOT_MASK) {
+                throw new IllegalStateException("Chapter " + mName + " is full.");
+            }
+
+            if (mSlots == mIds.length) {
+                final int capacity = Math.max(4, mSlots + (mSlots >> 1));
+                mIds = Arrays.copyOf(mIds, capacity);
+                mFlags = Arrays.copyOf(mFlags, capacity);
+                mCompletionTimes = Arrays.copyOf(mCompletionTimes, capacity);
+                if (mViews != null) {
+                    mViews = Arrays.copyOf(mViews, capacity);
+                }
+                rebuildTable(capacity);
+            }
+
+            slot = mSlots++;
+        }
+
+        mIds[slot] = videoId;
+        mSize++;
+        insert(slot);
+        return slot;
+    }
+
+    /**
+     * Remember an empty slot for reuse.
+     */
+    private void freeSlot(int slot) {
+        if (mFreeSlots == null) {
+            mFreeSlots = new int[4];
+        } else if (mFreeCount == mFreeSlots.length) {
+            mFreeSlots = Arrays.copyOf(mFreeSlots, mFreeCount * 2);
+        }
+        mFreeSlots[mFreeCount++] = slot;
+    }
+
+    /**
+     * Build a table large enough for the given number of slots.
+     */
+    private void rebuildTable(int capacity) {
+        if (capacity == 0) {
+            mTable = null;
+            return;
+        }
+
+        // Keep the table at most two thirds full.
+        mTable = new int[Integer.highestOneBit(capacity + (capacity >> 1)) << 1];
+        for (int slot = 0; slot < mSlots; slot++) {
+            if (mIds[slot] != null) {
+                insert(slot);
+            }
+        }
+    }
+
+    /**
+     * Remove an entry from the table, moving later entries of its probe
+     * sequence into the gap so they can still be found.
+     */
+    private void removeEntry(int entry) {
+        final int mask = mTable.length - 1;
+        for (int i = (entry + 1) & mask; mTable[i] != 0; i = (i + 1) & mask) {
+            final int home = VideoIndex.hash(mIds[(mTable[i] & SLOT_MASK) - 1]) & mask;
+            if (((i - home) & mask) >= ((i - entry) & mask)) {
+                mTable[entry] = mTable[i];
+                entry = i;
+            }
+        }
+        mTable[entry] = 0;
+    }
+
+    private void insert(int slot) {
+        final int hash = VideoIndex.hash(mIds[slot]);
+        final int mask = mTable.length - 1;
+        int i = hash & mask;
+        while (mTable[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        mTable[i] = (hash & ~SLOT_MASK) | (slot + 1);
+    }
+
+    /**
+     * Unmodifiable map view of the videos.
+     */
+    private class Videos extends AbstractMap<String, VideoRecord> {
+        private final boolean mKeepRecords;
+
+        Videos(boolean keepRecords) {
+            mKeepRecords = keepRecords;
+        }
+
+        @Override
+        public int size() {
+            return mSize;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return key instanceof String && findSlot((String) key) >= 0;
+        }
+
+        @Override
+        public VideoRecord get(Object key) {
+            return key instanceof String ? getVideoRecord((String) key) : null;
+        }
+
+        @Override
+        public Set<Map.Entry<String, VideoRecord>> entrySet() {
+            return new AbstractSet<Map.Entry<String, VideoRecord>>() {
+                @Override
+                public int size() {
+                    return mSize;
+                }
+
+                @Override
+                public Iterator<Map.Entry<String, VideoRecord>> iterator() {
+                    return new Iterator<Map.Entry<String, VideoRecord>>() {
+                        private int mNext = skipEmpty(0);
+
+                        @Override
+                        public boolean hasNext() {
+                            return mNext < mSlots;
+                        }
+
+                        @Override
+                        public Map.Entry<String, VideoRecord> next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+
+                            final int slot = mNext;
+                            mNext = skipEmpty(slot + 1);
+                            return new AbstractMap.SimpleImmutableEntry<>(mIds[slot],
+                                    mKeepRecords ? view(slot) : new VideoRecord(Chapter.this, slot));
+                        }
+                    };
+                }
+            };
+        }
+
+        private int skipEmpty(int slot) {
+            while (slot < mSlots && mIds[slot] == null) {
+                slot++;
+            }
+            return slot;
+        }
+    }
 }
@@ -0,0 +1,243 @@
+package com.p4square.grow.model;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * CompiledQuestion is the form of a Question used for scoring.
+ *
+ * The answers are flattened into parallel arrays when the question is
+ * compiled: the answer ids, their score factors and score types, and for
+ * answer ids which are points, their coordinates. Scoring against a
+ * CompiledQuestion reads these arrays and does not allocate.
+ *
+ * A CompiledQuestion is immutable. It reflects the question's answers at the
+ * time it was compiled.
+ */
+public final class CompiledQuestion {
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    /**
+     * The largest mantissa which converts to a double exactly.
+     */
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    private final Question.QuestionType mType;
+    private final Map<String, Integer> mIndex;
+    private final String[] mIds;
+    private final float[] mScores;
+    private final Answer.ScoreType[] mTypes;
+    private final double[] mX;
+    private final double[] mY;
+
+    /**
+     * Compile a question.
+     *
+     * @param question The question to compile.
+     */
+    public CompiledQuestion(Question question) {
+        final Map<String, Answer> answers = question.getAnswers();
+        final int size = answers.size();
+
+        mType = question.getType();
+        mIndex = new HashMap<>(size * 2);
+        mIds = new String[size];
+        mScores = new float[size];
+        mTypes = new Answer.ScoreType[size];
+        mX = new double[size];
+        mY = new double[size];
+
+        int i = 0;
+        for (Map.Entry<String, Answer> entry : answers.entrySet()) {
+            final String id = entry.getKey();
+            final Answer answer = entry.getValue();
+
+            mIndex.put(id, i);
+            mIds[i] = id;
+            mScores[i] = answer.getScore();
+            mTypes[i] = answer.getType();
+
+            final int comma = id.indexOf(',');
+            if (comma > 0 && comma < id.length() - 1) {
+                mX[i] = parseDouble(id, 0, comma);
+                mY[i] = parseDouble(id, comma + 1, id.length());
+            } else {
+                mX[i] = Double.NaN;
+                mY[i] = Double.NaN;
+            }
+
+            i++;
+        }
+    }
+
+    /**
+     * @return the type of the compiled question.
+     */
+    public Question.QuestionType getType() {
+        return mType;
+    }
+
+    /**
+     * @return the number of answers.
+     */
+    public int size() {
+        return mIds.length;
+    }
+
+    /**
+     * @return the index of the answer with the given id, or -1 if there is none.
+     */
+    public int indexOf(String answerId) {
+        final Integer index = mIndex.get(answerId);
+        return (index == null) ? -1 : index;
+    }
+
+    /**
+     * @return the id of the answer at index.
+     */
+    public String getAnswerId(int index) {
+        return mIds[index];
+    }
+
+    /**
+     * Find the answer whose point is closest to (x, y).
+     *
+     * Ties go to the answer compiled first, which matches the order of the
+     * question's answer map. Answers whose ids are not points are skipped.
+     *
+     * @return the index of the closest answer, or -1 if no answer is a point.
+     */
+    public int nearest(double x, double y) {
+        double minDistance = Double.MAX_VALUE;
+        int nearest = -1;
+        for (int i = 0; i < mX.length; i++) {
+            final double dx = x - mX[i];
+            final double dy = y - mY[i];
+            final double distance = dx * dx + dy * dy;
+            if (distance < minDistance) {
+                minDistance = distance;
+                nearest = i;
+            }
+        }
+
+        return nearest;
+    }
+
+    /**
+     * Adjust the running score for the selection of an answer.
+     *
+     * This is equivalent to Answer.score() for the answer at index.
+     *
+     * @param score The running score to adjust.
+     * @param index The index of the selected answer.
+     * @return true if scoring should continue, false if this answer trumps all.
+     */
+    public boolean score(Score score, int index) {
+        switch (mTypes[index]) {
+            case TRUMP:
+                score.sum = mScores[index];
+                score.count = 1;
+                return false;
+
+            case AVERAGE:
+                score.sum += mScores[index];
+                score.count++;
+                break;
+
+            case NONE:
+                break;
+        }
+
+        return true;
+    }
+
+    /**
+     * Parse a comma separated x,y point into its x coordinate.
+     *
+     * @throws IllegalArgumentException if the input is malformed.
+     */
+    static double parseX(String str) {
+        final int comma = checkPoint(str);
+        return parseDouble(str, 0, comma);
+    }
+
+    /**
+     * Parse a comma separated x,y point into its y coordinate.
+     *
+     * @throws IllegalArgumentException if the input is malformed.
+     */
+    static double parseY(String str) {
+        final int comma = checkPoint(str);
+        return parseDouble(str, comma + 1, str.length());
+    }
+
+    private static int checkPoint(String str) {
+        final int comma = str.indexOf(',');
+        if (comma == -1 || comma == 0 || comma == str.length() - 1) {
+            throw new IllegalArgumentException("Malformed point string");
+        }
+        return comma;
+    }
+
+    /**
+     * Parse the double in str between start and end.
+     *
+     * Plain decimals with up to 15 significant digits, such as answers
+     * submitted by the assessment, are parsed without allocating. The result
+     * is exact in that case: the digits and the power of ten are both exactly
+     * representable, so a single division rounds correctly. Anything else is
+     * handed to Double.parseDouble.
+     *
+     * @throws NumberFormatException if the input is not a number.
+     */
+    static double parseDouble(String str, int start, int end) {
+        int i = start;
+        while (i < end && str.charAt(i) == ' ') {
+            i++;
+        }
+        int last = end;
+        while (last > i && str.charAt(last - 1) == ' ') {
+            last--;
+        }
+
+        boolean negative = false;
+        if (i < last && (str.charAt(i) == '-' || str.charAt(i) == '+')) {
+            negative = str.charAt(i) == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int fractionDigits = 0;
+        int digits = 0;
+        boolean point = false;
+        for (; i < last; i++) {
+            final char c = str.charAt(i);
+            if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+                if (point) {
+                    fractionDigits++;
+                }
+                if (mantissa >= MAX_EXACT_MANTISSA) {
+                    return Double.parseDouble(str.substring(start, end));
+                }
+
+            } else if (c == '.' && !point) {
+                point = true;
+
+            } else {
+                return Double.parseDouble(str.substring(start, end));
+            }
+        }
+
+        if (digits == 0 || fractionDigits >= POWERS_OF_TEN.length) {
+            return Double.parseDouble(str.substring(start, end));
+        }
+
+        final double value = mantissa / POWERS_OF_TEN[fractionDigits];
+        return negative ? -value : value;
+    }
+}
@@ -4,8 +4,9 @@
 
 package com.p4square.grow.model;
 
+import java.util.Collections;
 import java.util.Date;
-import java.util.HashMap;
+import java.util.EnumMap;
 import java.util.Map;
 
 import com.fasterxml.jackson.annotation.JsonAnyGetter;
@@ -15,21 +16,31 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 /**
  * Representation of a user's playlist.
  *
+ * The playlist keeps an index of video id to Chapter, so finding a video does
+ * not search every chapter. The index is maintained by add(), addChapter()
+ * and the Chapter methods which add and remove videos.
+ *
  * @author Jesse Morgan <jesse@jesterpm.net>
  */
-public class Playlist {
+public class Playlist implements Cloneable {
     /**
      * Map of Chapter ID to map of Video ID to VideoRecord.
      */
     private Map<Chapters, Chapter> mPlaylist;
 
+    /**
+     * Index of Video ID to the Chapter containing it.
+     */
+    private VideoIndex mIndex;
+
     private Date mLastUpdated;
 
     /**
      * Construct an empty playlist.
      */
     public Playlist() {
-        mPlaylist = new HashMap<>();
+        mPlaylist = new EnumMap<>(Chapters.class);
+        mIndex = new VideoIndex(0);
         mLastUpdated = new Date(0); // Default to a prehistoric date if we don't have one.
     }
 
@@ -37,12 +48,9 @@ public class Playlist {
      * Find the VideoRecord for a video id.
      */
     public VideoRecord find(String videoId) {
-        for (Chapter chapter : mPlaylist.values()) {
-            VideoRecord r = chapter.getVideoRecord(videoId);
-
-            if (r != null) {
-                return r;
-            }
+        Chapter chapter = findChapter(videoId);
+        if (chapter != null) {
+            return chapter.getVideoRecord(videoId);
         }
 
         return null;
@@ -53,12 +61,9 @@ public class Playlist {
      * @return the Chapter containing videoId.
      */
     private Chapter findChapter(String videoId) {
-        for (Chapter chapter : mPlaylist.values()) {
-            VideoRecord r = chapter.getVideoRecord(videoId);
-
-            if (r != null) {
-                return chapter;
-            }
+        Chapters chapterId = mIndex.get(videoId);
+        if (chapterId != null) {
+            return mPlaylist.get(chapterId);
         }
 
         return null;
@@ -87,7 +92,7 @@ public class Playlist {
 
         if (chapter == null) {
             chapter = new Chapter(chapterId);
-            mPlaylist.put(chapterId, chapter);
+            addChapter(chapterId, chapter);
         }
 
         VideoRecord r = new VideoRecord();
@@ -101,8 +106,19 @@ public class Playlist {
      * @param chapter The Chapter object to add.
      */
     public void addChapter(Chapters chapterId, Chapter chapter) {
+        Chapter replaced = mPlaylist.put(chapterId, chapter);
+        if (replaced != null && replaced != chapter) {
+            for (String videoId : replaced.getVideos().keySet()) {
+                unindexVideo(videoId, replaced);
+            }
+            replaced.setPlaylist(null);
+        }
+
         chapter.setName(chapterId);
-        mPlaylist.put(chapterId, chapter);
+        chapter.setPlaylist(this);
+        for (String videoId : chapter.getVideos().keySet()) {
+            indexVideo(videoId, chapter);
+        }
     }
 
     /**
@@ -114,11 +130,33 @@ public class Playlist {
     }
 
     /**
-     * @return a map of chapter id to chapter.
+     * @return an unmodifiable map of chapter id to chapter.
      */
     @JsonAnyGetter
     public Map<Chapters, Chapter> getChaptersMap() {
-        return mPlaylist;
+        return Collections.unmodifiableMap(mPlaylist);
+    }
+
+    /**
+     * Record that videoId is in chapter.
+     */
+    void indexVideo(String videoId, Chapter chapter) {
+        mIndex.put(videoId, chapter.getName());
+    }
+
+    /**
+     * Forget that videoId is in chapter.
+     */
+    void unindexVideo(String videoId, Chapter chapter) {
+        if (mIndex.remove(videoId, chapter.getName())) {
+            // Another chapter may hold the same video id.
+            for (Chapter other : mPlaylist.values()) {
+                if (other != chapter && other.getVideoRecord(videoId) != null) {
+                    mIndex.put(videoId, other.getName());
+                    break;
+                }
+            }
+        }
     }
 
     /**
@@ -126,7 +164,7 @@ public class Playlist {
      */
     @JsonIgnore
     public Map<Chapters, Boolean> getChapterStatuses() {
-        Map<Chapters, Boolean> completed = new HashMap<>();
+        Map<Chapters, Boolean> completed = new EnumMap<>(Chapters.class);
 
         for (Map.Entry<Chapters, Chapter> entry : mPlaylist.entrySet()) {
             completed.put(entry.getKey(), entry.getValue().isComplete());
@@ -158,14 +196,19 @@ public class Playlist {
      *     marked as "not required".
      *   * any new "required" videos in a completed chapter are marked as
      *     "not required".
+     *
+     * Nothing is done if source was last updated at or before this playlist,
+     * since it has already been merged. source is not modified.
+     *
+     * @return true if this playlist was changed.
      */
-    public void merge(Playlist source) {
-        if (source.getLastUpdated().before(mLastUpdated)) {
+    public boolean merge(Playlist source) {
+        if (!source.getLastUpdated().after(mLastUpdated)) {
             // Already up to date.
-            return;
+            return false;
         }
 
-        for (Map.Entry<Chapters, Chapter> entry : source.getChaptersMap().entrySet()) {
+        for (Map.Entry<Chapters, Chapter> entry : source.mPlaylist.entrySet()) {
             Chapters chapterName = entry.getKey();
             Chapter theirChapter = entry.getValue();
             Chapter myChapter = mPlaylist.get(entry.getKey());
@@ -177,12 +220,9 @@ public class Playlist {
             }
 
             // If my chapter is already complete, no new videos will be required.
-            boolean myChapterComplete = true;
-
-            for (Map.Entry<String, VideoRecord> videoEntry : myChapter.getVideos().entrySet()) {
-                VideoRecord myVideo = videoEntry.getValue();
-                myChapterComplete &= (myVideo.getComplete() || !myVideo.getRequired());
+            boolean myChapterComplete = myChapter.isComplete();
 
+            for (VideoRecord myVideo : myChapter.getVideos().values()) {
                 // Mark all existing, uncompleted videos as not required.
                 // We'll mark them as required again if they are required in the new playlist.
                 myVideo.setRequired(myVideo.getRequired() && myVideo.getComplete());
@@ -207,9 +247,11 @@ public class Playlist {
                             throw new RuntimeException(e); // Unexpected...
                         }
                     } else {
-                        // Video moved
-                        findChapter(videoId).removeVideoRecord(videoId);
+                        // Video moved. Add it to my chapter first, so the
+                        // index already points there when it is removed.
+                        Chapter oldChapter = findChapter(videoId);
                         myChapter.setVideoRecord(videoId, myVideo);
+                        oldChapter.removeVideoRecord(videoId);
                     }
                 } else {
                     // Copy the required property from the newer video.
@@ -223,5 +265,26 @@ public class Playlist {
         }
 
         mLastUpdated = source.getLastUpdated();
+        return true;
+    }
+
+    /**
+     * Deeply clone a playlist.
+     *
+     * @return a new Playlist object identical but independent of this one.
+     */
+    @Override
+    public Playlist clone() {
+        Playlist p = new Playlist();
+        p.mLastUpdated = mLastUpdated;
+        p.mIndex = new VideoIndex(mIndex.size());
+        try {
+            for (Map.Entry<Chapters, Chapter> entry : mPlaylist.entrySet()) {
+                p.addChapter(entry.getKey(), entry.getValue().clone());
+            }
+        } catch (CloneNotSupportedException e) {
+            throw new RuntimeException(e); // Unexpected...
+        }
+        return p;
     }
 }
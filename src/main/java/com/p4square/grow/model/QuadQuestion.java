@@ -79,7 +79,7 @@ public class QuadQuestion extends Question {
 
     @Override
     public boolean scoreAnswer(Score score, RecordedAnswer answer) {
-        return ENGINE.scoreAnswer(score, this, answer);
+        return ENGINE.scoreAnswer(score, getCompiled(), answer);
     }
 
     @Override
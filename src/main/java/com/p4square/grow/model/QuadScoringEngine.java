@@ -46,4 +46,16 @@ public class QuadScoringEngine extends ScoringEngine {
         final Answer answer = question.getAnswers().get(answers[answerIndex].toString());
         return answer.score(score);
     }
+
+    @Override
+    public boolean scoreAnswer(Score score, CompiledQuestion question, RecordedAnswer userAnswer) {
+        final String answerId = userAnswer.getAnswerId();
+        final int index = question.nearest(CompiledQuestion.parseX(answerId),
+                CompiledQuestion.parseY(answerId));
+        if (index == -1) {
+            throw new IllegalArgumentException("Question has no answers.");
+        }
+
+        return question.score(score, index);
+    }
 }
@@ -7,6 +7,7 @@ package com.p4square.grow.model;
 import java.util.HashMap;
 import java.util.Map;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonSubTypes;
 import com.fasterxml.jackson.annotation.JsonSubTypes.Type;
 import com.fasterxml.jackson.annotation.JsonTypeInfo;
@@ -54,6 +55,8 @@ public abstract class Question {
     private String mPreviousQuestionId;
     private String mNextQuestionId;
 
+    private volatile CompiledQuestion mCompiled;
+
     public Question() {
         mAnswers = new HashMap<String, Answer>();
     }
@@ -148,6 +151,23 @@ public abstract class Question {
         return nextQuestion;
     }
 
+    /**
+     * The compiled form is built the first time it is needed, usually the
+     * first time an answer is scored, and kept for the life of the question.
+     * Changes to the answers after that are not reflected.
+     *
+     * @return the CompiledQuestion used to score answers to this question.
+     */
+    @JsonIgnore
+    public CompiledQuestion getCompiled() {
+        CompiledQuestion compiled = mCompiled;
+        if (compiled == null) {
+            compiled = new CompiledQuestion(this);
+            mCompiled = compiled;
+        }
+        return compiled;
+    }
+
     /**
      * Update the score based on the answer to this question.
      *
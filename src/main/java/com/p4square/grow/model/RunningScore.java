@@ -0,0 +1,212 @@
+package com.p4square.grow.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import org.apache.log4j.Logger;
+
+/**
+ * RunningScore is the assessment score of a user, kept up to date as each
+ * answer is added, replaced or removed so the assessment never has to be
+ * re-scored from scratch.
+ *
+ * Average answers accumulate into a sum and count. A trump answer overrides
+ * them: while one is recorded, it alone is the score.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class RunningScore {
+    private static final Logger LOG = Logger.getLogger(RunningScore.class);
+
+    /**
+     * Sums are rounded to this many decimal places so adding and removing
+     * the same answer leaves no residue at a category boundary.
+     */
+    private static final double PRECISION = 1e9;
+
+    private double mSum;
+    private int mCount;
+    private Double mTrump;
+    private String mTrumpQuestion;
+    private int mTotalAnswers;
+    private String mLastAnswered;
+    private long mRevision;
+
+    public double getSum() {
+        return mSum;
+    }
+
+    public void setSum(double sum) {
+        mSum = sum;
+    }
+
+    public int getCount() {
+        return mCount;
+    }
+
+    public void setCount(int count) {
+        mCount = count;
+    }
+
+    /**
+     * @return the score of the trump answer, or null if there is none.
+     */
+    public Double getTrump() {
+        return mTrump;
+    }
+
+    public void setTrump(Double trump) {
+        mTrump = trump;
+    }
+
+    /**
+     * @return the id of the question with the trump answer.
+     */
+    public String getTrumpQuestion() {
+        return mTrumpQuestion;
+    }
+
+    public void setTrumpQuestion(String questionId) {
+        mTrumpQuestion = questionId;
+    }
+
+    /**
+     * @return the number of known questions answered, whether or not the
+     *         answers could be scored. Answers to questions which no longer
+     *         exist are not counted.
+     */
+    public int getTotalAnswers() {
+        return mTotalAnswers;
+    }
+
+    public void setTotalAnswers(int totalAnswers) {
+        mTotalAnswers = totalAnswers;
+    }
+
+    public String getLastAnswered() {
+        return mLastAnswered;
+    }
+
+    public void setLastAnswered(String questionId) {
+        mLastAnswered = questionId;
+    }
+
+    /**
+     * @return the number of times the score has been written. A write which
+     *         is conditional on the stored score fails if another write came
+     *         between, even one which left the same totals.
+     */
+    public long getRevision() {
+        return mRevision;
+    }
+
+    public void setRevision(long revision) {
+        mRevision = revision;
+    }
+
+    /**
+     * @return the current Score.
+     */
+    @JsonIgnore
+    public Score getScore() {
+        if (mTrump != null) {
+            return new Score(mTrump, 1);
+        }
+
+        return new Score(mSum, mCount);
+    }
+
+    /**
+     * Add an answer to the score.
+     *
+     * @param questionId The id of the question answered.
+     * @param question The question, or null if it no longer exists.
+     * @param answer The answer, or null if it could not be read.
+     */
+    public void add(String questionId, Question question, RecordedAnswer answer) {
+        if (question == null) {
+            LOG.warn("Answer for unknown question: " + questionId);
+            return;
+        }
+
+        mTotalAnswers++;
+
+        final Score delta = new Score();
+        final Boolean more = score(questionId, question, answer, delta);
+        if (more == null) {
+            return;
+        }
+
+        if (more) {
+            mSum = round(mSum + delta.getSum());
+            mCount += delta.getCount();
+
+        } else {
+            mTrump = delta.getSum();
+            mTrumpQuestion = questionId;
+        }
+    }
+
+    /**
+     * Remove an answer previously added with the same question and answer.
+     *
+     * @param questionId The id of the question answered.
+     * @param question The question, or null if it no longer exists.
+     * @param answer The answer, or null if it could not be read.
+     * @return false if the score must be rebuilt: either the answer was the
+     *         trump answer, which may have hidden another, or the question no
+     *         longer exists, so it is unknown whether the answer was counted.
+     */
+    public boolean remove(String questionId, Question question, RecordedAnswer answer) {
+        if (question == null) {
+            return false;
+        }
+
+        mTotalAnswers--;
+
+        final Score delta = new Score();
+        final Boolean more = score(questionId, question, answer, delta);
+        if (more == null) {
+            return true;
+        }
+
+        if (more) {
+            mSum = round(mSum - delta.getSum());
+            mCount -= delta.getCount();
+            return true;
+        }
+
+        if (questionId.equals(mTrumpQuestion)) {
+            mTrump = null;
+            mTrumpQuestion = null;
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Score one answer on its own.
+     *
+     * @return true for an average answer, false for a trump answer, or null
+     *         if the answer cannot be scored.
+     */
+    private static Boolean score(String questionId, Question question, RecordedAnswer answer,
+            Score delta) {
+
+        if (answer == null) {
+            return null;
+        }
+
+        try {
+            return question.scoreAnswer(delta, answer);
+
+        } catch (Exception e) {
+            LOG.error("Failed to score question " + questionId + " with answer " + answer, e);
+            return null;
+        }
+    }
+
+    private static double round(double value) {
+        return Math.round(value * PRECISION) / PRECISION;
+    }
+}
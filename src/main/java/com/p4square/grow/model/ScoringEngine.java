@@ -23,4 +23,18 @@ public abstract class ScoringEngine {
      * @return true if scoring should continue, false if this answer trumps everything else.
      */
     public abstract boolean scoreAnswer(Score score, Question question, RecordedAnswer answer);
+
+    /**
+     * Update the score based on the given compiled question and answer.
+     *
+     * This gives the same result as scoring the question it was compiled
+     * from, without re-reading the question's answers.
+     *
+     * @param score The running score to update.
+     * @param question The compiled question to compute the score for.
+     * @param answer The answer give to this question.
+     * @return true if scoring should continue, false if this answer trumps everything else.
+     */
+    public abstract boolean scoreAnswer(Score score, CompiledQuestion question,
+            RecordedAnswer answer);
 }
@@ -23,4 +23,14 @@ public class SimpleScoringEngine extends ScoringEngine {
 
         return answer.score(score);
     }
+
+    @Override
+    public boolean scoreAnswer(Score score, CompiledQuestion question, RecordedAnswer userAnswer) {
+        final int index = question.indexOf(userAnswer.getAnswerId());
+        if (index == -1) {
+            throw new IllegalArgumentException("Not a valid answer.");
+        }
+
+        return question.score(score, index);
+    }
 }
@@ -14,7 +14,7 @@ public class SliderQuestion extends Question {
 
     @Override
     public boolean scoreAnswer(Score score, RecordedAnswer answer) {
-        return ENGINE.scoreAnswer(score, this, answer);
+        return ENGINE.scoreAnswer(score, getCompiled(), answer);
     }
 
     @Override
@@ -32,4 +32,25 @@ public class SliderScoringEngine extends ScoringEngine {
 
         return true;
     }
+
+    @Override
+    public boolean scoreAnswer(Score score, CompiledQuestion question, RecordedAnswer userAnswer) {
+        int numberOfAnswers = question.size();
+        if (numberOfAnswers == 0) {
+            throw new IllegalArgumentException("Question has no answers.");
+        }
+
+        final String answerId = userAnswer.getAnswerId();
+        double answer = CompiledQuestion.parseDouble(answerId, 0, answerId.length());
+        if (answer < 0 || answer > 1) {
+            throw new IllegalArgumentException("Answer out of bounds.");
+        }
+
+        double delta = Math.max(1, Math.ceil(answer * numberOfAnswers) / numberOfAnswers * 4);
+
+        score.sum += delta;
+        score.count++;
+
+        return true;
+    }
 }
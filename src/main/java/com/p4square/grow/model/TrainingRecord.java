@@ -29,7 +29,8 @@ public class TrainingRecord {
      * @param video The new video id.
      */
     public void setLastVideo(String video) {
-        mLastVideo = video;
+        // Video ids are interned with the playlist's.
+        mLastVideo = video == null ? null : video.intern();
     }
 
     /**
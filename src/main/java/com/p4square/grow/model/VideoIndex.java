@@ -0,0 +1,135 @@
+package com.p4square.grow.model;
+
+/**
+ * VideoIndex maps each video id in a Playlist to the Chapter holding it.
+ *
+ * It is an open addressing table of video ids and chapter ordinals, which
+ * takes a fraction of the heap a HashMap would for every training record.
+ */
+class VideoIndex {
+    private static final Chapters[] CHAPTERS = Chapters.values();
+
+    private String[] mIds;
+    private byte[] mChapters;
+    private int mSize;
+
+    /**
+     * @param expected The number of videos expected in the index.
+     */
+    VideoIndex(final int expected) {
+        allocate(expected);
+    }
+
+    /**
+     * @return the number of videos in the index.
+     */
+    int size() {
+        return mSize;
+    }
+
+    /**
+     * @return the chapter holding videoId, or null if it is not in the index.
+     */
+    Chapters get(final String videoId) {
+        final int i = indexOf(videoId);
+        if (mIds[i] == null) {
+            return null;
+        }
+        return CHAPTERS[mChapters[i]];
+    }
+
+    /**
+     * Record that videoId is in chapter.
+     */
+    void put(final String videoId, final Chapters chapter) {
+        int i = indexOf(videoId);
+        if (mIds[i] == null) {
+            if ((mSize + 1) * 3 > mIds.length * 2) {
+                // Keep the table at most two thirds full.
+                resize();
+                i = indexOf(videoId);
+            }
+
+            mIds[i] = videoId;
+            mSize++;
+        }
+
+        mChapters[i] = (byte) chapter.ordinal();
+    }
+
+    /**
+     * Forget that videoId is in chapter.
+     *
+     * @return true if the index had videoId in chapter.
+     */
+    boolean remove(final String videoId, final Chapters chapter) {
+        int i = indexOf(videoId);
+        if (mIds[i] == null || mChapters[i] != chapter.ordinal()) {
+            return false;
+        }
+
+        // Move later entries of the probe sequence into the gap, so that
+        // every entry can still be found from its home position.
+        final int mask = mIds.length - 1;
+        for (int j = (i + 1) & mask; mIds[j] != null; j = (j + 1) & mask) {
+            final int home = hash(mIds[j]) & mask;
+            if (((j - home) & mask) >= ((j - i) & mask)) {
+                mIds[i] = mIds[j];
+                mChapters[i] = mChapters[j];
+                i = j;
+            }
+        }
+
+        mIds[i] = null;
+        mSize--;
+        return true;
+    }
+
+    /**
+     * @return the position of videoId, or of the empty entry where it belongs.
+     */
+    private int indexOf(final String videoId) {
+        final int mask = mIds.length - 1;
+        int i = hash(videoId) & mask;
+        while (mIds[i] != null && !matches(mIds[i], videoId)) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    private static boolean matches(final String id, final String videoId) {
+        // Ids in the index are interned, and so often is videoId.
+        return id == videoId || (id.hashCode() == videoId.hashCode() && id.equals(videoId));
+    }
+
+    private void allocate(final int expected) {
+        mIds = new String[Integer.highestOneBit(Math.max(4, expected + (expected >> 1))) << 1];
+        mChapters = new byte[mIds.length];
+        mSize = 0;
+    }
+
+    private void resize() {
+        final String[] ids = mIds;
+        final byte[] chapters = mChapters;
+        allocate(ids.length);
+
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] != null) {
+                final int j = indexOf(ids[i]);
+                mIds[j] = ids[i];
+                mChapters[j] = chapters[i];
+                mSize++;
+            }
+        }
+    }
+
+    /**
+     * @return a hash of videoId which spreads similar ids across the table.
+     */
+    static int hash(final String videoId) {
+        // Video ids differ in their last few characters, so their hash codes
+        // are close together. Multiplying by the golden ratio scatters them.
+        final int h = videoId.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -11,75 +11,177 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 /**
  * Simple bean containing video completion data.
  *
+ * A VideoRecord in a Chapter does not hold its own data. It refers to the
+ * Chapter's copy, so changes made through it are seen by the Chapter. A
+ * VideoRecord which is not in a Chapter, or whose video has been removed
+ * from it, holds its own copy.
+ *
  * @author Jesse Morgan <jesse@jesterpm.net>
  */
 public class VideoRecord implements Cloneable {
-    private Boolean mComplete;
-    private Boolean mRequired;
-    private Date mCompletionDate;
+    /*
+     * Flag bits for the state of a video.
+     */
+    static final byte COMPLETE = 1;
+    static final byte COMPLETE_SET = 2;
+    static final byte REQUIRED = 4;
+    static final byte REQUIRED_SET = 8;
+
+    /**
+     * Completion time for a video without a completion date.
+     */
+    static final long NO_DATE = Long.MIN_VALUE;
+
+    // The data for a record which is not in a Chapter.
+    private byte mFlags;
+    private long mCompletionTime;
+
+    // The Chapter and slot for a record which is.
+    private Chapter mChapter;
+    private int mSlot;
 
     public VideoRecord() {
-        mComplete = null;
-        mRequired = null;
-        mCompletionDate = null;
+        mFlags = 0;
+        mCompletionTime = NO_DATE;
+    }
+
+    /**
+     * Construct a VideoRecord for a slot in a Chapter.
+     */
+    VideoRecord(Chapter chapter, int slot) {
+        mChapter = chapter;
+        mSlot = slot;
     }
 
     public boolean getComplete() {
-        if (mComplete == null) {
-            return false;
-        }
-        return mComplete;
+        return isComplete(getFlags());
     }
 
     public void setComplete(boolean complete) {
-        mComplete = complete;
+        setFlag(COMPLETE, complete);
     }
 
     @JsonIgnore
     public boolean isCompleteSet() {
-        return mComplete != null;
+        return (getFlags() & COMPLETE_SET) != 0;
     }
 
     public boolean getRequired() {
-        if (mRequired == null) {
-            return true;
-        }
-        return mRequired;
+        return isRequired(getFlags());
     }
 
     public void setRequired(boolean complete) {
-        mRequired = complete;
+        setFlag(REQUIRED, complete);
     }
 
     @JsonIgnore
     public boolean isRequiredSet() {
-        return mRequired != null;
+        return (getFlags() & REQUIRED_SET) != 0;
     }
 
     public Date getCompletionDate() {
-        return mCompletionDate;
+        final long time = getCompletionTime();
+        if (time == NO_DATE) {
+            return null;
+        }
+        return new Date(time);
     }
 
     public void setCompletionDate(Date date) {
-        mCompletionDate = date;
+        setCompletionTime(date == null ? NO_DATE : date.getTime());
     }
 
     /**
      * Convenience method to mark a video complete.
      */
     public void complete() {
-        mComplete = true;
-        mCompletionDate = new Date();
+        setComplete(true);
+        setCompletionTime(System.currentTimeMillis());
     }
 
     /**
-     * @return an identical clone of this record.
+     * @return an identical clone of this record, which is not in any Chapter.
      */
     public VideoRecord clone() throws CloneNotSupportedException {
         VideoRecord r = (VideoRecord) super.clone();
-        r.mComplete = mComplete;
-        r.mRequired = mRequired;
-        r.mCompletionDate = mCompletionDate;
+        r.mFlags = getFlags();
+        r.mCompletionTime = getCompletionTime();
+        r.mChapter = null;
+        r.mSlot = 0;
         return r;
     }
+
+    /**
+     * Make this record refer to a slot in a Chapter.
+     */
+    void attach(Chapter chapter, int slot) {
+        if (mChapter != null) {
+            mChapter.forgetView(mSlot, this);
+        }
+        mChapter = chapter;
+        mSlot = slot;
+    }
+
+    /**
+     * Take a copy of the Chapter's data and stop referring to it.
+     */
+    void detach() {
+        mFlags = getFlags();
+        mCompletionTime = getCompletionTime();
+        mChapter = null;
+        mSlot = 0;
+    }
+
+    byte getFlags() {
+        if (mChapter != null) {
+            return mChapter.getFlags(mSlot);
+        }
+        return mFlags;
+    }
+
+    long getCompletionTime() {
+        if (mChapter != null) {
+            return mChapter.getCompletionTime(mSlot);
+        }
+        return mCompletionTime;
+    }
+
+    private void setFlag(byte flag, boolean value) {
+        // Each flag is followed by the bit which records that it was set.
+        byte flags = (byte) (getFlags() | (flag << 1));
+        if (value) {
+            flags |= flag;
+        } else {
+            flags &= ~flag;
+        }
+
+        if (mChapter != null) {
+            mChapter.setFlags(mSlot, flags);
+        } else {
+            mFlags = flags;
+        }
+    }
+
+    @JsonIgnore
+    private void setCompletionTime(long time) {
+        if (mChapter != null) {
+            mChapter.setCompletionTime(mSlot, time);
+        } else {
+            mCompletionTime = time;
+        }
+    }
+
+    /**
+     * @return true if the flags mark a video complete.
+     */
+    static boolean isComplete(byte flags) {
+        return (flags & COMPLETE) != 0;
+    }
+
+    /**
+     * @return true if the flags mark a video required. Videos are required by default.
+     */
+    static boolean isRequired(byte flags) {
+        return (flags & REQUIRED_SET) == 0 || (flags & REQUIRED) != 0;
+    }
 }
@@ -0,0 +1,48 @@
+package com.p4square.grow.provider;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * AsyncCollectionProvider is the non-blocking counterpart of CollectionProvider.
+ *
+ * Failures are reported by completing the future exceptionally, usually
+ * with an IOException.
+ */
+public interface AsyncCollectionProvider<C, K, V> {
+    /**
+     * Retrieve the object with the given key from the collection.
+     *
+     * @param collection The collection key.
+     * @param key The object key.
+     * @return A future for the object, which completes with null if not found.
+     */
+    CompletableFuture<V> getAsync(C collection, K key);
+
+    /**
+     * Retrieve an entire collection.
+     *
+     * @param collection The collection key.
+     * @return A future for a Map of keys to values, which is never null.
+     */
+    CompletableFuture<Map<K, V>> queryAsync(C collection);
+
+    /**
+     * Retrieve at most limit objects from a collection.
+     *
+     * @param collection The collection key.
+     * @param limit The maximum number of objects to return, or -1 for no limit.
+     * @return A future for a Map of keys to values, which is never null.
+     */
+    CompletableFuture<Map<K, V>> queryAsync(C collection, int limit);
+
+    /**
+     * Persist the object with the given collection and key.
+     *
+     * @param collection The collection key.
+     * @param key The object key.
+     * @param obj The object to persist, or null to remove it.
+     * @return A future which completes when the object has been persisted.
+     */
+    CompletableFuture<Void> putAsync(C collection, K key, V obj);
+}
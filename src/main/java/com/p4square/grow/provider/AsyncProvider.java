@@ -0,0 +1,28 @@
+package com.p4square.grow.provider;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * AsyncProvider is the non-blocking counterpart of Provider.
+ *
+ * Failures are reported by completing the future exceptionally, usually
+ * with an IOException.
+ */
+public interface AsyncProvider<K, V> {
+    /**
+     * Retrieve the object with the given key.
+     *
+     * @param key The key for the object.
+     * @return A future for the object, which completes with null if not found.
+     */
+    CompletableFuture<V> getAsync(K key);
+
+    /**
+     * Persist the object with the given key.
+     *
+     * @param key The key for the object.
+     * @param obj The object to persist.
+     * @return A future which completes when the object has been persisted.
+     */
+    CompletableFuture<Void> putAsync(K key, V obj);
+}
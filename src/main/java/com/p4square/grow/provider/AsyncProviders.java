@@ -0,0 +1,287 @@
+package com.p4square.grow.provider;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+/**
+ * Adapters between the blocking and asynchronous provider interfaces.
+ */
+public final class AsyncProviders {
+
+    /**
+     * A Function which may throw an IOException.
+     */
+    @FunctionalInterface
+    public interface IOFunction<T, R> {
+        R apply(T input) throws IOException;
+    }
+
+    /**
+     * A Callable which may throw an IOException.
+     */
+    @FunctionalInterface
+    public interface IOCallable<T> {
+        T call() throws IOException;
+    }
+
+    private AsyncProviders() {
+        // Static utility class.
+    }
+
+    /**
+     * View a Provider as an AsyncProvider.
+     *
+     * If provider already implements AsyncProvider it is returned as is.
+     * Otherwise each call blocks the calling thread and returns a completed
+     * future.
+     *
+     * @param provider The provider to adapt.
+     * @return An AsyncProvider for provider.
+     */
+    public static <K, V> AsyncProvider<K, V> async(final Provider<K, V> provider) {
+        return async(provider, Runnable::run);
+    }
+
+    /**
+     * View a Provider as an AsyncProvider, running blocking calls on an Executor.
+     *
+     * If provider already implements AsyncProvider it is returned as is.
+     *
+     * @param provider The provider to adapt.
+     * @param executor The Executor to run blocking calls on.
+     * @return An AsyncProvider for provider.
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> AsyncProvider<K, V> async(final Provider<K, V> provider,
+            final Executor executor) {
+
+        if (provider instanceof AsyncProvider) {
+            return (AsyncProvider<K, V>) provider;
+        }
+
+        return new AsyncProvider<K, V>() {
+            @Override
+            public CompletableFuture<V> getAsync(final K key) {
+                return supply(() -> provider.get(key), executor);
+            }
+
+            @Override
+            public CompletableFuture<Void> putAsync(final K key, final V obj) {
+                return supply(() -> {
+                    provider.put(key, obj);
+                    return null;
+                }, executor);
+            }
+        };
+    }
+
+    /**
+     * View a CollectionProvider as an AsyncCollectionProvider.
+     *
+     * If provider already implements AsyncCollectionProvider it is returned
+     * as is. Otherwise each call blocks the calling thread and returns a
+     * completed future.
+     *
+     * @param provider The provider to adapt.
+     * @return An AsyncCollectionProvider for provider.
+     */
+    public static <C, K, V> AsyncCollectionProvider<C, K, V> async(
+            final CollectionProvider<C, K, V> provider) {
+
+        return async(provider, Runnable::run);
+    }
+
+    /**
+     * View a CollectionProvider as an AsyncCollectionProvider, running
+     * blocking calls on an Executor.
+     *
+     * If provider already implements AsyncCollectionProvider it is returned as is.
+     *
+     * @param provider The provider to adapt.
+     * @param executor The Executor to run blocking calls on.
+     * @return An AsyncCollectionProvider for provider.
+     */
+    @SuppressWarnings("unchecked")
+    public static <C, K, V> AsyncCollectionProvider<C, K, V> async(
+            final CollectionProvider<C, K, V> provider, final Executor executor) {
+
+        if (provider instanceof AsyncCollectionProvider) {
+            return (AsyncCollectionProvider<C, K, V>) provider;
+        }
+
+        return new AsyncCollectionProvider<C, K, V>() {
+            @Override
+            public CompletableFuture<V> getAsync(final C collection, final K key) {
+                return supply(() -> provider.get(collection, key), executor);
+            }
+
+            @Override
+            public CompletableFuture<Map<K, V>> queryAsync(final C collection) {
+                return supply(() -> provider.query(collection), executor);
+            }
+
+            @Override
+            public CompletableFuture<Map<K, V>> queryAsync(final C collection, final int limit) {
+                return supply(() -> provider.query(collection, limit), executor);
+            }
+
+            @Override
+            public CompletableFuture<Void> putAsync(final C collection, final K key,
+                    final V obj) {
+
+                return supply(() -> {
+                    provider.put(collection, key, obj);
+                    return null;
+                }, executor);
+            }
+        };
+    }
+
+    /**
+     * View an AsyncProvider as a blocking Provider.
+     *
+     * If provider already implements Provider it is returned as is.
+     *
+     * @param provider The provider to adapt.
+     * @return A Provider which waits for each future to complete.
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> Provider<K, V> blocking(final AsyncProvider<K, V> provider) {
+        if (provider instanceof Provider) {
+            return (Provider<K, V>) provider;
+        }
+
+        return new Provider<K, V>() {
+            @Override
+            public V get(final K key) throws IOException {
+                return await(provider.getAsync(key));
+            }
+
+            @Override
+            public void put(final K key, final V obj) throws IOException {
+                await(provider.putAsync(key, obj));
+            }
+        };
+    }
+
+    /**
+     * View an AsyncCollectionProvider as a blocking CollectionProvider.
+     *
+     * If provider already implements CollectionProvider it is returned as is.
+     *
+     * @param provider The provider to adapt.
+     * @return A CollectionProvider which waits for each future to complete.
+     */
+    @SuppressWarnings("unchecked")
+    public static <C, K, V> CollectionProvider<C, K, V> blocking(
+            final AsyncCollectionProvider<C, K, V> provider) {
+
+        if (provider instanceof CollectionProvider) {
+            return (CollectionProvider<C, K, V>) provider;
+        }
+
+        return new CollectionProvider<C, K, V>() {
+            @Override
+            public V get(final C collection, final K key) throws IOException {
+                return await(provider.getAsync(collection, key));
+            }
+
+            @Override
+            public Map<K, V> query(final C collection) throws IOException {
+                return await(provider.queryAsync(collection));
+            }
+
+            @Override
+            public Map<K, V> query(final C collection, final int limit) throws IOException {
+                return await(provider.queryAsync(collection, limit));
+            }
+
+            @Override
+            public void put(final C collection, final K key, final V obj) throws IOException {
+                await(provider.putAsync(collection, key, obj));
+            }
+        };
+    }
+
+    /**
+     * Wait for a future to complete.
+     *
+     * @param future The future to wait on.
+     * @return The result of the future.
+     * @throws IOException If the future failed with an IOException, or with
+     *         a checked exception, which is wrapped in an IOException.
+     */
+    public static <T> T await(final CompletableFuture<T> future) throws IOException {
+        try {
+            return future.join();
+
+        } catch (CompletionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            } else {
+                throw new IOException(cause);
+            }
+
+        } catch (CancellationException e) {
+            throw new IOException("Request was cancelled.", e);
+        }
+    }
+
+    /**
+     * @param error The cause of the failure.
+     * @return A future which has already completed with error.
+     */
+    public static <T> CompletableFuture<T> failed(final Throwable error) {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(error);
+        return future;
+    }
+
+    /**
+     * Run a blocking call on an Executor.
+     *
+     * @param callable The call to make.
+     * @param executor The Executor to run it on.
+     * @return A future for the result.
+     */
+    public static <T> CompletableFuture<T> supply(final IOCallable<T> callable,
+            final Executor executor) {
+
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return callable.call();
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    /**
+     * Adapt an IOFunction for use with CompletableFuture.thenApply().
+     *
+     * IOExceptions are wrapped in a CompletionException so the resulting
+     * future fails with the original IOException as its cause.
+     *
+     * @param function The function to adapt.
+     * @return A Function which does not throw checked exceptions.
+     */
+    public static <T, R> Function<T, R> unchecked(final IOFunction<T, R> function) {
+        return (input) -> {
+            try {
+                return function.apply(input);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        };
+    }
+}
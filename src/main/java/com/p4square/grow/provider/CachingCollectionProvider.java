@@ -0,0 +1,276 @@
+package com.p4square.grow.provider;
+
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * CachingCollectionProvider is a read-through CollectionProvider decorator.
+ *
+ * Individual items and complete collections are cached separately. A query
+ * with a limit is answered from the cached collection when one is present.
+ * A put() writes through to the underlying provider and invalidates both the
+ * item and its collection. Values are shared between callers, so this should
+ * only wrap providers of values which are not modified after they are loaded.
+ */
+public class CachingCollectionProvider<C, K, V>
+    implements CollectionProvider<C, K, V>, AsyncCollectionProvider<C, K, V> {
+
+    private final CollectionProvider<C, K, V> mProvider;
+    private final ProviderCache<Map.Entry<C, K>, V> mItemCache;
+    private final ProviderCache<C, Map<K, V>> mCollectionCache;
+
+    /**
+     * @param provider The CollectionProvider to cache.
+     * @param name The base name for this cache's metrics.
+     * @param ttl Time to live for each entry.
+     * @param unit The TimeUnit for ttl.
+     * @param maxSize The maximum number of items and, separately, collections to cache.
+     * @param cacheMisses true if missing items should also be cached.
+     * @param metricRegistry The MetricRegistry to report to.
+     */
+    public CachingCollectionProvider(final CollectionProvider<C, K, V> provider,
+            final String name, final long ttl, final TimeUnit unit, final int maxSize,
+            final boolean cacheMisses, final MetricRegistry metricRegistry) {
+
+        if (provider == null) {
+            throw new IllegalArgumentException("provider must not be null.");
+        }
+        mProvider = provider;
+
+        mItemCache = new ProviderCache<>(name + ".item", ttl, unit, maxSize, cacheMisses,
+                metricRegistry);
+        mCollectionCache = new ProviderCache<>(name + ".collection", ttl, unit, maxSize, false,
+                metricRegistry);
+    }
+
+    @Override
+    public V get(final C collection, final K key) throws IOException {
+        final Map.Entry<C, K> itemKey = itemKey(collection, key);
+
+        final ProviderCache<Map.Entry<C, K>, V>.Entry entry = mItemCache.lookup(itemKey);
+        if (entry != null) {
+            return entry.getValue();
+        }
+
+        final long generation = mItemCache.generation();
+        final long start = System.nanoTime();
+        final V value = mProvider.get(collection, key);
+        mItemCache.recordLoad(start);
+
+        mItemCache.store(itemKey, value, generation);
+        return value;
+    }
+
+    @Override
+    public Map<K, V> query(final C collection) throws IOException {
+        return query(collection, -1);
+    }
+
+    @Override
+    public Map<K, V> query(final C collection, final int limit) throws IOException {
+        final ProviderCache<C, Map<K, V>>.Entry entry = mCollectionCache.lookup(collection);
+        if (entry != null) {
+            return truncate(entry.getValue(), limit);
+        }
+
+        if (limit >= 0) {
+            // Only complete collections are cached.
+            return mProvider.query(collection, limit);
+        }
+
+        final long generation = mCollectionCache.generation();
+        final long start = System.nanoTime();
+        final Map<K, V> result = Collections.unmodifiableMap(
+                new LinkedHashMap<>(mProvider.query(collection)));
+        mCollectionCache.recordLoad(start);
+
+        mCollectionCache.store(collection, result, generation);
+        return result;
+    }
+
+    @Override
+    public Map<C, Map<K, V>> queryAll(final Collection<C> collections) throws IOException {
+        final Map<C, Map<K, V>> result = new LinkedHashMap<>();
+        final List<C> misses = new ArrayList<>();
+
+        for (C collection : collections) {
+            final ProviderCache<C, Map<K, V>>.Entry entry = mCollectionCache.lookup(collection);
+            if (entry == null) {
+                misses.add(collection);
+            } else if (entry.getValue().size() > 0) {
+                result.put(collection, entry.getValue());
+            }
+        }
+
+        if (misses.isEmpty()) {
+            return result;
+        }
+
+        final long generation = mCollectionCache.generation();
+        final long start = System.nanoTime();
+        final Map<C, Map<K, V>> loaded = mProvider.queryAll(misses);
+        mCollectionCache.recordLoad(start);
+
+        for (C collection : misses) {
+            Map<K, V> items = loaded.get(collection);
+            if (items == null) {
+                items = Collections.emptyMap();
+            } else {
+                items = Collections.unmodifiableMap(new LinkedHashMap<>(items));
+                result.put(collection, items);
+            }
+            mCollectionCache.store(collection, items, generation);
+        }
+
+        return result;
+    }
+
+    /**
+     * Serve the page from the cached collection if present, otherwise stream
+     * from the underlying provider. Pages are not cached.
+     */
+    @Override
+    public Cursor<K, V> stream(final C collection, final Page<K> page) throws IOException {
+        final ProviderCache<C, Map<K, V>>.Entry entry = mCollectionCache.lookup(collection);
+        if (entry != null) {
+            return LazyCursor.fromMap(entry.getValue(), page);
+        }
+
+        return mProvider.stream(collection, page);
+    }
+
+    @Override
+    public void put(final C collection, final K key, final V obj) throws IOException {
+        try {
+            mProvider.put(collection, key, obj);
+        } finally {
+            invalidate(collection, key);
+        }
+    }
+
+    @Override
+    public void putAll(final C collection, final Map<K, V> values) throws IOException {
+        try {
+            mProvider.putAll(collection, values);
+        } finally {
+            for (K key : values.keySet()) {
+                invalidate(collection, key);
+            }
+        }
+    }
+
+    @Override
+    public boolean putAllIf(final C collection, final K key, final V expected,
+            final Map<K, V> values) throws IOException {
+
+        try {
+            return mProvider.putAllIf(collection, key, expected, values);
+        } finally {
+            // A failed check means the cached value of key is stale.
+            invalidate(collection, key);
+            for (K k : values.keySet()) {
+                invalidate(collection, k);
+            }
+        }
+    }
+
+    @Override
+    public CompletableFuture<V> getAsync(final C collection, final K key) {
+        final Map.Entry<C, K> itemKey = itemKey(collection, key);
+
+        final ProviderCache<Map.Entry<C, K>, V>.Entry entry = mItemCache.lookup(itemKey);
+        if (entry != null) {
+            return CompletableFuture.completedFuture(entry.getValue());
+        }
+
+        final long generation = mItemCache.generation();
+        final long start = System.nanoTime();
+        return AsyncProviders.async(mProvider).getAsync(collection, key).thenApply((value) -> {
+            mItemCache.recordLoad(start);
+            mItemCache.store(itemKey, value, generation);
+            return value;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Map<K, V>> queryAsync(final C collection) {
+        return queryAsync(collection, -1);
+    }
+
+    @Override
+    public CompletableFuture<Map<K, V>> queryAsync(final C collection, final int limit) {
+        final ProviderCache<C, Map<K, V>>.Entry entry = mCollectionCache.lookup(collection);
+        if (entry != null) {
+            return CompletableFuture.completedFuture(truncate(entry.getValue(), limit));
+        }
+
+        if (limit >= 0) {
+            // Only complete collections are cached.
+            return AsyncProviders.async(mProvider).queryAsync(collection, limit);
+        }
+
+        final long generation = mCollectionCache.generation();
+        final long start = System.nanoTime();
+        return AsyncProviders.async(mProvider).queryAsync(collection).thenApply((items) -> {
+            mCollectionCache.recordLoad(start);
+            final Map<K, V> result = Collections.unmodifiableMap(new LinkedHashMap<>(items));
+            mCollectionCache.store(collection, result, generation);
+            return result;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> putAsync(final C collection, final K key, final V obj) {
+        return AsyncProviders.async(mProvider).putAsync(collection, key, obj)
+            .whenComplete((result, error) -> invalidate(collection, key));
+    }
+
+    /**
+     * Remove an item and its collection from the cache.
+     *
+     * @param collection The collection key.
+     * @param key The item key.
+     */
+    public void invalidate(final C collection, final K key) {
+        mItemCache.invalidate(itemKey(collection, key));
+        mCollectionCache.invalidate(collection);
+    }
+
+    /**
+     * Remove all entries from the cache.
+     */
+    public void invalidateAll() {
+        mItemCache.invalidateAll();
+        mCollectionCache.invalidateAll();
+    }
+
+    private Map.Entry<C, K> itemKey(final C collection, final K key) {
+        return new AbstractMap.SimpleImmutableEntry<>(collection, key);
+    }
+
+    private Map<K, V> truncate(final Map<K, V> map, final int limit) {
+        if (limit < 0 || map.size() <= limit) {
+            return map;
+        }
+
+        final Map<K, V> result = new LinkedHashMap<>();
+        final Iterator<Map.Entry<K, V>> iterator = map.entrySet().iterator();
+        for (int i = 0; i < limit; i++) {
+            final Map.Entry<K, V> entry = iterator.next();
+            result.put(entry.getKey(), entry.getValue());
+        }
+
+        return Collections.unmodifiableMap(result);
+    }
+}
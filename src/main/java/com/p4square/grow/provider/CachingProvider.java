@@ -0,0 +1,158 @@
+package com.p4square.grow.provider;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * CachingProvider is a read-through Provider decorator which keeps recently
+ * used values in a size-bounded LRU cache.
+ *
+ * Entries expire after a fixed time to live. A put() writes through to the
+ * underlying provider and invalidates the cached value. Values are shared between
+ * callers, so this should only wrap providers of values which are not
+ * modified after they are loaded.
+ *
+ * Cache hits complete asynchronous requests immediately. Misses are loaded
+ * asynchronously if the underlying provider is an AsyncProvider.
+ */
+public class CachingProvider<K, V> implements Provider<K, V>, AsyncProvider<K, V> {
+
+    private final Provider<K, V> mProvider;
+    private final ProviderCache<K, V> mCache;
+
+    /**
+     * @param provider The Provider to cache.
+     * @param name The base name for this cache's metrics.
+     * @param ttl Time to live for each entry.
+     * @param unit The TimeUnit for ttl.
+     * @param maxSize The maximum number of entries to cache.
+     * @param cacheMisses true if null results should also be cached.
+     * @param metricRegistry The MetricRegistry to report to.
+     */
+    public CachingProvider(final Provider<K, V> provider, final String name, final long ttl,
+            final TimeUnit unit, final int maxSize, final boolean cacheMisses,
+            final MetricRegistry metricRegistry) {
+
+        if (provider == null) {
+            throw new IllegalArgumentException("provider must not be null.");
+        }
+        mProvider = provider;
+
+        mCache = new ProviderCache<>(name, ttl, unit, maxSize, cacheMisses, metricRegistry);
+    }
+
+    @Override
+    public V get(final K key) throws IOException {
+        final ProviderCache<K, V>.Entry entry = mCache.lookup(key);
+        if (entry != null) {
+            return entry.getValue();
+        }
+
+        final long generation = mCache.generation();
+        final long start = System.nanoTime();
+        final V value = mProvider.get(key);
+        mCache.recordLoad(start);
+
+        mCache.store(key, value, generation);
+        return value;
+    }
+
+    @Override
+    public Map<K, V> getAll(final Collection<K> keys) throws IOException {
+        final Map<K, V> result = new LinkedHashMap<>();
+        final List<K> misses = new ArrayList<>();
+
+        for (K key : keys) {
+            final ProviderCache<K, V>.Entry entry = mCache.lookup(key);
+            if (entry == null) {
+                misses.add(key);
+            } else if (entry.getValue() != null) {
+                result.put(key, entry.getValue());
+            }
+        }
+
+        if (misses.isEmpty()) {
+            return result;
+        }
+
+        final long generation = mCache.generation();
+        final long start = System.nanoTime();
+        final Map<K, V> loaded = mProvider.getAll(misses);
+        mCache.recordLoad(start);
+
+        for (K key : misses) {
+            final V value = loaded.get(key);
+            mCache.store(key, value, generation);
+            if (value != null) {
+                result.put(key, value);
+            }
+        }
+
+        return result;
+    }
+
+    @Override
+    public void put(final K key, final V obj) throws IOException {
+        try {
+            mProvider.put(key, obj);
+        } finally {
+            mCache.invalidate(key);
+        }
+    }
+
+    @Override
+    public boolean putIf(final K key, final V expected, final V obj) throws IOException {
+        try {
+            return mProvider.putIf(key, expected, obj);
+        } finally {
+            // A failed check means the cached value is stale.
+            mCache.invalidate(key);
+        }
+    }
+
+    @Override
+    public CompletableFuture<V> getAsync(final K key) {
+        final ProviderCache<K, V>.Entry entry = mCache.lookup(key);
+        if (entry != null) {
+            return CompletableFuture.completedFuture(entry.getValue());
+        }
+
+        final long generation = mCache.generation();
+        final long start = System.nanoTime();
+        return AsyncProviders.async(mProvider).getAsync(key).thenApply((value) -> {
+            mCache.recordLoad(start);
+            mCache.store(key, value, generation);
+            return value;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> putAsync(final K key, final V obj) {
+        return AsyncProviders.async(mProvider).putAsync(key, obj)
+            .whenComplete((result, error) -> mCache.invalidate(key));
+    }
+
+    /**
+     * Remove a key from the cache.
+     *
+     * @param key The key to remove.
+     */
+    public void invalidate(final K key) {
+        mCache.invalidate(key);
+    }
+
+    /**
+     * Remove all entries from the cache.
+     */
+    public void invalidateAll() {
+        mCache.invalidateAll();
+    }
+}
@@ -0,0 +1,78 @@
+package com.p4square.grow.provider;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Codec converts objects to and from the bytes kept in a store.
+ */
+public interface Codec<V> {
+    /**
+     * Encode an object.
+     *
+     * @param obj The object to encode.
+     * @return The encoded bytes.
+     * @throws IOException if the object cannot be encoded.
+     */
+    byte[] encode(V obj) throws IOException;
+
+    /**
+     * Decode an object.
+     *
+     * @param data The encoded bytes.
+     * @return The decoded object or null if data is null.
+     * @throws IOException if the data cannot be decoded.
+     */
+    V decode(byte[] data) throws IOException;
+
+    /**
+     * @return true if encode() produces binary data which must not be stored as text.
+     */
+    boolean isBinary();
+
+    /**
+     * Check whether one encoded value must be stored as binary.
+     *
+     * A Codec may produce text for some values and binary data for others.
+     * Stores which can hold either should keep text values as text, so that
+     * readers of text attributes can still see them.
+     *
+     * @param data A value returned by encode().
+     * @return true if data must not be stored as text.
+     */
+    default boolean isBinary(byte[] data) {
+        return isBinary();
+    }
+
+    /**
+     * Encode an object as text.
+     *
+     * @param obj The object to encode.
+     * @return The UTF-8 text of the encoding.
+     * @throws IOException if the object cannot be encoded.
+     * @throws IllegalStateException if this is a binary codec.
+     */
+    default String encodeString(V obj) throws IOException {
+        if (isBinary()) {
+            throw new IllegalStateException("Binary codecs cannot encode strings.");
+        }
+
+        final byte[] data = encode(obj);
+        return (data == null) ? null : new String(data, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Decode an object from text.
+     *
+     * @param blob The encoded text.
+     * @return The decoded object or null if blob is null.
+     * @throws IOException if the data cannot be decoded.
+     */
+    default V decodeString(String blob) throws IOException {
+        if (blob == null) {
+            return null;
+        }
+
+        return decode(blob.getBytes(StandardCharsets.UTF_8));
+    }
+}
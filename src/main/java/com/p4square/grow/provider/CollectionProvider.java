@@ -5,7 +5,10 @@
 package com.p4square.grow.provider;
 
 import java.io.IOException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Objects;
 
 /**
  * ListProvider is the logical extension of Provider for dealing with lists of
@@ -48,6 +51,47 @@ public interface CollectionProvider<C, K, V> {
      */
     Map<K, V> query(C collection, int limit) throws IOException;
 
+    /**
+     * Iterate over one page of a collection.
+     *
+     * Entries are returned in the store's key order, so the continuation key
+     * from one page reliably starts the next. Stores should push the limit
+     * down into the request and decode values lazily. The default
+     * implementation loads the whole collection with query().
+     *
+     * @param collection The collection key.
+     * @param page The page to fetch.
+     * @return A Cursor over the entries of the page.
+     */
+    default Cursor<K, V> stream(C collection, Page<K> page) throws IOException {
+        return LazyCursor.fromMap(query(collection), page);
+    }
+
+    /**
+     * Retrieve several collections at once.
+     *
+     * The default implementation calls query() for each collection. Providers
+     * backed by a remote store should override this to fetch the collections
+     * in as few requests as possible.
+     *
+     * The returned map will never be null. Collections which are empty or do
+     * not exist may be omitted.
+     *
+     * @param collections The collection keys.
+     * @return A Map of collection keys to Maps of keys to values.
+     */
+    default Map<C, Map<K, V>> queryAll(Collection<C> collections) throws IOException {
+        Map<C, Map<K, V>> result = new LinkedHashMap<>();
+        for (C collection : collections) {
+            Map<K, V> items = query(collection);
+            if (items.size() > 0) {
+                result.put(collection, items);
+            }
+        }
+
+        return result;
+    }
+
     /**
      * Persist the object with the given key.
      *
@@ -56,4 +100,45 @@ public interface CollectionProvider<C, K, V> {
      * @param obj The object to persist.
      */
     void put(C collection, K key, V obj) throws IOException;
+
+    /**
+     * Persist several objects in one collection.
+     *
+     * Stores which support it apply all of the changes in a single atomic
+     * write. The default implementation calls put() for each entry.
+     *
+     * @param collection The collection key.
+     * @param values A map of keys to objects. A null object removes the key.
+     */
+    default void putAll(C collection, Map<K, V> values) throws IOException {
+        for (Map.Entry<K, V> entry : values.entrySet()) {
+            put(collection, entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Persist several objects in one collection if one key holds the
+     * expected value.
+     *
+     * Stores which support conditional writes check and write atomically.
+     * The default implementation reads the key and then calls putAll(), so a
+     * concurrent write between the two can still be lost.
+     *
+     * @param collection The collection key.
+     * @param key The key to check.
+     * @param expected The value key must hold, or null if it must be missing.
+     * @param values A map of keys to objects. A null object removes the key.
+     * @return true if the values were written, false if key did not hold the
+     *         expected value.
+     */
+    default boolean putAllIf(C collection, K key, V expected, Map<K, V> values)
+            throws IOException {
+
+        if (!Objects.equals(expected, get(collection, key))) {
+            return false;
+        }
+
+        putAll(collection, values);
+        return true;
+    }
 }
@@ -0,0 +1,173 @@
+package com.p4square.grow.provider;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * CompressingCodec is a Codec decorator which deflates large values.
+ *
+ * Values at least threshold bytes long are compressed and stored with a
+ * two byte prefix, which never begins JSON, Smile or UTF-8 text. Smaller
+ * values, and values which do not shrink, are stored as the underlying
+ * codec produced them. Values without the prefix are passed to the
+ * underlying codec, so uncompressed values remain readable.
+ *
+ * Only compressed values are binary. isBinary(data) reports which values
+ * must be stored as binary, so the rest can still be stored as text.
+ * encodeString() never compresses, since text cannot hold compressed data.
+ *
+ * The compression ratio (as a percentage of the original size), total bytes
+ * saved and encode/decode times are reported to the MetricRegistry.
+ */
+public class CompressingCodec<V> implements Codec<V> {
+    private static final byte[] MAGIC = { 0x00, 'Z' };
+
+    private final Codec<V> mCodec;
+    private final int mThreshold;
+
+    private final MetricRegistry mMetricRegistry;
+    private final String mName;
+
+    /**
+     * @param codec The Codec to compress.
+     * @param threshold The minimum encoded size, in bytes, to compress.
+     * @param name The base name for this codec's metrics.
+     * @param metricRegistry The MetricRegistry to report to.
+     */
+    public CompressingCodec(final Codec<V> codec, final int threshold, final String name,
+            final MetricRegistry metricRegistry) {
+
+        if (codec == null) {
+            throw new IllegalArgumentException("codec must not be null.");
+        }
+
+        if (metricRegistry == null) {
+            throw new IllegalArgumentException("metricRegistry must not be null.");
+        }
+
+        mCodec = codec;
+        mThreshold = threshold;
+        mName = name;
+        mMetricRegistry = metricRegistry;
+    }
+
+    /**
+     * @return true if the underlying codec is binary. Compressed values are
+     *         binary regardless; see isBinary(byte[]).
+     */
+    @Override
+    public boolean isBinary() {
+        return mCodec.isBinary();
+    }
+
+    @Override
+    public boolean isBinary(final byte[] data) {
+        return mCodec.isBinary(data) || (data != null && isCompressed(data));
+    }
+
+    /**
+     * Encode an object as text with the underlying codec, without compression.
+     */
+    @Override
+    public String encodeString(final V obj) throws IOException {
+        return mCodec.encodeString(obj);
+    }
+
+    @Override
+    public byte[] encode(final V obj) throws IOException {
+        final byte[] data = mCodec.encode(obj);
+        if (data == null || data.length < mThreshold) {
+            return data;
+        }
+
+        final long start = System.nanoTime();
+        final byte[] compressed = deflate(data);
+        mMetricRegistry.timer(mName + ".encode").update(System.nanoTime() - start,
+                TimeUnit.NANOSECONDS);
+
+        if (compressed.length >= data.length) {
+            mMetricRegistry.counter(mName + ".incompressible").inc();
+            return data;
+        }
+
+        mMetricRegistry.histogram(mName + ".ratio").update(
+                (int) (100L * compressed.length / data.length));
+        mMetricRegistry.counter(mName + ".bytesSaved").inc(data.length - compressed.length);
+
+        return compressed;
+    }
+
+    @Override
+    public V decode(final byte[] data) throws IOException {
+        if (data == null || !isCompressed(data)) {
+            return mCodec.decode(data);
+        }
+
+        final long start = System.nanoTime();
+        final byte[] inflated = inflate(data);
+        mMetricRegistry.timer(mName + ".decode").update(System.nanoTime() - start,
+                TimeUnit.NANOSECONDS);
+
+        return mCodec.decode(inflated);
+    }
+
+    /**
+     * @return true if data begins with the compressed value prefix.
+     */
+    static boolean isCompressed(final byte[] data) {
+        return data.length >= MAGIC.length && data[0] == MAGIC[0] && data[1] == MAGIC[1];
+    }
+
+    private static byte[] deflate(final byte[] data) {
+        final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 16);
+            out.write(MAGIC, 0, MAGIC.length);
+
+            final byte[] buffer = new byte[4096];
+            while (!deflater.finished()) {
+                final int count = deflater.deflate(buffer);
+                out.write(buffer, 0, count);
+            }
+
+            return out.toByteArray();
+
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(final byte[] data) throws IOException {
+        final Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data, MAGIC.length, data.length - MAGIC.length);
+
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 4);
+            final byte[] buffer = new byte[4096];
+            while (!inflater.finished()) {
+                final int count = inflater.inflate(buffer);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Truncated compressed value.");
+                }
+                out.write(buffer, 0, count);
+            }
+
+            return out.toByteArray();
+
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt compressed value.", e);
+
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.p4square.grow.provider;
+
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Cursor iterates over one page of a CollectionProvider.
+ *
+ * Values may be decoded lazily, when Map.Entry.getValue() is first called.
+ * A value which cannot be decoded causes an UncheckedIOException.
+ */
+public interface Cursor<K, V> extends Iterator<Map.Entry<K, V>> {
+    /**
+     * Get the page following the entries returned so far.
+     *
+     * This is meaningful once the cursor is exhausted.
+     *
+     * @return The next Page, or null if there are no more entries.
+     */
+    Page<K> getNextPage();
+}
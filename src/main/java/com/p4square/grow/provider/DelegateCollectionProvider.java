@@ -5,15 +5,17 @@
 package com.p4square.grow.provider;
 
 import java.io.IOException;
+import java.util.Collection;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  *
  * @author Jesse Morgan <jesse@jesterpm.net>
  */
 public abstract class DelegateCollectionProvider<C, DC, K, DK, V>
-    implements CollectionProvider<C, K, V> {
+    implements CollectionProvider<C, K, V>, AsyncCollectionProvider<C, K, V> {
 
     private CollectionProvider<DC, DK, V> mProvider;
 
@@ -30,19 +32,127 @@ public abstract class DelegateCollectionProvider<C, DC, K, DK, V>
     }
 
     public Map<K, V> query(C collection, int limit) throws IOException {
-        Map<DK, V> delegateResult =  mProvider.query(makeCollectionKey(collection), limit);
-        Map<K, V> result = new LinkedHashMap<>();
-        for (Map.Entry<DK, V> entry : delegateResult.entrySet()) {
-            result.put(unmakeKey(entry.getKey()), entry.getValue());
+        return unmakeKeys(mProvider.query(makeCollectionKey(collection), limit));
+    }
+
+    @Override
+    public Map<C, Map<K, V>> queryAll(Collection<C> collections) throws IOException {
+        Map<DC, C> delegateCollections = new LinkedHashMap<>();
+        for (C collection : collections) {
+            delegateCollections.put(makeCollectionKey(collection), collection);
+        }
+
+        Map<DC, Map<DK, V>> delegateResult = mProvider.queryAll(delegateCollections.keySet());
+        Map<C, Map<K, V>> result = new LinkedHashMap<>();
+        for (Map.Entry<DC, Map<DK, V>> row : delegateResult.entrySet()) {
+            result.put(delegateCollections.get(row.getKey()), unmakeKeys(row.getValue()));
         }
 
         return result;
     }
 
+    @Override
+    public Cursor<K, V> stream(C collection, Page<K> page) throws IOException {
+        Page<DK> delegatePage;
+        if (page.getAfter() == null) {
+            delegatePage = Page.first(page.getLimit());
+        } else {
+            delegatePage = Page.after(makeKey(page.getAfter()), page.getLimit());
+        }
+
+        final Cursor<DK, V> cursor = mProvider.stream(makeCollectionKey(collection), delegatePage);
+        return new Cursor<K, V>() {
+            @Override
+            public boolean hasNext() {
+                return cursor.hasNext();
+            }
+
+            @Override
+            public Map.Entry<K, V> next() {
+                final Map.Entry<DK, V> entry = cursor.next();
+                final K key = unmakeKey(entry.getKey());
+
+                // Leave the value to the delegate's entry so it is still decoded lazily.
+                return new Map.Entry<K, V>() {
+                    @Override
+                    public K getKey() {
+                        return key;
+                    }
+
+                    @Override
+                    public V getValue() {
+                        return entry.getValue();
+                    }
+
+                    @Override
+                    public V setValue(V value) {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+
+            @Override
+            public Page<K> getNextPage() {
+                Page<DK> next = cursor.getNextPage();
+                if (next == null) {
+                    return null;
+                }
+
+                return Page.after(unmakeKey(next.getAfter()), next.getLimit());
+            }
+        };
+    }
+
     public void put(C collection, K key, V obj) throws IOException {
         mProvider.put(makeCollectionKey(collection), makeKey(key), obj);
     }
 
+    @Override
+    public void putAll(C collection, Map<K, V> values) throws IOException {
+        Map<DK, V> delegateValues = new LinkedHashMap<>();
+        for (Map.Entry<K, V> entry : values.entrySet()) {
+            delegateValues.put(makeKey(entry.getKey()), entry.getValue());
+        }
+
+        mProvider.putAll(makeCollectionKey(collection), delegateValues);
+    }
+
+    @Override
+    public boolean putAllIf(C collection, K key, V expected, Map<K, V> values)
+            throws IOException {
+
+        Map<DK, V> delegateValues = new LinkedHashMap<>();
+        for (Map.Entry<K, V> entry : values.entrySet()) {
+            delegateValues.put(makeKey(entry.getKey()), entry.getValue());
+        }
+
+        return mProvider.putAllIf(makeCollectionKey(collection), makeKey(key), expected,
+                delegateValues);
+    }
+
+    @Override
+    public CompletableFuture<V> getAsync(C collection, K key) {
+        return AsyncProviders.async(mProvider).getAsync(makeCollectionKey(collection),
+                makeKey(key));
+    }
+
+    @Override
+    public CompletableFuture<Map<K, V>> queryAsync(C collection) {
+        return queryAsync(collection, -1);
+    }
+
+    @Override
+    public CompletableFuture<Map<K, V>> queryAsync(C collection, int limit) {
+        return AsyncProviders.async(mProvider).queryAsync(makeCollectionKey(collection), limit)
+            .thenApply(this::unmakeKeys);
+    }
+
+    @Override
+    public CompletableFuture<Void> putAsync(C collection, K key, V obj) {
+        return AsyncProviders.async(mProvider).putAsync(makeCollectionKey(collection),
+                makeKey(key), obj);
+    }
+
     /**
      * Make a collection key for the delegated provider.
      *
@@ -66,4 +176,13 @@ public abstract class DelegateCollectionProvider<C, DC, K, DK, V>
      * @return the pre-transform key.
      */
     protected abstract K unmakeKey(final DK input);
+
+    private Map<K, V> unmakeKeys(Map<DK, V> delegateResult) {
+        Map<K, V> result = new LinkedHashMap<>();
+        for (Map.Entry<DK, V> entry : delegateResult.entrySet()) {
+            result.put(unmakeKey(entry.getKey()), entry.getValue());
+        }
+
+        return result;
+    }
 }
@@ -5,14 +5,22 @@
 package com.p4square.grow.provider;
 
 import java.io.IOException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * DelegateProvider wraps an existing Provider an transforms the key from
  * type K to type D.
  *
+ * The asynchronous methods are non-blocking when the wrapped Provider is
+ * also an AsyncProvider.
+ *
  * @author Jesse Morgan <jesse@jesterpm.net>
  */
-public abstract class DelegateProvider<K, D, V> implements Provider<K, V> {
+public abstract class DelegateProvider<K, D, V>
+    implements Provider<K, V>, AsyncProvider<K, V> {
 
     private Provider<D, V> mProvider;
 
@@ -25,11 +33,42 @@ public abstract class DelegateProvider<K, D, V> implements Provider<K, V> {
         return mProvider.get(makeKey(key));
     }
 
+    @Override
+    public Map<K, V> getAll(final Collection<K> keys) throws IOException {
+        Map<D, K> delegateKeys = new LinkedHashMap<>();
+        for (K key : keys) {
+            delegateKeys.put(makeKey(key), key);
+        }
+
+        Map<D, V> delegateResult = mProvider.getAll(delegateKeys.keySet());
+        Map<K, V> result = new LinkedHashMap<>();
+        for (Map.Entry<D, V> entry : delegateResult.entrySet()) {
+            result.put(delegateKeys.get(entry.getKey()), entry.getValue());
+        }
+
+        return result;
+    }
+
     @Override
     public void put(final K key, final V obj) throws IOException {
         mProvider.put(makeKey(key), obj);
     }
 
+    @Override
+    public boolean putIf(final K key, final V expected, final V obj) throws IOException {
+        return mProvider.putIf(makeKey(key), expected, obj);
+    }
+
+    @Override
+    public CompletableFuture<V> getAsync(final K key) {
+        return AsyncProviders.async(mProvider).getAsync(makeKey(key));
+    }
+
+    @Override
+    public CompletableFuture<Void> putAsync(final K key, final V obj) {
+        return AsyncProviders.async(mProvider).putAsync(makeKey(key), obj);
+    }
+
     /**
      * Make a Key for the delegated provider.
      *
@@ -0,0 +1,167 @@
+package com.p4square.grow.provider;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+/**
+ * A Codec which encodes objects with Jackson as JSON or Smile.
+ *
+ * The reader and writer for the value type are created once and reused.
+ * Smile data begins with the header ":)\n", which can never start a JSON
+ * document, so decode() accepts either format regardless of the format used
+ * for encoding. Values stored as JSON remain readable after switching to Smile.
+ *
+ * Strings are passed through as UTF-8 text in either format.
+ */
+public class JacksonCodec<V> implements Codec<V> {
+
+    /**
+     * The supported encodings.
+     */
+    public enum Format {
+        JSON, SMILE
+    }
+
+    /**
+     * ObjectMapper for Smile, configured like JsonEncodedProvider.MAPPER.
+     */
+    private static final ObjectMapper SMILE_MAPPER = new ObjectMapper(new SmileFactory());
+    static {
+        SMILE_MAPPER.configure(SerializationFeature.WRITE_ENUMS_USING_TO_STRING, true);
+        SMILE_MAPPER.configure(DeserializationFeature.READ_ENUMS_USING_TO_STRING, true);
+        SMILE_MAPPER.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    }
+
+    private final Format mFormat;
+    private final boolean mIsString;
+
+    private final ObjectReader mJsonReader;
+    private final ObjectReader mSmileReader;
+    private final ObjectWriter mWriter;
+
+    /**
+     * @param clazz The value class.
+     * @param format The encoding to write.
+     */
+    public JacksonCodec(final Class<V> clazz, final Format format) {
+        this(JsonEncodedProvider.MAPPER.getTypeFactory().constructType(clazz), format);
+    }
+
+    /**
+     * @param type The value type.
+     * @param format The encoding to write.
+     */
+    public JacksonCodec(final JavaType type, final Format format) {
+        if (format == null) {
+            throw new IllegalArgumentException("format must not be null.");
+        }
+
+        mFormat = format;
+        mIsString = type.getRawClass() == String.class;
+
+        mJsonReader = JsonEncodedProvider.MAPPER.reader(type);
+        mSmileReader = SMILE_MAPPER.reader(type);
+
+        if (format == Format.SMILE) {
+            mWriter = SMILE_MAPPER.writerWithType(type);
+        } else {
+            mWriter = JsonEncodedProvider.MAPPER.writerWithType(type);
+        }
+    }
+
+    /**
+     * Create a codec from a format name, such as a configuration value.
+     *
+     * @param clazz The value class.
+     * @param format "json" or "smile", case insensitive. Null means json.
+     * @return A new JacksonCodec.
+     */
+    public static <V> JacksonCodec<V> forName(final Class<V> clazz, final String format) {
+        if (format == null) {
+            return new JacksonCodec<>(clazz, Format.JSON);
+        }
+
+        return new JacksonCodec<>(clazz, Format.valueOf(format.trim().toUpperCase()));
+    }
+
+    /**
+     * @return The encoding this codec writes.
+     */
+    public Format getFormat() {
+        return mFormat;
+    }
+
+    @Override
+    public boolean isBinary() {
+        return mFormat == Format.SMILE && !mIsString;
+    }
+
+    @Override
+    public byte[] encode(final V obj) throws IOException {
+        if (mIsString) {
+            return (obj == null) ? null : ((String) obj).getBytes(StandardCharsets.UTF_8);
+        }
+
+        return mWriter.writeValueAsBytes(obj);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V decode(final byte[] data) throws IOException {
+        if (data == null) {
+            return null;
+        }
+
+        if (mIsString) {
+            return (V) new String(data, StandardCharsets.UTF_8);
+        }
+
+        if (isSmile(data)) {
+            return mSmileReader.readValue(data);
+        }
+
+        return mJsonReader.readValue(data);
+    }
+
+    @Override
+    public String encodeString(final V obj) throws IOException {
+        if (mIsString) {
+            return (String) obj;
+        }
+
+        if (isBinary()) {
+            throw new IllegalStateException("Binary codecs cannot encode strings.");
+        }
+
+        return mWriter.writeValueAsString(obj);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V decodeString(final String blob) throws IOException {
+        if (blob == null) {
+            return null;
+        }
+
+        if (mIsString) {
+            return (V) blob;
+        }
+
+        return mJsonReader.readValue(blob);
+    }
+
+    /**
+     * @return true if data begins with the Smile header.
+     */
+    static boolean isSmile(final byte[] data) {
+        return data.length >= 3 && data[0] == ':' && data[1] == ')' && data[2] == '\n';
+    }
+}
@@ -5,6 +5,8 @@
 package com.p4square.grow.provider;
 
 import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.JavaType;
@@ -25,17 +27,18 @@ public abstract class JsonEncodedProvider<V> {
         MAPPER.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
     }
 
-    protected final Class<V> mClazz;
-    protected final JavaType mType;
+    protected final Codec<V> mCodec;
 
     public JsonEncodedProvider(Class<V> clazz) {
-        mClazz = clazz;
-        mType = null;
+        this(new JacksonCodec<>(clazz, JacksonCodec.Format.JSON));
     }
 
     public JsonEncodedProvider(JavaType type) {
-        mType = type;
-        mClazz = null;
+        this(new JacksonCodec<V>(type, JacksonCodec.Format.JSON));
+    }
+
+    public JsonEncodedProvider(Codec<V> codec) {
+        mCodec = codec;
     }
 
     /**
@@ -46,11 +49,7 @@ public abstract class JsonEncodedProvider<V> {
      * @throws IOException if the object cannot be encoded.
      */
     protected String encode(V obj) throws IOException {
-        if (mClazz == String.class) {
-            return (String) obj;
-        }
-
-        return MAPPER.writeValueAsString(obj);
+        return mCodec.encodeString(obj);
     }
 
     /**
@@ -61,23 +60,66 @@ public abstract class JsonEncodedProvider<V> {
      * @throws IOException If an object cannot be decoded.
      */
     protected V decode(String blob) throws IOException {
-        if (blob == null) {
-            return null;
-        }
+        return mCodec.decodeString(blob);
+    }
 
-        if (mClazz == String.class) {
-            return (V) blob;
+    /**
+     * Encode the object with the provider's Codec.
+     *
+     * @param obj The object to encode.
+     * @return The encoded bytes.
+     * @throws IOException if the object cannot be encoded.
+     */
+    protected byte[] encodeBytes(V obj) throws IOException {
+        return mCodec.encode(obj);
+    }
+
+    /**
+     * Decode bytes with the provider's Codec.
+     *
+     * @param data The encoded data.
+     * @return The decoded object or null if data is null.
+     * @throws IOException If an object cannot be decoded.
+     */
+    protected V decodeBytes(byte[] data) throws IOException {
+        return mCodec.decode(data);
+    }
+
+    /**
+     * Decode a map of JSON strings.
+     *
+     * @param blobs A map of keys to JSON data.
+     * @return A map of keys to decoded objects. Null blobs are omitted.
+     * @throws IOException If an object cannot be decoded.
+     */
+    protected <K> Map<K, V> decodeAll(Map<K, String> blobs) throws IOException {
+        Map<K, V> result = new LinkedHashMap<>();
+        for (Map.Entry<K, String> entry : blobs.entrySet()) {
+            V obj = decode(entry.getValue());
+            if (obj != null) {
+                result.put(entry.getKey(), obj);
+            }
         }
 
-        V obj;
-        if (mClazz != null) {
-            obj = MAPPER.readValue(blob, mClazz);
+        return result;
+    }
 
-        } else {
-            obj = MAPPER.readValue(blob, mType);
+    /**
+     * Decode a map of encoded values.
+     *
+     * @param blobs A map of keys to encoded data.
+     * @return A map of keys to decoded objects. Null values are omitted.
+     * @throws IOException If an object cannot be decoded.
+     */
+    protected <K> Map<K, V> decodeAllBytes(Map<K, byte[]> blobs) throws IOException {
+        Map<K, V> result = new LinkedHashMap<>();
+        for (Map.Entry<K, byte[]> entry : blobs.entrySet()) {
+            V obj = decodeBytes(entry.getValue());
+            if (obj != null) {
+                result.put(entry.getKey(), obj);
+            }
         }
 
-        return obj;
+        return result;
     }
 }
-
@@ -0,0 +1,133 @@
+package com.p4square.grow.provider;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+
+/**
+ * A Cursor over raw entries which are decoded on first access.
+ *
+ * The source should hold up to one entry more than the page limit. That
+ * extra entry is never returned but tells the cursor that another page follows.
+ *
+ * @param <K> The key type.
+ * @param <R> The raw, encoded value type.
+ * @param <V> The decoded value type.
+ */
+public class LazyCursor<K, R, V> implements Cursor<K, V> {
+
+    private final Iterator<? extends Map.Entry<K, R>> mSource;
+    private final int mLimit;
+    private final AsyncProviders.IOFunction<R, V> mDecoder;
+
+    private int mReturned;
+    private K mLastKey;
+
+    /**
+     * @param source The raw entries in key order, starting after the page's continuation key.
+     * @param limit The page limit, or -1 for no limit.
+     * @param decoder The function to decode raw values.
+     */
+    public LazyCursor(final Iterator<? extends Map.Entry<K, R>> source, final int limit,
+            final AsyncProviders.IOFunction<R, V> decoder) {
+
+        mSource = source;
+        mLimit = limit;
+        mDecoder = decoder;
+    }
+
+    /**
+     * Create a Cursor over the entries of an already loaded map.
+     *
+     * Entries are returned in natural key order, the same order the stores
+     * page in, and the keys must be Comparable. If page has a continuation key
+     * the page starts with the first key after it, whether or not the key is
+     * still in the map.
+     *
+     * @param map The map to iterate.
+     * @param page The page to return.
+     * @return A Cursor over the page.
+     */
+    public static <K, V> Cursor<K, V> fromMap(final Map<K, V> map, final Page<K> page) {
+        NavigableMap<K, V> sorted = (map instanceof NavigableMap)
+            ? (NavigableMap<K, V>) map : new TreeMap<>(map);
+
+        if (page.getAfter() != null) {
+            sorted = sorted.tailMap(page.getAfter(), false);
+        }
+
+        return new LazyCursor<K, V, V>(sorted.entrySet().iterator(), page.getLimit(),
+                (value) -> value);
+    }
+
+    @Override
+    public boolean hasNext() {
+        return (mLimit < 0 || mReturned < mLimit) && mSource.hasNext();
+    }
+
+    @Override
+    public Map.Entry<K, V> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        final Map.Entry<K, R> raw = mSource.next();
+        mReturned++;
+        mLastKey = raw.getKey();
+
+        return new LazyEntry(raw.getKey(), raw.getValue());
+    }
+
+    @Override
+    public Page<K> getNextPage() {
+        if (mLastKey != null && mLimit >= 0 && mReturned >= mLimit && mSource.hasNext()) {
+            return Page.after(mLastKey, mLimit);
+        }
+
+        return null;
+    }
+
+    /**
+     * A Map.Entry which decodes its value once, on demand.
+     */
+    private class LazyEntry implements Map.Entry<K, V> {
+        private final K mKey;
+        private R mRaw;
+        private V mValue;
+        private boolean mDecoded;
+
+        LazyEntry(final K key, final R raw) {
+            mKey = key;
+            mRaw = raw;
+        }
+
+        @Override
+        public K getKey() {
+            return mKey;
+        }
+
+        @Override
+        public V getValue() {
+            if (!mDecoded) {
+                try {
+                    mValue = mDecoder.apply(mRaw);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Could not decode value for " + mKey, e);
+                }
+                mRaw = null;
+                mDecoded = true;
+            }
+
+            return mValue;
+        }
+
+        @Override
+        public V setValue(final V value) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -71,4 +71,11 @@ public class MapCollectionProvider<C, K, V> implements CollectionProvider<C, K,
 
         map.put(key, obj);
     }
+
+    @Override
+    public synchronized boolean putAllIf(C collection, K key, V expected, Map<K, V> values)
+            throws IOException {
+
+        return CollectionProvider.super.putAllIf(collection, key, expected, values);
+    }
 }
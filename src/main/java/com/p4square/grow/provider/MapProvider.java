@@ -17,12 +17,17 @@ public class MapProvider<K, V> implements Provider<K, V> {
     private final Map<K, V> mMap = new HashMap<K, V>();
 
     @Override
-    public V get(K key) throws IOException {
+    public synchronized V get(K key) throws IOException {
         return mMap.get(key);
     }
 
     @Override
-    public void put(K key, V obj) throws IOException {
+    public synchronized void put(K key, V obj) throws IOException {
         mMap.put(key, obj);
     }
+
+    @Override
+    public synchronized boolean putIf(K key, V expected, V obj) throws IOException {
+        return Provider.super.putIf(key, expected, obj);
+    }
 }
@@ -0,0 +1,113 @@
+package com.p4square.grow.provider;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * MonitoredCodec is a Codec decorator which records the size of encoded
+ * payloads and the time spent encoding and decoding them.
+ *
+ * Sizes are reported to the NAME.encodedSize and NAME.decodedSize histograms
+ * and times to the NAME.encode and NAME.decode timers. Text payloads are
+ * measured in characters.
+ */
+public class MonitoredCodec<V> implements Codec<V> {
+
+    private final Codec<V> mCodec;
+    private final String mName;
+    private final MetricRegistry mMetricRegistry;
+
+    /**
+     * @param codec The Codec to monitor.
+     * @param name The base name for metrics.
+     * @param metricRegistry The MetricRegistry to report to.
+     */
+    public MonitoredCodec(final Codec<V> codec, final String name,
+            final MetricRegistry metricRegistry) {
+
+        if (codec == null) {
+            throw new IllegalArgumentException("codec must not be null.");
+        }
+
+        if (metricRegistry == null) {
+            throw new IllegalArgumentException("metricRegistry must not be null.");
+        }
+
+        mCodec = codec;
+        mName = name;
+        mMetricRegistry = metricRegistry;
+    }
+
+    @Override
+    public boolean isBinary() {
+        return mCodec.isBinary();
+    }
+
+    @Override
+    public boolean isBinary(final byte[] data) {
+        return mCodec.isBinary(data);
+    }
+
+    @Override
+    public byte[] encode(final V obj) throws IOException {
+        final long start = System.nanoTime();
+        final byte[] data = mCodec.encode(obj);
+        recordTime(".encode", start);
+
+        if (data != null) {
+            mMetricRegistry.histogram(mName + ".encodedSize").update(data.length);
+        }
+
+        return data;
+    }
+
+    @Override
+    public V decode(final byte[] data) throws IOException {
+        if (data == null) {
+            return null;
+        }
+
+        mMetricRegistry.histogram(mName + ".decodedSize").update(data.length);
+
+        final long start = System.nanoTime();
+        final V obj = mCodec.decode(data);
+        recordTime(".decode", start);
+
+        return obj;
+    }
+
+    @Override
+    public String encodeString(final V obj) throws IOException {
+        final long start = System.nanoTime();
+        final String blob = mCodec.encodeString(obj);
+        recordTime(".encode", start);
+
+        if (blob != null) {
+            mMetricRegistry.histogram(mName + ".encodedSize").update(blob.length());
+        }
+
+        return blob;
+    }
+
+    @Override
+    public V decodeString(final String blob) throws IOException {
+        if (blob == null) {
+            return null;
+        }
+
+        mMetricRegistry.histogram(mName + ".decodedSize").update(blob.length());
+
+        final long start = System.nanoTime();
+        final V obj = mCodec.decodeString(blob);
+        recordTime(".decode", start);
+
+        return obj;
+    }
+
+    private void recordTime(final String suffix, final long start) {
+        mMetricRegistry.timer(mName + suffix).update(System.nanoTime() - start,
+                TimeUnit.NANOSECONDS);
+    }
+}
@@ -0,0 +1,115 @@
+package com.p4square.grow.provider;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * MonitoredCollectionProvider is a CollectionProvider decorator which records
+ * metrics for each call.
+ *
+ * get, query, queryAll, stream, put, putAll and putAllIf are timed separately under
+ * NAME.OPERATION, including their asynchronous variants. A stream is timed
+ * until its first page is fetched. Calls slower than the threshold are
+ * logged with their collection and key.
+ */
+public class MonitoredCollectionProvider<C, K, V>
+    implements CollectionProvider<C, K, V>, AsyncCollectionProvider<C, K, V> {
+
+    private final CollectionProvider<C, K, V> mProvider;
+    private final ProviderMonitor mMonitor;
+
+    /**
+     * @param provider The CollectionProvider to monitor.
+     * @param name The base name for metrics.
+     * @param slowCallMillis Calls taking longer than this are logged. 0 disables logging.
+     * @param metricRegistry The MetricRegistry to report to.
+     */
+    public MonitoredCollectionProvider(final CollectionProvider<C, K, V> provider,
+            final String name, final long slowCallMillis, final MetricRegistry metricRegistry) {
+
+        if (provider == null) {
+            throw new IllegalArgumentException("provider must not be null.");
+        }
+        mProvider = provider;
+
+        mMonitor = new ProviderMonitor(name, slowCallMillis, metricRegistry);
+    }
+
+    @Override
+    public V get(final C collection, final K key) throws IOException {
+        return mMonitor.time("get", collection + "/" + key, () -> mProvider.get(collection, key));
+    }
+
+    @Override
+    public Map<K, V> query(final C collection) throws IOException {
+        return mMonitor.time("query", collection, () -> mProvider.query(collection));
+    }
+
+    @Override
+    public Map<K, V> query(final C collection, final int limit) throws IOException {
+        return mMonitor.time("query", collection, () -> mProvider.query(collection, limit));
+    }
+
+    @Override
+    public Map<C, Map<K, V>> queryAll(final Collection<C> collections) throws IOException {
+        return mMonitor.time("queryAll", collections.size() + " collections",
+                () -> mProvider.queryAll(collections));
+    }
+
+    @Override
+    public Cursor<K, V> stream(final C collection, final Page<K> page) throws IOException {
+        return mMonitor.time("stream", collection, () -> mProvider.stream(collection, page));
+    }
+
+    @Override
+    public void put(final C collection, final K key, final V obj) throws IOException {
+        mMonitor.time("put", collection + "/" + key, () -> {
+            mProvider.put(collection, key, obj);
+            return null;
+        });
+    }
+
+    @Override
+    public void putAll(final C collection, final Map<K, V> values) throws IOException {
+        mMonitor.time("putAll", collection, () -> {
+            mProvider.putAll(collection, values);
+            return null;
+        });
+    }
+
+    @Override
+    public boolean putAllIf(final C collection, final K key, final V expected,
+            final Map<K, V> values) throws IOException {
+
+        return mMonitor.time("putAllIf", collection,
+                () -> mProvider.putAllIf(collection, key, expected, values));
+    }
+
+    @Override
+    public CompletableFuture<V> getAsync(final C collection, final K key) {
+        return mMonitor.timeAsync("get", collection + "/" + key,
+                () -> AsyncProviders.async(mProvider).getAsync(collection, key));
+    }
+
+    @Override
+    public CompletableFuture<Map<K, V>> queryAsync(final C collection) {
+        return mMonitor.timeAsync("query", collection,
+                () -> AsyncProviders.async(mProvider).queryAsync(collection));
+    }
+
+    @Override
+    public CompletableFuture<Map<K, V>> queryAsync(final C collection, final int limit) {
+        return mMonitor.timeAsync("query", collection,
+                () -> AsyncProviders.async(mProvider).queryAsync(collection, limit));
+    }
+
+    @Override
+    public CompletableFuture<Void> putAsync(final C collection, final K key, final V obj) {
+        return mMonitor.timeAsync("put", collection + "/" + key,
+                () -> AsyncProviders.async(mProvider).putAsync(collection, key, obj));
+    }
+}
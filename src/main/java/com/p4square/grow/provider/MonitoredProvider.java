@@ -0,0 +1,72 @@
+package com.p4square.grow.provider;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * MonitoredProvider is a Provider decorator which records metrics for each call.
+ *
+ * get, getAll, put and putIf are timed separately under NAME.OPERATION,
+ * including their asynchronous variants. Calls slower than the
+ * threshold are logged with their key.
+ */
+public class MonitoredProvider<K, V> implements Provider<K, V>, AsyncProvider<K, V> {
+
+    private final Provider<K, V> mProvider;
+    private final ProviderMonitor mMonitor;
+
+    /**
+     * @param provider The Provider to monitor.
+     * @param name The base name for metrics.
+     * @param slowCallMillis Calls taking longer than this are logged. 0 disables logging.
+     * @param metricRegistry The MetricRegistry to report to.
+     */
+    public MonitoredProvider(final Provider<K, V> provider, final String name,
+            final long slowCallMillis, final MetricRegistry metricRegistry) {
+
+        if (provider == null) {
+            throw new IllegalArgumentException("provider must not be null.");
+        }
+        mProvider = provider;
+
+        mMonitor = new ProviderMonitor(name, slowCallMillis, metricRegistry);
+    }
+
+    @Override
+    public V get(final K key) throws IOException {
+        return mMonitor.time("get", key, () -> mProvider.get(key));
+    }
+
+    @Override
+    public Map<K, V> getAll(final Collection<K> keys) throws IOException {
+        return mMonitor.time("getAll", keys.size() + " keys", () -> mProvider.getAll(keys));
+    }
+
+    @Override
+    public void put(final K key, final V obj) throws IOException {
+        mMonitor.time("put", key, () -> {
+            mProvider.put(key, obj);
+            return null;
+        });
+    }
+
+    @Override
+    public boolean putIf(final K key, final V expected, final V obj) throws IOException {
+        return mMonitor.time("putIf", key, () -> mProvider.putIf(key, expected, obj));
+    }
+
+    @Override
+    public CompletableFuture<V> getAsync(final K key) {
+        return mMonitor.timeAsync("get", key, () -> AsyncProviders.async(mProvider).getAsync(key));
+    }
+
+    @Override
+    public CompletableFuture<Void> putAsync(final K key, final V obj) {
+        return mMonitor.timeAsync("put", key,
+                () -> AsyncProviders.async(mProvider).putAsync(key, obj));
+    }
+}
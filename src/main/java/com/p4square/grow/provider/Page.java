@@ -0,0 +1,68 @@
+package com.p4square.grow.provider;
+
+/**
+ * Page describes one page of a streamed CollectionProvider query.
+ *
+ * A page starts after an optional continuation key, which is exclusive, and
+ * holds at most limit entries. The Page for the following request is
+ * available from Cursor.getNextPage().
+ */
+public final class Page<K> {
+    private final K mAfter;
+    private final int mLimit;
+
+    /**
+     * @param limit The maximum number of entries, or -1 for no limit.
+     * @return A Page at the start of the collection.
+     */
+    public static <K> Page<K> first(final int limit) {
+        return new Page<>(null, limit);
+    }
+
+    /**
+     * @param after The continuation key. Entries up to and including this key are skipped.
+     * @param limit The maximum number of entries, or -1 for no limit.
+     * @return A Page which begins after the given key.
+     */
+    public static <K> Page<K> after(final K after, final int limit) {
+        return new Page<>(after, limit);
+    }
+
+    private Page(final K after, final int limit) {
+        mAfter = after;
+        mLimit = limit;
+    }
+
+    /**
+     * @return The continuation key, or null to start at the beginning.
+     */
+    public K getAfter() {
+        return mAfter;
+    }
+
+    /**
+     * @return The maximum number of entries, or a negative number for no limit.
+     */
+    public int getLimit() {
+        return mLimit;
+    }
+
+    /**
+     * @return true if the page has a limit.
+     */
+    public boolean isLimited() {
+        return mLimit >= 0;
+    }
+
+    /**
+     * @return The number of entries a store should fetch to fill this page and
+     *         learn whether another page follows.
+     */
+    public int getFetchSize() {
+        if (!isLimited() || mLimit == Integer.MAX_VALUE) {
+            return Integer.MAX_VALUE;
+        }
+
+        return mLimit + 1;
+    }
+}
@@ -5,6 +5,9 @@
 package com.p4square.grow.provider;
 
 import java.io.IOException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * Provider provides a simple interface for loading and persisting
@@ -21,6 +24,28 @@ public interface Provider<K, V> {
      */
     V get(K key) throws IOException;
 
+    /**
+     * Retrieve the objects with the given keys.
+     *
+     * The default implementation calls get() for each key. Providers backed
+     * by a remote store should override this to fetch the keys in as few
+     * requests as possible.
+     *
+     * @param keys The keys for the objects.
+     * @return A Map of keys to objects. Keys which were not found are omitted.
+     */
+    default Map<K, V> getAll(Collection<K> keys) throws IOException {
+        Map<K, V> result = new LinkedHashMap<>();
+        for (K key : keys) {
+            V obj = get(key);
+            if (obj != null) {
+                result.put(key, obj);
+            }
+        }
+
+        return result;
+    }
+
     /**
      * Persist the object with the given key.
      *
@@ -28,4 +53,29 @@ public interface Provider<K, V> {
      * @param obj The object to persist.
      */
     void put(K key, V obj) throws IOException;
+
+    /**
+     * Persist the object with the given key if the stored object is unchanged.
+     *
+     * Objects are compared by their encoding. Stores which support
+     * conditional writes check and write atomically. The default
+     * implementation compares the JSON encodings and then calls put(), so a
+     * concurrent write between the two can still be lost.
+     *
+     * @param key The key for the object.
+     * @param expected The object which must be stored, or null if there must be none.
+     * @param obj The object to persist.
+     * @return true if obj was written, false if the stored object was not expected.
+     */
+    default boolean putIf(K key, V expected, V obj) throws IOException {
+        final V current = get(key);
+        if (current != expected && (current == null || expected == null
+                    || !JsonEncodedProvider.MAPPER.writeValueAsString(current).equals(
+                        JsonEncodedProvider.MAPPER.writeValueAsString(expected)))) {
+            return false;
+        }
+
+        put(key, obj);
+        return true;
+    }
 }
@@ -0,0 +1,203 @@
+package com.p4square.grow.provider;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * A size-bounded, expiring LRU map shared by the caching provider decorators.
+ *
+ * Misses may be cached by storing null values. Hit, miss and eviction counts
+ * are reported to the MetricRegistry under the given name.
+ *
+ * Each invalidation advances a generation counter. A caller takes the
+ * generation before it loads a value and passes it to store(), which drops
+ * the value if the key was invalidated while it was loading. Otherwise a load
+ * which raced a put() could cache the old value for the whole time to live.
+ */
+class ProviderCache<K, V> {
+    /**
+     * Marker stored in place of a cached null.
+     */
+    private static final Object NULL_VALUE = new Object();
+
+    private final long mTtlNanos;
+    private final int mMaxSize;
+    private final boolean mCacheMisses;
+
+    private final MetricRegistry mMetricRegistry;
+    private final String mName;
+
+    private final LinkedHashMap<K, Entry> mMap;
+
+    /**
+     * The generation at which each recently invalidated key was invalidated.
+     * Only the most recent invalidations are kept. Loads which began before
+     * mFloor are treated as stale because their invalidation may be forgotten.
+     */
+    private final LinkedHashMap<K, Long> mInvalidations;
+    private long mGeneration;
+    private long mFloor;
+
+    /**
+     * @param name The base name for metrics.
+     * @param ttl Time to live for each entry.
+     * @param unit The TimeUnit for ttl.
+     * @param maxSize The maximum number of entries to hold.
+     * @param cacheMisses true if null values should be cached.
+     * @param metricRegistry The MetricRegistry to report to.
+     */
+    ProviderCache(final String name, final long ttl, final TimeUnit unit, final int maxSize,
+            final boolean cacheMisses, final MetricRegistry metricRegistry) {
+
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be positive.");
+        }
+
+        if (metricRegistry == null) {
+            throw new IllegalArgumentException("metricRegistry must not be null.");
+        }
+
+        mName = name;
+        mTtlNanos = unit.toNanos(ttl);
+        mMaxSize = maxSize;
+        mCacheMisses = cacheMisses;
+        mMetricRegistry = metricRegistry;
+
+        mMap = new LinkedHashMap<K, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry> eldest) {
+                if (size() > mMaxSize) {
+                    mMetricRegistry.counter(mName + ".eviction").inc();
+                    return true;
+                }
+                return false;
+            }
+        };
+
+        mInvalidations = new LinkedHashMap<K, Long>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Long> eldest) {
+                if (size() > mMaxSize) {
+                    mFloor = eldest.getValue();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @return the current generation, to be passed to store() after a load.
+     */
+    synchronized long generation() {
+        return mGeneration;
+    }
+
+    /**
+     * Look up a key in the cache.
+     *
+     * A hit for a cached miss is reported as present with a null value.
+     *
+     * @param key The key to look up.
+     * @return null if the key is not cached, otherwise a holder for the value.
+     */
+    synchronized Entry lookup(final K key) {
+        final Entry entry = mMap.get(key);
+
+        if (entry == null) {
+            mMetricRegistry.counter(mName + ".miss").inc();
+            return null;
+        }
+
+        if (System.nanoTime() - entry.mLoaded > mTtlNanos) {
+            mMap.remove(key);
+            mMetricRegistry.counter(mName + ".expired").inc();
+            mMetricRegistry.counter(mName + ".miss").inc();
+            return null;
+        }
+
+        mMetricRegistry.counter(mName + ".hit").inc();
+        return entry;
+    }
+
+    /**
+     * Add a value to the cache.
+     *
+     * Null values are only stored if negative caching is enabled. The value is
+     * not stored if the key was invalidated after the given generation.
+     *
+     * @param key The key.
+     * @param value The loaded value.
+     * @param generation The generation() taken before the value was loaded.
+     */
+    synchronized void store(final K key, final V value, final long generation) {
+        final Long invalidated = mInvalidations.get(key);
+        if (generation < mFloor || (invalidated != null && invalidated > generation)) {
+            mMetricRegistry.counter(mName + ".stale").inc();
+            return;
+        }
+
+        if (value == null && !mCacheMisses) {
+            mMap.remove(key);
+            return;
+        }
+
+        mMap.put(key, new Entry(value));
+    }
+
+    /**
+     * Remove a key from the cache.
+     */
+    synchronized void invalidate(final K key) {
+        mMap.remove(key);
+        mInvalidations.remove(key);
+        mInvalidations.put(key, ++mGeneration);
+    }
+
+    /**
+     * Remove all entries from the cache.
+     */
+    synchronized void invalidateAll() {
+        mMap.clear();
+        mInvalidations.clear();
+        mFloor = ++mGeneration;
+    }
+
+    /**
+     * @return the number of entries currently cached.
+     */
+    synchronized int size() {
+        return mMap.size();
+    }
+
+    /**
+     * Record the time spent loading from the underlying provider.
+     *
+     * @param startNanos The System.nanoTime() when the load began.
+     */
+    void recordLoad(final long startNanos) {
+        mMetricRegistry.timer(mName + ".load").update(System.nanoTime() - startNanos,
+                TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * A cached value and the time it was loaded.
+     */
+    class Entry {
+        private final Object mValue;
+        private final long mLoaded;
+
+        private Entry(final V value) {
+            mValue = (value == null) ? NULL_VALUE : value;
+            mLoaded = System.nanoTime();
+        }
+
+        @SuppressWarnings("unchecked")
+        V getValue() {
+            return (mValue == NULL_VALUE) ? null : (V) mValue;
+        }
+    }
+}
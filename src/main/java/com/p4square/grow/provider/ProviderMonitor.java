@@ -0,0 +1,103 @@
+package com.p4square.grow.provider;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import com.codahale.metrics.MetricRegistry;
+import org.apache.log4j.Logger;
+
+/**
+ * Records metrics for the calls made through the monitored provider decorators.
+ *
+ * Each operation has a timer, NAME.OPERATION.time, and success and failure
+ * counters. Calls which take longer than the slow call threshold are logged.
+ */
+class ProviderMonitor {
+    private static final Logger LOG = Logger.getLogger(ProviderMonitor.class);
+
+    private final String mName;
+    private final long mSlowCallNanos;
+    private final MetricRegistry mMetricRegistry;
+
+    /**
+     * @param name The base name for metrics.
+     * @param slowCallMillis Calls taking longer than this are logged. 0 disables logging.
+     * @param metricRegistry The MetricRegistry to report to.
+     */
+    ProviderMonitor(final String name, final long slowCallMillis,
+            final MetricRegistry metricRegistry) {
+
+        if (metricRegistry == null) {
+            throw new IllegalArgumentException("metricRegistry must not be null.");
+        }
+
+        mName = name;
+        mSlowCallNanos = (slowCallMillis > 0) ? TimeUnit.MILLISECONDS.toNanos(slowCallMillis)
+                                              : Long.MAX_VALUE;
+        mMetricRegistry = metricRegistry;
+    }
+
+    /**
+     * Time a blocking call.
+     *
+     * @param operation The operation name.
+     * @param subject Describes the call's arguments for the slow call log.
+     * @param call The call to make.
+     * @return The call's result.
+     */
+    <T> T time(final String operation, final Object subject,
+            final AsyncProviders.IOCallable<T> call) throws IOException {
+
+        final long start = System.nanoTime();
+        boolean success = false;
+        try {
+            final T result = call.call();
+            success = true;
+            return result;
+        } finally {
+            record(operation, subject, start, success);
+        }
+    }
+
+    /**
+     * Time an asynchronous call from the time it is started until its future completes.
+     *
+     * @param operation The operation name.
+     * @param subject Describes the call's arguments for the slow call log.
+     * @param call Starts the call.
+     * @return The call's future.
+     */
+    <T> CompletableFuture<T> timeAsync(final String operation, final Object subject,
+            final Supplier<CompletableFuture<T>> call) {
+
+        final long start = System.nanoTime();
+        final CompletableFuture<T> future;
+        try {
+            future = call.get();
+        } catch (RuntimeException e) {
+            record(operation, subject, start, false);
+            throw e;
+        }
+
+        return future.whenComplete(
+                (result, error) -> record(operation, subject, start, error == null));
+    }
+
+    private void record(final String operation, final Object subject, final long start,
+            final boolean success) {
+
+        final long elapsed = System.nanoTime() - start;
+        final String name = mName + "." + operation;
+
+        mMetricRegistry.timer(name + ".time").update(elapsed, TimeUnit.NANOSECONDS);
+        mMetricRegistry.counter(name + (success ? ".success" : ".failure")).inc();
+
+        if (elapsed > mSlowCallNanos) {
+            mMetricRegistry.counter(name + ".slow").inc();
+            LOG.warn(String.format("Slow provider call: %s(%s) took %d ms", name, subject,
+                        TimeUnit.NANOSECONDS.toMillis(elapsed)));
+        }
+    }
+}
@@ -21,7 +21,7 @@ public interface ProvidesTrainingRecords {
     Provider<String, TrainingRecord> getTrainingRecordProvider();
 
     /**
-     * @return the Default Playlist.
+     * @return the Default Playlist. It may be shared, so clone it before modifying it.
      */
     Playlist getDefaultPlaylist() throws IOException;
 }
@@ -9,6 +9,7 @@ import java.util.Date;
 import java.util.List;
 import java.util.Map;
 
+import com.codahale.metrics.MetricRegistry;
 import com.p4square.grow.model.*;
 import org.restlet.Client;
 import org.restlet.Context;
@@ -21,10 +22,13 @@ import com.p4square.f1oauth.F1Exception;
 import com.p4square.restlet.oauth.OAuthUser;
 
 import com.p4square.grow.backend.dynamo.DynamoDatabase;
-import com.p4square.grow.backend.dynamo.DynamoKey;
+import com.p4square.grow.backend.dynamo.DynamoDatabases;
 
 import com.p4square.grow.config.Config;
 
+import com.p4square.grow.provider.Codec;
+import com.p4square.grow.provider.CompressingCodec;
+import com.p4square.grow.provider.JacksonCodec;
 import com.p4square.grow.provider.JsonEncodedProvider;
 
 /**
@@ -36,6 +40,18 @@ import com.p4square.grow.provider.JsonEncodedProvider;
  * @author Jesse Morgan <jesse@jesterpm.net>
  */
 public class AttributeBackfillTool {
+    /**
+     * The number of table segments to scan concurrently.
+     */
+    private static final int SEGMENTS = 4;
+
+    /**
+     * Decodes training records stored as JSON, Smile or compressed. The
+     * threshold is never reached because the codec is only used for decoding.
+     */
+    private static final Codec<TrainingRecord> TRAINING_RECORD_CODEC = new CompressingCodec<>(
+            new JacksonCodec<>(TrainingRecord.class, JacksonCodec.Format.JSON),
+            Integer.MAX_VALUE, "AttributeBackfillTool", new MetricRegistry());
 
     private static Config mConfig;
     private static F1API mF1API;
@@ -126,7 +142,7 @@ public class AttributeBackfillTool {
 
     private static DynamoDatabase getDatabase() {
         if (mDatabase == null) {
-            mDatabase = new DynamoDatabase(mConfig);
+            mDatabase = DynamoDatabases.create(mConfig).withPriority(DynamoDatabase.Priority.BATCH);
         }
 
         return mDatabase;
@@ -136,56 +152,46 @@ public class AttributeBackfillTool {
         final F1API f1 = getF1API();
         final DynamoDatabase db = getDatabase();
 
-        DynamoKey key = DynamoKey.newKey("assessments", null);
+        db.scanParallel("assessments", SEGMENTS, (key, row) -> {
+            String userId = key.getHashKey();
 
-        while (key != null) {
-            Map<DynamoKey, Map<String, String>> rows = db.getAll(key);
-
-            key = null;
-
-            for (Map.Entry<DynamoKey, Map<String, String>> row : rows.entrySet()) {
-                key = row.getKey();
+            String summaryString = row.get("summary");
+            if (summaryString == null || summaryString.length() == 0) {
+                System.out.printf("%s assessment incomplete\n", userId);
+                return;
+            }
 
-                String userId = key.getHashKey();
+            try {
+                Map summary = JsonEncodedProvider.MAPPER.readValue(summaryString, Map.class);
 
-                String summaryString = row.getValue().get("summary");
-                if (summaryString == null || summaryString.length() == 0) {
+                String result = (String) summary.get("result");
+                if (result == null) {
                     System.out.printf("%s assessment incomplete\n", userId);
-                    continue;
+                    return;
                 }
 
-                try {
-                    Map summary = JsonEncodedProvider.MAPPER.readValue(summaryString, Map.class);
+                String attributeName = "Assessment Complete - " + result;
 
-                    String result = (String) summary.get("result");
-                    if (result == null) {
-                        System.out.printf("%s assessment incomplete\n", userId);
-                        continue;
-                    }
+                // Check if the user already has the attribute.
+                List<Attribute> attributes = f1.getAttribute(userId, attributeName);
 
-                    String attributeName = "Assessment Complete - " + result;
+                if (attributes.size() == 0) {
+                    Attribute attribute = new Attribute(attributeName);
+                    attribute.setStartDate(new Date());
+                    attribute.setComment(summaryString);
 
-                    // Check if the user already has the attribute.
-                    List<Attribute> attributes = f1.getAttribute(userId, attributeName);
-
-                    if (attributes.size() == 0) {
-                        Attribute attribute = new Attribute(attributeName);
-                        attribute.setStartDate(new Date());
-                        attribute.setComment(summaryString);
-
-                        if (f1.addAttribute(userId, attribute)) {
-                            System.out.printf("%s attribute added\n", userId);
-                        } else {
-                            System.out.printf("%s failed to add attribute\n", userId);
-                        }
+                    if (f1.addAttribute(userId, attribute)) {
+                        System.out.printf("%s attribute added\n", userId);
                     } else {
-                        System.out.printf("%s already has attribute\n", userId);
+                        System.out.printf("%s failed to add attribute\n", userId);
                     }
-                } catch (Exception e) {
-                    System.out.printf("%s exception: %s\n", userId, e.getMessage());
+                } else {
+                    System.out.printf("%s already has attribute\n", userId);
                 }
+            } catch (Exception e) {
+                System.out.printf("%s exception: %s\n", userId, e.getMessage());
             }
-        }
+        });
 
         return offset;
     }
@@ -194,71 +200,60 @@ public class AttributeBackfillTool {
         final F1API f1 = getF1API();
         final DynamoDatabase db = getDatabase();
 
-        DynamoKey key = DynamoKey.newKey("training", null);
-
-        while (key != null) {
-            Map<DynamoKey, Map<String, String>> rows = db.getAll(key);
-
-            key = null;
+        db.scanParallelBytes("training", SEGMENTS, (key, row) -> {
+            String userId = key.getHashKey();
 
-            for (Map.Entry<DynamoKey, Map<String, String>> row : rows.entrySet()) {
-                key = row.getKey();
-
-                String userId = key.getHashKey();
-
-                String valueString = row.getValue().get("value");
-                if (valueString == null || valueString.length() == 0) {
-                    System.out.printf("%s empty training record\n", userId);
-                    continue;
-                }
+            byte[] value = row.get("value");
+            if (value == null || value.length == 0) {
+                System.out.printf("%s empty training record\n", userId);
+                return;
+            }
 
-                try {
-                    TrainingRecord record =
-                        JsonEncodedProvider.MAPPER.readValue(valueString, TrainingRecord.class);
-                    Playlist playlist = record.getPlaylist();
+            try {
+                TrainingRecord record = TRAINING_RECORD_CODEC.decode(value);
+                Playlist playlist = record.getPlaylist();
 
 chapters:
-                    for (Map.Entry<Chapters, Chapter> entry : playlist.getChaptersMap().entrySet()) {
-                        Chapter chapter = entry.getValue();
-
-                        // Find completion date
-                        Date complete = new Date(0);
-                        for (VideoRecord vr : chapter.getVideos().values()) {
-                            if (!vr.getComplete()) {
-                                continue chapters;
-                            }
-
-                            Date recordCompletion = vr.getCompletionDate();
-                            if (recordCompletion != null && complete.before(recordCompletion)) {
-                                complete = vr.getCompletionDate();
-                            }
+                for (Map.Entry<Chapters, Chapter> entry : playlist.getChaptersMap().entrySet()) {
+                    Chapter chapter = entry.getValue();
+
+                    // Find completion date
+                    Date complete = new Date(0);
+                    for (VideoRecord vr : chapter.getVideos().values()) {
+                        if (!vr.getComplete()) {
+                            continue chapters;
                         }
 
-                        String attributeName = "Training Complete - " + entry.getKey().toString().toLowerCase();
+                        Date recordCompletion = vr.getCompletionDate();
+                        if (recordCompletion != null && complete.before(recordCompletion)) {
+                            complete = vr.getCompletionDate();
+                        }
+                    }
 
-                        // Check if the user already has the attribute.
-                        List<Attribute> attributes = f1.getAttribute(userId, attributeName);
+                    String attributeName = "Training Complete - " + entry.getKey().toString().toLowerCase();
+
+                    // Check if the user already has the attribute.
+                    List<Attribute> attributes = f1.getAttribute(userId, attributeName);
 
-                        if (attributes.size() == 0) {
-                            Attribute attribute = new Attribute(attributeName);
-                            attribute.setStartDate(complete);
+                    if (attributes.size() == 0) {
+                        Attribute attribute = new Attribute(attributeName);
+                        attribute.setStartDate(complete);
 
-                            if (f1.addAttribute(userId, attribute)) {
-                                System.out.printf("%s added %s\n", userId, attributeName);
-                            } else {
-                                System.out.printf("%s failed to add %s\n", userId, attributeName);
-                            }
+                        if (f1.addAttribute(userId, attribute)) {
+                            System.out.printf("%s added %s\n", userId, attributeName);
                         } else {
-                            System.out.printf("%s already has %s\n", userId, attributeName);
+                            System.out.printf("%s failed to add %s\n", userId, attributeName);
                         }
+                    } else {
+                        System.out.printf("%s already has %s\n", userId, attributeName);
                     }
-
-                } catch (Exception e) {
-                    System.out.printf("%s exception: %s\n", userId, e.getMessage());
-                    e.printStackTrace();
                 }
+
+            } catch (Exception e) {
+                System.out.printf("%s exception: %s\n", userId, e.getMessage());
+                e.printStackTrace();
             }
-        }
+        });
 
         return offset;
     }
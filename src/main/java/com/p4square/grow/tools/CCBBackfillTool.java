@@ -33,11 +33,13 @@ import com.p4square.f1oauth.F1Exception;
 import com.p4square.restlet.oauth.OAuthUser;
 
 import com.p4square.grow.backend.dynamo.DynamoDatabase;
+import com.p4square.grow.backend.dynamo.DynamoDatabases;
 import com.p4square.grow.backend.dynamo.DynamoKey;
 
 import com.p4square.grow.config.Config;
 
-import com.p4square.grow.provider.JsonEncodedProvider;
+import com.p4square.grow.provider.Codec;
+import com.p4square.grow.provider.JacksonCodec;
 
 /**
  * This utility is used to backfill attributes from the GROW database into CCB.
@@ -54,6 +56,9 @@ public class CCBBackfillTool {
 
     private static final String GROW_LEVEL = "GrowLevelTrain";
 
+    private static final Codec<TrainingRecord> TRAINING_RECORD_CODEC =
+        new JacksonCodec<>(TrainingRecord.class, JacksonCodec.Format.JSON);
+
     private static Config mConfig;
     private static ChurchCommunityBuilderIntegrationDriver mIntegrationDriver;
     private static DynamoDatabase mDatabase;
@@ -130,7 +135,7 @@ public class CCBBackfillTool {
 
     private static DynamoDatabase getDatabase() {
         if (mDatabase == null) {
-            mDatabase = new DynamoDatabase(mConfig);
+            mDatabase = DynamoDatabases.create(mConfig).withPriority(DynamoDatabase.Priority.BATCH);
         }
         return mDatabase;
     }
@@ -212,15 +217,15 @@ public class CCBBackfillTool {
     }
 
     private static TrainingRecord getTrainingRecord(CCBUser user) throws IOException {
-        DynamoKey key = DynamoKey.newKey("training", user.getIdentifier());
+        DynamoKey key = DynamoKey.newAttributeKey("training", user.getIdentifier(), "value");
 
-        String valueString = getDatabase().getKey(key).get("value");
-        if (valueString == null || valueString.length() == 0) {
+        byte[] value = getDatabase().getAttributeBytes(key);
+        if (value == null || value.length == 0) {
             // User doesn't exist.
             System.out.println("** MISSING " + user.getIdentifier());
             return null;
         }
 
-        return JsonEncodedProvider.MAPPER.readValue(valueString, TrainingRecord.class);
+        return TRAINING_RECORD_CODEC.decode(value);
     }
 }
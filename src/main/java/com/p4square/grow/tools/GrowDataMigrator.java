@@ -0,0 +1,307 @@
+package com.p4square.grow.tools;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.apache.log4j.Logger;
+
+import com.p4square.grow.backend.GrowData;
+import com.p4square.grow.backend.feed.FeedDataProvider;
+import com.p4square.grow.model.Message;
+import com.p4square.grow.model.MessageThread;
+import com.p4square.grow.model.TrainingRecord;
+import com.p4square.grow.model.UserRecord;
+import com.p4square.grow.provider.JsonEncodedProvider;
+
+/**
+ * GrowDataMigrator copies data from one GrowData to another through the
+ * providers, so it works between any pair of stores regardless of how each
+ * lays the data out.
+ *
+ * Users are copied with their account, training record and assessment
+ * answers. Feeds are copied with every thread and message of each topic.
+ * Items are processed by a pool of workers fed through a bounded queue; when
+ * the queue is full the enumerating thread does the work itself, so no more
+ * than the queue's worth of items waits in memory. Finished items are
+ * recorded in a MigrationCheckpoint and skipped when a run is resumed.
+ *
+ * The checkpoint keeps every finished id in memory, and user ids, which a
+ * store may enumerate more than once, are also remembered to skip repeats.
+ * Both grow linearly with the number of users; only the work in flight is
+ * bounded.
+ */
+public class GrowDataMigrator {
+    private static final Logger LOG = Logger.getLogger(GrowDataMigrator.class);
+
+    static final String USERS = "user";
+    static final String FEEDS = "feed";
+
+    private static final int PROGRESS_INTERVAL = 1000;
+
+    /**
+     * The outcome of a migration or verification pass.
+     */
+    public static class Result {
+        private final AtomicLong mProcessed = new AtomicLong();
+        private final AtomicLong mSkipped = new AtomicLong();
+        private final List<String> mFailed = Collections.synchronizedList(new ArrayList<>());
+        private final long mStart = System.currentTimeMillis();
+        private volatile long mElapsed;
+
+        /**
+         * @return the number of items copied or verified.
+         */
+        public long getProcessed() {
+            return mProcessed.get();
+        }
+
+        /**
+         * @return the number of items skipped because a checkpoint had them.
+         */
+        public long getSkipped() {
+            return mSkipped.get();
+        }
+
+        /**
+         * @return the ids of items which failed or did not match.
+         */
+        public List<String> getFailed() {
+            synchronized (mFailed) {
+                return new ArrayList<>(mFailed);
+            }
+        }
+
+        public long getElapsedMillis() {
+            return mElapsed;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d processed, %d skipped, %d failed in %d ms",
+                    getProcessed(), getSkipped(), mFailed.size(), mElapsed);
+        }
+    }
+
+    /**
+     * Work done on one item.
+     */
+    private interface Task {
+        /**
+         * @return true if the item succeeded.
+         */
+        boolean run(String id) throws IOException;
+    }
+
+    private final GrowData mSource;
+    private final GrowData mDestination;
+    private final int mWorkers;
+    private final int mQueueSize;
+    private final MigrationCheckpoint mCheckpoint;
+
+    /**
+     * @param source The store to read from.
+     * @param destination The store to write to.
+     * @param workers The number of items processed concurrently.
+     * @param queueSize The number of items which may wait for a worker.
+     * @param checkpoint Records finished items.
+     */
+    public GrowDataMigrator(final GrowData source, final GrowData destination,
+            final int workers, final int queueSize, final MigrationCheckpoint checkpoint) {
+
+        if (source == null || destination == null) {
+            throw new IllegalArgumentException("source and destination must not be null.");
+        }
+
+        if (workers < 1 || queueSize < 1) {
+            throw new IllegalArgumentException("workers and queueSize must be positive.");
+        }
+
+        mSource = source;
+        mDestination = destination;
+        mWorkers = workers;
+        mQueueSize = queueSize;
+        mCheckpoint = checkpoint;
+    }
+
+    /**
+     * Copy every user's account, training record and assessment answers.
+     */
+    public Result migrateUsers() throws IOException {
+        return run(USERS, distinct(mSource::forEachUserId), this::copyUser);
+    }
+
+    /**
+     * Copy the threads and messages of every feed topic.
+     */
+    public Result migrateFeeds() throws IOException {
+        return run(FEEDS, (consumer) -> FeedDataProvider.TOPICS.forEach(consumer),
+                this::copyFeed);
+    }
+
+    /**
+     * Compare every user in the source with the destination.
+     *
+     * Values are compared by their JSON encoding. Users which differ are
+     * reported as failed.
+     */
+    public Result verifyUsers() throws IOException {
+        return run(null, distinct(mSource::forEachUserId), this::verifyUser);
+    }
+
+    private boolean copyUser(final String userId) throws IOException {
+        UserRecord account = mSource.getUserRecordProvider().get(userId);
+        if (account != null) {
+            mDestination.getUserRecordProvider().put(userId, account);
+        }
+
+        TrainingRecord training = mSource.getTrainingRecordProvider().get(userId);
+        if (training != null) {
+            mDestination.getTrainingRecordProvider().put(userId, training);
+        }
+
+        Map<String, String> answers = mSource.getAnswerProvider().query(userId);
+        if (!answers.isEmpty()) {
+            mDestination.getAnswerProvider().putAll(userId, answers);
+        }
+
+        return true;
+    }
+
+    private boolean copyFeed(final String topic) throws IOException {
+        Map<String, MessageThread> threads = mSource.getThreadProvider().query(topic);
+        if (!threads.isEmpty()) {
+            mDestination.getThreadProvider().putAll(topic, threads);
+        }
+
+        for (String threadId : threads.keySet()) {
+            Map<String, Message> messages = mSource.getMessageProvider().query(threadId);
+            if (!messages.isEmpty()) {
+                mDestination.getMessageProvider().putAll(threadId, messages);
+            }
+        }
+
+        return true;
+    }
+
+    private boolean verifyUser(final String userId) throws IOException {
+        boolean same = sameJson(mSource.getUserRecordProvider().get(userId),
+                mDestination.getUserRecordProvider().get(userId))
+            && sameJson(mSource.getTrainingRecordProvider().get(userId),
+                mDestination.getTrainingRecordProvider().get(userId))
+            && Objects.equals(mSource.getAnswerProvider().query(userId),
+                mDestination.getAnswerProvider().query(userId));
+
+        if (!same) {
+            LOG.warn("User " + userId + " differs between source and destination.");
+        }
+
+        return same;
+    }
+
+    private static boolean sameJson(final Object a, final Object b) {
+        if (a == null || b == null) {
+            return a == b;
+        }
+
+        return JsonEncodedProvider.MAPPER.valueToTree(a)
+            .equals(JsonEncodedProvider.MAPPER.valueToTree(b));
+    }
+
+    /**
+     * @return an Enumeration which passes on each id of ids only the first
+     *         time it is seen.
+     */
+    private static Enumeration distinct(final Enumeration ids) {
+        return (consumer) -> {
+            final Set<String> seen = ConcurrentHashMap.newKeySet();
+            ids.forEach((id) -> {
+                if (seen.add(id)) {
+                    consumer.accept(id);
+                }
+            });
+        };
+    }
+
+    /**
+     * Run task on every id enumerated.
+     *
+     * @param stage The checkpoint stage, or null to ignore the checkpoint.
+     */
+    private Result run(final String stage, final Enumeration ids, final Task task)
+            throws IOException {
+
+        final Result result = new Result();
+
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(mWorkers, mWorkers,
+                0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(mQueueSize),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+
+        try {
+            ids.forEach((id) -> {
+                if (stage != null && mCheckpoint.isDone(stage, id)) {
+                    result.mSkipped.incrementAndGet();
+                    return;
+                }
+
+                executor.execute(() -> process(stage, id, task, result));
+            });
+
+        } finally {
+            executor.shutdown();
+            try {
+                while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                    LOG.info("Waiting for " + executor.getActiveCount() + " workers...");
+                }
+            } catch (InterruptedException e) {
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for workers.", e);
+            }
+
+            result.mElapsed = System.currentTimeMillis() - result.mStart;
+        }
+
+        return result;
+    }
+
+    private void process(final String stage, final String id, final Task task,
+            final Result result) {
+
+        try {
+            if (task.run(id)) {
+                if (stage != null) {
+                    mCheckpoint.markDone(stage, id);
+                }
+            } else {
+                result.mFailed.add(id);
+            }
+
+        } catch (Exception e) {
+            LOG.error("Failed to process " + id, e);
+            result.mFailed.add(id);
+        }
+
+        long processed = result.mProcessed.incrementAndGet();
+        if (processed % PROGRESS_INTERVAL == 0) {
+            LOG.info("Processed " + processed + " items.");
+        }
+    }
+
+    /**
+     * Enumerates the ids of a stage.
+     */
+    private interface Enumeration {
+        void forEach(Consumer<String> consumer) throws IOException;
+    }
+}
@@ -0,0 +1,113 @@
+package com.p4square.grow.tools;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * MigrationCheckpoint remembers which items a migration has finished so an
+ * interrupted run can be resumed.
+ *
+ * Each finished item is appended to the file as a "stage id" line. The file
+ * is flushed every FLUSH_INTERVAL items and when the checkpoint is closed, so
+ * a crash repeats at most that many items. Copies are idempotent, so a
+ * repeated item is harmless.
+ */
+class MigrationCheckpoint implements Closeable {
+    static final int FLUSH_INTERVAL = 100;
+
+    private final File mFile;
+    private final Set<String> mDone;
+
+    private Writer mOut;
+    private int mUnflushed;
+
+    /**
+     * @param file The checkpoint file, which is read if it exists. Null
+     *             keeps the checkpoint in memory only.
+     */
+    MigrationCheckpoint(final File file) throws IOException {
+        mFile = file;
+        mDone = ConcurrentHashMap.newKeySet();
+
+        if (file != null && file.exists()) {
+            try (BufferedReader in = Files.newBufferedReader(file.toPath(),
+                        StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    if (!line.isEmpty()) {
+                        mDone.add(line);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true if the item was finished by this or an earlier run.
+     */
+    boolean isDone(final String stage, final String id) {
+        return mDone.contains(entry(stage, id));
+    }
+
+    /**
+     * @return the number of items finished in a stage.
+     */
+    int count(final String stage) {
+        final String prefix = stage + " ";
+        int count = 0;
+        for (String entry : mDone) {
+            if (entry.startsWith(prefix)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Record that an item is finished.
+     */
+    synchronized void markDone(final String stage, final String id) throws IOException {
+        final String entry = entry(stage, id);
+        if (!mDone.add(entry) || mFile == null) {
+            return;
+        }
+
+        if (mOut == null) {
+            mOut = new OutputStreamWriter(new FileOutputStream(mFile, true),
+                    StandardCharsets.UTF_8);
+        }
+
+        mOut.write(entry);
+        mOut.write('\n');
+
+        if (++mUnflushed >= FLUSH_INTERVAL) {
+            mOut.flush();
+            mUnflushed = 0;
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (mOut != null) {
+            mOut.close();
+            mOut = null;
+        }
+    }
+
+    private static String entry(final String stage, final String id) {
+        if (id.indexOf('\n') >= 0) {
+            throw new IllegalArgumentException("id must not contain a newline.");
+        }
+
+        return stage + " " + id;
+    }
+}
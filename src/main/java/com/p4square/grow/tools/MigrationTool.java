@@ -0,0 +1,176 @@
+package com.p4square.grow.tools;
+
+import java.io.File;
+
+import com.codahale.metrics.MetricRegistry;
+
+import com.p4square.grow.backend.GrowData;
+import com.p4square.grow.backend.GrowDatas;
+import com.p4square.grow.config.Config;
+
+/**
+ * Copies users and feeds from one GrowData to another.
+ *
+ * Both stores read the same configuration; --from-set and --to-set override
+ * settings on one side only, e.g. to point each at a different table prefix
+ * or data directory. Questions, videos and strings are not copied. Load them
+ * into the destination with DbTool --bootstrap.
+ */
+public class MigrationTool {
+    private static final MetricRegistry mMetricRegistry = new MetricRegistry();
+
+    private static Config mFromConfig;
+    private static Config mToConfig;
+    private static String mFromType = "dynamo";
+    private static String mToType = "local";
+    private static int mWorkers = 8;
+    private static int mQueueSize = 1000;
+    private static File mCheckpointFile = new File("migration.checkpoint");
+
+    private static GrowData mSource;
+    private static GrowData mDestination;
+    private static MigrationCheckpoint mCheckpoint;
+
+    public static void usage() {
+        System.out.println("java com.p4square.grow.tools.MigrationTool <command>...\n");
+        System.out.println("Options:");
+        System.out.println("\t--domain <domain>             Set config domain");
+        System.out.println("\t--dev                         Set config domain to dev");
+        System.out.println("\t--config <file>               Merge in config file");
+        System.out.println("\t--from <type>                 Source store: dynamo, cassandra or local");
+        System.out.println("\t--to <type>                   Destination store: dynamo, cassandra or local");
+        System.out.println("\t--from-set <key> <value>      Set a config value for the source only");
+        System.out.println("\t--to-set <key> <value>        Set a config value for the destination only");
+        System.out.println("\t--workers <n>                 Items copied concurrently (default 8)");
+        System.out.println("\t--queue <n>                   Items waiting for a worker (default 1000)");
+        System.out.println("\t--checkpoint <file>           Checkpoint file (default migration.checkpoint)");
+        System.out.println("Commands:");
+        System.out.println("\t--users                       Copy accounts, training records and answers");
+        System.out.println("\t--feeds                       Copy feed threads and messages");
+        System.out.println("\t--verify                      Compare every user in both stores");
+    }
+
+    public static void main(String... args) {
+        if (args.length == 0) {
+            usage();
+            System.exit(1);
+        }
+
+        mFromConfig = new Config();
+        mToConfig = new Config();
+
+        try {
+            mFromConfig.updateConfig(MigrationTool.class.getResourceAsStream("/grow.properties"));
+            mToConfig.updateConfig(MigrationTool.class.getResourceAsStream("/grow.properties"));
+
+            int offset = 0;
+            while (offset < args.length) {
+                if ("--domain".equals(args[offset])) {
+                    mFromConfig.setDomain(args[offset + 1]);
+                    mToConfig.setDomain(args[offset + 1]);
+                    offset += 2;
+
+                } else if ("--dev".equals(args[offset])) {
+                    mFromConfig.setDomain("dev");
+                    mToConfig.setDomain("dev");
+                    offset += 1;
+
+                } else if ("--config".equals(args[offset])) {
+                    mFromConfig.updateConfig(args[offset + 1]);
+                    mToConfig.updateConfig(args[offset + 1]);
+                    offset += 2;
+
+                } else if ("--from".equals(args[offset])) {
+                    mFromType = args[offset + 1];
+                    offset += 2;
+
+                } else if ("--to".equals(args[offset])) {
+                    mToType = args[offset + 1];
+                    offset += 2;
+
+                } else if ("--from-set".equals(args[offset])) {
+                    mFromConfig.setString(args[offset + 1], args[offset + 2]);
+                    offset += 3;
+
+                } else if ("--to-set".equals(args[offset])) {
+                    mToConfig.setString(args[offset + 1], args[offset + 2]);
+                    offset += 3;
+
+                } else if ("--workers".equals(args[offset])) {
+                    mWorkers = Integer.parseInt(args[offset + 1]);
+                    offset += 2;
+
+                } else if ("--queue".equals(args[offset])) {
+                    mQueueSize = Integer.parseInt(args[offset + 1]);
+                    offset += 2;
+
+                } else if ("--checkpoint".equals(args[offset])) {
+                    mCheckpointFile = new File(args[offset + 1]);
+                    offset += 2;
+
+                } else if ("--users".equals(args[offset])) {
+                    System.out.println("Users: " + getMigrator().migrateUsers());
+                    offset += 1;
+
+                } else if ("--feeds".equals(args[offset])) {
+                    System.out.println("Feeds: " + getMigrator().migrateFeeds());
+                    offset += 1;
+
+                } else if ("--verify".equals(args[offset])) {
+                    GrowDataMigrator.Result result = getMigrator().verifyUsers();
+                    System.out.println("Verify: " + result);
+                    for (String id : result.getFailed()) {
+                        System.out.println("\tMismatch: " + id);
+                    }
+                    offset += 1;
+
+                } else {
+                    throw new IllegalArgumentException("Unknown command " + args[offset]);
+                }
+            }
+
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.exit(2);
+
+        } finally {
+            try {
+                shutdown();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static GrowDataMigrator getMigrator() throws Exception {
+        if (mSource == null) {
+            mSource = GrowDatas.create(mFromType, mFromConfig, mMetricRegistry);
+            mSource.start();
+        }
+
+        if (mDestination == null) {
+            mDestination = GrowDatas.create(mToType, mToConfig, mMetricRegistry);
+            mDestination.start();
+        }
+
+        if (mCheckpoint == null) {
+            mCheckpoint = new MigrationCheckpoint(mCheckpointFile);
+        }
+
+        return new GrowDataMigrator(mSource, mDestination, mWorkers, mQueueSize, mCheckpoint);
+    }
+
+    private static void shutdown() throws Exception {
+        if (mCheckpoint != null) {
+            mCheckpoint.close();
+        }
+
+        if (mSource != null) {
+            mSource.stop();
+        }
+
+        if (mDestination != null) {
+            mDestination.stop();
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.p4square.grow.tools;
+
+import com.codahale.metrics.MetricRegistry;
+
+import com.p4square.grow.backend.AssessmentRescorer;
+import com.p4square.grow.backend.GrowData;
+import com.p4square.grow.backend.GrowDatas;
+import com.p4square.grow.config.Config;
+
+/**
+ * Scores every stored assessment again with the current questions.
+ *
+ * Run with --dry-run first to see how many users would change level. The
+ * same job can be started on a running backend with POST /admin/rescore.
+ */
+public class RescoreTool {
+    private static final MetricRegistry mMetricRegistry = new MetricRegistry();
+
+    private static Config mConfig;
+    private static GrowData mGrowData;
+
+    private static int mParallelism = Runtime.getRuntime().availableProcessors();
+    private static double mRowsPerSecond = 10;
+    private static int mBatchSize = 25;
+    private static boolean mDryRun = false;
+
+    public static void usage() {
+        System.out.println("java com.p4square.grow.tools.RescoreTool <command>...\n");
+        System.out.println("Options:");
+        System.out.println("\t--domain <domain>             Set config domain");
+        System.out.println("\t--dev                         Set config domain to dev");
+        System.out.println("\t--config <file>               Merge in config file");
+        System.out.println("\t--parallelism <n>             Rows scored concurrently (default cores)");
+        System.out.println("\t--rate <n>                    Rows written per second (default 10)");
+        System.out.println("\t--batch <n>                   Rows written per batch (default 25)");
+        System.out.println("\t--dry-run                     Score every row but write nothing");
+        System.out.println("Commands:");
+        System.out.println("\t--rescore                     Rescore every assessment");
+    }
+
+    public static void main(String... args) {
+        if (args.length == 0) {
+            usage();
+            System.exit(1);
+        }
+
+        mConfig = new Config();
+
+        try {
+            mConfig.updateConfig(RescoreTool.class.getResourceAsStream("/grow.properties"));
+
+            int offset = 0;
+            while (offset < args.length) {
+                if ("--domain".equals(args[offset])) {
+                    mConfig.setDomain(args[offset + 1]);
+                    offset += 2;
+
+                } else if ("--dev".equals(args[offset])) {
+                    mConfig.setDomain("dev");
+                    offset += 1;
+
+                } else if ("--config".equals(args[offset])) {
+                    mConfig.updateConfig(args[offset + 1]);
+                    offset += 2;
+
+                } else if ("--parallelism".equals(args[offset])) {
+                    mParallelism = Integer.parseInt(args[offset + 1]);
+                    offset += 2;
+
+                } else if ("--rate".equals(args[offset])) {
+                    mRowsPerSecond = Double.parseDouble(args[offset + 1]);
+                    offset += 2;
+
+                } else if ("--batch".equals(args[offset])) {
+                    mBatchSize = Integer.parseInt(args[offset + 1]);
+                    offset += 2;
+
+                } else if ("--dry-run".equals(args[offset])) {
+                    mDryRun = true;
+                    offset += 1;
+
+                } else if ("--rescore".equals(args[offset])) {
+                    AssessmentRescorer.Result result = getRescorer().rescore(mDryRun);
+                    System.out.println("Rescore: " + result);
+                    offset += 1;
+
+                } else {
+                    throw new IllegalArgumentException("Unknown command " + args[offset]);
+                }
+            }
+
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.exit(2);
+
+        } finally {
+            try {
+                if (mGrowData != null) {
+                    mGrowData.stop();
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static AssessmentRescorer getRescorer() throws Exception {
+        if (mGrowData == null) {
+            mGrowData = GrowDatas.create(mConfig, mMetricRegistry);
+            mGrowData.start();
+        }
+
+        return new AssessmentRescorer(mGrowData, mMetricRegistry, mParallelism,
+                mRowsPerSecond, mBatchSize);
+    }
+}
@@ -0,0 +1,50 @@
+package com.p4square.f1oauth;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for F1Access.
+ */
+public class F1AccessTest {
+
+    @Test
+    public void testDateRoundTrip() throws Exception {
+        Date date = F1Access.parseDate("2014-03-02T10:11:12");
+        assertEquals("2014-03-02T10:11:12", F1Access.formatDate(date));
+    }
+
+    @Test
+    public void testDatesFromManyThreads() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                final int thread = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 2000; i++) {
+                        String date = String.format("20%02d-%02d-%02dT%02d:%02d:%02d",
+                                thread + 10, i % 12 + 1, i % 28 + 1, i % 24, i % 60, thread);
+                        assertEquals(date, F1Access.formatDate(F1Access.parseDate(date)));
+                    }
+                    return null;
+                }));
+            }
+
+            for (Future<?> future : futures) {
+                future.get();
+            }
+
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
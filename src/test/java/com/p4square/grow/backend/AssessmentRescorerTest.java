@@ -0,0 +1,271 @@
+package com.p4square.grow.backend;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import com.codahale.metrics.MetricRegistry;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import com.p4square.grow.config.Config;
+import com.p4square.grow.model.Answer;
+import com.p4square.grow.model.Question;
+import com.p4square.grow.model.RunningScore;
+import com.p4square.grow.model.TextQuestion;
+import com.p4square.grow.model.TrainingRecord;
+import com.p4square.grow.provider.CollectionProvider;
+import com.p4square.grow.provider.MapCollectionProvider;
+
+/**
+ * Tests for AssessmentRescorer and RescoreWriter, against a local store.
+ */
+public class AssessmentRescorerTest {
+
+    private File mDirectory;
+    private Config mConfig;
+    private MetricRegistry mMetricRegistry;
+    private GrowData mData;
+    private CollectionProvider<String, String, String> mAnswers;
+
+    @Before
+    public void setUp() throws Exception {
+        mDirectory = Files.createTempDirectory("AssessmentRescorerTest").toFile();
+        mMetricRegistry = new MetricRegistry();
+
+        mConfig = new Config();
+        mConfig.setString("localDataDirectory", mDirectory.getPath());
+        mData = new LocalGrowData(mConfig, mMetricRegistry);
+        mData.start();
+        mAnswers = mData.getAnswerProvider();
+
+        mData.getStringProvider().put("/questions", "{\"first\":\"q1\",\"count\":2}");
+        mData.getQuestionProvider().put("q1", question("q1", "q2"));
+        mData.getQuestionProvider().put("q2", question("q2", null));
+
+        // Scored as a seeker before the questions changed.
+        answer("teacher", "a4", "a4");
+        mAnswers.put("teacher", Assessments.SUMMARY, "{ \"result\":\"seeker\" }");
+
+        // Already current.
+        answer("believer", "a2", "a2");
+        RunningScore score = Assessments.score("believer", mAnswers.query("believer"),
+                (id) -> get(id));
+        Map<String, String> current = new HashMap<>();
+        current.put(Assessments.RUNNING_SCORE, new ObjectMapper().writeValueAsString(score));
+        current.put(Assessments.SUMMARY, Assessments.summarize(score));
+        mAnswers.putAll("believer", current);
+
+        // Never scored.
+        answer("new", "a3", "a3");
+
+        // No assessment at all.
+        mData.getTrainingRecordProvider().put("trainee", new TrainingRecord());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mData.stop();
+        delete(mDirectory);
+    }
+
+    @Test
+    public void testDryRunWritesNothing() throws Exception {
+        AssessmentRescorer.Result result = rescorer().rescore(true);
+
+        assertTrue(result.isDryRun());
+        assertFalse(result.isRunning());
+        assertEquals(3, result.getScanned());
+        assertEquals(3, result.getScored());
+        assertEquals(2, result.getChanged());
+        assertEquals(1, result.getLevelChanges());
+        assertEquals(Long.valueOf(1), result.getTransitions().get("seeker->teacher"));
+        assertEquals(0, result.getWritten());
+        assertEquals(0, result.getFailed());
+
+        assertEquals("seeker", Assessments.getLevel(mAnswers.get("teacher", Assessments.SUMMARY)));
+        assertNull(mAnswers.get("new", Assessments.SUMMARY));
+        assertEquals(3, mMetricRegistry.meter("AssessmentRescorer.scanned").getCount());
+    }
+
+    @Test
+    public void testRescoreWritesChangedRows() throws Exception {
+        AssessmentRescorer.Result result = rescorer().rescore(false);
+
+        assertEquals(2, result.getChanged());
+        assertEquals(2, result.getWritten());
+        assertEquals(0, result.getStale());
+        assertEquals(0, result.getFailed());
+
+        assertEquals("teacher", Assessments.getLevel(mAnswers.get("teacher", Assessments.SUMMARY)));
+        assertNotNull(mAnswers.get("teacher", Assessments.RUNNING_SCORE));
+        assertEquals("disciple", Assessments.getLevel(mAnswers.get("new", Assessments.SUMMARY)));
+        assertEquals("{\"answerId\":\"a4\"}", mAnswers.get("teacher", "q1"));
+
+        // Everything is current now.
+        result = rescorer().rescore(false);
+        assertEquals(0, result.getChanged());
+        assertEquals(0, result.getLevelChanges());
+        assertEquals(0, result.getWritten());
+    }
+
+    @Test
+    public void testWriterSkipsRowsAnsweredSinceTheScan() throws Exception {
+        mAnswers.put("believer", Assessments.RUNNING_SCORE, "answered");
+
+        Map<String, String> changes = new HashMap<>();
+        changes.put(Assessments.SUMMARY, "rescored");
+
+        RescoreWriter writer = new RescoreWriter(mAnswers, 1000, 2, mMetricRegistry);
+        writer.add("believer", "scanned", changes);
+        writer.add("new", null, changes);
+        writer.close();
+
+        assertEquals(1, writer.getStale());
+        assertEquals(1, writer.getWritten());
+        assertFalse("rescored".equals(mAnswers.get("believer", Assessments.SUMMARY)));
+        assertEquals("rescored", mAnswers.get("new", Assessments.SUMMARY));
+    }
+
+    @Test
+    public void testWriterSkipsRowsScoredDuringTheWrite() throws Exception {
+        // The user answers between the writer's check and its write.
+        CollectionProvider<String, String, String> racing =
+            new MapCollectionProvider<String, String, String>() {
+                @Override
+                public boolean putAllIf(String collection, String key, String expected,
+                        Map<String, String> values) throws IOException {
+
+                    mAnswers.put(collection, Assessments.RUNNING_SCORE, "answered");
+                    return mAnswers.putAllIf(collection, key, expected, values);
+                }
+            };
+
+        Map<String, String> changes = new HashMap<>();
+        changes.put(Assessments.SUMMARY, "rescored");
+
+        RescoreWriter writer = new RescoreWriter(racing, 1000, 2, mMetricRegistry);
+        writer.add("new", null, changes);
+        writer.close();
+
+        assertEquals(1, writer.getStale());
+        assertEquals(0, writer.getWritten());
+        assertFalse("rescored".equals(mAnswers.get("new", Assessments.SUMMARY)));
+    }
+
+    @Test(timeout = 10000)
+    public void testWriterFailureIsReported() throws Exception {
+        CollectionProvider<String, String, String> broken =
+            new MapCollectionProvider<String, String, String>() {
+                @Override
+                public boolean putAllIf(String collection, String key, String expected,
+                        Map<String, String> values) {
+
+                    throw new AssertionError("broken");
+                }
+            };
+
+        Map<String, String> changes = new HashMap<>();
+        changes.put(Assessments.SUMMARY, "rescored");
+
+        // The queue holds four rows, so add() would block once it is full.
+        RescoreWriter writer = new RescoreWriter(broken, 1000, 1, mMetricRegistry);
+        try {
+            for (int i = 0; i < 100; i++) {
+                writer.add("new", null, changes);
+            }
+            fail("add() accepted rows after the writer died.");
+
+        } catch (IllegalStateException e) {
+            assertEquals("broken", e.getCause().getMessage());
+        }
+
+        try {
+            writer.close();
+            fail("close() did not report the failure.");
+
+        } catch (IOException e) {
+            assertEquals("broken", e.getCause().getMessage());
+        }
+    }
+
+    @Test
+    public void testScanFailureIsReported() throws Exception {
+        mData.stop();
+        mData = new LocalGrowData(mConfig, mMetricRegistry) {
+            @Override
+            public void forEachUserId(Consumer<String> consumer) throws IOException {
+                super.forEachUserId(consumer);
+                throw new IllegalStateException("Unreadable item.");
+            }
+        };
+        mData.start();
+
+        // The writer is healthy, so the scan's own failure is reported.
+        try {
+            rescorer().rescore(false);
+            fail("rescore() returned a result for a failed scan.");
+
+        } catch (IllegalStateException e) {
+            assertEquals("Unreadable item.", e.getMessage());
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testClosedWriterRejectsRows() throws Exception {
+        RescoreWriter writer = new RescoreWriter(mAnswers, 1000, 2, mMetricRegistry);
+        writer.close();
+        writer.add("new", null, new HashMap<String, String>());
+    }
+
+    private AssessmentRescorer rescorer() {
+        return new AssessmentRescorer(mData, mMetricRegistry, 2, 1000, 2);
+    }
+
+    private Question get(String id) {
+        try {
+            return mData.getQuestionProvider().get(id);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void answer(String userId, String q1, String q2) throws IOException {
+        Map<String, String> answers = new HashMap<>();
+        answers.put("q1", "{\"answerId\":\"" + q1 + "\"}");
+        answers.put("q2", "{\"answerId\":\"" + q2 + "\"}");
+        answers.put(Assessments.LAST_ANSWERED, "q2");
+        mAnswers.putAll(userId, answers);
+    }
+
+    private static Question question(String id, String next) {
+        Question question = new TextQuestion();
+        question.setId(id);
+        question.setNextQuestion(next);
+        for (int i = 1; i <= 4; i++) {
+            Answer answer = new Answer();
+            answer.setScore(i);
+            question.getAnswers().put("a" + i, answer);
+        }
+        return question;
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
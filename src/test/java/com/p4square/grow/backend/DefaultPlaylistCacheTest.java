@@ -0,0 +1,117 @@
+package com.p4square.grow.backend;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import com.p4square.grow.model.Chapters;
+import com.p4square.grow.model.Playlist;
+import com.p4square.grow.model.TrainingRecord;
+import com.p4square.grow.provider.Provider;
+import com.p4square.grow.provider.ProvidesTrainingRecords;
+
+/**
+ * Tests for DefaultPlaylistCache.
+ */
+public class DefaultPlaylistCacheTest {
+
+    private FakeSource mSource;
+    private long mNow;
+    private DefaultPlaylistCache mCache;
+
+    @Before
+    public void setUp() {
+        mSource = new FakeSource();
+        mSource.mPlaylist = playlist(100);
+        mNow = 0;
+        mCache = new DefaultPlaylistCache(mSource, 60, TimeUnit.SECONDS, () -> mNow);
+    }
+
+    @Test
+    public void testPlaylistIsLoadedOncePerTtl() throws Exception {
+        Playlist first = mCache.get();
+        mNow += TimeUnit.SECONDS.toNanos(59);
+        assertSame(first, mCache.get());
+        assertEquals(1, mSource.mLoads);
+    }
+
+    @Test
+    public void testSameVersionKeepsInstance() throws Exception {
+        Playlist first = mCache.get();
+
+        mSource.mPlaylist = playlist(100);
+        mNow += TimeUnit.SECONDS.toNanos(60);
+        assertSame(first, mCache.get());
+        assertEquals(2, mSource.mLoads);
+    }
+
+    @Test
+    public void testNewVersionReplacesInstance() throws Exception {
+        mCache.get();
+
+        mSource.mPlaylist = playlist(200);
+        mNow += TimeUnit.SECONDS.toNanos(60);
+        assertEquals(new Date(200), mCache.get().getLastUpdated());
+    }
+
+    @Test
+    public void testInvalidateReloads() throws Exception {
+        mCache.get();
+        mSource.mPlaylist = playlist(200);
+
+        mCache.invalidate();
+        assertEquals(new Date(200), mCache.get().getLastUpdated());
+    }
+
+    @Test
+    public void testFailedReloadServesCachedPlaylist() throws Exception {
+        Playlist first = mCache.get();
+
+        mSource.mFail = true;
+        mNow += TimeUnit.SECONDS.toNanos(60);
+        assertSame(first, mCache.get());
+
+        // The next attempt waits for another TTL.
+        mNow += TimeUnit.SECONDS.toNanos(1);
+        assertSame(first, mCache.get());
+        assertEquals(2, mSource.mLoads);
+    }
+
+    @Test(expected = IOException.class)
+    public void testFailedFirstLoadThrows() throws Exception {
+        mSource.mFail = true;
+        mCache.get();
+    }
+
+    private static Playlist playlist(long lastUpdated) {
+        Playlist playlist = new Playlist();
+        playlist.add(Chapters.SEEKER, "video1");
+        playlist.setLastUpdated(new Date(lastUpdated));
+        return playlist;
+    }
+
+    private static class FakeSource implements ProvidesTrainingRecords {
+        private Playlist mPlaylist;
+        private boolean mFail;
+        private int mLoads;
+
+        @Override
+        public Provider<String, TrainingRecord> getTrainingRecordProvider() {
+            return null;
+        }
+
+        @Override
+        public Playlist getDefaultPlaylist() throws IOException {
+            mLoads++;
+            if (mFail) {
+                throw new IOException("Failed");
+            }
+            return mPlaylist;
+        }
+    }
+}
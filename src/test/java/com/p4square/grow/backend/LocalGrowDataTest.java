@@ -0,0 +1,140 @@
+package com.p4square.grow.backend;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import com.codahale.metrics.MetricRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import com.p4square.grow.config.Config;
+import com.p4square.grow.model.Chapters;
+import com.p4square.grow.model.Playlist;
+import com.p4square.grow.model.TrainingRecord;
+import com.p4square.grow.provider.AsyncCollectionProvider;
+import com.p4square.grow.provider.AsyncProvider;
+import com.p4square.grow.provider.AsyncProviders;
+import com.p4square.grow.provider.Provider;
+
+/**
+ * Tests for LocalGrowData.
+ */
+public class LocalGrowDataTest {
+
+    private File mDirectory;
+    private Config mConfig;
+    private LocalGrowData mData;
+
+    @Before
+    public void setUp() throws Exception {
+        mDirectory = Files.createTempDirectory("LocalGrowDataTest").toFile();
+
+        mConfig = new Config();
+        mConfig.setString("localDataDirectory", mDirectory.getPath());
+        mConfig.setInt("localSyncMillis", 0);
+        mConfig.setInt("localMinCompactionBytes", 0);
+
+        mData = start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mData.stop();
+        for (File file : mDirectory.listFiles()) {
+            file.delete();
+        }
+        mDirectory.delete();
+    }
+
+    @Test
+    public void testCompaction() throws Exception {
+        Provider<String, TrainingRecord> records = mData.getTrainingRecordProvider();
+        for (int i = 0; i < 50; i++) {
+            records.put("user", record("video" + i));
+        }
+        records.put("other", record("kept"));
+
+        final long before = mData.getDatabase().getSize();
+        assertTrue(mData.getDatabase().maybeCompact());
+        assertTrue(mData.getDatabase().getSize() < before);
+
+        assertEquals("video49", records.get("user").getLastVideo());
+        assertEquals("kept", records.get("other").getLastVideo());
+
+        records.put("user", record("after"));
+
+        mData.stop();
+        mData = start();
+        records = mData.getTrainingRecordProvider();
+        assertEquals("after", records.get("user").getLastVideo());
+        assertEquals("kept", records.get("other").getLastVideo());
+    }
+
+    @Test
+    public void testPutIf() throws Exception {
+        Provider<String, TrainingRecord> records = mData.getTrainingRecordProvider();
+        assertTrue(records.putIf("user", null, record("first")));
+        assertFalse(records.putIf("user", null, record("second")));
+        assertFalse(records.putIf("user", record("other"), record("second")));
+        assertEquals("first", records.get("user").getLastVideo());
+
+        assertTrue(records.putIf("user", record("first"), record("second")));
+        assertEquals("second", records.get("user").getLastVideo());
+    }
+
+    @Test
+    public void testAsyncProviders() throws Exception {
+        AsyncProvider<String, TrainingRecord> records =
+            AsyncProviders.async(mData.getTrainingRecordProvider());
+        records.putAsync("user", record("first")).join();
+        assertEquals("first", records.getAsync("user").join().getLastVideo());
+
+        AsyncCollectionProvider<String, String, String> answers =
+            AsyncProviders.async(mData.getAnswerProvider());
+        answers.putAsync("user", "q1", "a").join();
+        assertEquals("a", answers.getAsync("user", "q1").join());
+        assertEquals(1, answers.queryAsync("user").join().size());
+    }
+
+    @Test
+    public void testRecoversFromCrashDuringCompaction() throws Exception {
+        Provider<String, TrainingRecord> records = mData.getTrainingRecordProvider();
+        records.put("user", record("first"));
+        records.put("user", record("second"));
+        mData.stop();
+
+        // A crash part way through writing the compacted log leaves the log
+        // as it was and a partial compaction file beside it.
+        final File compacted = new File(mDirectory, "grow.log.compact");
+        Files.write(compacted.toPath(), new byte[] { 0, 0, 0, 0, 0, 0, 0, 42, 1 });
+
+        mData = start();
+        assertFalse(compacted.exists());
+
+        records = mData.getTrainingRecordProvider();
+        assertEquals("second", records.get("user").getLastVideo());
+
+        assertTrue(mData.getDatabase().maybeCompact());
+        assertEquals("second", records.get("user").getLastVideo());
+    }
+
+    private LocalGrowData start() throws Exception {
+        LocalGrowData data = new LocalGrowData(mConfig, new MetricRegistry());
+        data.start();
+        return data;
+    }
+
+    private static TrainingRecord record(String lastVideo) {
+        Playlist playlist = new Playlist();
+        playlist.add(Chapters.SEEKER, "video1");
+
+        TrainingRecord record = new TrainingRecord();
+        record.setLastVideo(lastVideo);
+        record.setPlaylist(playlist);
+        return record;
+    }
+}
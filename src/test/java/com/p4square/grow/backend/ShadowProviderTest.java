@@ -0,0 +1,256 @@
+package com.p4square.grow.backend;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import com.codahale.metrics.MetricRegistry;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import com.p4square.grow.model.UserRecord;
+import com.p4square.grow.provider.AsyncCollectionProvider;
+import com.p4square.grow.provider.AsyncProvider;
+import com.p4square.grow.provider.MapCollectionProvider;
+import com.p4square.grow.provider.MapProvider;
+import com.p4square.grow.provider.Provider;
+
+/**
+ * Tests for ShadowProvider, ShadowCollectionProvider and ShadowMirror.
+ */
+public class ShadowProviderTest {
+
+    private MetricRegistry mMetricRegistry;
+    private MapProvider<String, UserRecord> mPrimary;
+    private MapProvider<String, UserRecord> mSecondary;
+
+    @Before
+    public void setUp() {
+        mMetricRegistry = new MetricRegistry();
+        mPrimary = new MapProvider<>();
+        mSecondary = new MapProvider<>();
+    }
+
+    @Test
+    public void testWritesAreMirrored() throws Exception {
+        ShadowMirror mirror = new ShadowMirror(2, 10, 0, mMetricRegistry);
+        Provider<String, UserRecord> provider =
+            new ShadowProvider<>("users", mPrimary, mSecondary, mirror);
+
+        UserRecord user = user("1", "Alice");
+        provider.put("1", user);
+
+        // The caller may keep changing its object without affecting the mirrored write.
+        user.setFirstName("Changed");
+
+        assertTrue(mirror.shutdown(1000));
+        assertSame(user, mPrimary.get("1"));
+        assertEquals("Alice", mSecondary.get("1").getFirstName());
+        assertEquals(1, mMetricRegistry.timer("ShadowGrowData.users.put.primary").getCount());
+        assertEquals(1, mMetricRegistry.timer("ShadowGrowData.users.put.secondary").getCount());
+    }
+
+    @Test
+    public void testReadsAreServedByPrimaryAndCompared() throws Exception {
+        ShadowMirror mirror = new ShadowMirror(1, 10, 1.0, mMetricRegistry);
+        Provider<String, UserRecord> provider =
+            new ShadowProvider<>("users", mPrimary, mSecondary, mirror);
+
+        mPrimary.put("1", user("1", "Alice"));
+        mSecondary.put("1", user("1", "Alice"));
+        mPrimary.put("2", user("2", "Bob"));
+        mSecondary.put("2", user("2", "Robert"));
+
+        assertEquals("Alice", provider.get("1").getFirstName());
+        assertEquals("Bob", provider.get("2").getFirstName());
+        assertNull(provider.get("3"));
+
+        assertTrue(mirror.shutdown(1000));
+        assertEquals(2, mMetricRegistry.counter("ShadowGrowData.users.get.match").getCount());
+        assertEquals(1, mMetricRegistry.counter("ShadowGrowData.users.get.mismatch").getCount());
+        assertEquals(3, mMetricRegistry.timer("ShadowGrowData.users.get.secondary").getCount());
+        assertEquals(0, mMetricRegistry.counter("ShadowGrowData.users.get.error").getCount());
+    }
+
+    @Test
+    public void testMissingValuesAreCompared() throws Exception {
+        ShadowMirror mirror = new ShadowMirror(1, 10, 1.0, mMetricRegistry);
+        Provider<String, UserRecord> provider =
+            new ShadowProvider<>("users", mPrimary, mSecondary, mirror);
+
+        mSecondary.put("1", user("1", "Alice"));
+        mPrimary.put("2", user("2", "Bob"));
+
+        assertNull(provider.get("1"));
+        assertEquals("Bob", provider.get("2").getFirstName());
+        assertNull(provider.get("3"));
+
+        assertTrue(mirror.shutdown(1000));
+        assertEquals(1, mMetricRegistry.counter("ShadowGrowData.users.get.match").getCount());
+        assertEquals(2, mMetricRegistry.counter("ShadowGrowData.users.get.mismatch").getCount());
+        assertEquals(0, mMetricRegistry.counter("ShadowGrowData.users.get.error").getCount());
+    }
+
+    @Test
+    public void testWritesToAKeyAreReplayedInOrder() throws Exception {
+        ShadowMirror mirror = new ShadowMirror(4, 1000, 0, mMetricRegistry);
+        MapProvider<String, String> secondary = new MapProvider<String, String>() {
+            @Override
+            public void put(String key, String obj) throws IOException {
+                // Hold up the first write so that later ones could overtake it.
+                if ("0".equals(obj)) {
+                    try {
+                        Thread.sleep(50);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                super.put(key, obj);
+            }
+        };
+        MapProvider<String, String> primary = new MapProvider<>();
+        Provider<String, String> provider =
+            new ShadowProvider<>("strings", primary, secondary, mirror);
+
+        for (int i = 0; i < 20; i++) {
+            for (int key = 0; key < 10; key++) {
+                provider.put("k" + key, String.valueOf(i));
+            }
+        }
+
+        assertTrue(mirror.shutdown(5000));
+        for (int key = 0; key < 10; key++) {
+            assertEquals("19", secondary.get("k" + key));
+        }
+    }
+
+    @Test
+    public void testUnsampledReadsSkipSecondary() throws Exception {
+        ShadowMirror mirror = new ShadowMirror(1, 10, 0, mMetricRegistry);
+        Provider<String, UserRecord> provider =
+            new ShadowProvider<>("users", mPrimary, mSecondary, mirror);
+
+        provider.get("1");
+
+        assertTrue(mirror.shutdown(1000));
+        assertEquals(1, mMetricRegistry.timer("ShadowGrowData.users.get.primary").getCount());
+        assertEquals(0, mMetricRegistry.timer("ShadowGrowData.users.get.secondary").getCount());
+    }
+
+    @Test
+    public void testSecondaryFailureDoesNotAffectCaller() throws Exception {
+        ShadowMirror mirror = new ShadowMirror(1, 10, 1.0, mMetricRegistry);
+        Provider<String, String> failing = new Provider<String, String>() {
+            @Override
+            public String get(String key) throws IOException {
+                throw new IOException("down");
+            }
+
+            @Override
+            public void put(String key, String obj) throws IOException {
+                throw new IOException("down");
+            }
+        };
+        MapProvider<String, String> primary = new MapProvider<>();
+        Provider<String, String> provider = new ShadowProvider<>("strings", primary, failing, mirror);
+
+        provider.put("a", "1");
+        assertEquals("1", provider.get("a"));
+
+        assertTrue(mirror.shutdown(1000));
+        assertEquals(1, mMetricRegistry.counter("ShadowGrowData.strings.put.error").getCount());
+        assertEquals(1, mMetricRegistry.counter("ShadowGrowData.strings.get.error").getCount());
+    }
+
+    @Test
+    public void testAsyncCallsAreMirrored() throws Exception {
+        ShadowMirror mirror = new ShadowMirror(1, 10, 1.0, mMetricRegistry);
+        AsyncProvider<String, UserRecord> provider =
+            new ShadowProvider<>("users", mPrimary, mSecondary, mirror);
+
+        UserRecord user = user("1", "Alice");
+        CompletableFuture<Void> put = provider.putAsync("1", user);
+        user.setFirstName("Changed");
+        put.join();
+
+        assertEquals("Changed", provider.getAsync("1").join().getFirstName());
+
+        assertTrue(mirror.shutdown(1000));
+        assertSame(user, mPrimary.get("1"));
+        assertEquals("Alice", mSecondary.get("1").getFirstName());
+        assertEquals(1, mMetricRegistry.timer("ShadowGrowData.users.put.secondary").getCount());
+        assertEquals(1, mMetricRegistry.counter("ShadowGrowData.users.get.mismatch").getCount());
+    }
+
+    @Test
+    public void testAsyncCollectionCallsUseThePrimary() throws Exception {
+        ShadowMirror mirror = new ShadowMirror(1, 10, 0, mMetricRegistry);
+        MapCollectionProvider<String, String, String> primary = new MapCollectionProvider<>();
+        MapCollectionProvider<String, String, String> secondary = new MapCollectionProvider<>();
+        AsyncCollectionProvider<String, String, String> provider =
+            new ShadowCollectionProvider<>("answers", primary, secondary, mirror);
+
+        provider.putAsync("user", "q1", "a").join();
+        assertEquals("a", provider.getAsync("user", "q1").join());
+        assertEquals(1, provider.queryAsync("user").join().size());
+
+        assertTrue(mirror.shutdown(1000));
+        assertEquals("a", secondary.get("user", "q1"));
+        assertEquals(1, mMetricRegistry.timer("ShadowGrowData.answers.query.primary").getCount());
+    }
+
+    @Test
+    public void testCollectionPutAllIsMirrored() throws Exception {
+        ShadowMirror mirror = new ShadowMirror(1, 10, 1.0, mMetricRegistry);
+        MapCollectionProvider<String, String, String> primary = new MapCollectionProvider<>();
+        MapCollectionProvider<String, String, String> secondary = new MapCollectionProvider<>();
+        ShadowCollectionProvider<String, String, String> provider =
+            new ShadowCollectionProvider<>("answers", primary, secondary, mirror);
+
+        Map<String, String> answers = new HashMap<>();
+        answers.put("q1", "a");
+        answers.put("q2", "b");
+        provider.putAll("user", answers);
+        answers.clear();
+
+        assertTrue(mirror.shutdown(1000));
+        assertEquals(2, primary.query("user").size());
+        assertEquals("b", secondary.get("user", "q2"));
+    }
+
+    @Test
+    public void testFullQueueDropsShadowWork() throws Exception {
+        ShadowMirror mirror = new ShadowMirror(1, 1, 0, mMetricRegistry);
+        Provider<String, String> slow = new MapProvider<String, String>() {
+            @Override
+            public void put(String key, String obj) throws IOException {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        MapProvider<String, String> primary = new MapProvider<>();
+        Provider<String, String> provider = new ShadowProvider<>("strings", primary, slow, mirror);
+
+        for (int i = 0; i < 5; i++) {
+            provider.put("k" + i, "v");
+        }
+
+        assertEquals(5, mMetricRegistry.timer("ShadowGrowData.strings.put.primary").getCount());
+        assertTrue(mMetricRegistry.counter("ShadowGrowData.dropped").getCount() >= 3);
+        assertTrue(mirror.shutdown(5000));
+    }
+
+    private static UserRecord user(String id, String firstName) {
+        UserRecord user = new UserRecord();
+        user.setId(id);
+        user.setFirstName(firstName);
+        return user;
+    }
+}
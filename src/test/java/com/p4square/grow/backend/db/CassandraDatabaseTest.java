@@ -0,0 +1,69 @@
+package com.p4square.grow.backend.db;
+
+import com.codahale.metrics.MetricRegistry;
+
+import com.netflix.astyanax.connectionpool.impl.ConnectionPoolConfigurationImpl;
+import com.netflix.astyanax.connectionpool.impl.SmaLatencyScoreStrategyImpl;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import com.p4square.grow.config.Config;
+
+/**
+ * Tests for the connection pool settings of CassandraDatabase.
+ */
+public class CassandraDatabaseTest {
+
+    @Test
+    public void testDefaults() {
+        ConnectionPoolConfigurationImpl pool = pool(new Config());
+
+        assertEquals(9160, pool.getPort());
+        assertEquals(8, pool.getMaxConnsPerHost());
+        assertEquals(2000, pool.getConnectTimeout());
+        assertEquals(11000, pool.getSocketTimeout());
+        assertEquals(2000, pool.getMaxTimeoutWhenExhausted());
+        assertFalse(pool.getLatencyScore() instanceof SmaLatencyScoreStrategyImpl);
+    }
+
+    @Test
+    public void testSettingsAreRead() {
+        Config config = new Config();
+        config.setInt("cassandraPort", 9170);
+        config.setInt("cassandraMaxConnsPerHost", 3);
+        config.setInt("cassandraConnectTimeout", 100);
+        config.setInt("cassandraSocketTimeout", 200);
+        config.setInt("cassandraMaxTimeoutWhenExhausted", 300);
+        config.setBoolean("cassandraLatencyAware", true);
+
+        ConnectionPoolConfigurationImpl pool = pool(config);
+
+        assertEquals(9170, pool.getPort());
+        assertEquals(3, pool.getMaxConnsPerHost());
+        assertEquals(100, pool.getConnectTimeout());
+        assertEquals(200, pool.getSocketTimeout());
+        assertEquals(300, pool.getMaxTimeoutWhenExhausted());
+        assertTrue(pool.getLatencyScore() instanceof SmaLatencyScoreStrategyImpl);
+    }
+
+    @Test
+    public void testShippedProperties() throws Exception {
+        for (String domain : new String[] { "dev", "prod" }) {
+            Config config = new Config();
+            config.setDomain(domain);
+            config.updateConfig(getClass().getResourceAsStream("/grow.properties"));
+
+            ConnectionPoolConfigurationImpl pool = pool(config);
+            assertEquals(8, pool.getMaxConnsPerHost());
+
+            // Latency-aware host selection is off unless a deployment opts in.
+            assertFalse(pool.getLatencyScore() instanceof SmaLatencyScoreStrategyImpl);
+        }
+    }
+
+    private static ConnectionPoolConfigurationImpl pool(Config config) {
+        return new CassandraDatabase(config, new MetricRegistry()).poolConfiguration();
+    }
+}
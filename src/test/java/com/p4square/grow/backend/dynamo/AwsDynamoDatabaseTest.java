@@ -0,0 +1,49 @@
+package com.p4square.grow.backend.dynamo;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.retry.RetryPolicy;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputExceededException;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for AwsDynamoDatabase.
+ */
+public class AwsDynamoDatabaseTest {
+
+    @Test
+    public void testClientLeavesThrottlingToRequestExecutor() {
+        RetryPolicy.RetryCondition condition =
+            AwsDynamoDatabase.clientConfiguration().getRetryPolicy().getRetryCondition();
+
+        // The first throttle reaches the RequestExecutor and its limiter.
+        assertFalse(condition.shouldRetry(new GetItemRequest(),
+                    new ProvisionedThroughputExceededException("Throttled"), 0));
+
+        AmazonServiceException error = new AmazonServiceException("Internal error");
+        error.setStatusCode(500);
+        assertTrue(condition.shouldRetry(new GetItemRequest(), error, 0));
+    }
+
+    @Test
+    public void testStringRowsSkipBinaryAttributes() {
+        // getKeys() and getKey() build their rows the same way.
+        Map<String, AttributeValue> item = new HashMap<>();
+        item.put("id", new AttributeValue("user"));
+        item.put("text", new AttributeValue("value"));
+        item.put("binary", new AttributeValue().withB(ByteBuffer.wrap(new byte[] { 1, 2 })));
+
+        Map<String, String> row = DynamoItems.toStringMap(item);
+        assertEquals(1, row.size());
+        assertEquals("value", row.get("text"));
+        assertFalse(row.containsKey("binary"));
+    }
+}
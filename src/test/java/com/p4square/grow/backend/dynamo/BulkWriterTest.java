@@ -0,0 +1,151 @@
+package com.p4square.grow.backend.dynamo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import com.p4square.grow.config.Config;
+
+/**
+ * Tests for BulkWriter.
+ */
+public class BulkWriterTest {
+
+    private List<List<Map<String, AttributeValue>>> mBatches;
+    private RuntimeException mFailure;
+    private DynamoDatabase mDb;
+
+    @Before
+    public void setUp() {
+        mBatches = Collections.synchronizedList(new ArrayList<>());
+        mFailure = null;
+
+        mDb = new InMemoryDynamoDatabase(new Config()) {
+            @Override
+            public void batchWrite(String table, List<Map<String, AttributeValue>> items) {
+                if (mFailure != null) {
+                    throw mFailure;
+                }
+                mBatches.add(new ArrayList<>(items));
+                super.batchWrite(table, items);
+            }
+        };
+    }
+
+    @Test
+    public void testItemsArePackedIntoBatches() {
+        try (BulkWriter writer = mDb.newBulkWriter(1)) {
+            for (int i = 0; i < 60; i++) {
+                writer.add(DynamoKey.newKey("strings", "key" + i), value("v" + i));
+            }
+        }
+
+        assertEquals(3, mBatches.size());
+
+        int total = 0;
+        for (List<Map<String, AttributeValue>> batch : mBatches) {
+            assertTrue(batch.size() <= BulkWriter.MAX_BATCH_WRITE);
+            total += batch.size();
+        }
+        assertEquals(60, total);
+        assertEquals("v59", mDb.getAttribute(DynamoKey.newAttributeKey("strings", "key59", "value")));
+    }
+
+    @Test
+    public void testDuplicateKeysAreNotBatchedTogether() {
+        try (BulkWriter writer = mDb.newBulkWriter(1)) {
+            writer.add(DynamoKey.newKey("strings", "a"), value("1"));
+            writer.add(DynamoKey.newKey("strings", "b"), value("2"));
+            writer.add(DynamoKey.newKey("strings", "a"), value("3"));
+            writer.flush();
+
+            assertEquals(3, writer.getWritten());
+        }
+
+        assertEquals(2, mBatches.size());
+        assertEquals(2, mBatches.get(0).size());
+        assertEquals("3", mBatches.get(1).get(0).get("value").getS());
+        assertEquals("3", mDb.getAttribute(DynamoKey.newAttributeKey("strings", "a", "value")));
+    }
+
+    @Test
+    public void testRepeatedKeysKeepTheLastValue() {
+        mDb = new InMemoryDynamoDatabase(new Config()) {
+            @Override
+            public void batchWrite(String table, List<Map<String, AttributeValue>> items) {
+                // Hold up the first batch so that later ones could overtake it.
+                if ("0".equals(items.get(0).get("value").getS())
+                        && "key0".equals(items.get(0).get("id").getS())) {
+                    try {
+                        Thread.sleep(50);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                super.batchWrite(table, items);
+            }
+        };
+
+        try (BulkWriter writer = mDb.newBulkWriter(4)) {
+            for (int round = 0; round < 3; round++) {
+                for (int i = 0; i < 100; i++) {
+                    writer.add(DynamoKey.newKey("strings", "key" + i), value("" + round));
+                }
+            }
+            writer.flush();
+
+            assertEquals(300, writer.getWritten());
+        }
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals("key" + i, "2",
+                    mDb.getAttribute(DynamoKey.newAttributeKey("strings", "key" + i, "value")));
+        }
+    }
+
+    @Test
+    public void testProgressIsReported() {
+        final List<Long> reports = new ArrayList<>();
+
+        try (BulkWriter writer = mDb.newBulkWriter(1)) {
+            writer.setProgress(25, (written, elapsed) -> reports.add(written));
+            for (int i = 0; i < 50; i++) {
+                writer.add(DynamoKey.newKey("strings", "key" + i), value("v"));
+            }
+            writer.flush();
+        }
+
+        assertFalse(reports.isEmpty());
+        assertEquals(Long.valueOf(50), reports.get(reports.size() - 1));
+    }
+
+    @Test
+    public void testFailuresAreReported() {
+        mFailure = new RuntimeException("failed");
+
+        BulkWriter writer = mDb.newBulkWriter(1);
+        writer.add(DynamoKey.newKey("strings", "a"), value("1"));
+
+        try {
+            writer.close();
+            fail("Expected failure");
+        } catch (RuntimeException e) {
+            assertSame(mFailure, e.getCause());
+        }
+    }
+
+    private static Map<String, String> value(String value) {
+        Map<String, String> attributes = new HashMap<>();
+        attributes.put("value", value);
+        return attributes;
+    }
+}
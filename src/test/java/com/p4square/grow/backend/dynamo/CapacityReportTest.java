@@ -0,0 +1,79 @@
+package com.p4square.grow.backend.dynamo;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughput;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import com.p4square.grow.backend.dynamo.RequestExecutor.Operation;
+
+/**
+ * Tests for CapacityReport.
+ */
+public class CapacityReportTest {
+
+    private CapacityReport mReport;
+
+    @Before
+    public void setUp() throws Exception {
+        String metrics = "{"
+            + "\"gauges\": {"
+            + "  \"DynamoDatabase.capacity.training.read.peak\": {\"value\": 7.5},"
+            + "  \"DynamoDatabase.capacity.training.write.peak\": {\"value\": 2.0},"
+            + "  \"DynamoDatabase.capacity.training.Get.peak\": {\"value\": 7.5},"
+            + "  \"DynamoDatabase.capacity.accounts.write.peak\": {\"value\": 0.0},"
+            + "  \"jvm.heap\": {\"value\": 1}"
+            + "},"
+            + "\"meters\": {"
+            + "  \"DynamoDatabase.capacity.training.read.units\": {\"count\": 90, \"m15_rate\": 1.25}"
+            + "}}";
+
+        mReport = new CapacityReport(new ObjectMapper().readTree(metrics));
+    }
+
+    @Test
+    public void testUsageIsParsed() {
+        assertEquals(Arrays.asList("accounts", "training"),
+                Arrays.asList(mReport.getTables().toArray()));
+
+        assertEquals(7.5, mReport.getPeak("training", Operation.READ), 0.001);
+        assertEquals(1.25, mReport.getRate("training", Operation.READ), 0.001);
+        assertEquals(0, mReport.getRate("training", Operation.WRITE), 0.001);
+        assertEquals(0, mReport.getPeak("accounts", Operation.READ), 0.001);
+    }
+
+    @Test
+    public void testSuggestedThroughputCoversPeak() {
+        assertEquals(9, mReport.getSuggested("training", Operation.READ));
+        assertEquals(3, mReport.getSuggested("training", Operation.WRITE));
+        assertEquals(1, mReport.getSuggested("accounts", Operation.WRITE));
+    }
+
+    @Test
+    public void testPrint() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        mReport.print(new PrintStream(bytes, true, "UTF-8"), (table) -> {
+            if ("training".equals(table)) {
+                return new ProvisionedThroughput()
+                    .withReadCapacityUnits(5L)
+                    .withWriteCapacityUnits(5L);
+            }
+            return null;
+        });
+
+        String[] lines = new String(bytes.toByteArray(), StandardCharsets.UTF_8).split("\n");
+        assertEquals(4, lines.length);
+        assertTrue(lines[2], lines[2].startsWith("accounts") && lines[2].contains(" ? "));
+        assertTrue(lines[3], lines[3].startsWith("training") && lines[3].contains("5/5")
+                && lines[3].endsWith("9/3"));
+    }
+}
@@ -0,0 +1,87 @@
+package com.p4square.grow.backend.dynamo;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.codahale.metrics.MetricRegistry;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import com.p4square.grow.backend.dynamo.RequestExecutor.Operation;
+
+/**
+ * Tests for CapacityTracker.
+ */
+public class CapacityTrackerTest {
+
+    private AtomicLong mClock;
+    private MetricRegistry mMetrics;
+    private CapacityTracker mTracker;
+
+    @Before
+    public void setUp() {
+        mClock = new AtomicLong(10000);
+        mMetrics = new MetricRegistry();
+        mTracker = new CapacityTracker(mMetrics, mClock::get);
+    }
+
+    @Test
+    public void testUsageIsKeptPerTableAndRequest() {
+        mTracker.record("training", Operation.READ, "Get", 0.5);
+        mTracker.record("training", Operation.READ, "Scan", 2);
+        mTracker.record("accounts", Operation.WRITE, "Put", 1);
+
+        CapacityTracker.Usage reads = mTracker.getUsage("training", Operation.READ);
+        assertEquals(2.5, reads.getTotal(), 0.001);
+        assertEquals(2, reads.getRequests());
+
+        assertEquals(1, mMetrics.meter("DynamoDatabase.capacity.training.Get.requests").getCount());
+        assertEquals(2, mMetrics.meter("DynamoDatabase.capacity.training.Scan.units").getCount());
+        assertEquals(0, mTracker.getUsage("accounts", Operation.READ).getRequests());
+        assertEquals(1, mTracker.getUsage("accounts", Operation.WRITE).getRequests());
+    }
+
+    @Test
+    public void testFractionalUnitsAreCarried() {
+        for (int i = 0; i < 5; i++) {
+            mTracker.record("training", Operation.READ, "Get", 0.5);
+        }
+
+        assertEquals(2, mMetrics.meter("DynamoDatabase.capacity.training.read.units").getCount());
+        assertEquals(2.5, mTracker.getUsage("training", Operation.READ).getTotal(), 0.001);
+    }
+
+    @Test
+    public void testPeakIsPerSecond() {
+        mTracker.record("training", Operation.WRITE, "Put", 3);
+        mClock.addAndGet(500);
+        mTracker.record("training", Operation.WRITE, "Put", 2);
+        mClock.addAndGet(1000);
+        mTracker.record("training", Operation.WRITE, "Put", 4);
+
+        assertEquals(5, mTracker.getUsage("training", Operation.WRITE).getPeak(), 0.001);
+        assertEquals(5.0, mMetrics.getGauges()
+                .get("DynamoDatabase.capacity.training.write.peak").getValue());
+    }
+
+    @Test
+    public void testTrackersShareUsage() {
+        CapacityTracker other = new CapacityTracker(mMetrics, mClock::get);
+
+        mTracker.record("training", Operation.READ, "Get", 1);
+        other.record("training", Operation.READ, "Get", 1);
+
+        assertSame(mTracker.getUsage("training", Operation.READ),
+                other.getUsage("training", Operation.READ));
+        assertEquals(2, mTracker.getUsage("training", Operation.READ).getPeak(), 0.001);
+    }
+
+    @Test
+    public void testIndexUsage() {
+        mTracker.recordIndex("training", "byDate", 1.5);
+
+        assertEquals(1, mMetrics.meter("DynamoDatabase.capacity.training.index.byDate.units").getCount());
+    }
+}
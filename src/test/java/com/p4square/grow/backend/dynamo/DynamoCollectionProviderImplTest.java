@@ -0,0 +1,79 @@
+package com.p4square.grow.backend.dynamo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.codahale.metrics.MetricRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import com.p4square.grow.config.Config;
+import com.p4square.grow.provider.Cursor;
+import com.p4square.grow.provider.Page;
+
+/**
+ * Tests for DynamoCollectionProviderImpl.
+ */
+public class DynamoCollectionProviderImplTest {
+
+    private DynamoDatabase mDb;
+    private DynamoCollectionProviderImpl<String> mProvider;
+
+    @Before
+    public void setUp() throws Exception {
+        mDb = new InMemoryDynamoDatabase(new Config(), new MetricRegistry());
+        mProvider = new DynamoCollectionProviderImpl<>(mDb, "strings", String.class);
+
+        for (int i = 0; i < 20; i++) {
+            mProvider.put("c", "key" + (char) ('a' + (i * 7) % 20), "value" + i);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        mDb.close();
+    }
+
+    @Test
+    public void testLimitedQueryIsPrefixOfQuery() throws Exception {
+        List<String> all = new ArrayList<>(mProvider.query("c").keySet());
+        List<String> limited = new ArrayList<>(mProvider.query("c", 5).keySet());
+
+        assertEquals(20, all.size());
+        assertEquals(all.subList(0, 5), limited);
+        assertEquals(limited, new ArrayList<>(mProvider.queryAsync("c", 5).get().keySet()));
+    }
+
+    @Test
+    public void testStreamMatchesQueryOrder() throws Exception {
+        List<String> streamed = new ArrayList<>();
+        Page<String> page = Page.first(3);
+        while (page != null) {
+            Cursor<String, String> cursor = mProvider.stream("c", page);
+            while (cursor.hasNext()) {
+                streamed.add(cursor.next().getKey());
+            }
+            page = cursor.getNextPage();
+        }
+
+        assertEquals(new ArrayList<>(mProvider.query("c").keySet()), streamed);
+    }
+
+    @Test
+    public void testStreamResumesAfterRemovedKey() throws Exception {
+        Cursor<String, String> cursor = mProvider.stream("c", Page.first(2));
+        cursor.next();
+        Map.Entry<String, String> last = cursor.next();
+        Page<String> next = cursor.getNextPage();
+
+        mProvider.put("c", last.getKey(), null);
+
+        cursor = mProvider.stream("c", next);
+        assertEquals("keyc", cursor.next().getKey());
+    }
+}
@@ -0,0 +1,132 @@
+package com.p4square.grow.backend.dynamo;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.codahale.metrics.MetricRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import com.p4square.grow.config.Config;
+import com.p4square.grow.model.Chapters;
+import com.p4square.grow.model.Playlist;
+import com.p4square.grow.model.TrainingRecord;
+import com.p4square.grow.provider.CompressingCodec;
+import com.p4square.grow.provider.JacksonCodec;
+
+/**
+ * Round trips values written by binary Codecs through the DynamoDatabase
+ * readers.
+ */
+public class DynamoProviderImplTest {
+
+    private DynamoDatabase mDb;
+
+    @Before
+    public void setUp() {
+        mDb = new InMemoryDynamoDatabase(new Config(), new MetricRegistry());
+    }
+
+    @After
+    public void tearDown() {
+        mDb.close();
+    }
+
+    @Test
+    public void testSmileRoundTrip() throws Exception {
+        DynamoProviderImpl<TrainingRecord> provider = new DynamoProviderImpl<>(mDb,
+                new JacksonCodec<>(TrainingRecord.class, JacksonCodec.Format.SMILE));
+
+        DynamoKey key = DynamoKey.newAttributeKey("training", "user1", "value");
+        provider.put(key, record("video1"));
+
+        // Read back through the provider.
+        assertEquals("video1", provider.get(key).getLastVideo());
+        assertEquals("video1", provider.getAsync(key).get().getLastVideo());
+
+        // Smile values are binary attributes, invisible to string readers...
+        assertNull(mDb.getAttribute(key));
+
+        // ...but read by the byte readers.
+        Map<String, byte[]> values = scan("training").get("user1");
+        assertNotNull(values);
+        assertArrayEquals(mDb.getAttributeBytes(key), values.get("value"));
+
+        String text = DbTool.toText(values.get("value"));
+        assertTrue(text, text.contains("\"lastVideo\":\"video1\""));
+    }
+
+    @Test
+    public void testCompressedRoundTrip() throws Exception {
+        DynamoProviderImpl<TrainingRecord> provider = new DynamoProviderImpl<>(mDb,
+                new CompressingCodec<>(new JacksonCodec<>(TrainingRecord.class,
+                        JacksonCodec.Format.JSON), 512, "test", new MetricRegistry()));
+
+        DynamoKey small = DynamoKey.newAttributeKey("training", "small", "value");
+        DynamoKey large = DynamoKey.newAttributeKey("training", "large", "value");
+
+        TrainingRecord smallRecord = new TrainingRecord();
+        smallRecord.setLastVideo("video1");
+        provider.put(small, smallRecord);
+        provider.putAsync(large, record("video2")).get();
+
+        assertEquals("video1", provider.get(small).getLastVideo());
+        assertEquals("video2", provider.get(large).getLastVideo());
+        assertEquals("video2", provider.getAsync(large).get().getLastVideo());
+
+        // Uncompressed values stay visible to string readers.
+        assertNotNull(mDb.getAttribute(small));
+        assertEquals(1, mDb.getKey(DynamoKey.newKey("training", "small")).size());
+        assertNull(mDb.getAttribute(large));
+
+        // Both are read by the byte readers.
+        Map<String, Map<String, byte[]>> items = scan("training");
+        assertEquals(2, items.size());
+        String text = DbTool.toText(items.get("large").get("value"));
+        assertTrue(text, text.contains("\"lastVideo\":\"video2\""));
+        assertEquals(mDb.getAttribute(small), DbTool.toText(items.get("small").get("value")));
+    }
+
+    @Test
+    public void testScanBytesIncludesStrings() throws Exception {
+        DynamoProviderImpl<TrainingRecord> provider =
+            new DynamoProviderImpl<>(mDb, TrainingRecord.class);
+
+        DynamoKey key = DynamoKey.newAttributeKey("training", "user1", "value");
+        provider.put(key, record("video2"));
+
+        byte[] value = scan("training").get("user1").get("value");
+        assertEquals(mDb.getAttribute(key), DbTool.toText(value));
+    }
+
+    @Test
+    public void testToTextPassesPlainText() {
+        assertNull(DbTool.toText(null));
+        assertEquals("not json", DbTool.toText("not json".getBytes()));
+    }
+
+    /**
+     * @return every item of table, by hash key, as read by scanParallelBytes.
+     */
+    private Map<String, Map<String, byte[]>> scan(String table) {
+        final Map<String, Map<String, byte[]>> items = new ConcurrentHashMap<>();
+        mDb.scanParallelBytes(table, 2, (key, values) -> items.put(key.getHashKey(), values));
+        return items;
+    }
+
+    static TrainingRecord record(String lastVideo) {
+        Playlist playlist = new Playlist();
+        for (int i = 0; i < 30; i++) {
+            playlist.add(Chapters.values()[i % Chapters.values().length], "video" + i);
+        }
+
+        TrainingRecord record = new TrainingRecord();
+        record.setLastVideo(lastVideo);
+        record.setPlaylist(playlist);
+        return record;
+    }
+}
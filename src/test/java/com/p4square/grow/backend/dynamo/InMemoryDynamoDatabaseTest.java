@@ -0,0 +1,316 @@
+package com.p4square.grow.backend.dynamo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputExceededException;
+
+import com.codahale.metrics.MetricRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import com.p4square.grow.config.Config;
+
+/**
+ * Tests for InMemoryDynamoDatabase.
+ */
+public class InMemoryDynamoDatabaseTest {
+
+    private static final RequestExecutor.Backoff NO_BACKOFF = (priority, attempt) -> 0;
+
+    private Config mConfig;
+    private MetricRegistry mMetrics;
+    private DynamoDatabase mDb;
+
+    @Before
+    public void setUp() {
+        mConfig = new Config();
+        mMetrics = new MetricRegistry();
+        mDb = new InMemoryDynamoDatabase(mConfig, mMetrics);
+    }
+
+    @After
+    public void tearDown() {
+        mDb.close();
+    }
+
+    @Test
+    public void testAttributes() throws Exception {
+        DynamoKey key = DynamoKey.newAttributeKey("training", "user1", "value");
+        assertNull(mDb.getAttribute(key));
+
+        mDb.putAttribute(key, "a");
+        assertEquals("a", mDb.getAttribute(key));
+        assertEquals("a", mDb.getAttributeAsync(key).get());
+
+        mDb.putBinaryAttribute(DynamoKey.newAttributeKey("training", "user1", "data"),
+                new byte[] { 1, 2 });
+        assertArrayEquals(new byte[] { 1, 2 }, mDb.getAttributeBytes(
+                    DynamoKey.newAttributeKey("training", "user1", "data")));
+        assertArrayEquals("a".getBytes("UTF-8"), mDb.getAttributeBytes(key));
+
+        // Binary attributes are not strings.
+        assertEquals(1, mDb.getKey(DynamoKey.newKey("training", "user1")).size());
+
+        mDb.deleteAttributeAsync(key).get();
+        assertNull(mDb.getAttribute(key));
+    }
+
+    @Test
+    public void testPutAttributesIsAtomic() {
+        DynamoKey key = DynamoKey.newKey("feedthreads", "topic");
+        mDb.putKey(key, map("a", "1", "b", "2"));
+
+        Map<String, String> changes = new HashMap<>();
+        changes.put("a", null);
+        changes.put("c", "3");
+        mDb.putAttributes(key, changes);
+
+        assertEquals(map("b", "2", "c", "3"), mDb.getKey(key));
+    }
+
+    @Test
+    public void testPutAttributesIf() {
+        DynamoKey key = DynamoKey.newKey("assessments", "user1");
+
+        assertFalse(mDb.putAttributesIf(key, "score", "1", map("score", "2")));
+        assertTrue(mDb.getKey(key).isEmpty());
+
+        assertTrue(mDb.putAttributesIf(key, "score", null, map("score", "1", "q1", "a")));
+        assertFalse(mDb.putAttributesIf(key, "score", null, map("score", "9")));
+        assertFalse(mDb.putAttributesIf(key, "score", "2", map("score", "9")));
+        assertEquals(map("score", "1", "q1", "a"), mDb.getKey(key));
+
+        Map<String, String> changes = new HashMap<>();
+        changes.put("score", "2");
+        changes.put("q1", null);
+        assertTrue(mDb.putAttributesIf(key, "score", "1", changes));
+        assertEquals(map("score", "2"), mDb.getKey(key));
+    }
+
+    @Test
+    public void testPutAttributeIf() {
+        DynamoKey key = DynamoKey.newAttributeKey("training", "user1", "value");
+        AttributeValue first = new AttributeValue().withS("first");
+        AttributeValue second = new AttributeValue().withS("second");
+
+        assertFalse(mDb.putAttributeIf(key, first, second));
+        assertTrue(mDb.putAttributeIf(key, null, first));
+        assertFalse(mDb.putAttributeIf(key, null, second));
+        assertEquals("first", mDb.getAttribute(key));
+
+        assertTrue(mDb.putAttributeIf(key, first, second));
+        assertEquals("second", mDb.getAttribute(key));
+    }
+
+    @Test
+    public void testRangeKeysAndPaging() {
+        for (int i = 0; i < 150; i++) {
+            mDb.putKey(DynamoKey.newRangeKey("feedmessages", "thread", String.format("%03d", i)),
+                    map("value", "m" + i));
+        }
+
+        Map<DynamoKey, Map<String, String>> first = mDb.getAll(DynamoKey.newKey("feedmessages", null));
+        assertEquals(100, first.size());
+
+        DynamoKey last = null;
+        for (DynamoKey key : first.keySet()) {
+            last = key;
+        }
+        assertEquals("099", last.getRangeKey());
+
+        Map<DynamoKey, Map<String, String>> second = mDb.getAll(last);
+        assertEquals(50, second.size());
+        assertEquals("m149", second.get(DynamoKey.newRangeKey("feedmessages", "thread", "149"))
+                .get("value"));
+    }
+
+    @Test
+    public void testBatchGet() {
+        mDb.putKey(DynamoKey.newKey("strings", "a"), map("value", "A"));
+        mDb.putKey(DynamoKey.newKey("strings", "b"), map("value", "B"));
+
+        Map<DynamoKey, String> values = mDb.getAttributes(Arrays.asList(
+                    DynamoKey.newAttributeKey("strings", "a", "value"),
+                    DynamoKey.newAttributeKey("strings", "b", "value"),
+                    DynamoKey.newAttributeKey("strings", "c", "value")));
+
+        assertEquals(2, values.size());
+        assertEquals("B", values.get(DynamoKey.newAttributeKey("strings", "b", "value")));
+
+        assertEquals(1, mDb.getKeys(Arrays.asList(DynamoKey.newKey("strings", "a"),
+                        DynamoKey.newKey("strings", "z"))).size());
+    }
+
+    @Test
+    public void testScanParallel() {
+        for (int i = 0; i < 1000; i++) {
+            mDb.putKey(DynamoKey.newKey("accounts", "user" + i), map("value", "v" + i));
+        }
+
+        final AtomicInteger seen = new AtomicInteger();
+        long count = mDb.scanParallel("accounts", 4, (key, row) -> {
+            assertEquals("v" + key.getHashKey().substring(4), row.get("value"));
+            seen.incrementAndGet();
+        });
+
+        assertEquals(1000, count);
+        assertEquals(1000, seen.get());
+    }
+
+    @Test
+    public void testScanParallelRejectsBinaryAttributes() {
+        mDb.putAttribute(DynamoKey.newAttributeKey("training", "user1", "value"), "a");
+        mDb.putBinaryAttribute(DynamoKey.newAttributeKey("training", "user2", "value"),
+                new byte[] { 1, 2 });
+
+        try {
+            mDb.scanParallel("training", 2, (key, row) -> { });
+            fail("Binary attributes should not be dropped.");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains("scanParallelBytes"));
+        }
+
+        final Map<String, byte[]> values = new HashMap<>();
+        mDb.scanParallelBytes("training", 2, (key, row) -> {
+            synchronized (values) {
+                values.put(key.getHashKey(), row.get("value"));
+            }
+        });
+        assertArrayEquals(new byte[] { 'a' }, values.get("user1"));
+        assertArrayEquals(new byte[] { 1, 2 }, values.get("user2"));
+    }
+
+    @Test
+    public void testLatencyIsInjected() {
+        mConfig.setString("memoryDynamoGetLatency", "20");
+        DynamoDatabase db = new InMemoryDynamoDatabase(mConfig);
+
+        long start = System.nanoTime();
+        db.getKey(DynamoKey.newKey("strings", "a"));
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+
+        assertTrue("Took " + elapsedMillis + "ms", elapsedMillis >= 19);
+        db.close();
+    }
+
+    @Test
+    public void testThrottledRequestsAreRetried() throws Exception {
+        mConfig.setInt("memoryDynamoUpdateThrottleFirst", 3);
+        mConfig.setInt("memoryDynamoGetThrottleFirst", 2);
+        mConfig.setInt("memoryDynamoBatchGetThrottleFirst", 1);
+        DynamoDatabase db = new InMemoryDynamoDatabase(mConfig, mMetrics, NO_BACKOFF);
+
+        List<DynamoKey> keys = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            DynamoKey key = DynamoKey.newAttributeKey("training", "user" + i, "value");
+            db.putAttribute(key, "v" + i);
+            assertEquals("v" + i, db.getAttributeAsync(key).get());
+            keys.add(key);
+        }
+
+        assertEquals(20, db.getAttributes(keys).size());
+        assertEquals(3, mMetrics.meter("DynamoDatabase.training.write.throttled").getCount());
+        assertEquals(3, mMetrics.meter("DynamoDatabase.training.read.throttled").getCount());
+        db.close();
+    }
+
+    @Test
+    public void testThrottlingGivesUpEventually() {
+        mConfig.setInt("memoryDynamoThrottleFirst", 100);
+        DynamoDatabase db = new InMemoryDynamoDatabase(mConfig, mMetrics, NO_BACKOFF);
+
+        try {
+            db.putAttribute(DynamoKey.newAttributeKey("training", "user1", "value"), "v");
+            fail("Expected ProvisionedThroughputExceededException");
+        } catch (ProvisionedThroughputExceededException e) {
+            // Expected.
+        }
+
+        assertEquals(11, mMetrics.meter("DynamoDatabase.training.write.throttled").getCount());
+        db.close();
+    }
+
+    @Test
+    public void testLargeItemsAreRejected() {
+        char[] value = new char[400 * 1024];
+        Arrays.fill(value, 'x');
+
+        DynamoKey key = DynamoKey.newAttributeKey("strings", "big", "value");
+        try {
+            mDb.putAttribute(key, new String(value));
+            fail("Expected AmazonServiceException");
+        } catch (AmazonServiceException e) {
+            assertEquals("ValidationException", e.getErrorCode());
+        }
+
+        assertNull(mDb.getAttribute(key));
+    }
+
+    @Test
+    public void testScanPagesAreLimitedToOneMegabyte() {
+        char[] value = new char[300 * 1024];
+        Arrays.fill(value, 'x');
+        for (int i = 0; i < 10; i++) {
+            mDb.putKey(DynamoKey.newKey("strings", "key" + i), map("value", new String(value)));
+        }
+
+        // Each page ends with the item which takes it past 1MB.
+        assertEquals(4, mDb.getAll(DynamoKey.newKey("strings", null)).size());
+        assertEquals(10, mDb.scanParallel("strings", 2, (key, row) -> { }));
+    }
+
+    @Test
+    public void testConsumedCapacityIsRecorded() {
+        assertNull(mDb.getProvisionedThroughput("training"));
+        mDb.createTable("training", 5, 2);
+        mDb.updateTable("training", 10, 2);
+        assertEquals(Long.valueOf(10), mDb.getProvisionedThroughput("training").getReadCapacityUnits());
+
+        DynamoKey key = DynamoKey.newAttributeKey("training", "user1", "value");
+        mDb.putAttribute(key, "a");
+        mDb.putAttribute(key, "b");
+        mDb.getAttribute(key);
+
+        assertEquals(2, mMetrics.meter("DynamoDatabase.capacity.training.write.units").getCount());
+        assertEquals(2, mMetrics.meter("DynamoDatabase.capacity.training.Update.requests").getCount());
+        assertEquals(1, mMetrics.meter("DynamoDatabase.capacity.training.Get.requests").getCount());
+        assertEquals(0.5, (Double) mMetrics.getGauges()
+                .get("DynamoDatabase.capacity.training.read.peak").getValue(), 0.001);
+    }
+
+    @Test
+    public void testLatencyDistribution() {
+        LatencyDistribution distribution = LatencyDistribution.parse("10,100");
+        Random random = new Random(1);
+
+        long[] samples = new long[10000];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = distribution.sampleNanos(random);
+        }
+        Arrays.sort(samples);
+
+        assertEquals(10, samples[5000] / 1000000.0, 1.0);
+        assertEquals(100, samples[9900] / 1000000.0, 20.0);
+        assertEquals(0, LatencyDistribution.parse(null).sampleNanos());
+    }
+
+    private static Map<String, String> map(String... keysAndValues) {
+        Map<String, String> map = new HashMap<>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            map.put(keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return map;
+    }
+}
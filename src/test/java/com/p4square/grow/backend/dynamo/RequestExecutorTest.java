@@ -0,0 +1,43 @@
+package com.p4square.grow.backend.dynamo;
+
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputExceededException;
+
+import com.codahale.metrics.MetricRegistry;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import com.p4square.grow.config.Config;
+import com.p4square.grow.backend.dynamo.DynamoDatabase.Priority;
+import com.p4square.grow.backend.dynamo.RequestExecutor.Operation;
+
+/**
+ * Tests for RequestExecutor.
+ */
+public class RequestExecutorTest {
+
+    @Test
+    public void testFirstThrottleSlowsTheLimiter() {
+        Config config = new Config();
+        config.setInt("dynamoReadBudget", 100);
+
+        RequestExecutor executor = new RequestExecutor(config, new MetricRegistry(),
+                (priority, attempt) -> 0);
+        ThroughputLimiter limiter = executor.limiter("training", Operation.READ);
+        final double rate = limiter.getRate();
+
+        int[] calls = new int[1];
+        String result = executor.execute("training", Operation.READ, "Get", Priority.REQUEST, 1,
+                () -> {
+                    if (calls[0]++ == 0) {
+                        throw new ProvisionedThroughputExceededException("Throttled");
+                    }
+                    return "item";
+                }, (r) -> 1.0);
+
+        assertEquals("item", result);
+        assertEquals(2, calls[0]);
+        assertTrue(limiter.getRate() < rate);
+    }
+}
@@ -0,0 +1,145 @@
+package com.p4square.grow.backend.dynamo;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import com.p4square.grow.config.Config;
+
+/**
+ * Tests for TableSnapshot.
+ */
+public class TableSnapshotTest {
+
+    private File mDirectory;
+    private List<Map<String, AttributeValue>> mTable;
+    private List<Map<String, AttributeValue>> mWritten;
+    private DynamoDatabase mDb;
+
+    @Before
+    public void setUp() throws Exception {
+        mDirectory = Files.createTempDirectory("snapshot").toFile();
+        mTable = new ArrayList<>();
+        mWritten = Collections.synchronizedList(new ArrayList<>());
+
+        mDb = new InMemoryDynamoDatabase(new Config()) {
+            @Override
+            public long scanItems(String table, int segments,
+                    Consumer<Map<String, AttributeValue>> consumer) {
+                mTable.forEach(consumer);
+                return mTable.size();
+            }
+
+            @Override
+            public void batchWrite(String table, List<Map<String, AttributeValue>> items) {
+                mWritten.addAll(items);
+            }
+        };
+    }
+
+    @After
+    public void tearDown() {
+        for (File file : mDirectory.listFiles()) {
+            file.delete();
+        }
+        mDirectory.delete();
+    }
+
+    @Test
+    public void testLineRoundTrip() throws Exception {
+        Map<String, AttributeValue> item = item("user1", "{\"a\": 1}");
+        item.put("range", new AttributeValue().withS("r"));
+        item.put("data", new AttributeValue().withB(ByteBuffer.wrap(new byte[] { 0, 'Z', 1 })));
+        item.put("count", new AttributeValue().withN("42"));
+
+        byte[] line = TableSnapshot.encodeLine(item);
+        assertEquals('\n', line[line.length - 1]);
+
+        Map<String, AttributeValue> decoded = TableSnapshot.decodeLine(
+                new String(line, StandardCharsets.UTF_8).trim());
+        assertEquals(item, decoded);
+    }
+
+    @Test
+    public void testExportAndRestore() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            mTable.add(item("user" + i, "value" + i));
+        }
+
+        TableSnapshot snapshot = new TableSnapshot(mDirectory);
+        assertFalse(snapshot.isExported("accounts"));
+        assertEquals(100, snapshot.export(mDb, "accounts", 2));
+        assertTrue(snapshot.isExported("accounts"));
+        assertEquals(100, snapshot.verify("accounts"));
+
+        try (BulkWriter writer = mDb.newBulkWriter(2)) {
+            assertEquals(100, snapshot.restore(writer, "accounts"));
+        }
+
+        assertEquals(100, mWritten.size());
+        assertTrue(mWritten.containsAll(mTable));
+        assertFalse(new File(mDirectory, "accounts.restore").exists());
+    }
+
+    @Test
+    public void testRestoreResumesFromCheckpoint() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            mTable.add(item("user" + i, "value" + i));
+        }
+
+        TableSnapshot snapshot = new TableSnapshot(mDirectory);
+        snapshot.export(mDb, "accounts", 1);
+        Files.write(new File(mDirectory, "accounts.restore").toPath(),
+                "7".getBytes(StandardCharsets.UTF_8));
+
+        try (BulkWriter writer = mDb.newBulkWriter(1)) {
+            assertEquals(3, snapshot.restore(writer, "accounts"));
+        }
+
+        assertEquals(mTable.subList(7, 10), mWritten);
+    }
+
+    @Test
+    public void testCorruptSnapshotIsNotRestored() throws Exception {
+        mTable.add(item("user1", "value1"));
+
+        TableSnapshot snapshot = new TableSnapshot(mDirectory);
+        snapshot.export(mDb, "accounts", 1);
+
+        Files.write(new File(mDirectory, "accounts.manifest.json").toPath(),
+                "{\"table\": \"accounts\", \"items\": 2, \"crc32\": 0}"
+                .getBytes(StandardCharsets.UTF_8));
+
+        try (BulkWriter writer = mDb.newBulkWriter(1)) {
+            snapshot.restore(writer, "accounts");
+            fail("Expected IOException");
+        } catch (IOException e) {
+            // Expected
+        }
+
+        assertTrue(mWritten.isEmpty());
+    }
+
+    private static Map<String, AttributeValue> item(String id, String value) {
+        Map<String, AttributeValue> item = new HashMap<>();
+        item.put("id", new AttributeValue().withS(id));
+        item.put("value", new AttributeValue().withS(value));
+        return item;
+    }
+}
@@ -0,0 +1,94 @@
+package com.p4square.grow.backend.dynamo;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import com.p4square.grow.backend.dynamo.DynamoDatabase.Priority;
+
+/**
+ * Tests for ThroughputLimiter.
+ */
+public class ThroughputLimiterTest {
+
+    private long mNow;
+    private ThroughputLimiter mLimiter;
+
+    @Before
+    public void setUp() {
+        mNow = 0;
+
+        // 10 units per second, 20 unit bucket, batch traffic leaves 10 units.
+        mLimiter = new ThroughputLimiter(10, 0.5, () -> mNow);
+    }
+
+    @Test
+    public void testRequestsMayDrainTheBucket() {
+        assertTrue(mLimiter.tryAcquire(20, Priority.REQUEST));
+        assertFalse(mLimiter.tryAcquire(1, Priority.REQUEST));
+
+        advance(100);
+        assertTrue(mLimiter.tryAcquire(1, Priority.REQUEST));
+    }
+
+    @Test
+    public void testBatchYieldsTheReserve() {
+        assertTrue(mLimiter.tryAcquire(10, Priority.BATCH));
+        assertFalse(mLimiter.tryAcquire(1, Priority.BATCH));
+
+        // The reserve is still available to requests.
+        assertTrue(mLimiter.tryAcquire(10, Priority.REQUEST));
+    }
+
+    @Test
+    public void testSettleAdjustsToConsumedCapacity() {
+        assertTrue(mLimiter.tryAcquire(20, Priority.REQUEST));
+
+        // The request used far less than estimated.
+        mLimiter.settle(20, 2);
+        assertEquals(18, mLimiter.getTokens(), 0.001);
+
+        // A scan page used more than estimated and put the bucket in debt.
+        mLimiter.settle(1, 30);
+        assertEquals(-11, mLimiter.getTokens(), 0.001);
+        assertFalse(mLimiter.tryAcquire(1, Priority.REQUEST));
+    }
+
+    @Test
+    public void testThrottlingSlowsTheRate() {
+        mLimiter.throttled();
+        assertEquals(5, mLimiter.getRate(), 0.001);
+        assertEquals(0, mLimiter.getTokens(), 0.001);
+
+        mLimiter.throttled();
+        mLimiter.throttled();
+        mLimiter.throttled();
+        assertEquals(1, mLimiter.getRate(), 0.001);
+
+        // Recovers by half a unit per second.
+        advance(4000);
+        assertEquals(3, mLimiter.getRate(), 0.001);
+
+        advance(60000);
+        assertEquals(10, mLimiter.getRate(), 0.001);
+    }
+
+    @Test
+    public void testAcquireWaitsForTokens() throws Exception {
+        ThroughputLimiter limiter = new ThroughputLimiter(1000, 0);
+        limiter.take(2000);
+
+        long start = System.nanoTime();
+        limiter.acquire(100, Priority.REQUEST);
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue("Waited " + elapsed + "ms", elapsed >= 50);
+    }
+
+    private void advance(final long millis) {
+        mNow += TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+}
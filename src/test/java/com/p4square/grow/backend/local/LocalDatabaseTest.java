@@ -0,0 +1,271 @@
+package com.p4square.grow.backend.local;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import com.p4square.grow.provider.JacksonCodec;
+
+/**
+ * Tests for LocalDatabase.
+ */
+public class LocalDatabaseTest {
+
+    private File mDirectory;
+    private LocalDatabase mDb;
+
+    @Before
+    public void setUp() throws Exception {
+        mDirectory = Files.createTempDirectory("LocalDatabaseTest").toFile();
+        mDb = open();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mDb.close();
+        for (File file : mDirectory.listFiles()) {
+            file.delete();
+        }
+        mDirectory.delete();
+    }
+
+    @Test
+    public void testPutAndGet() throws Exception {
+        assertNull(mDb.get("t", "row", "a"));
+
+        mDb.put("t", "row", "a", bytes("one"));
+        assertEquals("one", string(mDb.get("t", "row", "a")));
+
+        mDb.put("t", "row", "a", bytes("two"));
+        assertEquals("two", string(mDb.get("t", "row", "a")));
+
+        mDb.put("t", "row", "a", null);
+        assertNull(mDb.get("t", "row", "a"));
+    }
+
+    @Test
+    public void testGetColumns() throws Exception {
+        Map<String, byte[]> values = new HashMap<>();
+        values.put("c", bytes("3"));
+        values.put("a", bytes("1"));
+        values.put("b", bytes("2"));
+        mDb.putColumns("t", "row", values);
+
+        SortedMap<String, byte[]> all = mDb.getColumns("t", "row", null, -1);
+        assertEquals(3, all.size());
+        assertEquals("a", all.firstKey());
+
+        SortedMap<String, byte[]> page = mDb.getColumns("t", "row", "a", 1);
+        assertEquals(1, page.size());
+        assertEquals("2", string(page.get("b")));
+
+        assertTrue(mDb.getColumns("t", "missing", null, -1).isEmpty());
+    }
+
+    @Test
+    public void testPutColumnsIf() throws Exception {
+        assertFalse(mDb.putColumnsIf("t", "row", "a", bytes("one"),
+                    Collections.singletonMap("a", bytes("two"))));
+        assertNull(mDb.get("t", "row", "a"));
+
+        assertTrue(mDb.putColumnsIf("t", "row", "a", null,
+                    Collections.singletonMap("a", bytes("one"))));
+        assertFalse(mDb.putColumnsIf("t", "row", "a", null,
+                    Collections.singletonMap("a", bytes("two"))));
+        assertEquals("one", string(mDb.get("t", "row", "a")));
+
+        Map<String, byte[]> values = new HashMap<>();
+        values.put("a", bytes("two"));
+        values.put("b", bytes("2"));
+        assertTrue(mDb.putColumnsIf("t", "row", "a", bytes("one"), values));
+        assertEquals("two", string(mDb.get("t", "row", "a")));
+        assertEquals("2", string(mDb.get("t", "row", "b")));
+
+        mDb.close();
+        mDb = open();
+        assertEquals("two", string(mDb.get("t", "row", "a")));
+    }
+
+    @Test
+    public void testAsyncCallsRunOnTheDatabaseExecutor() throws Exception {
+        final AtomicReference<String> decodedOn = new AtomicReference<>();
+        JacksonCodec<String> codec = new JacksonCodec<String>(String.class,
+                JacksonCodec.Format.JSON) {
+            @Override
+            public String decode(byte[] data) throws IOException {
+                decodedOn.set(Thread.currentThread().getName());
+                return super.decode(data);
+            }
+        };
+
+        LocalProviderImpl<String> provider = new LocalProviderImpl<>(mDb, "t", codec);
+        provider.putAsync("row", "one").join();
+        assertEquals("one", provider.getAsync("row").join());
+        assertEquals("LocalDatabase-async", decodedOn.get());
+
+        LocalCollectionProvider<String> collection = new LocalCollectionProvider<>(mDb, "c", codec);
+        collection.putAsync("row", "a", "two").join();
+        decodedOn.set(null);
+        assertEquals("two", collection.getAsync("row", "a").join());
+        assertEquals("LocalDatabase-async", decodedOn.get());
+        assertEquals(1, collection.queryAsync("row", 10).join().size());
+    }
+
+    @Test
+    public void testReopen() throws Exception {
+        mDb.put("t", "row", "a", bytes("one"));
+        mDb.put("t", "row", "b", bytes("two"));
+        mDb.put("t", "row", "a", null);
+        mDb.close();
+
+        mDb = open();
+        assertNull(mDb.get("t", "row", "a"));
+        assertEquals("two", string(mDb.get("t", "row", "b")));
+    }
+
+    @Test
+    public void testTornWriteIsDiscarded() throws Exception {
+        mDb.put("t", "row", "a", bytes("one"));
+        final long good = mDb.getSize();
+        mDb.put("t", "row", "b", bytes("two"));
+        mDb.close();
+
+        // Cut the last batch short.
+        try (RandomAccessFile file = new RandomAccessFile(new File(mDirectory, "grow.log"), "rw")) {
+            file.setLength(file.length() - 2);
+        }
+
+        mDb = open();
+        assertEquals("one", string(mDb.get("t", "row", "a")));
+        assertNull(mDb.get("t", "row", "b"));
+        assertEquals(good, mDb.getSize());
+
+        // New writes follow the last good batch.
+        mDb.put("t", "row", "c", bytes("three"));
+        mDb.close();
+        mDb = open();
+        assertEquals("three", string(mDb.get("t", "row", "c")));
+    }
+
+    @Test
+    public void testCorruptBatchIsDiscarded() throws Exception {
+        mDb.put("t", "row", "a", bytes("one"));
+        final long good = mDb.getSize();
+        mDb.put("t", "row", "b", bytes("two"));
+        mDb.close();
+
+        try (RandomAccessFile file = new RandomAccessFile(new File(mDirectory, "grow.log"), "rw")) {
+            file.seek(file.length() - 1);
+            file.write('x');
+        }
+
+        mDb = open();
+        assertNull(mDb.get("t", "row", "b"));
+        assertEquals(good, mDb.getSize());
+    }
+
+    @Test
+    public void testCompaction() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            mDb.put("t", "row", "a", bytes("value" + i));
+        }
+        mDb.put("t", "other", "b", bytes("kept"));
+        mDb.put("t", "gone", "c", bytes("deleted"));
+        mDb.put("t", "gone", "c", null);
+
+        final long before = mDb.getSize();
+        assertTrue(mDb.maybeCompact());
+        assertTrue(mDb.getSize() < before);
+        assertEquals(mDb.getSize(), mDb.getLiveBytes() + 2 * 12);
+
+        assertEquals("value99", string(mDb.get("t", "row", "a")));
+        assertEquals("kept", string(mDb.get("t", "other", "b")));
+        assertNull(mDb.get("t", "gone", "c"));
+
+        // Nothing left to reclaim.
+        assertFalse(mDb.maybeCompact());
+
+        mDb.close();
+        mDb = open();
+        assertEquals("value99", string(mDb.get("t", "row", "a")));
+        assertNull(mDb.get("t", "gone", "c"));
+    }
+
+    @Test
+    public void testWritesDuringCompaction() throws Exception {
+        for (int i = 0; i < 1000; i++) {
+            mDb.put("t", "row" + (i % 10), "a", bytes("old" + i));
+        }
+
+        final Thread writer = new Thread(() -> {
+            try {
+                for (int i = 0; i < 1000; i++) {
+                    mDb.put("t", "new" + i, "a", bytes("new" + i));
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        writer.start();
+        mDb.compact();
+        writer.join();
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals("old" + (990 + i), string(mDb.get("t", "row" + i, "a")));
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertEquals("new" + i, string(mDb.get("t", "new" + i, "a")));
+        }
+
+        mDb.close();
+        mDb = open();
+        for (int i = 0; i < 1000; i++) {
+            assertEquals("new" + i, string(mDb.get("t", "new" + i, "a")));
+        }
+    }
+
+    @Test
+    public void testUnfinishedCompactionIsDiscarded() throws Exception {
+        mDb.put("t", "row", "a", bytes("one"));
+        mDb.put("t", "row", "a", bytes("two"));
+        mDb.close();
+
+        // A crash part way through writing the compacted log.
+        final File compacted = new File(mDirectory, "grow.log.compact");
+        Files.write(compacted.toPath(), new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9 });
+
+        mDb = open();
+        assertFalse(compacted.exists());
+        assertEquals("two", string(mDb.get("t", "row", "a")));
+
+        mDb.compact();
+        assertEquals("two", string(mDb.get("t", "row", "a")));
+    }
+
+    private LocalDatabase open() throws IOException {
+        LocalDatabase db = new LocalDatabase(mDirectory, 0, 0);
+        db.open();
+        return db;
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(byte[] value) {
+        return new String(value, StandardCharsets.UTF_8);
+    }
+}
@@ -48,9 +48,9 @@ public class ResourceTestBase {
 
         private final Provider<String, UserRecord> mUserRecordProvider;
         private final Provider<String, Question> mQuestionProvider;
-        private final Provider<String, TrainingRecord> mTrainingRecordProvider;
+        private Provider<String, TrainingRecord> mTrainingRecordProvider;
         private final Provider<String, String> mStringProvider;
-        private final CollectionProvider<String, String, String> mAnswerProvider;
+        private CollectionProvider<String, String, String> mAnswerProvider;
 
         private Playlist mDefaultPlaylist;
 
@@ -79,6 +79,10 @@ public class ResourceTestBase {
             return mTrainingRecordProvider;
         }
 
+        public void setTrainingRecordProvider(Provider<String, TrainingRecord> provider) {
+            mTrainingRecordProvider = provider;
+        }
+
         public void setDefaultPlaylist(Playlist playlist) {
             mDefaultPlaylist = playlist;
         }
@@ -97,5 +101,9 @@ public class ResourceTestBase {
         public CollectionProvider<String, String, String> getAnswerProvider() {
             return mAnswerProvider;
         }
+
+        public void setAnswerProvider(CollectionProvider<String, String, String> provider) {
+            mAnswerProvider = provider;
+        }
     }
 }
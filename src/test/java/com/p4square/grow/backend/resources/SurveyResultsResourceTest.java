@@ -0,0 +1,219 @@
+package com.p4square.grow.backend.resources;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.restlet.Request;
+import org.restlet.Response;
+import org.restlet.data.Method;
+import org.restlet.data.Status;
+import org.restlet.representation.StringRepresentation;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import com.p4square.grow.backend.Assessments;
+import com.p4square.grow.model.Answer;
+import com.p4square.grow.model.Question;
+import com.p4square.grow.model.RunningScore;
+import com.p4square.grow.model.TextQuestion;
+import com.p4square.grow.provider.CollectionProvider;
+
+/**
+ * Tests for the SurveyResultsResource.
+ */
+public class SurveyResultsResourceTest extends ResourceTestBase {
+
+    private static final String USER_ID = "1234";
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private CollectionProvider<String, String, String> mAnswers;
+
+    @Before
+    public void setup() throws Exception {
+        super.setup();
+
+        mAnswers = mApplication.getAnswerProvider();
+        for (String id : new String[] { "q1", "q2", "q3" }) {
+            mApplication.getQuestionProvider().put(id, question(id));
+        }
+    }
+
+    @Test
+    public void testFirstAnswer() throws Exception {
+        answer("q1", "a2");
+
+        RunningScore score = runningScore();
+        assertEquals(2.0, score.getSum(), 0.0);
+        assertEquals(1, score.getCount());
+        assertEquals(1, score.getTotalAnswers());
+        assertEquals("q1", score.getLastAnswered());
+        assertEquals(1, score.getRevision());
+
+        assertEquals(answerJson("a2"), mAnswers.get(USER_ID, "q1"));
+        assertEquals("q1", mAnswers.get(USER_ID, Assessments.LAST_ANSWERED));
+        assertEquals(Assessments.summarize(score), mAnswers.get(USER_ID, Assessments.SUMMARY));
+    }
+
+    @Test
+    public void testChangedAnswer() throws Exception {
+        answer("q1", "a2");
+        answer("q2", "a3");
+        answer("q1", "a4");
+
+        RunningScore score = runningScore();
+        assertEquals(7.0, score.getSum(), 0.0);
+        assertEquals(2, score.getCount());
+        assertEquals(2, score.getTotalAnswers());
+        assertEquals(3, score.getRevision());
+        assertEquals(answerJson("a4"), mAnswers.get(USER_ID, "q1"));
+    }
+
+    @Test
+    public void testMissingRunningScore() throws Exception {
+        // Answers recorded before the running score existed.
+        mAnswers.put(USER_ID, "q1", answerJson("a1"));
+        mAnswers.put(USER_ID, "q2", answerJson("a2"));
+
+        answer("q3", "a3");
+
+        RunningScore score = runningScore();
+        assertEquals(6.0, score.getSum(), 0.0);
+        assertEquals(3, score.getCount());
+        assertEquals(3, score.getTotalAnswers());
+        assertEquals("q3", score.getLastAnswered());
+        assertEquals(Assessments.summarize(score), mAnswers.get(USER_ID, Assessments.SUMMARY));
+    }
+
+    @Test
+    public void testDeletedAnswer() throws Exception {
+        answer("q1", "a2");
+        answer("q2", "a3");
+
+        Response response = run(Method.DELETE, "q1", null);
+        assertEquals(Status.SUCCESS_NO_CONTENT, response.getStatus());
+
+        RunningScore score = runningScore();
+        assertEquals(3.0, score.getSum(), 0.0);
+        assertEquals(1, score.getCount());
+        assertEquals(1, score.getTotalAnswers());
+        assertNull(mAnswers.get(USER_ID, "q1"));
+    }
+
+    @Test
+    public void testAnswerToDeletedQuestionIsNotCounted() throws Exception {
+        answer("q1", "a2");
+        answer("q2", "a3");
+        mApplication.getQuestionProvider().put("q2", null);
+
+        answer("q2", "a4");
+
+        RunningScore score = runningScore();
+        assertEquals(2.0, score.getSum(), 0.0);
+        assertEquals(1, score.getCount());
+        assertEquals(1, score.getTotalAnswers());
+    }
+
+    @Test
+    public void testConcurrentAnswerIsNotLost() throws Exception {
+        answer("q1", "a2");
+
+        mApplication.setAnswerProvider(new RacingProvider());
+        answer("q2", "a3");
+
+        RunningScore score = runningScore();
+        assertEquals(6.0, score.getSum(), 0.0);
+        assertEquals(3, score.getCount());
+        assertEquals(3, score.getTotalAnswers());
+        assertEquals("q2", score.getLastAnswered());
+        assertEquals(answerJson("a1"), mAnswers.get(USER_ID, "q3"));
+    }
+
+    private void answer(String questionId, String answerId) {
+        Response response = run(Method.PUT, questionId, answerJson(answerId));
+        assertEquals(Status.SUCCESS_NO_CONTENT, response.getStatus());
+    }
+
+    private Response run(Method method, String questionId, String entity) {
+        Request request = (entity == null)
+            ? new Request(method, "/")
+            : new Request(method, "/", new StringRepresentation(entity));
+
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put("userId", USER_ID);
+        attributes.put("questionId", questionId);
+        request.setAttributes(attributes);
+        Response response = new Response(request);
+
+        SurveyResultsResource resource = new SurveyResultsResource();
+        resource.init(mApplication.getContext(), request, response);
+        resource.handle();
+        resource.release();
+        return response;
+    }
+
+    private RunningScore runningScore() throws IOException {
+        return MAPPER.readValue(mAnswers.get(USER_ID, Assessments.RUNNING_SCORE),
+                RunningScore.class);
+    }
+
+    private static String answerJson(String answerId) {
+        return "{\"answerId\":\"" + answerId + "\"}";
+    }
+
+    private static Question question(String id) {
+        Question question = new TextQuestion();
+        question.setId(id);
+        for (int i = 1; i <= 4; i++) {
+            Answer answer = new Answer();
+            answer.setScore(i);
+            question.getAnswers().put("a" + i, answer);
+        }
+        return question;
+    }
+
+    /**
+     * Records another answer the first time a conditional write is made, as
+     * if a second request had read the same score.
+     */
+    private class RacingProvider implements CollectionProvider<String, String, String> {
+        private boolean mRaced;
+
+        @Override
+        public String get(String collection, String key) throws IOException {
+            return mAnswers.get(collection, key);
+        }
+
+        @Override
+        public Map<String, String> query(String collection) throws IOException {
+            return mAnswers.query(collection);
+        }
+
+        @Override
+        public Map<String, String> query(String collection, int limit) throws IOException {
+            return mAnswers.query(collection, limit);
+        }
+
+        @Override
+        public void put(String collection, String key, String obj) throws IOException {
+            mAnswers.put(collection, key, obj);
+        }
+
+        @Override
+        public boolean putAllIf(String collection, String key, String expected,
+                Map<String, String> values) throws IOException {
+
+            if (!mRaced) {
+                mRaced = true;
+                answer("q3", "a1");
+            }
+
+            return mAnswers.putAllIf(collection, key, expected, values);
+        }
+    }
+}
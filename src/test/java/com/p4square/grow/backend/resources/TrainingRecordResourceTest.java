@@ -4,6 +4,8 @@
 
 package com.p4square.grow.backend.resources;
 
+import java.io.IOException;
+import java.util.Date;
 import java.util.Map;
 import java.util.HashMap;
 
@@ -15,6 +17,8 @@ import org.restlet.ext.jackson.JacksonRepresentation;
 
 import com.p4square.grow.model.Playlist;
 import com.p4square.grow.model.TrainingRecord;
+import com.p4square.grow.provider.JsonEncodedProvider;
+import com.p4square.grow.provider.MapProvider;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -140,4 +144,95 @@ public class TrainingRecordResourceTest extends ResourceTestBase {
         assertTrue(actualPlaylist.find("teacher-1").getRequired()); // Required by assessment.
         assertTrue(actualPlaylist.find("leader-1").getRequired());
     }
+
+    @Test
+    public void testNewRecordDoesNotModifyDefaultPlaylist() throws Exception {
+        mApplication.getAnswerProvider().put(USER_ID, "summary", "{\"sum\": 4.0, \"count\": 1}");
+
+        TrainingRecord record = run(TrainingRecord.class);
+        assertFalse(record.getPlaylist().find("seeker-1").getRequired());
+
+        // The shared default playlist is untouched.
+        assertTrue(mApplication.getDefaultPlaylist().find("seeker-1").getRequired());
+    }
+
+    @Test
+    public void testMergedRecordIsSaved() throws Exception {
+        mApplication.getDefaultPlaylist().setLastUpdated(new Date(500));
+
+        TrainingRecord existing = new TrainingRecord();
+        existing.getPlaylist().add(Chapters.INTRODUCTION, "intro-1").complete();
+        existing.getPlaylist().setLastUpdated(new Date(100));
+        mApplication.getTrainingRecordProvider().put(USER_ID, existing);
+
+        TrainingRecord record = run(TrainingRecord.class);
+        assertNotNull(record.getPlaylist().find("leader-1"));
+
+        TrainingRecord saved = mApplication.getTrainingRecordProvider().get(USER_ID);
+        assertEquals(new Date(500), saved.getPlaylist().getLastUpdated());
+        assertNotNull(saved.getPlaylist().find("leader-1"));
+        assertTrue(saved.getPlaylist().find("intro-1").getComplete());
+    }
+
+    @Test
+    public void testMergeDoesNotOverwriteConcurrentChange() throws Exception {
+        mApplication.getDefaultPlaylist().setLastUpdated(new Date(500));
+
+        TrainingRecord existing = new TrainingRecord();
+        existing.getPlaylist().add(Chapters.INTRODUCTION, "intro-1");
+        existing.getPlaylist().setLastUpdated(new Date(100));
+
+        RacingProvider records = new RacingProvider();
+        records.put(USER_ID, existing);
+        mApplication.setTrainingRecordProvider(records);
+
+        run(TrainingRecord.class);
+
+        // The video completed while the merge was in progress is kept.
+        TrainingRecord saved = records.get(USER_ID);
+        assertTrue(saved.getPlaylist().find("intro-1").getComplete());
+        assertEquals("intro-1", saved.getLastVideo());
+        assertEquals(new Date(100), saved.getPlaylist().getLastUpdated());
+    }
+
+    /**
+     * Stores copies of the records, and completes a video just before the
+     * first conditional write, as a concurrent PUT would.
+     */
+    private class RacingProvider extends MapProvider<String, TrainingRecord> {
+        private boolean mRaced;
+
+        @Override
+        public synchronized TrainingRecord get(String key) throws IOException {
+            return copy(super.get(key));
+        }
+
+        @Override
+        public synchronized void put(String key, TrainingRecord obj) throws IOException {
+            super.put(key, copy(obj));
+        }
+
+        @Override
+        public synchronized boolean putIf(String key, TrainingRecord expected, TrainingRecord obj)
+                throws IOException {
+
+            if (!mRaced) {
+                mRaced = true;
+                TrainingRecord record = get(key);
+                record.getPlaylist().find("intro-1").complete();
+                record.setLastVideo("intro-1");
+                put(key, record);
+            }
+
+            return super.putIf(key, expected, obj);
+        }
+
+        private TrainingRecord copy(TrainingRecord record) throws IOException {
+            if (record == null) {
+                return null;
+            }
+            return JsonEncodedProvider.MAPPER.readValue(
+                    JsonEncodedProvider.MAPPER.writeValueAsString(record), TrainingRecord.class);
+        }
+    }
 }
@@ -0,0 +1,121 @@
+package com.p4square.grow.model;
+
+import java.util.Date;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for Chapter.
+ */
+public class ChapterTest {
+
+    @Test
+    public void testRemovedSlotsAreReused() {
+        Chapter chapter = new Chapter(Chapters.SEEKER);
+        chapter.setVideoRecord("kept", record(true, 100));
+
+        // Far more videos pass through the chapter than it has slots for.
+        for (int i = 0; i < 200000; i++) {
+            chapter.setVideoRecord("video" + i, record(false, 0));
+            if (i > 0) {
+                chapter.removeVideoRecord("video" + (i - 1));
+            }
+        }
+
+        assertEquals(2, chapter.getVideos().size());
+        assertNull(chapter.getVideoRecord("video199998"));
+        assertFalse(chapter.getVideoRecord("video199999").getComplete());
+        assertTrue(chapter.getVideoRecord("kept").getComplete());
+        assertEquals(new Date(100), chapter.getVideoRecord("kept").getCompletionDate());
+        assertFalse(chapter.isComplete());
+
+        chapter.removeVideoRecord("video199999");
+        assertTrue(chapter.isComplete());
+        assertEquals(new Date(100), chapter.getCompletionDate());
+    }
+
+    @Test
+    public void testReusedSlotStartsFresh() {
+        Chapter chapter = new Chapter(Chapters.SEEKER);
+        chapter.setVideoRecord("video1", record(true, 100));
+        chapter.setVideoRecord("video2", record(true, 200));
+        chapter.setVideoRecord("video3", record(true, 300));
+        chapter.setVideoRecord("video4", record(true, 400));
+        chapter.removeVideoRecord("video1");
+        assertTrue(chapter.isComplete());
+
+        // video5 takes the slot video1 left.
+        chapter.setVideoRecord("video5", new VideoRecord());
+
+        VideoRecord video5 = chapter.getVideoRecord("video5");
+        assertFalse(video5.getComplete());
+        assertNull(video5.getCompletionDate());
+        assertNull(chapter.getVideoRecord("video1"));
+        assertEquals(4, chapter.getVideos().size());
+        assertFalse(chapter.isComplete());
+
+        video5.complete();
+        assertTrue(chapter.isComplete());
+        assertEquals(new Date(400), chapter.getVideoRecord("video4").getCompletionDate());
+    }
+
+    @Test
+    public void testRecordOfRemovedVideoIsIndependent() {
+        Chapter chapter = new Chapter(Chapters.SEEKER);
+        chapter.setVideoRecord("video1", record(false, 0));
+        VideoRecord removed = chapter.getVideoRecord("video1");
+        chapter.removeVideoRecord("video1");
+
+        // video2 takes the slot video1 left.
+        chapter.setVideoRecord("video2", record(false, 0));
+        assertTrue(chapter.isRequired());
+        assertFalse(chapter.isComplete());
+
+        // The old record keeps video1's data and does not reach video2.
+        assertTrue(removed.getRequired());
+        assertFalse(removed.getComplete());
+        removed.complete();
+        removed.setRequired(false);
+        assertTrue(removed.getComplete());
+
+        VideoRecord video2 = chapter.getVideoRecord("video2");
+        assertNotSame(removed, video2);
+        assertFalse(video2.getComplete());
+        assertTrue(video2.getRequired());
+        assertNull(video2.getCompletionDate());
+        assertFalse(chapter.isComplete());
+
+        video2.complete();
+        assertTrue(chapter.isComplete());
+    }
+
+    @Test
+    public void testSameRecordIsReturned() {
+        Chapter chapter = new Chapter(Chapters.SEEKER);
+        VideoRecord video = new VideoRecord();
+        chapter.setVideoRecord("video1", video);
+
+        assertSame(video, chapter.getVideoRecord("video1"));
+        assertSame(video, chapter.getVideos().get("video1"));
+        assertSame(video, chapter.getVideos().values().iterator().next());
+
+        // A replaced record keeps its data.
+        video.complete();
+        chapter.setVideoRecord("video1", new VideoRecord());
+        assertTrue(video.getComplete());
+        assertFalse(chapter.getVideoRecord("video1").getComplete());
+        assertNotSame(video, chapter.getVideoRecord("video1"));
+    }
+
+    private static VideoRecord record(boolean complete, long time) {
+        VideoRecord record = new VideoRecord();
+        record.setRequired(true);
+        record.setComplete(complete);
+        if (complete) {
+            record.setCompletionDate(new Date(time));
+        }
+        return record;
+    }
+}
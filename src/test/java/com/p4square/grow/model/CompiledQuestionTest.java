@@ -0,0 +1,133 @@
+package com.p4square.grow.model;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for CompiledQuestion and the compiled scoring path.
+ */
+public class CompiledQuestionTest {
+
+    @Test
+    public void testParseDoubleMatchesJdk() {
+        String[] values = { "0", "1", "-1", "0.5", "-0.5", ".25", "3.", "+2.75", "-0",
+            "0.1", "0.30000000000000004", "123456789.123456", "1e3", "-2.5E-3",
+            " 0.75 ", "9007199254740993", "0.0000000000000000000000001" };
+
+        for (String value : values) {
+            assertEquals(value, Double.parseDouble(value),
+                    CompiledQuestion.parseDouble(value, 0, value.length()), 0);
+        }
+
+        Random random = new Random(42);
+        for (int i = 0; i < 10000; i++) {
+            String value = String.valueOf((random.nextDouble() - 0.5) * 4);
+            assertEquals(value, Double.parseDouble(value),
+                    CompiledQuestion.parseDouble(value, 0, value.length()), 0);
+
+            value = String.format("%.2f", (random.nextDouble() - 0.5) * 2);
+            assertEquals(value, Double.parseDouble(value),
+                    CompiledQuestion.parseDouble(value, 0, value.length()), 0);
+        }
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void testParseDoubleRejectsGarbage() {
+        CompiledQuestion.parseDouble("abc", 0, 3);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseMalformedPoint() {
+        CompiledQuestion.parseX("1.0");
+    }
+
+    @Test
+    public void testQuadMatchesLegacyScoring() {
+        QuadQuestion question = new QuadQuestion();
+        Random random = new Random(7);
+        for (int i = 0; i < 9; i++) {
+            Answer answer = new Answer();
+            answer.setScore(i % 4 + 1);
+            Point p = new Point(random.nextDouble() * 2 - 1, random.nextDouble() * 2 - 1);
+            question.getAnswers().put(p.toString(), answer);
+        }
+
+        ScoringEngine engine = new QuadScoringEngine();
+        CompiledQuestion compiled = question.getCompiled();
+        for (int i = 0; i < 1000; i++) {
+            RecordedAnswer answer = new RecordedAnswer();
+            answer.setAnswerId(String.format("%.3f,%.3f",
+                        random.nextDouble() * 2 - 1, random.nextDouble() * 2 - 1));
+
+            Score legacy = new Score();
+            Score fast = new Score();
+            assertEquals(engine.scoreAnswer(legacy, question, answer),
+                    engine.scoreAnswer(fast, compiled, answer));
+            assertEquals(answer.getAnswerId(), legacy.getSum(), fast.getSum(), 0);
+            assertEquals(legacy.getCount(), fast.getCount());
+        }
+    }
+
+    @Test
+    public void testSliderMatchesLegacyScoring() {
+        SliderQuestion question = new SliderQuestion();
+        for (int i = 0; i < 7; i++) {
+            question.getAnswers().put("a" + i, new Answer());
+        }
+
+        ScoringEngine engine = new SliderScoringEngine();
+        CompiledQuestion compiled = question.getCompiled();
+        for (int i = 0; i <= 100; i++) {
+            RecordedAnswer answer = new RecordedAnswer();
+            answer.setAnswerId(String.valueOf(i / 100.0));
+
+            Score legacy = new Score();
+            Score fast = new Score();
+            engine.scoreAnswer(legacy, question, answer);
+            engine.scoreAnswer(fast, compiled, answer);
+            assertEquals(legacy.getSum(), fast.getSum(), 0);
+        }
+    }
+
+    @Test
+    public void testSimpleAnswerTypes() {
+        TextQuestion question = new TextQuestion();
+        Answer average = new Answer();
+        average.setScore(3);
+        question.getAnswers().put("average", average);
+        Answer none = new Answer();
+        none.setType(Answer.ScoreType.NONE);
+        none.setScore(2);
+        question.getAnswers().put("none", none);
+        Answer trump = new Answer();
+        trump.setType(Answer.ScoreType.TRUMP);
+        trump.setScore(1);
+        question.getAnswers().put("trump", trump);
+
+        Score score = new Score(4, 1);
+        assertTrue(question.scoreAnswer(score, answer("average")));
+        assertTrue(question.scoreAnswer(score, answer("none")));
+        assertEquals(7, score.getSum(), 0);
+        assertEquals(2, score.getCount());
+
+        assertFalse(question.scoreAnswer(score, answer("trump")));
+        assertEquals(1, score.getSum(), 0);
+        assertEquals(1, score.getCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSimpleInvalidAnswer() {
+        TextQuestion question = new TextQuestion();
+        question.getAnswers().put("a", new Answer());
+        question.scoreAnswer(new Score(), answer("b"));
+    }
+
+    private static RecordedAnswer answer(String id) {
+        RecordedAnswer answer = new RecordedAnswer();
+        answer.setAnswerId(id);
+        return answer;
+    }
+}
@@ -7,6 +7,9 @@ package com.p4square.grow.model;
 import java.util.Date;
 import java.util.Map;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 import org.junit.Before;
 import org.junit.Test;
 
@@ -271,4 +274,117 @@ public class PlaylistTest {
         assertFalse(oldList.find("video4").getComplete());
         assertTrue(oldList.find("video4").getRequired());
     }
+
+    /**
+     * A playlist is not merged again once it has reached the source's version.
+     */
+    @Test
+    public void testMergeSameVersionIsSkipped() {
+        Playlist source = new Playlist();
+        source.add(Chapters.SEEKER, "video1").setRequired(true);
+        source.setLastUpdated(new Date(500));
+
+        Playlist playlist = new Playlist();
+        playlist.setLastUpdated(new Date(100));
+        assertTrue(playlist.merge(source));
+        assertNotNull(playlist.find("video1"));
+
+        // Same version: nothing changes, even if the user's copy differs.
+        playlist.find("video1").setRequired(false);
+        assertFalse(playlist.merge(source));
+        assertFalse(playlist.find("video1").getRequired());
+    }
+
+    /**
+     * Tests that a cloned playlist is independent of the original.
+     */
+    @Test
+    public void testClone() {
+        Playlist original = new Playlist();
+        original.add(Chapters.SEEKER, "video1").setRequired(true);
+        original.add(Chapters.BELIEVER, "video2");
+        original.setLastUpdated(new Date(500));
+
+        Playlist copy = original.clone();
+        assertEquals(original.getLastUpdated(), copy.getLastUpdated());
+        assertEquals(2, copy.getChaptersMap().size());
+        assertEquals(Chapters.SEEKER, copy.getChaptersMap().get(Chapters.SEEKER).getName());
+
+        copy.find("video1").complete();
+        copy.find("video1").setRequired(false);
+        copy.add(Chapters.DISCIPLE, "video3");
+
+        assertFalse(original.find("video1").getComplete());
+        assertTrue(original.find("video1").getRequired());
+        assertNull(original.find("video3"));
+    }
+
+    /**
+     * Tests that find() follows videos as chapters change.
+     */
+    @Test
+    public void testIndexFollowsChapterChanges() {
+        Playlist playlist = new Playlist();
+        playlist.add(Chapters.SEEKER, "video1");
+
+        // Videos added through the chapter are found.
+        Chapter seeker = playlist.getChaptersMap().get(Chapters.SEEKER);
+        VideoRecord video2 = new VideoRecord();
+        seeker.setVideoRecord("video2", video2);
+        assertSame(video2, playlist.find("video2"));
+
+        // Videos in an added chapter are found.
+        Chapter believer = new Chapter(Chapters.BELIEVER);
+        VideoRecord video3 = new VideoRecord();
+        believer.setVideoRecord("video3", video3);
+        playlist.addChapter(Chapters.BELIEVER, believer);
+        assertSame(video3, playlist.find("video3"));
+
+        // Removed videos are not.
+        seeker.removeVideoRecord("video1");
+        assertNull(playlist.find("video1"));
+
+        // Nor are videos in a replaced chapter.
+        playlist.addChapter(Chapters.SEEKER, new Chapter(Chapters.SEEKER));
+        assertNull(playlist.find("video2"));
+        seeker.setVideoRecord("video4", new VideoRecord());
+        assertNull(playlist.find("video4"));
+
+        // A video in two chapters is still found after leaving one.
+        Chapter disciple = new Chapter(Chapters.DISCIPLE);
+        disciple.setVideoRecord("video3", new VideoRecord());
+        playlist.addChapter(Chapters.DISCIPLE, disciple);
+        disciple.removeVideoRecord("video3");
+        assertSame(video3, playlist.find("video3"));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testVideosCannotBeAddedAroundTheIndex() {
+        Playlist playlist = new Playlist();
+        playlist.add(Chapters.SEEKER, "video1");
+        playlist.getChaptersMap().get(Chapters.SEEKER).getVideos().put("video2", new VideoRecord());
+    }
+
+    /**
+     * Tests that the JSON form is unchanged and find() works after decoding.
+     */
+    @Test
+    public void testJsonRoundTrip() throws Exception {
+        Playlist playlist = new Playlist();
+        playlist.add(Chapters.SEEKER, "video1").complete();
+        playlist.add(Chapters.BELIEVER, "video2").setRequired(false);
+        playlist.setLastUpdated(new Date(500));
+
+        ObjectMapper mapper = new ObjectMapper();
+        JsonNode json = mapper.readTree(mapper.writeValueAsString(playlist));
+        assertEquals(3, json.size());
+        assertEquals(500, json.get("lastUpdated").asLong());
+        assertTrue(json.get("seeker").get("video1").get("complete").asBoolean());
+        assertFalse(json.get("believer").get("video2").get("required").asBoolean());
+
+        Playlist copy = mapper.readValue(mapper.writeValueAsString(playlist), Playlist.class);
+        assertTrue(copy.find("video1").getComplete());
+        assertFalse(copy.find("video2").getRequired());
+        assertEquals(Chapters.BELIEVER, copy.getChaptersMap().get(Chapters.BELIEVER).getName());
+    }
 }
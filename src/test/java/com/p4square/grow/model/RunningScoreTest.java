@@ -0,0 +1,153 @@
+package com.p4square.grow.model;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for RunningScore.
+ */
+public class RunningScoreTest {
+    private static final double DELTA = 1e-9;
+
+    private Question mQuestion;
+    private Question mTrumpQuestion;
+
+    @Before
+    public void setup() {
+        mQuestion = new TextQuestion();
+        for (int i = 0; i <= 4; i++) {
+            Answer a = new Answer();
+            a.setScore(i + 0.1f);
+            mQuestion.getAnswers().put("a" + i, a);
+        }
+
+        mTrumpQuestion = new TextQuestion();
+        Answer none = new Answer();
+        none.setType(Answer.ScoreType.NONE);
+        mTrumpQuestion.getAnswers().put("none", none);
+        Answer trump = new Answer();
+        trump.setType(Answer.ScoreType.TRUMP);
+        trump.setScore(0);
+        mTrumpQuestion.getAnswers().put("trump", trump);
+    }
+
+    @Test
+    public void testAddAverages() {
+        RunningScore score = new RunningScore();
+        score.add("q1", mQuestion, answer("a4"));
+        score.add("q2", mQuestion, answer("a2"));
+
+        assertEquals(2, score.getTotalAnswers());
+        assertEquals(2, score.getScore().getCount());
+        assertEquals((4.1f + 2.1f) / 2, score.getScore().getScore(), 1e-6);
+    }
+
+    @Test
+    public void testReplaceMatchesRebuild() {
+        RunningScore incremental = new RunningScore();
+        incremental.add("q1", mQuestion, answer("a1"));
+        incremental.add("q2", mQuestion, answer("a3"));
+
+        // Change the answer to q1 several times.
+        for (String id : new String[] { "a4", "a0", "a2" }) {
+            String old = (id.equals("a4")) ? "a1" : (id.equals("a0") ? "a4" : "a0");
+            assertTrue(incremental.remove("q1", mQuestion, answer(old)));
+            incremental.add("q1", mQuestion, answer(id));
+        }
+
+        RunningScore rebuilt = new RunningScore();
+        rebuilt.add("q1", mQuestion, answer("a2"));
+        rebuilt.add("q2", mQuestion, answer("a3"));
+
+        assertEquals(rebuilt.getTotalAnswers(), incremental.getTotalAnswers());
+        assertEquals(rebuilt.getScore().getCount(), incremental.getScore().getCount());
+        assertEquals(rebuilt.getScore().getSum(), incremental.getScore().getSum(), DELTA);
+        assertEquals(rebuilt.getScore().toString(), incremental.getScore().toString());
+    }
+
+    @Test
+    public void testTrumpOverridesAverages() {
+        RunningScore score = new RunningScore();
+        score.add("q1", mQuestion, answer("a4"));
+        score.add("t", mTrumpQuestion, answer("trump"));
+        score.add("q2", mQuestion, answer("a4"));
+
+        assertEquals(3, score.getTotalAnswers());
+        assertEquals(0, score.getScore().getScore(), DELTA);
+        assertEquals("seeker", score.getScore().toString());
+        assertEquals("t", score.getTrumpQuestion());
+    }
+
+    @Test
+    public void testRemovingTrumpRequiresRebuild() {
+        RunningScore score = new RunningScore();
+        score.add("t", mTrumpQuestion, answer("trump"));
+
+        assertFalse(score.remove("t", mTrumpQuestion, answer("trump")));
+        assertNull(score.getTrump());
+    }
+
+    @Test
+    public void testNoneAnswerIsCountedButNotScored() {
+        RunningScore score = new RunningScore();
+        score.add("t", mTrumpQuestion, answer("none"));
+
+        assertEquals(1, score.getTotalAnswers());
+        assertEquals(0, score.getScore().getCount());
+
+        assertTrue(score.remove("t", mTrumpQuestion, answer("none")));
+        assertEquals(0, score.getTotalAnswers());
+    }
+
+    @Test
+    public void testUnscorableAnswersAreCounted() {
+        RunningScore score = new RunningScore();
+        score.add("q1", mQuestion, answer("bogus"));
+        score.add("q2", mQuestion, null);
+
+        assertEquals(2, score.getTotalAnswers());
+        assertEquals(0, score.getScore().getCount());
+    }
+
+    @Test
+    public void testUnknownQuestionsAreNotCounted() {
+        RunningScore score = new RunningScore();
+        score.add("q1", mQuestion, answer("a1"));
+        score.add("missing", null, answer("a1"));
+
+        assertEquals(1, score.getTotalAnswers());
+        assertEquals(1, score.getScore().getCount());
+
+        // The question may have been deleted after the answer was counted.
+        assertFalse(score.remove("missing", null, answer("a1")));
+        assertEquals(1, score.getTotalAnswers());
+    }
+
+    @Test
+    public void testJsonRoundTrip() throws Exception {
+        RunningScore score = new RunningScore();
+        score.add("q1", mQuestion, answer("a3"));
+        score.add("t", mTrumpQuestion, answer("trump"));
+        score.setLastAnswered("t");
+
+        ObjectMapper mapper = new ObjectMapper();
+        RunningScore copy = mapper.readValue(mapper.writeValueAsString(score), RunningScore.class);
+
+        assertEquals(score.getSum(), copy.getSum(), DELTA);
+        assertEquals(score.getCount(), copy.getCount());
+        assertEquals(score.getTrump(), copy.getTrump());
+        assertEquals("t", copy.getTrumpQuestion());
+        assertEquals(2, copy.getTotalAnswers());
+        assertEquals("t", copy.getLastAnswered());
+    }
+
+    private static RecordedAnswer answer(String id) {
+        RecordedAnswer answer = new RecordedAnswer();
+        answer.setAnswerId(id);
+        return answer;
+    }
+}
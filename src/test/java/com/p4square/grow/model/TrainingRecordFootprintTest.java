@@ -0,0 +1,148 @@
+package com.p4square.grow.model;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.openjdk.jol.info.GraphLayout;
+
+import static org.junit.Assert.*;
+
+/**
+ * Measures the heap used by decoded training records, against the layout
+ * they had before Chapter stored its videos compactly.
+ */
+public class TrainingRecordFootprintTest {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /**
+     * Records measured together, as they would be held by a cache.
+     */
+    private static final int RECORDS = 100;
+
+    /**
+     * Videos in each record, about the size of the default playlist.
+     */
+    private static final int VIDEOS = 48;
+
+    private String mJson;
+
+    @Before
+    public void setUp() throws Exception {
+        // A record part way through training. Built as JSON so that every
+        // decoded record has its own copy of each video id, as when read
+        // from the database.
+        ObjectNode record = MAPPER.createObjectNode();
+        record.put("lastVideo", "video20");
+        ObjectNode playlist = record.putObject("playlist");
+        playlist.put("lastUpdated", 1000L);
+
+        Chapters[] chapters = Chapters.values();
+        for (int i = 0; i < VIDEOS; i++) {
+            String chapter = chapters[i * chapters.length / VIDEOS].toString().toLowerCase();
+            ObjectNode chapterNode = playlist.has(chapter)
+                ? (ObjectNode) playlist.get(chapter) : playlist.putObject(chapter);
+
+            ObjectNode video = chapterNode.putObject("video" + i);
+            video.put("required", i % 5 != 0);
+            video.put("complete", i <= 20);
+            if (i <= 20) {
+                video.put("completionDate", 1379288806266L + i);
+            } else {
+                video.putNull("completionDate");
+            }
+        }
+
+        mJson = MAPPER.writeValueAsString(record);
+    }
+
+    @Test
+    public void testCompactRecordUsesLessHeap() throws Exception {
+        Object[] compact = new Object[RECORDS];
+        Object[] legacy = new Object[RECORDS];
+        for (int i = 0; i < RECORDS; i++) {
+            // The legacy copy is made from its own decoded record, so the
+            // measured compact records have not handed out any VideoRecords.
+            compact[i] = MAPPER.readValue(mJson, TrainingRecord.class);
+            legacy[i] = new LegacyTrainingRecord(MAPPER.readValue(mJson, TrainingRecord.class));
+        }
+
+        long compactBytes = GraphLayout.parseInstance(compact).totalSize() / RECORDS;
+        long legacyBytes = GraphLayout.parseInstance(legacy).totalSize() / RECORDS;
+
+        String sizes = "compact: " + compactBytes + " bytes, legacy: " + legacyBytes + " bytes";
+        assertTrue(sizes, compactBytes * 5 < legacyBytes * 3);
+    }
+
+    @Test
+    public void testDecodedRecordsShareVideoIds() throws Exception {
+        TrainingRecord first = MAPPER.readValue(mJson, TrainingRecord.class);
+        TrainingRecord second = MAPPER.readValue(mJson, TrainingRecord.class);
+
+        String firstId = first.getPlaylist().getChaptersMap().get(Chapters.SEEKER)
+            .getVideos().keySet().iterator().next();
+        String secondId = second.getPlaylist().getChaptersMap().get(Chapters.SEEKER)
+            .getVideos().keySet().iterator().next();
+
+        assertEquals(firstId, secondId);
+        assertSame(firstId, secondId);
+        assertSame(first.getLastVideo(), second.getLastVideo());
+    }
+
+    /*
+     * The classes below copy the fields of TrainingRecord, Playlist, Chapter
+     * and VideoRecord before they were made compact.
+     */
+
+    private static class LegacyTrainingRecord {
+        private final String mLastVideo;
+        private final LegacyPlaylist mPlaylist;
+
+        LegacyTrainingRecord(TrainingRecord record) {
+            mLastVideo = new String(record.getLastVideo());
+            mPlaylist = new LegacyPlaylist(record.getPlaylist());
+        }
+    }
+
+    private static class LegacyPlaylist {
+        private final Map<Chapters, LegacyChapter> mPlaylist = new HashMap<>();
+        private final Date mLastUpdated;
+
+        LegacyPlaylist(Playlist playlist) {
+            for (Map.Entry<Chapters, Chapter> entry : playlist.getChaptersMap().entrySet()) {
+                mPlaylist.put(entry.getKey(), new LegacyChapter(entry.getValue()));
+            }
+            mLastUpdated = new Date(playlist.getLastUpdated().getTime());
+        }
+    }
+
+    private static class LegacyChapter {
+        private final Chapters mName;
+        private final Map<String, LegacyVideoRecord> mVideos = new HashMap<>();
+
+        LegacyChapter(Chapter chapter) {
+            mName = chapter.getName();
+            for (Map.Entry<String, VideoRecord> entry : chapter.getVideos().entrySet()) {
+                mVideos.put(new String(entry.getKey()), new LegacyVideoRecord(entry.getValue()));
+            }
+        }
+    }
+
+    private static class LegacyVideoRecord {
+        private final Boolean mComplete;
+        private final Boolean mRequired;
+        private final Date mCompletionDate;
+
+        LegacyVideoRecord(VideoRecord video) {
+            mComplete = video.getComplete();
+            mRequired = video.getRequired();
+            mCompletionDate = video.getCompletionDate();
+        }
+    }
+}
@@ -82,4 +82,66 @@ public class TrainingRecordTest {
         assertTrue(record.getComplete());
         assertTrue(now <= record.getCompletionDate().getTime());
     }
+
+    /**
+     * Tests that a Chapter's status follows changes made through its VideoRecords.
+     */
+    @Test
+    public void testChapterStatusFollowsVideos() {
+        Playlist playlist = new Playlist();
+        VideoRecord video1 = playlist.add(Chapters.SEEKER, "video1");
+        playlist.add(Chapters.SEEKER, "video2").setRequired(false);
+        Chapter chapter = playlist.getChaptersMap().get(Chapters.SEEKER);
+
+        assertTrue(chapter.isRequired());
+        assertFalse(chapter.isComplete());
+        assertNull(chapter.getCompletionDate());
+
+        video1.setCompletionDate(new Date(500));
+        playlist.find("video1").setComplete(true);
+        assertTrue(video1.getComplete());
+        assertTrue(chapter.isComplete());
+        assertEquals(new Date(500), chapter.getCompletionDate());
+        assertTrue(playlist.getChapterStatuses().get(Chapters.SEEKER));
+
+        for (VideoRecord video : chapter.getVideos().values()) {
+            video.setRequired(false);
+        }
+        assertFalse(chapter.isRequired());
+
+        playlist.add(Chapters.SEEKER, "video3");
+        assertFalse(chapter.isComplete());
+        chapter.removeVideoRecord("video3");
+        assertTrue(chapter.isComplete());
+    }
+
+    /**
+     * Tests that videos are found after others are removed.
+     */
+    @Test
+    public void testChapterLookupAfterRemovals() throws Exception {
+        Chapter chapter = new Chapter(Chapters.SEEKER);
+        for (int i = 0; i < 200; i++) {
+            VideoRecord video = new VideoRecord();
+            video.setCompletionDate(new Date(i));
+            chapter.setVideoRecord("video" + i, video);
+        }
+
+        for (int i = 0; i < 200; i += 3) {
+            chapter.removeVideoRecord("video" + i);
+        }
+
+        for (int i = 0; i < 200; i++) {
+            VideoRecord video = chapter.getVideoRecord("video" + i);
+            if (i % 3 == 0) {
+                assertNull(video);
+            } else {
+                assertEquals(new Date(i), video.getCompletionDate());
+            }
+        }
+
+        Chapter clone = chapter.clone();
+        assertEquals(133, clone.getVideos().size());
+        assertEquals(new Date(199), clone.getVideoRecord("video199").getCompletionDate());
+    }
 }
@@ -0,0 +1,59 @@
+package com.p4square.grow.model;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for VideoIndex.
+ */
+public class VideoIndexTest {
+
+    @Test
+    public void testPutGetRemove() {
+        VideoIndex index = new VideoIndex(0);
+        index.put("video1", Chapters.SEEKER);
+        index.put("video2", Chapters.BELIEVER);
+
+        assertEquals(Chapters.SEEKER, index.get(new String("video1")));
+        assertNull(index.get("video3"));
+
+        // Only removed from the chapter it is in.
+        assertFalse(index.remove("video1", Chapters.BELIEVER));
+        assertTrue(index.remove("video1", Chapters.SEEKER));
+        assertNull(index.get("video1"));
+        assertEquals(Chapters.BELIEVER, index.get("video2"));
+        assertEquals(1, index.size());
+    }
+
+    /**
+     * Compares a VideoIndex with a HashMap through random changes.
+     */
+    @Test
+    public void testMatchesHashMap() {
+        Random random = new Random(42);
+        Chapters[] chapters = Chapters.values();
+        VideoIndex index = new VideoIndex(0);
+        Map<String, Chapters> expected = new HashMap<>();
+
+        for (int i = 0; i < 20000; i++) {
+            String videoId = "video" + random.nextInt(500);
+            Chapters chapter = chapters[random.nextInt(chapters.length)];
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(videoId, chapter), index.remove(videoId, chapter));
+            } else {
+                expected.put(videoId, chapter);
+                index.put(videoId, chapter);
+            }
+        }
+
+        assertEquals(expected.size(), index.size());
+        for (int i = 0; i < 500; i++) {
+            assertEquals(expected.get("video" + i), index.get("video" + i));
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.p4square.grow.provider;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import com.codahale.metrics.MetricRegistry;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for AsyncProviders and the asynchronous decorator methods.
+ */
+public class AsyncProvidersTest {
+
+    @Test
+    public void testAsyncAdapter() throws Exception {
+        MapProvider<String, String> map = new MapProvider<>();
+        AsyncProvider<String, String> async = AsyncProviders.async(map);
+
+        async.putAsync("a", "A").join();
+        assertEquals("A", map.get("a"));
+        assertEquals("A", async.getAsync("a").join());
+        assertNull(async.getAsync("b").join());
+    }
+
+    @Test
+    public void testAsyncAdapterWithExecutor() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            MapCollectionProvider<String, String, String> map = new MapCollectionProvider<>();
+            map.put("c", "1", "one");
+
+            AsyncCollectionProvider<String, String, String> async =
+                AsyncProviders.async(map, executor);
+
+            assertEquals("one", async.getAsync("c", "1").get(1, TimeUnit.SECONDS));
+            assertEquals(1, async.queryAsync("c").get(1, TimeUnit.SECONDS).size());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testAsyncProviderIsReturnedAsIs() {
+        CachingProvider<String, String> cache = new CachingProvider<>(new MapProvider<>(),
+                "test", 1, TimeUnit.HOURS, 10, false, new MetricRegistry());
+
+        assertSame(cache, AsyncProviders.async(cache));
+        assertSame(cache, AsyncProviders.blocking(cache));
+    }
+
+    @Test
+    public void testBlockingAdapterUnwrapsIOException() {
+        final IOException error = new IOException("test");
+        AsyncProvider<String, String> failing = new AsyncProvider<String, String>() {
+            @Override
+            public CompletableFuture<String> getAsync(String key) {
+                return AsyncProviders.failed(error);
+            }
+
+            @Override
+            public CompletableFuture<Void> putAsync(String key, String obj) {
+                return CompletableFuture.completedFuture(null);
+            }
+        };
+        Provider<String, String> blocking = AsyncProviders.blocking(failing);
+
+        try {
+            blocking.get("a");
+            fail("Expected IOException");
+        } catch (IOException e) {
+            assertSame(error, e);
+        }
+    }
+
+    @Test
+    public void testUncheckedPreservesIOException() {
+        final IOException error = new IOException("test");
+        CompletableFuture<String> future = CompletableFuture.completedFuture("a")
+            .thenApply(AsyncProviders.unchecked((input) -> {
+                throw error;
+            }));
+
+        try {
+            AsyncProviders.await(future);
+            fail("Expected IOException");
+        } catch (IOException e) {
+            assertSame(error, e);
+        }
+    }
+
+    @Test
+    public void testDelegateProviderAsync() throws Exception {
+        MapProvider<String, String> map = new MapProvider<>();
+        DelegateProvider<String, String, String> delegate =
+            new DelegateProvider<String, String, String>(map) {
+                @Override
+                protected String makeKey(String key) {
+                    return "prefix/" + key;
+                }
+            };
+
+        delegate.putAsync("a", "A").join();
+        assertEquals("A", map.get("prefix/a"));
+        assertEquals("A", delegate.getAsync("a").join());
+    }
+
+    @Test
+    public void testCachingCollectionProviderAsync() throws Exception {
+        MapCollectionProvider<String, String, String> map = new MapCollectionProvider<>();
+        map.put("c", "1", "one");
+
+        CachingCollectionProvider<String, String, String> cache =
+            new CachingCollectionProvider<>(map, "test", 1, TimeUnit.HOURS, 10, false,
+                    new MetricRegistry());
+
+        Map<String, String> first = cache.queryAsync("c").join();
+        map.put("c", "2", "two");
+        assertEquals(first, cache.queryAsync("c").join());
+
+        cache.putAsync("c", "3", "three").join();
+        assertEquals(3, cache.queryAsync("c").join().size());
+    }
+}
@@ -0,0 +1,283 @@
+package com.p4square.grow.provider;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.codahale.metrics.MetricRegistry;
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for CachingProvider and CachingCollectionProvider.
+ */
+public class CachingProviderTest {
+
+    private MetricRegistry metrics;
+    private Provider<String, String> provider;
+    private CollectionProvider<String, String, String> collectionProvider;
+
+    @Before
+    public void setUp() {
+        metrics = new MetricRegistry();
+        provider = EasyMock.mock(Provider.class);
+        collectionProvider = EasyMock.mock(CollectionProvider.class);
+    }
+
+    @Test
+    public void testGetIsCached() throws Exception {
+        EasyMock.expect(provider.get("a")).andReturn("A").once();
+        EasyMock.replay(provider);
+
+        CachingProvider<String, String> cache = new CachingProvider<>(provider, "test",
+                1, TimeUnit.HOURS, 10, false, metrics);
+
+        assertEquals("A", cache.get("a"));
+        assertEquals("A", cache.get("a"));
+
+        EasyMock.verify(provider);
+        assertEquals(1, metrics.counter("test.hit").getCount());
+        assertEquals(1, metrics.counter("test.miss").getCount());
+    }
+
+    @Test
+    public void testMissesNotCachedByDefault() throws Exception {
+        EasyMock.expect(provider.get("a")).andReturn(null).times(2);
+        EasyMock.replay(provider);
+
+        CachingProvider<String, String> cache = new CachingProvider<>(provider, "test",
+                1, TimeUnit.HOURS, 10, false, metrics);
+
+        assertNull(cache.get("a"));
+        assertNull(cache.get("a"));
+
+        EasyMock.verify(provider);
+    }
+
+    @Test
+    public void testNegativeCaching() throws Exception {
+        EasyMock.expect(provider.get("a")).andReturn(null).once();
+        EasyMock.replay(provider);
+
+        CachingProvider<String, String> cache = new CachingProvider<>(provider, "test",
+                1, TimeUnit.HOURS, 10, true, metrics);
+
+        assertNull(cache.get("a"));
+        assertNull(cache.get("a"));
+
+        EasyMock.verify(provider);
+    }
+
+    @Test
+    public void testPutInvalidates() throws Exception {
+        EasyMock.expect(provider.get("a")).andReturn("A").once();
+        provider.put("a", "B");
+        EasyMock.expect(provider.get("a")).andReturn("B").once();
+        EasyMock.replay(provider);
+
+        CachingProvider<String, String> cache = new CachingProvider<>(provider, "test",
+                1, TimeUnit.HOURS, 10, false, metrics);
+
+        assertEquals("A", cache.get("a"));
+        cache.put("a", "B");
+        assertEquals("B", cache.get("a"));
+
+        EasyMock.verify(provider);
+    }
+
+    @Test
+    public void testLoadRacingInvalidateIsNotCached() throws Exception {
+        final CachingProvider<String, String> cache = new CachingProvider<>(provider, "test",
+                1, TimeUnit.HOURS, 10, false, metrics);
+
+        // The value changes while the first load is in progress.
+        EasyMock.expect(provider.get("a")).andAnswer(new IAnswer<String>() {
+            @Override
+            public String answer() {
+                cache.invalidate("a");
+                return "A";
+            }
+        }).once();
+        EasyMock.expect(provider.get("a")).andReturn("B").once();
+        EasyMock.replay(provider);
+
+        assertEquals("A", cache.get("a"));
+        assertEquals("B", cache.get("a"));
+        assertEquals("B", cache.get("a"));
+
+        EasyMock.verify(provider);
+        assertEquals(1, metrics.counter("test.stale").getCount());
+    }
+
+    @Test
+    public void testLoadRacingManyInvalidatesIsNotCached() throws Exception {
+        final CachingProvider<String, String> cache = new CachingProvider<>(provider, "test",
+                1, TimeUnit.HOURS, 2, false, metrics);
+
+        // More keys are invalidated than the cache remembers.
+        EasyMock.expect(provider.get("a")).andAnswer(new IAnswer<String>() {
+            @Override
+            public String answer() {
+                cache.invalidate("a");
+                cache.invalidate("b");
+                cache.invalidate("c");
+                return "A";
+            }
+        }).once();
+        EasyMock.expect(provider.get("a")).andReturn("B").once();
+        EasyMock.replay(provider);
+
+        assertEquals("A", cache.get("a"));
+        assertEquals("B", cache.get("a"));
+        assertEquals("B", cache.get("a"));
+
+        EasyMock.verify(provider);
+    }
+
+    @Test
+    public void testLoadRacingInvalidateOfOtherKeyIsCached() throws Exception {
+        final CachingProvider<String, String> cache = new CachingProvider<>(provider, "test",
+                1, TimeUnit.HOURS, 10, false, metrics);
+
+        EasyMock.expect(provider.get("a")).andAnswer(new IAnswer<String>() {
+            @Override
+            public String answer() {
+                cache.invalidate("b");
+                return "A";
+            }
+        }).once();
+        EasyMock.replay(provider);
+
+        assertEquals("A", cache.get("a"));
+        assertEquals("A", cache.get("a"));
+
+        EasyMock.verify(provider);
+    }
+
+    @Test
+    public void testExpiration() throws Exception {
+        EasyMock.expect(provider.get("a")).andReturn("A").times(2);
+        EasyMock.replay(provider);
+
+        CachingProvider<String, String> cache = new CachingProvider<>(provider, "test",
+                0, TimeUnit.NANOSECONDS, 10, false, metrics);
+
+        assertEquals("A", cache.get("a"));
+        Thread.sleep(1);
+        assertEquals("A", cache.get("a"));
+
+        EasyMock.verify(provider);
+    }
+
+    @Test
+    public void testLruEviction() throws Exception {
+        EasyMock.expect(provider.get("a")).andReturn("A").times(2);
+        EasyMock.expect(provider.get("b")).andReturn("B").once();
+        EasyMock.expect(provider.get("c")).andReturn("C").once();
+        EasyMock.replay(provider);
+
+        CachingProvider<String, String> cache = new CachingProvider<>(provider, "test",
+                1, TimeUnit.HOURS, 2, false, metrics);
+
+        cache.get("a");
+        cache.get("b");
+        cache.get("b");
+        cache.get("c"); // Evicts a, the least recently used.
+        cache.get("b");
+        cache.get("a");
+
+        EasyMock.verify(provider);
+        assertEquals(2, metrics.counter("test.eviction").getCount());
+    }
+
+    @Test
+    public void testGetAllLoadsOnlyMisses() throws Exception {
+        EasyMock.expect(provider.get("a")).andReturn("A").once();
+        EasyMock.expect(provider.getAll(Arrays.asList("b", "c")))
+            .andReturn(Collections.singletonMap("b", "B")).once();
+        EasyMock.replay(provider);
+
+        CachingProvider<String, String> cache = new CachingProvider<>(provider, "test",
+                1, TimeUnit.HOURS, 10, true, metrics);
+
+        assertEquals("A", cache.get("a"));
+
+        Map<String, String> result = cache.getAll(Arrays.asList("a", "b", "c"));
+        assertEquals(2, result.size());
+        assertEquals("A", result.get("a"));
+        assertEquals("B", result.get("b"));
+
+        // All three keys, including the miss, are now cached.
+        assertEquals(2, cache.getAll(Arrays.asList("a", "b", "c")).size());
+
+        EasyMock.verify(provider);
+    }
+
+    @Test
+    public void testCollectionQueryIsCached() throws Exception {
+        MapCollectionProvider<String, String, String> map = new MapCollectionProvider<>();
+        map.put("c", "1", "one");
+        map.put("c", "2", "two");
+
+        EasyMock.expect(collectionProvider.query("c")).andDelegateTo(map).once();
+        EasyMock.replay(collectionProvider);
+
+        CachingCollectionProvider<String, String, String> cache =
+            new CachingCollectionProvider<>(collectionProvider, "test", 1, TimeUnit.HOURS, 10,
+                    false, metrics);
+
+        assertEquals(2, cache.query("c").size());
+        Map<String, String> limited = cache.query("c", 1);
+        assertEquals(1, limited.size());
+
+        EasyMock.verify(collectionProvider);
+    }
+
+    @Test
+    public void testCollectionPutInvalidates() throws Exception {
+        EasyMock.expect(collectionProvider.get("c", "1")).andReturn("one").once();
+        collectionProvider.put("c", "1", "uno");
+        EasyMock.expect(collectionProvider.get("c", "1")).andReturn("uno").once();
+        EasyMock.replay(collectionProvider);
+
+        CachingCollectionProvider<String, String, String> cache =
+            new CachingCollectionProvider<>(collectionProvider, "test", 1, TimeUnit.HOURS, 10,
+                    false, metrics);
+
+        assertEquals("one", cache.get("c", "1"));
+        assertEquals("one", cache.get("c", "1"));
+        cache.put("c", "1", "uno");
+        assertEquals("uno", cache.get("c", "1"));
+
+        EasyMock.verify(collectionProvider);
+    }
+
+    @Test
+    public void testCollectionLoadRacingPutIsNotCached() throws Exception {
+        final CachingCollectionProvider<String, String, String> cache =
+            new CachingCollectionProvider<>(collectionProvider, "test", 1, TimeUnit.HOURS, 10,
+                    false, metrics);
+
+        EasyMock.expect(collectionProvider.get("c", "1")).andAnswer(new IAnswer<String>() {
+            @Override
+            public String answer() throws Throwable {
+                cache.put("c", "1", "uno");
+                return "one";
+            }
+        }).once();
+        collectionProvider.put("c", "1", "uno");
+        EasyMock.expect(collectionProvider.get("c", "1")).andReturn("uno").once();
+        EasyMock.replay(collectionProvider);
+
+        assertEquals("one", cache.get("c", "1"));
+        assertEquals("uno", cache.get("c", "1"));
+        assertEquals("uno", cache.get("c", "1"));
+
+        EasyMock.verify(collectionProvider);
+    }
+}
@@ -0,0 +1,78 @@
+package com.p4square.grow.provider;
+
+import java.nio.charset.StandardCharsets;
+
+import com.codahale.metrics.MetricRegistry;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for CompressingCodec.
+ */
+public class CompressingCodecTest {
+
+    private MetricRegistry mMetrics;
+    private CompressingCodec<String> mCodec;
+
+    @Before
+    public void setUp() {
+        mMetrics = new MetricRegistry();
+        mCodec = new CompressingCodec<>(new JacksonCodec<>(String.class, JacksonCodec.Format.JSON),
+                64, "test", mMetrics);
+    }
+
+    @Test
+    public void testSmallValuesAreNotCompressed() throws Exception {
+        byte[] data = mCodec.encode("short");
+
+        assertFalse(CompressingCodec.isCompressed(data));
+        assertEquals("short", new String(data, StandardCharsets.UTF_8));
+        assertEquals("short", mCodec.decode(data));
+    }
+
+    @Test
+    public void testLargeValuesAreCompressed() throws Exception {
+        String value = largeValue();
+
+        byte[] data = mCodec.encode(value);
+        assertTrue(CompressingCodec.isCompressed(data));
+        assertTrue(data.length < value.length());
+        assertEquals(value, mCodec.decode(data));
+
+        assertEquals(value.length() - data.length,
+                mMetrics.counter("test.bytesSaved").getCount());
+        assertEquals(1, mMetrics.histogram("test.ratio").getCount());
+        assertEquals(1, mMetrics.timer("test.decode").getCount());
+    }
+
+    @Test
+    public void testLegacyValuesAreReadable() throws Exception {
+        assertEquals("{\"a\":1}", mCodec.decodeString("{\"a\":1}"));
+        assertNull(mCodec.decode(null));
+    }
+
+    @Test
+    public void testOnlyCompressedValuesAreBinary() throws Exception {
+        assertFalse(mCodec.isBinary());
+        assertFalse(mCodec.isBinary(mCodec.encode("short")));
+        assertTrue(mCodec.isBinary(mCodec.encode(largeValue())));
+    }
+
+    @Test
+    public void testEncodeStringDoesNotCompress() throws Exception {
+        String value = largeValue();
+        assertEquals(value, mCodec.encodeString(value));
+        assertEquals(value, mCodec.decodeString(mCodec.encodeString(value)));
+    }
+
+    private static String largeValue() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            sb.append("{\"id\":\"video").append(i).append("\",\"complete\":false}");
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,93 @@
+package com.p4square.grow.provider;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the batch methods of DelegateProvider and DelegateCollectionProvider.
+ */
+public class DelegateProviderTest {
+
+    private MapProvider<String, String> mMap;
+    private MapCollectionProvider<String, String, String> mCollectionMap;
+
+    private Provider<String, String> mProvider;
+    private CollectionProvider<String, String, String> mCollectionProvider;
+
+    @Before
+    public void setUp() {
+        mMap = new MapProvider<>();
+        mProvider = new DelegateProvider<String, String, String>(mMap) {
+            @Override
+            protected String makeKey(String key) {
+                return "prefix/" + key;
+            }
+        };
+
+        mCollectionMap = new MapCollectionProvider<>();
+        mCollectionProvider = new DelegateCollectionProvider<String, String, String, String, String>(mCollectionMap) {
+            @Override
+            protected String makeCollectionKey(String key) {
+                return "c/" + key;
+            }
+
+            @Override
+            protected String makeKey(String key) {
+                return "k/" + key;
+            }
+
+            @Override
+            protected String unmakeKey(String key) {
+                return key.substring(2);
+            }
+        };
+    }
+
+    @Test
+    public void testGetAll() throws Exception {
+        mProvider.put("a", "A");
+        mProvider.put("b", "B");
+
+        Map<String, String> result = mProvider.getAll(Arrays.asList("a", "b", "missing"));
+
+        assertEquals(2, result.size());
+        assertEquals("A", result.get("a"));
+        assertEquals("B", result.get("b"));
+        assertFalse(result.containsKey("missing"));
+    }
+
+    @Test
+    public void testQueryAll() throws Exception {
+        mCollectionProvider.put("x", "1", "one");
+        mCollectionProvider.put("x", "2", "two");
+        mCollectionProvider.put("y", "3", "three");
+
+        Map<String, Map<String, String>> result =
+            mCollectionProvider.queryAll(Arrays.asList("x", "y", "z"));
+
+        assertEquals(2, result.size());
+        assertEquals("one", result.get("x").get("1"));
+        assertEquals("two", result.get("x").get("2"));
+        assertEquals("three", result.get("y").get("3"));
+        assertNull(result.get("z"));
+    }
+
+    @Test
+    public void testPutAll() throws Exception {
+        mCollectionProvider.put("x", "1", "one");
+
+        Map<String, String> changes = new HashMap<>();
+        changes.put("1", null);
+        changes.put("2", "two");
+        mCollectionProvider.putAll("x", changes);
+
+        assertNull(mCollectionMap.get("c/x", "k/1"));
+        assertEquals("two", mCollectionMap.get("c/x", "k/2"));
+    }
+}
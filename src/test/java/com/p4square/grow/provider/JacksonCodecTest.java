@@ -0,0 +1,83 @@
+package com.p4square.grow.provider;
+
+import java.nio.charset.StandardCharsets;
+
+import com.p4square.grow.model.Answer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for JacksonCodec.
+ */
+public class JacksonCodecTest {
+
+    @Test
+    public void testJsonRoundTrip() throws Exception {
+        JacksonCodec<Answer> codec = new JacksonCodec<>(Answer.class, JacksonCodec.Format.JSON);
+        assertFalse(codec.isBinary());
+
+        Answer answer = new Answer();
+        answer.setText("Yes");
+        answer.setType(Answer.ScoreType.TRUMP);
+        answer.setScore(2.5f);
+
+        String json = codec.encodeString(answer);
+        assertEquals(json, new String(codec.encode(answer), StandardCharsets.UTF_8));
+
+        Answer decoded = codec.decode(codec.encode(answer));
+        assertEquals("Yes", decoded.getText());
+        assertEquals(Answer.ScoreType.TRUMP, decoded.getType());
+        assertEquals(2.5f, decoded.getScore(), 0.0001);
+
+        decoded = codec.decodeString(json);
+        assertEquals("Yes", decoded.getText());
+    }
+
+    @Test
+    public void testNullPassesThrough() throws Exception {
+        JacksonCodec<Answer> codec = new JacksonCodec<>(Answer.class, JacksonCodec.Format.JSON);
+
+        assertNull(codec.decode(null));
+        assertNull(codec.decodeString(null));
+    }
+
+    @Test
+    public void testStringsAreText() throws Exception {
+        JacksonCodec<String> codec = new JacksonCodec<>(String.class, JacksonCodec.Format.SMILE);
+        assertFalse(codec.isBinary());
+
+        assertEquals("{\"a\":1}", codec.encodeString("{\"a\":1}"));
+        assertEquals("hello", codec.decode("hello".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void testSmileIsBinary() throws Exception {
+        JacksonCodec<Answer> codec = JacksonCodec.forName(Answer.class, "Smile");
+        assertEquals(JacksonCodec.Format.SMILE, codec.getFormat());
+        assertTrue(codec.isBinary());
+
+        try {
+            codec.encodeString(new Answer());
+            fail("Binary codecs should not encode strings.");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testSmileCodecReadsJson() throws Exception {
+        JacksonCodec<Answer> codec = JacksonCodec.forName(Answer.class, "smile");
+
+        Answer decoded = codec.decode("{\"text\":\"No\"}".getBytes(StandardCharsets.UTF_8));
+        assertEquals("No", decoded.getText());
+    }
+
+    @Test
+    public void testFormatDetection() {
+        assertTrue(JacksonCodec.isSmile(new byte[] { ':', ')', '\n', 0 }));
+        assertFalse(JacksonCodec.isSmile("{}".getBytes(StandardCharsets.UTF_8)));
+        assertFalse(JacksonCodec.isSmile(new byte[0]));
+    }
+}
@@ -0,0 +1,165 @@
+package com.p4square.grow.provider;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for LazyCursor and Page.
+ */
+public class LazyCursorTest {
+
+    @Test
+    public void testPaging() throws Exception {
+        Map<String, String> map = new LinkedHashMap<>();
+        for (int i = 0; i < 5; i++) {
+            map.put("k" + i, "v" + i);
+        }
+
+        List<String> keys = new ArrayList<>();
+        Page<String> page = Page.first(2);
+        int pages = 0;
+        while (page != null) {
+            Cursor<String, String> cursor = LazyCursor.fromMap(map, page);
+            while (cursor.hasNext()) {
+                keys.add(cursor.next().getKey());
+            }
+            page = cursor.getNextPage();
+            pages++;
+        }
+
+        assertEquals(3, pages);
+        assertEquals(new ArrayList<>(map.keySet()), keys);
+    }
+
+    @Test
+    public void testExactPageHasNoNextPage() throws Exception {
+        Map<String, String> map = new LinkedHashMap<>();
+        map.put("a", "A");
+        map.put("b", "B");
+
+        Cursor<String, String> cursor = LazyCursor.fromMap(map, Page.first(2));
+        cursor.next();
+        cursor.next();
+
+        assertFalse(cursor.hasNext());
+        assertNull(cursor.getNextPage());
+    }
+
+    @Test
+    public void testUnlimited() throws Exception {
+        Map<String, String> map = new LinkedHashMap<>();
+        map.put("a", "A");
+        map.put("b", "B");
+
+        Cursor<String, String> cursor = LazyCursor.fromMap(map, Page.after("a", -1));
+        assertEquals("b", cursor.next().getKey());
+        assertFalse(cursor.hasNext());
+        assertNull(cursor.getNextPage());
+    }
+
+    @Test
+    public void testPagesInKeyOrder() throws Exception {
+        Map<String, String> map = new LinkedHashMap<>();
+        map.put("c", "C");
+        map.put("a", "A");
+        map.put("b", "B");
+
+        Cursor<String, String> cursor = LazyCursor.fromMap(map, Page.first(2));
+        assertEquals("a", cursor.next().getKey());
+        assertEquals("b", cursor.next().getKey());
+        assertEquals(Page.after("b", 2).getAfter(), cursor.getNextPage().getAfter());
+    }
+
+    @Test
+    public void testResumeAfterRemovedKey() throws Exception {
+        Map<String, String> map = new LinkedHashMap<>();
+        map.put("a", "A");
+        map.put("c", "C");
+        map.put("d", "D");
+
+        // b was on the previous page but has since been removed.
+        Cursor<String, String> cursor = LazyCursor.fromMap(map, Page.after("b", 1));
+        assertEquals("c", cursor.next().getKey());
+        assertFalse(cursor.hasNext());
+        assertEquals("c", cursor.getNextPage().getAfter());
+    }
+
+    @Test
+    public void testValuesDecodedLazily() throws Exception {
+        TreeMap<String, String> raw = new TreeMap<>();
+        raw.put("a", "1");
+        raw.put("b", "oops");
+
+        final int[] decoded = new int[1];
+        Cursor<String, Integer> cursor = new LazyCursor<String, String, Integer>(
+                raw.entrySet().iterator(), -1, (value) -> {
+                    decoded[0]++;
+                    try {
+                        return Integer.valueOf(value);
+                    } catch (NumberFormatException e) {
+                        throw new IOException(e);
+                    }
+                });
+
+        Map.Entry<String, Integer> first = cursor.next();
+        Map.Entry<String, Integer> second = cursor.next();
+        assertEquals(0, decoded[0]);
+
+        assertEquals(Integer.valueOf(1), first.getValue());
+        assertEquals(Integer.valueOf(1), first.getValue());
+        assertEquals(1, decoded[0]);
+
+        try {
+            second.getValue();
+            fail("Expected UncheckedIOException");
+        } catch (UncheckedIOException e) {
+            // Expected.
+        }
+    }
+
+    @Test
+    public void testDelegateCollectionProviderStream() throws Exception {
+        MapCollectionProvider<String, String, String> map = new MapCollectionProvider<>();
+        map.put("c/x", "k/1", "one");
+        map.put("c/x", "k/2", "two");
+
+        CollectionProvider<String, String, String> delegate =
+            new DelegateCollectionProvider<String, String, String, String, String>(map) {
+                @Override
+                protected String makeCollectionKey(String key) {
+                    return "c/" + key;
+                }
+
+                @Override
+                protected String makeKey(String key) {
+                    return "k/" + key;
+                }
+
+                @Override
+                protected String unmakeKey(String key) {
+                    return key.substring(2);
+                }
+            };
+
+        Cursor<String, String> cursor = delegate.stream("x", Page.first(1));
+        Map.Entry<String, String> entry = cursor.next();
+        assertFalse(cursor.hasNext());
+
+        Page<String> next = cursor.getNextPage();
+        assertNotNull(next);
+        assertEquals(entry.getKey(), next.getAfter());
+
+        cursor = delegate.stream("x", next);
+        assertFalse(entry.getKey().equals(cursor.next().getKey()));
+        assertNull(cursor.getNextPage());
+    }
+}
@@ -0,0 +1,107 @@
+package com.p4square.grow.provider;
+
+import java.io.IOException;
+
+import com.codahale.metrics.MetricRegistry;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for MonitoredProvider, MonitoredCollectionProvider and MonitoredCodec.
+ */
+public class MonitoredProviderTest {
+
+    private MetricRegistry mMetrics;
+
+    @Before
+    public void setUp() {
+        mMetrics = new MetricRegistry();
+    }
+
+    @Test
+    public void testProviderCallsAreTimed() throws Exception {
+        MapProvider<String, String> map = new MapProvider<>();
+        Provider<String, String> provider = new MonitoredProvider<>(map, "test", 0, mMetrics);
+
+        provider.put("a", "A");
+        assertEquals("A", provider.get("a"));
+        assertEquals("A", AsyncProviders.async(provider).getAsync("a").get());
+
+        assertEquals(1, mMetrics.timer("test.put.time").getCount());
+        assertEquals(2, mMetrics.timer("test.get.time").getCount());
+        assertEquals(2, mMetrics.counter("test.get.success").getCount());
+        assertEquals(0, mMetrics.counter("test.get.failure").getCount());
+    }
+
+    @Test
+    public void testFailuresAreCounted() throws Exception {
+        Provider<String, String> failing = new MapProvider<String, String>() {
+            @Override
+            public String get(String key) throws IOException {
+                throw new IOException("failed");
+            }
+        };
+        Provider<String, String> provider = new MonitoredProvider<>(failing, "test", 0, mMetrics);
+
+        try {
+            provider.get("a");
+            fail("Expected IOException");
+        } catch (IOException e) {
+            // Expected
+        }
+
+        assertEquals(1, mMetrics.counter("test.get.failure").getCount());
+        assertEquals(0, mMetrics.counter("test.get.success").getCount());
+    }
+
+    @Test
+    public void testSlowCallsAreCounted() throws Exception {
+        Provider<String, String> slow = new MapProvider<String, String>() {
+            @Override
+            public String get(String key) throws IOException {
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                return null;
+            }
+        };
+        Provider<String, String> provider = new MonitoredProvider<>(slow, "test", 1, mMetrics);
+
+        provider.get("a");
+        assertEquals(1, mMetrics.counter("test.get.slow").getCount());
+    }
+
+    @Test
+    public void testCollectionCallsAreTimed() throws Exception {
+        MapCollectionProvider<String, String, String> map = new MapCollectionProvider<>();
+        CollectionProvider<String, String, String> provider =
+            new MonitoredCollectionProvider<>(map, "test", 0, mMetrics);
+
+        provider.put("c", "1", "one");
+        assertEquals("one", provider.get("c", "1"));
+        assertEquals(1, provider.query("c").size());
+        assertEquals(1, provider.query("c", 10).size());
+
+        assertEquals(1, mMetrics.timer("test.put.time").getCount());
+        assertEquals(1, mMetrics.timer("test.get.time").getCount());
+        assertEquals(2, mMetrics.timer("test.query.time").getCount());
+    }
+
+    @Test
+    public void testCodecPayloadSizes() throws Exception {
+        Codec<String> codec = new MonitoredCodec<>(
+                new JacksonCodec<>(String.class, JacksonCodec.Format.JSON), "test", mMetrics);
+
+        byte[] data = codec.encode("hello");
+        assertEquals("hello", codec.decode(data));
+
+        assertEquals(5, mMetrics.histogram("test.encodedSize").getSnapshot().getMax());
+        assertEquals(1, mMetrics.histogram("test.decodedSize").getCount());
+        assertEquals(1, mMetrics.timer("test.decode").getCount());
+    }
+}
@@ -0,0 +1,172 @@
+package com.p4square.grow.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.codahale.metrics.MetricRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import com.p4square.grow.backend.GrowData;
+import com.p4square.grow.backend.GrowDatas;
+import com.p4square.grow.config.Config;
+import com.p4square.grow.model.Message;
+import com.p4square.grow.model.MessageThread;
+import com.p4square.grow.model.TrainingRecord;
+import com.p4square.grow.model.UserRecord;
+
+/**
+ * Tests for GrowDataMigrator, copying between two local stores.
+ */
+public class GrowDataMigratorTest {
+
+    private File mDirectory;
+    private GrowData mSource;
+    private GrowData mDestination;
+
+    @Before
+    public void setUp() throws Exception {
+        mDirectory = Files.createTempDirectory("GrowDataMigratorTest").toFile();
+        mSource = open("source");
+        mDestination = open("destination");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mSource.stop();
+        mDestination.stop();
+        delete(mDirectory);
+    }
+
+    @Test
+    public void testMigrateUsers() throws Exception {
+        for (int i = 0; i < 20; i++) {
+            addUser("user" + i);
+        }
+
+        GrowDataMigrator.Result result = migrator(null).migrateUsers();
+        assertEquals(20, result.getProcessed());
+        assertTrue(result.getFailed().isEmpty());
+
+        assertEquals("first7", mDestination.getUserRecordProvider().get("user7").getFirstName());
+        assertEquals("video7", mDestination.getTrainingRecordProvider().get("user7").getLastVideo());
+        assertEquals("a7", mDestination.getAnswerProvider().get("user7", "q1"));
+        assertEquals(2, mDestination.getAnswerProvider().query("user7").size());
+
+        GrowDataMigrator.Result verify = migrator(null).verifyUsers();
+        assertEquals(20, verify.getProcessed());
+        assertTrue(verify.getFailed().isEmpty());
+    }
+
+    @Test
+    public void testVerifyReportsMismatch() throws Exception {
+        addUser("user1");
+        addUser("user2");
+        migrator(null).migrateUsers();
+
+        mDestination.getAnswerProvider().put("user2", "q1", "changed");
+
+        GrowDataMigrator.Result verify = migrator(null).verifyUsers();
+        assertEquals(2, verify.getProcessed());
+        assertEquals(1, verify.getFailed().size());
+        assertEquals("user2", verify.getFailed().get(0));
+    }
+
+    @Test
+    public void testMigrateFeeds() throws Exception {
+        MessageThread thread = MessageThread.createNew();
+        Message message = new Message();
+        message.setThreadId(thread.getId());
+        message.setId(Message.generateId());
+        message.setMessage("Hello");
+        mSource.getThreadProvider().put("seeker", thread.getId(), thread);
+        mSource.getMessageProvider().put(thread.getId(), message.getId(), message);
+
+        GrowDataMigrator.Result result = migrator(null).migrateFeeds();
+        assertTrue(result.getFailed().isEmpty());
+
+        assertNotNull(mDestination.getThreadProvider().get("seeker", thread.getId()));
+        assertEquals("Hello",
+                mDestination.getMessageProvider().get(thread.getId(), message.getId()).getMessage());
+    }
+
+    @Test
+    public void testCheckpointSkipsFinishedUsers() throws Exception {
+        addUser("user1");
+        addUser("user2");
+
+        File file = new File(mDirectory, "checkpoint");
+        try (MigrationCheckpoint checkpoint = new MigrationCheckpoint(file)) {
+            checkpoint.markDone(GrowDataMigrator.USERS, "user1");
+        }
+
+        try (MigrationCheckpoint checkpoint = new MigrationCheckpoint(file)) {
+            assertTrue(checkpoint.isDone(GrowDataMigrator.USERS, "user1"));
+            assertFalse(checkpoint.isDone(GrowDataMigrator.FEEDS, "user1"));
+
+            GrowDataMigrator.Result result = migrator(checkpoint).migrateUsers();
+            assertEquals(1, result.getSkipped());
+            assertEquals(1, result.getProcessed());
+            assertEquals(2, checkpoint.count(GrowDataMigrator.USERS));
+        }
+
+        assertNull(mDestination.getUserRecordProvider().get("user1"));
+        assertNotNull(mDestination.getUserRecordProvider().get("user2"));
+
+        try (MigrationCheckpoint checkpoint = new MigrationCheckpoint(file)) {
+            assertTrue(checkpoint.isDone(GrowDataMigrator.USERS, "user2"));
+        }
+    }
+
+    private GrowDataMigrator migrator(MigrationCheckpoint checkpoint) throws IOException {
+        if (checkpoint == null) {
+            checkpoint = new MigrationCheckpoint(null);
+        }
+
+        return new GrowDataMigrator(mSource, mDestination, 4, 2, checkpoint);
+    }
+
+    private void addUser(String id) throws IOException {
+        String n = id.substring(4);
+
+        UserRecord user = new UserRecord();
+        user.setId(id);
+        user.setFirstName("first" + n);
+        mSource.getUserRecordProvider().put(id, user);
+
+        TrainingRecord training = new TrainingRecord();
+        training.setLastVideo("video" + n);
+        mSource.getTrainingRecordProvider().put(id, training);
+
+        Map<String, String> answers = new HashMap<>();
+        answers.put("q1", "a" + n);
+        answers.put("q2", "b" + n);
+        mSource.getAnswerProvider().putAll(id, answers);
+    }
+
+    private GrowData open(String name) throws Exception {
+        Config config = new Config();
+        config.setString("localDataDirectory", new File(mDirectory, name).getPath());
+
+        GrowData data = GrowDatas.create("local", config, new MetricRegistry());
+        data.start();
+        return data;
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}